@@ -0,0 +1,309 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.http.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.openrdf.http.client.SesameClientImpl;
+import org.openrdf.http.client.SesameSession;
+import org.openrdf.http.protocol.Protocol;
+import org.openrdf.http.protocol.Protocol.Action;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests uploads that are split into chunks within a transaction.
+ */
+public class ChunkedUploadTest {
+
+	private static final int CHUNK_SIZE = 10;
+
+	private static TestServer server;
+
+	private static ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private SesameClientImpl client;
+
+	private SesameSession session;
+
+	/**
+	 * The predicate of all statements of a test, so that tests do not see each
+	 * other's data.
+	 */
+	private IRI pred;
+
+	@BeforeClass
+	public static void startServer()
+		throws Exception
+	{
+		server = new TestServer();
+		try {
+			server.start();
+		}
+		catch (Exception e) {
+			server.stop();
+			throw e;
+		}
+	}
+
+	@AfterClass
+	public static void stopServer()
+		throws Exception
+	{
+		server.stop();
+	}
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		client = new SesameClientImpl();
+		session = client.createSesameSession(TestServer.SERVER_URL);
+		session.setRepository(TestServer.REPOSITORY_URL);
+		pred = vf.createIRI("urn:x-chunk:" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		client.shutDown();
+	}
+
+	@Test
+	public void testConcurrentChunksInAnyOrder()
+		throws Exception
+	{
+		final int chunkCount = 8;
+
+		session.beginTransaction(null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Long>> counts = new ArrayList<Future<Long>>();
+			for (int i = chunkCount - 1; i >= 0; i--) {
+				final int chunk = i;
+				counts.add(executor.submit(new Callable<Long>() {
+
+					public Long call()
+						throws Exception
+					{
+						return uploadChunk("chunk" + chunk, createChunk(chunk), Action.ADD);
+					}
+				}));
+			}
+
+			long maxCount = 0;
+			for (Future<Long> count : counts) {
+				long value = count.get();
+				assertTrue(value >= 1 && value <= chunkCount);
+				maxCount = Math.max(maxCount, value);
+			}
+			// the chunk that was applied last reports all chunks
+			assertEquals(chunkCount, maxCount);
+		}
+		finally {
+			executor.shutdown();
+		}
+		session.commitTransaction();
+
+		assertEquals(chunkCount * CHUNK_SIZE, getStatements().size());
+	}
+
+	@Test
+	public void testResentChunkIsSkipped()
+		throws Exception
+	{
+		session.beginTransaction(null);
+		assertEquals(1, uploadChunk("a", createChunk(0), Action.ADD));
+		// the body of a chunk that was already processed is not read
+		assertEquals(1, uploadChunk("a", createChunk(1), Action.ADD));
+		assertEquals(2, uploadChunk("b", createChunk(2), Action.ADD));
+		session.commitTransaction();
+
+		Model statements = getStatements();
+		assertEquals(2 * CHUNK_SIZE, statements.size());
+		assertTrue(statements.contains(subject(0, 0), pred, null));
+		assertFalse(statements.contains(subject(1, 0), pred, null));
+		assertTrue(statements.contains(subject(2, 0), pred, null));
+	}
+
+	@Test
+	public void testFailedChunkCanBeRetried()
+		throws Exception
+	{
+		session.beginTransaction(null);
+		try {
+			uploadChunk("a", "<urn:broken", Action.ADD);
+			fail("malformed chunk should have been rejected");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+		assertEquals(1, uploadChunk("a", createChunk(0), Action.ADD));
+		session.commitTransaction();
+
+		assertEquals(CHUNK_SIZE, getStatements().size());
+	}
+
+	@Test
+	public void testDeleteChunk()
+		throws Exception
+	{
+		session.beginTransaction(null);
+		assertEquals(1, uploadChunk("add0", createChunk(0), Action.ADD));
+		assertEquals(2, uploadChunk("add1", createChunk(1), Action.ADD));
+		session.commitTransaction();
+
+		session.beginTransaction(null);
+		assertEquals(1, uploadChunk("delete0", createChunk(0), Action.DELETE));
+		session.commitTransaction();
+
+		Model statements = getStatements();
+		assertEquals(CHUNK_SIZE, statements.size());
+		assertFalse(statements.contains(subject(0, 0), pred, null));
+		assertTrue(statements.contains(subject(1, 0), pred, null));
+	}
+
+	@Test
+	public void testChunkContexts()
+		throws Exception
+	{
+		IRI context1 = vf.createIRI("urn:test:context1");
+		IRI context2 = vf.createIRI("urn:test:context2");
+
+		session.beginTransaction(null);
+		assertEquals(1, uploadChunk("add0", createChunk(0), Action.ADD, context1, context2));
+		assertEquals(2, uploadChunk("add1", createChunk(1), Action.ADD));
+		session.commitTransaction();
+
+		Model statements = getStatements();
+		assertEquals(3 * CHUNK_SIZE, statements.size());
+		assertTrue(statements.contains(subject(0, 0), pred, null, context1));
+		assertTrue(statements.contains(subject(0, 0), pred, null, context2));
+		assertFalse(statements.contains(subject(0, 0), pred, null, (IRI)null));
+		assertTrue(statements.contains(subject(1, 0), pred, null, (IRI)null));
+
+		session.beginTransaction(null);
+		assertEquals(1, uploadChunk("delete0", createChunk(0), Action.DELETE, context1));
+		assertEquals(2, uploadChunk("delete1", createChunk(1), Action.DELETE, context2));
+		session.commitTransaction();
+
+		statements = getStatements();
+		assertEquals(2 * CHUNK_SIZE, statements.size());
+		assertFalse(statements.contains(subject(0, 0), pred, null, context1));
+		assertTrue(statements.contains(subject(0, 0), pred, null, context2));
+		assertTrue(statements.contains(subject(1, 0), pred, null, (IRI)null));
+	}
+
+	@Test
+	public void testInvalidAction()
+		throws Exception
+	{
+		String transactionURL = beginTransaction();
+		try {
+			assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+					put(transactionURL + "?" + Protocol.ACTION_PARAM_NAME + "=FOO"));
+			assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, put(transactionURL + "?"
+					+ Protocol.ACTION_PARAM_NAME + "=FOO&" + Protocol.CHUNK_PARAM_NAME + "=a"));
+		}
+		finally {
+			HttpURLConnection conn = (HttpURLConnection)new URL(transactionURL).openConnection();
+			conn.setRequestMethod("DELETE");
+			assertEquals(HttpURLConnection.HTTP_NO_CONTENT, conn.getResponseCode());
+		}
+	}
+
+	private long uploadChunk(String chunkID, String data, Action action, Resource... contexts)
+		throws Exception
+	{
+		return session.uploadChunk(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), null,
+				RDFFormat.NTRIPLES, chunkID, action, contexts);
+	}
+
+	private String createChunk(int chunk) {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			data.append('<').append(subject(chunk, i)).append("> <").append(pred).append("> \"").append(i).append(
+					"\" .\n");
+		}
+		return data.toString();
+	}
+
+	private IRI subject(int chunk, int i) {
+		return vf.createIRI("urn:x-chunk:s" + chunk + "-" + i);
+	}
+
+	private Model getStatements()
+		throws Exception
+	{
+		Model statements = new LinkedHashModel();
+		session.getStatements(null, pred, null, false, new StatementCollector(statements));
+		return statements;
+	}
+
+	private String beginTransaction()
+		throws Exception
+	{
+		URL url = new URL(Protocol.getTransactionsLocation(TestServer.REPOSITORY_URL));
+		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+		conn.setRequestMethod("POST");
+		assertEquals(HttpURLConnection.HTTP_CREATED, conn.getResponseCode());
+		String location = conn.getHeaderField("Location");
+		assertNotNull(location);
+		return location;
+	}
+
+	private int put(String location)
+		throws Exception
+	{
+		HttpURLConnection conn = (HttpURLConnection)new URL(location).openConnection();
+		conn.setRequestMethod("PUT");
+		conn.setDoOutput(true);
+		conn.setRequestProperty("Content-Type", RDFFormat.NTRIPLES.getDefaultMIMEType());
+		conn.getOutputStream().write(createChunk(0).getBytes(StandardCharsets.UTF_8));
+		conn.getOutputStream().close();
+		return conn.getResponseCode();
+	}
+}
@@ -51,7 +51,7 @@ public class TestServer {
 
 	private static final String OPENRDF_CONTEXT = "/openrdf";
 
-	private static final String SERVER_URL = "http://" + HOST + ":" + PORT + OPENRDF_CONTEXT;
+	public static final String SERVER_URL = "http://" + HOST + ":" + PORT + OPENRDF_CONTEXT;
 
 	public static String REPOSITORY_URL = Protocol.getRepositoryLocation(SERVER_URL, TEST_REPO_ID);
 
@@ -0,0 +1,231 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.iterator.CollectionIteration;
+import org.openrdf.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Evaluates SERVICE joins against a local repository that stands in for a
+ * remote endpoint.
+ */
+public class RepositoryFederatedServiceTest {
+
+	private static final int INPUT_SIZE = 64;
+
+	private static final String PROPERTY = "urn:p";
+
+	private SailRepository repository;
+
+	private RecordingService service;
+
+	private Service serviceNode;
+
+	private List<BindingSet> input;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+
+		ValueFactory vf = repository.getValueFactory();
+		IRI p = vf.createIRI(PROPERTY);
+		input = new ArrayList<BindingSet>();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			for (int i = 0; i < INPUT_SIZE; i++) {
+				IRI s = vf.createIRI("urn:s" + i);
+				con.add(s, p, vf.createLiteral("v" + i));
+				QueryBindingSet bindings = new QueryBindingSet();
+				bindings.addBinding("s", s);
+				bindings.addBinding("i", vf.createLiteral(i));
+				input.add(bindings);
+			}
+		}
+		finally {
+			con.close();
+		}
+
+		service = new RecordingService(repository);
+		service.initialize();
+		service.setBoundJoinBlockSize(4);
+
+		ParsedQuery query = QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL,
+				"SELECT * WHERE { SERVICE <urn:service> { ?s <" + PROPERTY + "> ?o } }", null);
+		query.getTupleExpr().visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+			@Override
+			public void meet(Service node) {
+				serviceNode = node;
+			}
+		});
+		assertNotNull(serviceNode);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		service.shutdown();
+	}
+
+	@Test
+	public void testConcurrentBlocks()
+		throws Exception
+	{
+		service.setMaxConcurrentRequests(4);
+		service.setMaxThreads(2);
+
+		assertResultsCorrelated(evaluate());
+
+		// blocks are evaluated concurrently, but not by more threads than allowed
+		assertTrue(service.maxActive.get() > 1);
+		assertTrue(service.maxActive.get() <= 2);
+
+		// each block is evaluated on a connection of its own by a daemon thread
+		assertTrue(service.blocks.get() > 1);
+		assertEquals(service.blocks.get(), service.connections.size());
+		assertFalse(service.connections.contains(service.conn));
+		for (Thread thread : service.threads) {
+			assertTrue(thread.isDaemon());
+			assertFalse(thread == Thread.currentThread());
+		}
+	}
+
+	@Test
+	public void testSequentialBlocks()
+		throws Exception
+	{
+		service.setMaxConcurrentRequests(1);
+
+		assertResultsCorrelated(evaluate());
+
+		// all blocks are evaluated on the shared connection by the calling thread
+		assertEquals(1, service.maxActive.get());
+		assertEquals(Collections.singleton(service.conn), service.connections);
+		assertEquals(Collections.singleton(Thread.currentThread()), service.threads);
+	}
+
+	private List<BindingSet> evaluate()
+		throws QueryEvaluationException
+	{
+		CloseableIteration<BindingSet, QueryEvaluationException> result = service.evaluate(serviceNode,
+				new CollectionIteration<BindingSet, QueryEvaluationException>(input), null);
+		return Iterations.asList(result);
+	}
+
+	/**
+	 * Verifies that each result row has been joined with the input bindings
+	 * that it was computed for.
+	 */
+	private void assertResultsCorrelated(List<BindingSet> results) {
+		assertEquals(INPUT_SIZE, results.size());
+		Set<String> seen = new HashSet<String>();
+		for (BindingSet result : results) {
+			int i = Integer.parseInt(result.getValue("i").stringValue());
+			assertEquals("urn:s" + i, result.getValue("s").stringValue());
+			assertEquals("v" + i, result.getValue("o").stringValue());
+			assertTrue(seen.add(result.getValue("s").stringValue()));
+		}
+	}
+
+	private static class RecordingService extends RepositoryFederatedService {
+
+		final AtomicInteger active = new AtomicInteger();
+
+		final AtomicInteger maxActive = new AtomicInteger();
+
+		final AtomicInteger blocks = new AtomicInteger();
+
+		final Set<RepositoryConnection> connections = Collections.synchronizedSet(
+				new HashSet<RepositoryConnection>());
+
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+		public RecordingService(SailRepository repository) {
+			super(repository);
+		}
+
+		@Override
+		protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateInternal(
+				Service service, CloseableIteration<BindingSet, QueryEvaluationException> bindings,
+				String baseUri)
+			throws QueryEvaluationException
+		{
+			int current = active.incrementAndGet();
+			try {
+				synchronized (maxActive) {
+					maxActive.set(Math.max(maxActive.get(), current));
+				}
+				blocks.incrementAndGet();
+				threads.add(Thread.currentThread());
+				// give other blocks the chance to overlap with this one
+				Thread.sleep(50);
+				return super.evaluateInternal(service, bindings, baseUri);
+			}
+			catch (InterruptedException e) {
+				throw new QueryEvaluationException(e);
+			}
+			finally {
+				active.decrementAndGet();
+			}
+		}
+
+		@Override
+		protected RepositoryConnection getConnection()
+			throws RepositoryException
+		{
+			RepositoryConnection con = super.getConnection();
+			connections.add(con);
+			return con;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.FileUtil;
+
+import org.openrdf.sail.nativerdf.btree.BTree;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Benchmarks inserts into and scans over the {@link BTree} that backs the
+ * NativeStore's triple indexes.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BTreeBenchmark {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final int VALUE_SIZE = 8;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void insertAscending(EmptyTree tree)
+		throws IOException
+	{
+		byte[] data = new byte[VALUE_SIZE];
+		for (long i = 0; i < tree.recordCount; i++) {
+			ByteArrayUtil.putLong(i, data, 0);
+			tree.btree.insert(data);
+		}
+		tree.btree.sync();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void insertRandom(EmptyTree tree)
+		throws IOException
+	{
+		Random random = new Random(42L);
+		byte[] data = new byte[VALUE_SIZE];
+		for (long i = 0; i < tree.recordCount; i++) {
+			ByteArrayUtil.putLong(random.nextLong(), data, 0);
+			tree.btree.insert(data);
+		}
+		tree.btree.sync();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void fullScan(FilledTree tree, Blackhole blackhole)
+		throws IOException
+	{
+		RecordIterator iter = tree.btree.iterateAll();
+		try {
+			byte[] next;
+			while ((next = iter.next()) != null) {
+				blackhole.consume(next);
+			}
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void rangeScan(FilledTree tree, Blackhole blackhole)
+		throws IOException
+	{
+		long min = tree.random.nextInt(tree.recordCount - 1000);
+		ByteArrayUtil.putLong(min, tree.minData, 0);
+		ByteArrayUtil.putLong(min + 1000, tree.maxData, 0);
+
+		RecordIterator iter = tree.btree.iterateRange(tree.minData, tree.maxData);
+		try {
+			byte[] next;
+			while ((next = iter.next()) != null) {
+				blackhole.consume(next);
+			}
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	/*-----------------------*
+	 * Inner class EmptyTree *
+	 *-----------------------*/
+
+	/**
+	 * A new, empty B-tree for every measurement iteration.
+	 */
+	@State(Scope.Benchmark)
+	public static class EmptyTree {
+
+		@Param({ "1000000" })
+		int recordCount;
+
+		File dir;
+
+		BTree btree;
+
+		@Setup(Level.Iteration)
+		public void setUp()
+			throws IOException
+		{
+			dir = FileUtil.createTempDir("btree");
+			btree = new BTree(dir, "bench", BLOCK_SIZE, VALUE_SIZE);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown()
+			throws IOException
+		{
+			btree.delete();
+			FileUtil.deleteDir(dir);
+		}
+	}
+
+	/*------------------------*
+	 * Inner class FilledTree *
+	 *------------------------*/
+
+	/**
+	 * A B-tree with consecutive keys that is shared by all iterations.
+	 */
+	@State(Scope.Benchmark)
+	public static class FilledTree {
+
+		@Param({ "1000000" })
+		int recordCount;
+
+		final Random random = new Random(42L);
+
+		final byte[] minData = new byte[VALUE_SIZE];
+
+		final byte[] maxData = new byte[VALUE_SIZE];
+
+		File dir;
+
+		BTree btree;
+
+		@Setup(Level.Trial)
+		public void setUp()
+			throws IOException
+		{
+			dir = FileUtil.createTempDir("btree");
+			btree = new BTree(dir, "bench", BLOCK_SIZE, VALUE_SIZE);
+
+			byte[] data = new byte[VALUE_SIZE];
+			for (long i = 0; i < recordCount; i++) {
+				ByteArrayUtil.putLong(i, data, 0);
+				btree.insert(data);
+			}
+			btree.sync();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+			throws IOException
+		{
+			btree.delete();
+			FileUtil.deleteDir(dir);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
+
+/**
+ * Benchmarks {@link SailConnection#getStatements} for the common access
+ * patterns on the MemoryStore and the NativeStore.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetStatementsBenchmark {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	@Param({ "memory", "native" })
+	private String store;
+
+	@Param({ "100000" })
+	private int subjectCount;
+
+	private final Random random = new Random(42L);
+
+	private File dir;
+
+	private Sail sail;
+
+	private SailConnection con;
+
+	private ValueFactory vf;
+
+	private IRI value;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException, SailException
+	{
+		dir = FileUtil.createTempDir("getstatements");
+		if ("native".equals(store)) {
+			sail = new NativeStore(dir, "spoc,posc");
+		}
+		else {
+			sail = new MemoryStore();
+		}
+		sail.initialize();
+		vf = sail.getValueFactory();
+		value = SyntheticData.createPredicate(vf, "value");
+
+		con = sail.getConnection();
+		con.begin();
+		for (Statement st : SyntheticData.createStatements(vf, subjectCount)) {
+			con.addStatement(st.getSubject(), st.getPredicate(), st.getObject());
+		}
+		con.commit();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws IOException, SailException
+	{
+		con.close();
+		sail.shutDown();
+		FileUtil.deleteDir(dir);
+	}
+
+	/**
+	 * All statements about a random subject: <tt>(s, ?, ?)</tt>.
+	 */
+	@Benchmark
+	public void bySubject(Blackhole blackhole)
+		throws SailException
+	{
+		consume(SyntheticData.createSubject(vf, random.nextInt(subjectCount)), null, null, blackhole);
+	}
+
+	/**
+	 * All instances of a random class: <tt>(?, rdf:type, o)</tt>.
+	 */
+	@Benchmark
+	public void byPredicateObject(Blackhole blackhole)
+		throws SailException
+	{
+		consume(null, RDF.TYPE, SyntheticData.createClass(vf, random.nextInt(SyntheticData.CLASS_COUNT)),
+				blackhole);
+	}
+
+	/**
+	 * All statements with a given predicate: <tt>(?, p, ?)</tt>.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void byPredicate(Blackhole blackhole)
+		throws SailException
+	{
+		consume(null, value, null, blackhole);
+	}
+
+	private void consume(Resource subj, IRI pred, Value obj, Blackhole blackhole)
+		throws SailException
+	{
+		CloseableIteration<? extends Statement, SailException> iter = con.getStatements(subj, pred, obj,
+				false);
+		try {
+			while (iter.hasNext()) {
+				blackhole.consume(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+	}
+}
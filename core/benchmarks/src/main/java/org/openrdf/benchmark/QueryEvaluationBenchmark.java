@@ -0,0 +1,148 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Measures the evaluation of joins, ORDER BY and GROUP BY queries by the
+ * default evaluation strategy over the synthetic dataset in a MemoryStore.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryEvaluationBenchmark {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final String JOIN = "SELECT ?s ?y WHERE { ?s ex:knows ?x . ?x ex:knows ?y . ?y a ex:Class1 }";
+
+	private static final String ORDER_BY = "SELECT ?s ?v WHERE { ?s ex:value ?v } ORDER BY ?v";
+
+	private static final String ORDER_BY_LIMIT = "SELECT ?s ?v WHERE { ?s ex:value ?v } ORDER BY DESC(?v) LIMIT 10";
+
+	private static final String GROUP_BY = "SELECT ?c (COUNT(?s) AS ?n) (SUM(?v) AS ?sum) (MAX(?v) AS ?max) "
+			+ "WHERE { ?s a ?c ; ex:value ?v } GROUP BY ?c";
+
+	private static final String GROUP_BY_SUBJECT = "SELECT ?s (COUNT(?x) AS ?n) WHERE { ?s ex:knows ?x } GROUP BY ?s";
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	@Param({ "join", "orderBy", "orderByLimit", "groupBy", "groupBySubject" })
+	private String query;
+
+	@Param({ "100000" })
+	private int subjectCount;
+
+	private SailRepository repository;
+
+	private RepositoryConnection con;
+
+	private TupleQuery tupleQuery;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+
+		con = repository.getConnection();
+		con.add(SyntheticData.createStatements(repository.getValueFactory(), subjectCount));
+
+		tupleQuery = con.prepareTupleQuery(QueryLanguage.SPARQL, SyntheticData.PREFIXES + getQueryString());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws RepositoryException
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Benchmark
+	public void evaluate(Blackhole blackhole)
+		throws QueryEvaluationException
+	{
+		TupleQueryResult result = tupleQuery.evaluate();
+		try {
+			while (result.hasNext()) {
+				blackhole.consume(result.next());
+			}
+		}
+		finally {
+			result.close();
+		}
+	}
+
+	private String getQueryString() {
+		if ("join".equals(query)) {
+			return JOIN;
+		}
+		else if ("orderBy".equals(query)) {
+			return ORDER_BY;
+		}
+		else if ("orderByLimit".equals(query)) {
+			return ORDER_BY_LIMIT;
+		}
+		else if ("groupBy".equals(query)) {
+			return GROUP_BY;
+		}
+		else if ("groupBySubject".equals(query)) {
+			return GROUP_BY_SUBJECT;
+		}
+		else {
+			throw new IllegalArgumentException("Unknown query: " + query);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.binary.BinaryRDFParser;
+import org.openrdf.rio.helpers.AbstractRDFHandler;
+import org.openrdf.rio.ntriples.NTriplesParser;
+import org.openrdf.rio.turtle.TurtleParser;
+
+/**
+ * Measures the time needed to parse the synthetic dataset in the Turtle,
+ * N-Triples and binary RDF formats. Throughput in statements per second is
+ * the statement count divided by the reported time.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RDFParserBenchmark {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	@Param({ "Turtle", "N-Triples", "BinaryRDF" })
+	private String format;
+
+	@Param({ "100000" })
+	private int subjectCount;
+
+	private byte[] data;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws RDFHandlerException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Rio.write(SyntheticData.createStatements(SimpleValueFactory.getInstance(), subjectCount), out,
+				createParser().getRDFFormat());
+		data = out.toByteArray();
+	}
+
+	@Benchmark
+	public void parse(final Blackhole blackhole)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		RDFParser parser = createParser();
+		parser.setRDFHandler(new AbstractRDFHandler() {
+
+			@Override
+			public void handleStatement(Statement st) {
+				blackhole.consume(st);
+			}
+		});
+		parser.parse(new ByteArrayInputStream(data), SyntheticData.NAMESPACE);
+	}
+
+	private RDFParser createParser() {
+		if ("Turtle".equals(format)) {
+			return new TurtleParser();
+		}
+		else if ("N-Triples".equals(format)) {
+			return new NTriplesParser();
+		}
+		else if ("BinaryRDF".equals(format)) {
+			return new BinaryRDFParser();
+		}
+		else {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+	}
+}
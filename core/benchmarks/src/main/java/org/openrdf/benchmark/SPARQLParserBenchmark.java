@@ -0,0 +1,107 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.sparql.SPARQLParser;
+
+/**
+ * Measures the time needed to parse SPARQL queries of increasing complexity
+ * into a query model.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SPARQLParserBenchmark {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final String SIMPLE = "SELECT ?s ?o WHERE { ?s ex:knows ?o }";
+
+	private static final String JOIN = "SELECT ?s ?n ?v WHERE { ?s a ex:Class1 ; ex:name ?n ; ex:value ?v . "
+			+ "?s ex:knows ?x . ?x ex:knows ?y . FILTER (?v > 1000 && lang(?n) = \"en\") }";
+
+	private static final String OPTIONAL = "SELECT * WHERE { { ?s a ex:Class1 } UNION { ?s a ex:Class2 } "
+			+ "OPTIONAL { ?s ex:name ?n FILTER (regex(?n, \"^Subject\")) } "
+			+ "OPTIONAL { ?s ex:knows ?x . ?x ex:value ?v } MINUS { ?s ex:knows ex:subject1 } }";
+
+	private static final String AGGREGATE = "SELECT ?c (COUNT(DISTINCT ?s) AS ?n) (AVG(?v) AS ?avg) "
+			+ "WHERE { ?s a ?c ; ex:value ?v . "
+			+ "{ SELECT ?s (MAX(?w) AS ?m) WHERE { ?s ex:knows ?x . ?x ex:value ?w } GROUP BY ?s } "
+			+ "BIND (?v - ?m AS ?diff) } GROUP BY ?c HAVING (COUNT(?s) > 10) ORDER BY DESC(?n) LIMIT 5";
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	@Param({ "simple", "join", "optional", "aggregate" })
+	private String query;
+
+	private String queryString;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if ("simple".equals(query)) {
+			queryString = SIMPLE;
+		}
+		else if ("join".equals(query)) {
+			queryString = JOIN;
+		}
+		else if ("optional".equals(query)) {
+			queryString = OPTIONAL;
+		}
+		else if ("aggregate".equals(query)) {
+			queryString = AGGREGATE;
+		}
+		else {
+			throw new IllegalArgumentException("Unknown query: " + query);
+		}
+		queryString = SyntheticData.PREFIXES + queryString;
+	}
+
+	@Benchmark
+	public ParsedQuery parse()
+		throws MalformedQueryException
+	{
+		return new SPARQLParser().parseQuery(queryString, null);
+	}
+}
@@ -0,0 +1,83 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+
+/**
+ * Generates a reproducible synthetic dataset for the benchmarks. Every
+ * subject has a type (one of ten classes), a numeric value, a name and two
+ * links to other subjects.
+ */
+public class SyntheticData {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final String NAMESPACE = "http://example.org/";
+
+	public static final String PREFIXES = "PREFIX ex: <" + NAMESPACE + ">\n";
+
+	public static final int CLASS_COUNT = 10;
+
+	public static final int STATEMENTS_PER_SUBJECT = 5;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public static List<Statement> createStatements(ValueFactory vf, int subjectCount) {
+		Random random = new Random(42L);
+
+		IRI value = vf.createIRI(NAMESPACE, "value");
+		IRI name = vf.createIRI(NAMESPACE, "name");
+		IRI knows = vf.createIRI(NAMESPACE, "knows");
+
+		List<Statement> statements = new ArrayList<Statement>(subjectCount * STATEMENTS_PER_SUBJECT);
+
+		for (int i = 0; i < subjectCount; i++) {
+			IRI subject = createSubject(vf, i);
+			statements.add(vf.createStatement(subject, RDF.TYPE, createClass(vf, i % CLASS_COUNT)));
+			statements.add(vf.createStatement(subject, value, vf.createLiteral(random.nextInt(1000000))));
+			statements.add(vf.createStatement(subject, name, vf.createLiteral("Subject number " + i, "en")));
+			statements.add(vf.createStatement(subject, knows, createSubject(vf, random.nextInt(subjectCount))));
+			statements.add(vf.createStatement(subject, knows, createSubject(vf, random.nextInt(subjectCount))));
+		}
+
+		return statements;
+	}
+
+	public static IRI createSubject(ValueFactory vf, int index) {
+		return vf.createIRI(NAMESPACE, "subject" + index);
+	}
+
+	public static IRI createClass(ValueFactory vf, int index) {
+		return vf.createIRI(NAMESPACE, "Class" + index);
+	}
+
+	public static IRI createPredicate(ValueFactory vf, String localName) {
+		return vf.createIRI(NAMESPACE, localName);
+	}
+}
@@ -0,0 +1,127 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.aduna.io.FileUtil;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.sail.nativerdf.ValueStore;
+import org.openrdf.sail.nativerdf.model.NativeValue;
+
+/**
+ * Benchmarks the value-to-ID and ID-to-value lookups of the NativeStore's
+ * {@link ValueStore}. The looked up values are not created by the value store
+ * itself, so {@link ValueStore#getID(Value)} has to consult its cache or data
+ * file.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueStoreBenchmark {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	@Param({ "100000" })
+	private int subjectCount;
+
+	private final Random random = new Random(42L);
+
+	private File dir;
+
+	private ValueStore valueStore;
+
+	private Value[] values;
+
+	private int[] ids;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException
+	{
+		dir = FileUtil.createTempDir("valuestore");
+		valueStore = new ValueStore(dir);
+
+		ValueFactory vf = SimpleValueFactory.getInstance();
+		List<Value> valueList = new ArrayList<Value>();
+		for (Statement st : SyntheticData.createStatements(vf, subjectCount)) {
+			valueList.add(st.getSubject());
+			valueList.add(st.getObject());
+		}
+
+		values = valueList.toArray(new Value[valueList.size()]);
+		ids = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			ids[i] = valueStore.storeValue(values[i]);
+		}
+		valueStore.sync();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws IOException
+	{
+		valueStore.close();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Benchmark
+	public int getID()
+		throws IOException
+	{
+		return valueStore.getID(values[random.nextInt(values.length)]);
+	}
+
+	@Benchmark
+	public NativeValue getValue()
+		throws IOException
+	{
+		return valueStore.getValue(ids[random.nextInt(ids.length)]);
+	}
+}
@@ -66,6 +66,7 @@ import org.openrdf.http.protocol.UnauthorizedException;
 import org.openrdf.http.protocol.transaction.TransactionWriter;
 import org.openrdf.http.protocol.transaction.operations.TransactionOperation;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.IRI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.SimpleIRI;
@@ -85,6 +86,8 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.BasicParserSettings;
 
 /**
@@ -668,6 +671,94 @@ public class SesameSession extends SparqlSession {
 		upload(contents, baseURI, dataFormat, false, true, Action.DELETE, contexts);
 	}
 
+	/**
+	 * Adds the supplied statements. The statements are serialized in the
+	 * supplied format while they are sent, rather than buffered up front.
+	 */
+	public void addData(Iterable<? extends Statement> statements, RDFFormat dataFormat, Resource... contexts)
+		throws UnauthorizedException, RDFParseException, RepositoryException, IOException
+	{
+		upload(statements, dataFormat, Action.ADD, contexts);
+	}
+
+	/**
+	 * Removes the supplied statements. The statements are serialized in the
+	 * supplied format while they are sent, rather than buffered up front.
+	 */
+	public void removeData(Iterable<? extends Statement> statements, RDFFormat dataFormat,
+			Resource... contexts)
+				throws UnauthorizedException, RDFParseException, RepositoryException, IOException
+	{
+		upload(statements, dataFormat, Action.DELETE, contexts);
+	}
+
+	/**
+	 * Sends one chunk of a larger upload as part of the active transaction. Each
+	 * chunk must be a complete document in the supplied format, and chunks may
+	 * be sent concurrently and in any order. The server skips chunks that it has
+	 * already processed in this transaction, so an interrupted upload can be
+	 * resumed by sending its chunks again. A chunk that failed while the server
+	 * was applying it may have been partially applied, so it should only be
+	 * retried if it contains no blank nodes; a retry creates new blank nodes
+	 * rather than reusing those of the failed attempt.
+	 * 
+	 * @param chunkID
+	 *        An ID that is unique for the chunk within the transaction.
+	 * @param action
+	 *        {@link Action#ADD} or {@link Action#DELETE}.
+	 * @param contexts
+	 *        The contexts to add the statements to, or to remove them from. If
+	 *        no contexts are supplied, the contexts of the statements are used.
+	 * @return The number of chunks that the server has processed in this
+	 *         transaction so far.
+	 */
+	public long uploadChunk(InputStream contents, String baseURI, RDFFormat dataFormat, String chunkID,
+			Action action, Resource... contexts)
+				throws IOException, RDFParseException, RepositoryException, UnauthorizedException
+	{
+		checkRepositoryURL();
+
+		if (transactionURL == null) {
+			throw new IllegalStateException("Transaction URL has not been set");
+		}
+
+		try {
+			URIBuilder url = new URIBuilder(transactionURL);
+			url.setParameter(Protocol.ACTION_PARAM_NAME, action.toString());
+			url.setParameter(Protocol.CHUNK_PARAM_NAME, chunkID);
+			for (String encodedContext : Protocol.encodeContexts(contexts)) {
+				url.addParameter(Protocol.CONTEXT_PARAM_NAME, encodedContext);
+			}
+			if (baseURI != null && baseURI.trim().length() != 0) {
+				url.setParameter(Protocol.BASEURI_PARAM_NAME, baseURI);
+			}
+
+			HttpPut method = new HttpPut(url.build());
+			method.setEntity(new InputStreamEntity(contents, -1,
+					ContentType.parse(dataFormat.getDefaultMIMEType())));
+
+			String response = EntityUtils.toString(executeOK(method).getEntity());
+			try {
+				return Long.parseLong(response);
+			}
+			catch (NumberFormatException e) {
+				throw new RepositoryException("Server responded with invalid chunk count: " + response);
+			}
+		}
+		catch (URISyntaxException e) {
+			throw new AssertionError(e);
+		}
+		catch (RepositoryException e) {
+			throw e;
+		}
+		catch (RDFParseException e) {
+			throw e;
+		}
+		catch (OpenRDFException e) {
+			throw new RepositoryException(e);
+		}
+	}
+
 	public void upload(InputStream contents, String baseURI, RDFFormat dataFormat, boolean overwrite,
 			boolean preserveNodeIds, Resource... contexts)
 				throws IOException, RDFParseException, RepositoryException, UnauthorizedException
@@ -752,6 +843,59 @@ public class SesameSession extends SparqlSession {
 		return builder.build();
 	}
 
+	protected void upload(final Iterable<? extends Statement> statements, final RDFFormat dataFormat,
+			Action action, Resource... contexts)
+				throws IOException, RDFParseException, RepositoryException, UnauthorizedException
+	{
+		HttpEntity entity = new AbstractHttpEntity() {
+
+			public long getContentLength() {
+				return -1; // don't know
+			}
+
+			public Header getContentType() {
+				return new BasicHeader("Content-Type", dataFormat.getDefaultMIMEType());
+			}
+
+			public boolean isRepeatable() {
+				return true;
+			}
+
+			public boolean isStreaming() {
+				return true;
+			}
+
+			public InputStream getContent()
+				throws IOException, IllegalStateException
+			{
+				ByteArrayOutputStream buf = new ByteArrayOutputStream();
+				writeTo(buf);
+				return new ByteArrayInputStream(buf.toByteArray());
+			}
+
+			public void writeTo(OutputStream out)
+				throws IOException
+			{
+				try {
+					RDFWriter writer = Rio.createWriter(dataFormat, out);
+					writer.startRDF();
+					for (Statement st : statements) {
+						writer.handleStatement(st);
+					}
+					writer.endRDF();
+				}
+				catch (RDFHandlerException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException)e.getCause();
+					}
+					throw new IOException(e);
+				}
+			}
+		};
+
+		upload(entity, null, false, true, action, contexts);
+	}
+
 	protected void upload(final Reader contents, String baseURI, final RDFFormat dataFormat, boolean overwrite,
 			boolean preserveNodeIds, Action action, Resource... contexts)
 				throws IOException, RDFParseException, RepositoryException, UnauthorizedException
@@ -158,6 +158,14 @@ public abstract class Protocol {
 	 */
 	public static final String ACTION_PARAM_NAME = "action";
 
+	/**
+	 * Parameter name for the chunk parameter of ADD and DELETE operations in
+	 * transactions. Identifies the request data as one chunk of a larger
+	 * upload. A chunk that has already been processed in the transaction is not
+	 * processed again.
+	 */
+	public static final String CHUNK_PARAM_NAME = "chunk";
+
 	/**
 	 * Relative location of the protocol resource.
 	 */
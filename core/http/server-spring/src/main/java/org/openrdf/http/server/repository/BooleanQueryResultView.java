@@ -65,11 +65,15 @@ public class BooleanQueryResultView extends QueryResultView {
 		boolean headersOnly = (Boolean)model.get(HEADERS_ONLY);
 
 		if (!headersOnly) {
-			OutputStream out = response.getOutputStream();
+			OutputStream out = getOutputStream(model, response);
 			try {
-				BooleanQueryResultWriter qrWriter = brWriterFactory.getWriter(out);
-				boolean value = (Boolean)model.get(QUERY_RESULT_KEY);
-				qrWriter.handleBoolean(value);
+				if (!writeCachedResult(model, out)) {
+					BooleanQueryResultWriter qrWriter = brWriterFactory.getWriter(out);
+					boolean value = (Boolean)model.get(QUERY_RESULT_KEY);
+					qrWriter.handleBoolean(value);
+
+					storeCachedResult(model);
+				}
 			}
 			catch (QueryResultHandlerException e) {
 				if (e.getCause() != null && e.getCause() instanceof IOException) {
@@ -77,11 +77,15 @@ public class GraphQueryResultView extends QueryResultView {
 		boolean headersOnly = (Boolean)model.get(HEADERS_ONLY);
 
 		if (!headersOnly) {
-			OutputStream out = response.getOutputStream();
+			OutputStream out = getOutputStream(model, response);
 			try {
-				RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
-				GraphQueryResult graphQueryResult = (GraphQueryResult)model.get(QUERY_RESULT_KEY);
-				QueryResults.report(graphQueryResult, rdfWriter);
+				if (!writeCachedResult(model, out)) {
+					RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
+					GraphQueryResult graphQueryResult = (GraphQueryResult)model.get(QUERY_RESULT_KEY);
+					QueryResults.report(graphQueryResult, rdfWriter);
+
+					storeCachedResult(model);
+				}
 			}
 			catch (QueryInterruptedException e) {
 				logger.error("Query interrupted", e);
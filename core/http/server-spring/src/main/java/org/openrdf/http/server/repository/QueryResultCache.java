@@ -0,0 +1,512 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.http.server.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.NotifyingSail;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailChangedEvent;
+import org.openrdf.sail.SailChangedListener;
+
+/**
+ * An opt-in cache of serialized query results, shared by all repositories of a
+ * server. Results are cached per repository, query, request parameters and
+ * result format, and all results of a repository are discarded as soon as its
+ * contents change. Only repositories that are explicitly listed and that report
+ * their changes through a {@link NotifyingSail} are cached.
+ * <p>
+ * Every cached repository carries a version that changes with each update.
+ * This version is exposed as an <tt>ETag</tt>, together with a
+ * <tt>Last-Modified</tt> date, so that clients can revalidate their copy of a
+ * result without having the query evaluated again.
+ * 
+ * @see RepositoryController#setQueryResultCache(QueryResultCache)
+ */
+public class QueryResultCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of bytes that can be used for caching query results.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile Set<String> repositoryIDs = Collections.emptySet();
+
+	private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+	/**
+	 * The state of each cached repository, keyed on repository ID.
+	 */
+	private final Map<String, RepositoryState> states = new HashMap<String, RepositoryState>();
+
+	/**
+	 * The cached results of all repositories, in least recently used order.
+	 */
+	private final LinkedHashMap<String, byte[]> results = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	private long usedBytes;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Sets the IDs of the repositories for which query results should be cached.
+	 * No results are cached by default.
+	 */
+	public void setRepositoryIDs(Set<String> repositoryIDs) {
+		this.repositoryIDs = new HashSet<String>(repositoryIDs);
+
+		List<RepositoryState> removed = new ArrayList<RepositoryState>();
+		synchronized (states) {
+			for (String repositoryID : new ArrayList<String>(states.keySet())) {
+				if (!this.repositoryIDs.contains(repositoryID)) {
+					removed.add(states.get(repositoryID));
+					invalidate(repositoryID);
+					states.remove(repositoryID);
+				}
+			}
+		}
+
+		for (RepositoryState state : removed) {
+			state.dispose();
+		}
+	}
+
+	public Set<String> getRepositoryIDs() {
+		return Collections.unmodifiableSet(repositoryIDs);
+	}
+
+	/**
+	 * Sets the maximum number of bytes of serialized query results that are kept
+	 * in memory, across all repositories. Defaults to {@link #DEFAULT_MAX_BYTES}
+	 * .
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		synchronized (states) {
+			evict();
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Gets the number of bytes that are currently used for cached results.
+	 */
+	public long getUsedBytes() {
+		synchronized (states) {
+			return usedBytes;
+		}
+	}
+
+	/**
+	 * Looks up the result of a query on a repository.
+	 * 
+	 * @param repositoryID
+	 *        The ID of the queried repository.
+	 * @param repository
+	 *        The queried repository.
+	 * @param queryStr
+	 *        The query string.
+	 * @param request
+	 *        The query request, of which all parameters are taken into account.
+	 * @param factory
+	 *        The writer factory that will be used to serialize the result.
+	 * @return A {@link CachedResult} that may or may not hold a serialized
+	 *         result, or <tt>null</tt> if results of this repository are not
+	 *         cached.
+	 */
+	public CachedResult lookup(String repositoryID, Repository repository, String queryStr,
+			HttpServletRequest request, Object factory)
+	{
+		if (!repositoryIDs.contains(repositoryID)) {
+			return null;
+		}
+
+		String key = createKey(repositoryID, queryStr, request, factory);
+
+		// listeners are (un)registered outside of the lock, as the sail notifies
+		// them while holding a lock of its own
+		RepositoryState state;
+		RepositoryState replaced = null;
+		synchronized (states) {
+			state = states.get(repositoryID);
+			if (state != null && state.repository != repository) {
+				// the repository has been replaced
+				replaced = state;
+				invalidate(repositoryID);
+				states.remove(repositoryID);
+				state = null;
+			}
+		}
+
+		if (replaced != null) {
+			replaced.dispose();
+		}
+
+		if (state == null) {
+			RepositoryState newState = RepositoryState.create(this, repositoryID, repository);
+			if (newState == null) {
+				logger.debug("Changes to repository {} can not be tracked, not caching results", repositoryID);
+				return null;
+			}
+
+			synchronized (states) {
+				state = states.get(repositoryID);
+				if (state == null) {
+					state = newState;
+					states.put(repositoryID, state);
+				}
+			}
+
+			if (state != newState) {
+				newState.dispose();
+			}
+		}
+
+		synchronized (states) {
+			return new CachedResult(state, state.version, state.lastModified, key, results.get(key));
+		}
+	}
+
+	/**
+	 * Discards all cached results of the specified repository and assigns it a
+	 * new version.
+	 */
+	public void invalidate(String repositoryID) {
+		synchronized (states) {
+			RepositoryState state = states.get(repositoryID);
+			if (state != null) {
+				state.version++;
+				// HTTP dates have a resolution of seconds, each version gets a
+				// later second so that If-Modified-Since notices the change
+				long previousSecond = state.lastModified / 1000 * 1000;
+				state.lastModified = Math.max(System.currentTimeMillis(), previousSecond + 1000);
+			}
+
+			String prefix = repositoryID + '\n';
+			Iterator<Map.Entry<String, byte[]>> iter = results.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry<String, byte[]> entry = iter.next();
+				if (entry.getKey().startsWith(prefix)) {
+					usedBytes -= getSize(entry.getKey(), entry.getValue());
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	private void store(CachedResult cachedResult, byte[] data) {
+		synchronized (states) {
+			if (states.get(cachedResult.state.repositoryID) != cachedResult.state
+					|| cachedResult.state.version != cachedResult.version)
+			{
+				// the repository has changed while the query was evaluated
+				return;
+			}
+
+			byte[] previous = results.put(cachedResult.key, data);
+			if (previous != null) {
+				usedBytes -= getSize(cachedResult.key, previous);
+			}
+			usedBytes += getSize(cachedResult.key, data);
+
+			evict();
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, byte[]>> iter = results.entrySet().iterator();
+		while (usedBytes > maxBytes && iter.hasNext()) {
+			Map.Entry<String, byte[]> entry = iter.next();
+			usedBytes -= getSize(entry.getKey(), entry.getValue());
+			iter.remove();
+		}
+	}
+
+	private static long getSize(String key, byte[] data) {
+		return 2L * key.length() + data.length;
+	}
+
+	private static String createKey(String repositoryID, String queryStr, HttpServletRequest request,
+			Object factory)
+	{
+		StringBuilder key = new StringBuilder(256);
+		key.append(repositoryID).append('\n');
+		key.append(factory.getClass().getName()).append('\n');
+		key.append(queryStr).append('\n');
+
+		// parameters are sorted so that their order does not affect the key
+		@SuppressWarnings("unchecked")
+		Map<String, String[]> parameters = new TreeMap<String, String[]>(request.getParameterMap());
+		for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+			key.append(parameter.getKey()).append('=');
+			key.append(Arrays.toString(parameter.getValue())).append('\n');
+		}
+
+		return key.toString();
+	}
+
+	/*----------------------------*
+	 * Inner class CachedResult *
+	 *----------------------------*/
+
+	/**
+	 * The outcome of a cache lookup. Holds the serialized result if it was
+	 * cached, and otherwise allows it to be recorded while it is sent to the
+	 * client.
+	 */
+	public class CachedResult {
+
+		private final RepositoryState state;
+
+		private final long version;
+
+		private final long lastModified;
+
+		private final String key;
+
+		private final byte[] data;
+
+		private ByteArrayOutputStream recording;
+
+		CachedResult(RepositoryState state, long version, long lastModified, String key, byte[] data) {
+			this.state = state;
+			this.version = version;
+			this.lastModified = lastModified;
+			this.key = key;
+			this.data = data;
+		}
+
+		/**
+		 * Gets the entity tag of the result, which identifies both the query and
+		 * the version of the repository.
+		 */
+		public String getETag() {
+			return "\"" + Long.toHexString(version) + "-" + Integer.toHexString(key.hashCode()) + "\"";
+		}
+
+		/**
+		 * Gets the time of the last change to the repository, in milliseconds
+		 * since the epoch.
+		 */
+		public long getLastModified() {
+			// HTTP dates have a resolution of seconds
+			return lastModified / 1000 * 1000;
+		}
+
+		/**
+		 * Checks whether the conditional headers of a GET or HEAD request
+		 * indicate that the client already has the current result.
+		 */
+		public boolean isNotModified(HttpServletRequest request) {
+			if (!isSafeMethod(request)) {
+				return false;
+			}
+
+			if (request.getHeader("If-None-Match") != null) {
+				return matchesIfNoneMatch(request);
+			}
+
+			try {
+				long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+				return ifModifiedSince >= getLastModified();
+			}
+			catch (IllegalArgumentException e) {
+				// ignore malformed dates
+				return false;
+			}
+		}
+
+		/**
+		 * Checks whether the <tt>If-None-Match</tt> header of a request with any
+		 * other method than GET or HEAD matches the current result, in which case
+		 * the request must be answered with <tt>412 Precondition Failed</tt>.
+		 * <tt>If-Modified-Since</tt> only applies to GET and HEAD and is ignored.
+		 */
+		public boolean isPreconditionFailed(HttpServletRequest request) {
+			return !isSafeMethod(request) && matchesIfNoneMatch(request);
+		}
+
+		private boolean isSafeMethod(HttpServletRequest request) {
+			String method = request.getMethod();
+			return "GET".equals(method) || "HEAD".equals(method);
+		}
+
+		private boolean matchesIfNoneMatch(HttpServletRequest request) {
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null) {
+				String eTag = getETag();
+				for (String tag : ifNoneMatch.split(",")) {
+					tag = tag.trim();
+					if (tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the cached serialized result.
+		 * 
+		 * @return The result, or <tt>null</tt> if it was not cached.
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * Wraps an output stream so that the result that is written to it is
+		 * recorded, to be cached by {@link #store()}.
+		 */
+		public OutputStream record(OutputStream out) {
+			recording = new ByteArrayOutputStream();
+			return new FilterOutputStream(out) {
+
+				@Override
+				public void write(int b)
+					throws IOException
+				{
+					out.write(b);
+					if (recording != null) {
+						recording.write(b);
+						checkSize();
+					}
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+					throws IOException
+				{
+					out.write(b, off, len);
+					if (recording != null) {
+						recording.write(b, off, len);
+						checkSize();
+					}
+				}
+			};
+		}
+
+		/**
+		 * Caches the recorded result, provided that the repository has not
+		 * changed since the lookup.
+		 */
+		public void store() {
+			if (recording != null) {
+				QueryResultCache.this.store(this, recording.toByteArray());
+				recording = null;
+			}
+		}
+
+		private void checkSize() {
+			if (recording.size() > maxBytes) {
+				// result is too large to be cached
+				recording = null;
+			}
+		}
+	}
+
+	/*-------------------------------*
+	 * Inner class RepositoryState *
+	 *-------------------------------*/
+
+	private static class RepositoryState implements SailChangedListener {
+
+		static RepositoryState create(QueryResultCache cache, String repositoryID, Repository repository) {
+			if (repository instanceof SailRepository) {
+				Sail sail = ((SailRepository)repository).getSail();
+				if (sail instanceof NotifyingSail) {
+					RepositoryState state = new RepositoryState(cache, repositoryID, repository,
+							(NotifyingSail)sail);
+					state.sail.addSailChangedListener(state);
+					return state;
+				}
+			}
+			return null;
+		}
+
+		final QueryResultCache cache;
+
+		final String repositoryID;
+
+		final Repository repository;
+
+		final NotifyingSail sail;
+
+		/**
+		 * Starts at the creation time, so that versions remain unique when a
+		 * repository is recreated or the server is restarted.
+		 */
+		long version = System.currentTimeMillis();
+
+		long lastModified = version;
+
+		RepositoryState(QueryResultCache cache, String repositoryID, Repository repository,
+				NotifyingSail sail)
+		{
+			this.cache = cache;
+			this.repositoryID = repositoryID;
+			this.repository = repository;
+			this.sail = sail;
+		}
+
+		public void sailChanged(SailChangedEvent event) {
+			if (event.statementsAdded() || event.statementsRemoved()) {
+				cache.invalidate(repositoryID);
+			}
+		}
+
+		void dispose() {
+			sail.removeSailChangedListener(this);
+		}
+	}
+}
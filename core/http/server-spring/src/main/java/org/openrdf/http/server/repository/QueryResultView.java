@@ -19,6 +19,7 @@ package org.openrdf.http.server.repository;
 import static org.openrdf.http.protocol.Protocol.QUERY_PARAM_NAME;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.UUID;
@@ -74,6 +75,14 @@ public abstract class QueryResultView implements View {
 
 	public static final String HEADERS_ONLY = "headersOnly";
 
+	/**
+	 * Key by which a {@link QueryResultCache.CachedResult} is stored in the
+	 * model. If this is present, the QueryResultView will send the cached
+	 * result instead of the query result, or record the query result for the
+	 * cache if no result was cached.
+	 */
+	public static final String CACHED_RESULT_KEY = "cachedResult";
+
 	@SuppressWarnings("rawtypes")
 	public final void render(Map model, HttpServletRequest request, HttpServletResponse response)
 		throws IOException
@@ -123,6 +132,54 @@ public abstract class QueryResultView implements View {
 		response.setHeader("Content-Disposition", "attachment; filename=" + filename);
 	}
 
+	/**
+	 * Gets the stream to write the query result to, which records the result if
+	 * it is to be cached.
+	 */
+	@SuppressWarnings("rawtypes")
+	protected OutputStream getOutputStream(Map model, HttpServletResponse response)
+		throws IOException
+	{
+		OutputStream out = response.getOutputStream();
+
+		QueryResultCache.CachedResult cachedResult = (QueryResultCache.CachedResult)model.get(CACHED_RESULT_KEY);
+		if (cachedResult != null && cachedResult.getData() == null) {
+			out = cachedResult.record(out);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Writes the cached result to the supplied stream, if the model holds one.
+	 * 
+	 * @return <tt>true</tt> if a cached result was written, <tt>false</tt> if
+	 *         the query result should be written instead.
+	 */
+	@SuppressWarnings("rawtypes")
+	protected boolean writeCachedResult(Map model, OutputStream out)
+		throws IOException
+	{
+		QueryResultCache.CachedResult cachedResult = (QueryResultCache.CachedResult)model.get(CACHED_RESULT_KEY);
+		if (cachedResult != null && cachedResult.getData() != null) {
+			out.write(cachedResult.getData());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Caches the query result that has been written completely, if it was
+	 * recorded for the cache.
+	 */
+	@SuppressWarnings("rawtypes")
+	protected void storeCachedResult(Map model) {
+		QueryResultCache.CachedResult cachedResult = (QueryResultCache.CachedResult)model.get(CACHED_RESULT_KEY);
+		if (cachedResult != null) {
+			cachedResult.store();
+		}
+	}
+
 	protected void logEndOfRequest(HttpServletRequest request) {
 		if (logger.isInfoEnabled()) {
 			String queryStr = request.getParameter(QUERY_PARAM_NAME);
@@ -18,6 +18,8 @@ package org.openrdf.http.server.repository;
 
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
 import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static javax.servlet.http.HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE;
 import static org.openrdf.http.protocol.Protocol.BINDING_PREFIX;
@@ -90,6 +92,8 @@ public class RepositoryController extends AbstractController {
 
 	private RepositoryManager repositoryManager;
 
+	private QueryResultCache queryResultCache;
+
 	private static final String METHOD_DELETE = "DELETE";
 
 	public RepositoryController()
@@ -102,6 +106,14 @@ public class RepositoryController extends AbstractController {
 		repositoryManager = repMan;
 	}
 
+	/**
+	 * Sets the cache for query results. Results are not cached if no cache is
+	 * set, which is the default.
+	 */
+	public void setQueryResultCache(QueryResultCache queryResultCache) {
+		this.queryResultCache = queryResultCache;
+	}
+
 	@Override
 	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
 		throws Exception
@@ -198,31 +210,57 @@ public class RepositoryController extends AbstractController {
 				Object queryResult;
 				FileFormatServiceRegistry<? extends FileFormat, ?> registry;
 
-				try {
-					if (query instanceof TupleQuery) {
-						TupleQuery tQuery = (TupleQuery)query;
+				if (query instanceof TupleQuery) {
+					registry = TupleQueryResultWriterRegistry.getInstance();
+					view = TupleQueryResultView.getInstance();
+				}
+				else if (query instanceof GraphQuery) {
+					registry = RDFWriterRegistry.getInstance();
+					view = GraphQueryResultView.getInstance();
+				}
+				else if (query instanceof BooleanQuery) {
+					registry = BooleanQueryResultWriterRegistry.getInstance();
+					view = BooleanQueryResultView.getInstance();
+				}
+				else {
+					throw new ClientHTTPException(SC_BAD_REQUEST, "Unsupported query type: "
+							+ query.getClass().getName());
+				}
 
-						queryResult = headersOnly ? null : tQuery.evaluate();
-						registry = TupleQueryResultWriterRegistry.getInstance();
-						view = TupleQueryResultView.getInstance();
-					}
-					else if (query instanceof GraphQuery) {
-						GraphQuery gQuery = (GraphQuery)query;
+				Object factory = ProtocolUtil.getAcceptableService(request, response, registry);
 
-						queryResult = headersOnly ? null : gQuery.evaluate();
-						registry = RDFWriterRegistry.getInstance();
-						view = GraphQueryResultView.getInstance();
+				QueryResultCache.CachedResult cachedResult = null;
+				if (queryResultCache != null) {
+					cachedResult = queryResultCache.lookup(RepositoryInterceptor.getRepositoryID(request),
+							repository, queryStr, request, factory);
+				}
+
+				if (cachedResult != null) {
+					response.setHeader("ETag", cachedResult.getETag());
+					response.setDateHeader("Last-Modified", cachedResult.getLastModified());
+
+					if (cachedResult.isNotModified(request)) {
+						logger.info("query {} not modified", qryCode);
+						response.setStatus(SC_NOT_MODIFIED);
+						return null;
 					}
-					else if (query instanceof BooleanQuery) {
-						BooleanQuery bQuery = (BooleanQuery)query;
+					if (cachedResult.isPreconditionFailed(request)) {
+						throw new ClientHTTPException(SC_PRECONDITION_FAILED, "Query result matches If-None-Match");
+					}
+				}
 
-						queryResult = headersOnly ? null : bQuery.evaluate();
-						registry = BooleanQueryResultWriterRegistry.getInstance();
-						view = BooleanQueryResultView.getInstance();
+				try {
+					if (headersOnly || cachedResult != null && cachedResult.getData() != null) {
+						queryResult = null;
+					}
+					else if (query instanceof TupleQuery) {
+						queryResult = ((TupleQuery)query).evaluate();
+					}
+					else if (query instanceof GraphQuery) {
+						queryResult = ((GraphQuery)query).evaluate();
 					}
 					else {
-						throw new ClientHTTPException(SC_BAD_REQUEST, "Unsupported query type: "
-								+ query.getClass().getName());
+						queryResult = ((BooleanQuery)query).evaluate();
 					}
 				}
 				catch (QueryInterruptedException e) {
@@ -240,13 +278,15 @@ public class RepositoryController extends AbstractController {
 						throw new ServerHTTPException("Query evaluation error: " + e.getMessage());
 					}
 				}
-				Object factory = ProtocolUtil.getAcceptableService(request, response, registry);
 
 				Map<String, Object> model = new HashMap<String, Object>();
 				model.put(QueryResultView.FILENAME_HINT_KEY, "query-result");
 				model.put(QueryResultView.QUERY_RESULT_KEY, queryResult);
 				model.put(QueryResultView.FACTORY_KEY, factory);
 				model.put(QueryResultView.HEADERS_ONLY, headersOnly);
+				if (cachedResult != null) {
+					model.put(QueryResultView.CACHED_RESULT_KEY, cachedResult);
+				}
 
 				return new ModelAndView(view, model);
 			}
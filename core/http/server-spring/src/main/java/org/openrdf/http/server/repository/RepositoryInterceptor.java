@@ -52,11 +52,11 @@ public class RepositoryInterceptor extends ServerInterceptor {
 
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-	private static final String REPOSITORY_ID_KEY = "repositoryID";
+	static final String REPOSITORY_ID_KEY = "repositoryID";
 
-	private static final String REPOSITORY_KEY = "repository";
+	static final String REPOSITORY_KEY = "repository";
 
-	private static final String REPOSITORY_CONNECTION_KEY = "repositoryConnection";
+	static final String REPOSITORY_CONNECTION_KEY = "repositoryConnection";
 
 	/*-----------*
 	 * Variables *
@@ -82,32 +82,36 @@ public class TupleQueryResultView extends QueryResultView {
 
 		final Boolean headersOnly = (Boolean)model.get(HEADERS_ONLY);
 		if (headersOnly == null || !headersOnly.booleanValue()) {
-			OutputStream out = response.getOutputStream();
+			OutputStream out = getOutputStream(model, response);
 			try {
-				TupleQueryResultWriter qrWriter = qrWriterFactory.getWriter(out);
-				TupleQueryResult tupleQueryResult = (TupleQueryResult)model.get(QUERY_RESULT_KEY);
+				if (!writeCachedResult(model, out)) {
+					TupleQueryResultWriter qrWriter = qrWriterFactory.getWriter(out);
+					TupleQueryResult tupleQueryResult = (TupleQueryResult)model.get(QUERY_RESULT_KEY);
 
-				if (qrWriter.getSupportedSettings().contains(BasicQueryWriterSettings.JSONP_CALLBACK)) {
-					String parameter = request.getParameter(DEFAULT_JSONP_CALLBACK_PARAMETER);
+					if (qrWriter.getSupportedSettings().contains(BasicQueryWriterSettings.JSONP_CALLBACK)) {
+						String parameter = request.getParameter(DEFAULT_JSONP_CALLBACK_PARAMETER);
 
-					if (parameter != null) {
-						parameter = parameter.trim();
+						if (parameter != null) {
+							parameter = parameter.trim();
 
-						if (parameter.isEmpty()) {
-							parameter = BasicQueryWriterSettings.JSONP_CALLBACK.getDefaultValue();
-						}
+							if (parameter.isEmpty()) {
+								parameter = BasicQueryWriterSettings.JSONP_CALLBACK.getDefaultValue();
+							}
 
-						// check callback function name is a valid javascript function
-						// name
-						if (!JSONP_VALIDATOR.matcher(parameter).matches()) {
-							throw new IOException("Callback function name was invalid");
-						}
+							// check callback function name is a valid javascript function
+							// name
+							if (!JSONP_VALIDATOR.matcher(parameter).matches()) {
+								throw new IOException("Callback function name was invalid");
+							}
 
-						qrWriter.getWriterConfig().set(BasicQueryWriterSettings.JSONP_CALLBACK, parameter);
+							qrWriter.getWriterConfig().set(BasicQueryWriterSettings.JSONP_CALLBACK, parameter);
+						}
 					}
-				}
 
-				QueryResults.report(tupleQueryResult, qrWriter);
+					QueryResults.report(tupleQueryResult, qrWriter);
+
+					storeCachedResult(model);
+				}
 			}
 			catch (QueryInterruptedException e) {
 				logger.error("Query interrupted", e);
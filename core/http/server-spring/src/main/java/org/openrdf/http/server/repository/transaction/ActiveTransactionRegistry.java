@@ -16,7 +16,10 @@
  */
 package org.openrdf.http.server.repository.transaction;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -69,6 +72,8 @@ public enum ActiveTransactionRegistry {
 
 		private final Lock lock = new ReentrantLock();
 
+		private final Set<String> processedChunks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 		public CacheEntry(RepositoryConnection connection) {
 			this.connection = connection;
 		}
@@ -87,6 +92,13 @@ public enum ActiveTransactionRegistry {
 			return lock;
 		}
 
+		/**
+		 * @return Returns the IDs of the processed chunks.
+		 */
+		public Set<String> getProcessedChunks() {
+			return processedChunks;
+		}
+
 	}
 
 	/**
@@ -223,6 +235,27 @@ public enum ActiveTransactionRegistry {
 		return entry.getConnection();
 	}
 
+	/**
+	 * Obtain the IDs of the upload chunks that have been processed in the given
+	 * transaction. Unlike {@link #getTransactionConnection(UUID)}, this method
+	 * does not block.
+	 * 
+	 * @param transactionId
+	 *        a transaction ID
+	 * @return a modifiable, thread-safe set of chunk IDs.
+	 * @throws RepositoryException
+	 *         if no transaction with the given id is registered.
+	 */
+	public Set<String> getProcessedChunks(UUID transactionId)
+		throws RepositoryException
+	{
+		final CacheEntry entry = activeConnections.getIfPresent(transactionId);
+		if (entry == null) {
+			throw new RepositoryException("transaction with id " + transactionId.toString() + " not registered.");
+		}
+		return entry.getProcessedChunks();
+	}
+
 	/**
 	 * Unlocks the {@link RepositoryConnection} associated with the given
 	 * transaction for use by other threads. If the transaction is no longer
@@ -19,6 +19,7 @@ package org.openrdf.http.server.repository.transaction;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static javax.servlet.http.HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE;
 import static org.openrdf.http.protocol.Protocol.BINDING_PREFIX;
 import static org.openrdf.http.protocol.Protocol.CONTEXT_PARAM_NAME;
 import static org.openrdf.http.protocol.Protocol.DEFAULT_GRAPH_PARAM_NAME;
@@ -35,9 +36,12 @@ import static org.openrdf.http.protocol.Protocol.USING_GRAPH_PARAM_NAME;
 import static org.openrdf.http.protocol.Protocol.USING_NAMED_GRAPH_PARAM_NAME;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -53,6 +57,7 @@ import org.springframework.web.servlet.mvc.AbstractController;
 
 import info.aduna.lang.FileFormat;
 import info.aduna.lang.service.FileFormatServiceRegistry;
+import info.aduna.webapp.util.HttpServerUtil;
 import info.aduna.webapp.views.EmptySuccessView;
 import info.aduna.webapp.views.SimpleResponseView;
 
@@ -93,13 +98,16 @@ import org.openrdf.query.resultio.TupleQueryResultWriterRegistry;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFWriterFactory;
 import org.openrdf.rio.RDFWriterRegistry;
 import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.BasicParserSettings;
 import org.openrdf.rio.helpers.AbstractRDFHandler;
+import org.openrdf.rio.helpers.StatementCollector;
 
 /**
  * Handles requests for transaction creation on a repository.
@@ -127,6 +135,20 @@ public class TransactionController extends AbstractController {
 		UUID transactionId = getTransactionID(request);
 		logger.debug("transaction id: {}", transactionId);
 		logger.debug("request content type: {}", request.getContentType());
+
+		final String chunkID = request.getParameter(Protocol.CHUNK_PARAM_NAME);
+		if (chunkID != null) {
+			// chunks are parsed before the connection is acquired
+			logger.info("{} txn chunk {}", reqMethod, chunkID);
+			result = processChunk(transactionId, chunkID, request);
+			logger.info("{} txn chunk request finished", reqMethod);
+			return result;
+		}
+
+		// if no action is specified in the request, it's a rollback (since it's
+		// the only txn operation that does not require the action parameter).
+		final Action action = getAction(request, Action.ROLLBACK);
+
 		RepositoryConnection connection = ActiveTransactionRegistry.INSTANCE.getTransactionConnection(
 				transactionId);
 
@@ -136,10 +158,6 @@ public class TransactionController extends AbstractController {
 					"unable to find registerd connection for transaction id '" + transactionId + "'");
 		}
 
-		// if no action is specified in the request, it's a rollback (since it's
-		// the only txn operation that does not require the action parameter).
-		final String actionParam = request.getParameter(Protocol.ACTION_PARAM_NAME);
-		final Action action = actionParam != null ? Action.valueOf(actionParam) : Action.ROLLBACK;
 		switch (action) {
 			case QUERY:
 				// TODO SES-2238 note that we allow POST requests for backward
@@ -217,6 +235,22 @@ public class TransactionController extends AbstractController {
 		return result;
 	}
 
+	private Action getAction(HttpServletRequest request, Action defaultAction)
+		throws ClientHTTPException
+	{
+		String actionParam = request.getParameter(Protocol.ACTION_PARAM_NAME);
+		if (actionParam == null) {
+			return defaultAction;
+		}
+
+		try {
+			return Action.valueOf(actionParam);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ClientHTTPException(SC_BAD_REQUEST, "not a valid transaction action: " + actionParam);
+		}
+	}
+
 	private UUID getTransactionID(HttpServletRequest request)
 		throws ClientHTTPException
 	{
@@ -300,6 +334,137 @@ public class TransactionController extends AbstractController {
 		}
 	}
 
+	/**
+	 * Processes one chunk of a larger upload. The chunk is parsed before the
+	 * transaction's connection is acquired, so that multiple chunks of the same
+	 * transaction are parsed in parallel and only wait for each other while
+	 * their statements are applied. Chunks that have been processed before are
+	 * skipped, allowing a client to resume an interrupted upload by sending its
+	 * chunks again. The response reports the number of chunks processed so far.
+	 * <p>
+	 * A chunk whose statements fail to be applied is not marked as processed,
+	 * but may already have been partially applied. Retrying such a chunk is
+	 * only safe if it contains no blank nodes: the retry is parsed into fresh
+	 * blank nodes, so its statements about blank nodes are added again rather
+	 * than matched against those already added.
+	 */
+	private ModelAndView processChunk(UUID transactionId, String chunkID, HttpServletRequest request)
+		throws IOException, HTTPException
+	{
+		ProtocolUtil.logRequestParameters(request);
+
+		final String reqMethod = request.getMethod();
+		if (!"PUT".equals(reqMethod) && !METHOD_POST.equals(reqMethod)) {
+			throw new ClientHTTPException(HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+					"Method not allowed: " + reqMethod);
+		}
+
+		final Action action = getAction(request, null);
+		if (action != Action.ADD && action != Action.DELETE) {
+			throw new ClientHTTPException(SC_BAD_REQUEST, "chunks are not supported for action: " + action);
+		}
+
+		Set<String> processedChunks;
+		try {
+			processedChunks = ActiveTransactionRegistry.INSTANCE.getProcessedChunks(transactionId);
+		}
+		catch (RepositoryException e) {
+			logger.warn("could not find connection for transaction id {}", transactionId);
+			throw new ClientHTTPException(SC_BAD_REQUEST,
+					"unable to find registerd connection for transaction id '" + transactionId + "'");
+		}
+
+		if (processedChunks.contains(chunkID)) {
+			logger.debug("chunk {} already processed, skipping", chunkID);
+		}
+		else {
+			Resource[] contexts = parseChunkContexts(request);
+			List<Statement> statements = parseChunk(action, request);
+
+			RepositoryConnection conn;
+			try {
+				conn = ActiveTransactionRegistry.INSTANCE.getTransactionConnection(transactionId);
+			}
+			catch (RepositoryException e) {
+				throw new ClientHTTPException(SC_BAD_REQUEST,
+						"unable to find registerd connection for transaction id '" + transactionId + "'");
+			}
+			catch (InterruptedException e) {
+				throw new ServerHTTPException(SC_SERVICE_UNAVAILABLE, "Interrupted while waiting for transaction");
+			}
+
+			try {
+				// a retry of the same chunk may have been processed in the meantime
+				if (processedChunks.add(chunkID)) {
+					try {
+						if (action == Action.ADD) {
+							conn.add(statements, contexts);
+						}
+						else {
+							WildcardRDFRemover remover = new WildcardRDFRemover(conn, contexts);
+							for (Statement st : statements) {
+								remover.handleStatement(st);
+							}
+						}
+					}
+					catch (Exception e) {
+						processedChunks.remove(chunkID);
+						throw new ServerHTTPException(SC_INTERNAL_SERVER_ERROR,
+								"Transaction handling error: " + e.getMessage(), e);
+					}
+				}
+			}
+			finally {
+				ActiveTransactionRegistry.INSTANCE.returnTransactionConnection(transactionId);
+			}
+		}
+
+		Map<String, Object> model = new HashMap<String, Object>();
+		model.put(SimpleResponseView.SC_KEY, HttpServletResponse.SC_OK);
+		model.put(SimpleResponseView.CONTENT_KEY, String.valueOf(processedChunks.size()));
+		return new ModelAndView(SimpleResponseView.getInstance(), model);
+	}
+
+	private Resource[] parseChunkContexts(HttpServletRequest request)
+		throws ClientHTTPException
+	{
+		ValueFactory vf = RepositoryInterceptor.getRepository(request).getValueFactory();
+		return ProtocolUtil.parseContextParam(request, CONTEXT_PARAM_NAME, vf);
+	}
+
+	private List<Statement> parseChunk(Action action, HttpServletRequest request)
+		throws IOException, HTTPException
+	{
+		String mimeType = HttpServerUtil.getMIMEType(request.getContentType());
+		RDFFormat format = Rio.getParserFormatForMIMEType(mimeType).orElseThrow(
+				() -> new ClientHTTPException(SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported MIME type: " + mimeType));
+
+		String baseURI = request.getParameter(Protocol.BASEURI_PARAM_NAME);
+		if (baseURI == null) {
+			baseURI = "";
+		}
+
+		Repository repository = RepositoryInterceptor.getRepository(request);
+		RDFParser parser = Rio.createParser(format, repository.getValueFactory());
+		if (action == Action.DELETE) {
+			parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+		}
+
+		List<Statement> statements = new ArrayList<Statement>();
+		parser.setRDFHandler(new StatementCollector(statements));
+		try {
+			parser.parse(request.getInputStream(), baseURI);
+		}
+		catch (RDFParseException e) {
+			ErrorInfo errInfo = new ErrorInfo(ErrorType.MALFORMED_DATA, e.getMessage());
+			throw new ClientHTTPException(SC_BAD_REQUEST, errInfo.toString());
+		}
+		catch (RDFHandlerException e) {
+			throw new ServerHTTPException("Failed to parse chunk: " + e.getMessage(), e);
+		}
+		return statements;
+	}
+
 	private ModelAndView getSize(RepositoryConnection conn, UUID txnId, HttpServletRequest request,
 			HttpServletResponse response)
 				throws HTTPException
@@ -747,9 +912,12 @@ public class TransactionController extends AbstractController {
 
 		private final RepositoryConnection conn;
 
-		public WildcardRDFRemover(RepositoryConnection conn) {
+		private final Resource[] contexts;
+
+		public WildcardRDFRemover(RepositoryConnection conn, Resource... contexts) {
 			super();
 			this.conn = conn;
+			this.contexts = contexts;
 		}
 
 		@Override
@@ -765,7 +933,7 @@ public class TransactionController extends AbstractController {
 					conn.remove(subject, predicate, object, st.getContext());
 				}
 				else {
-					conn.remove(subject, predicate, object);
+					conn.remove(subject, predicate, object, contexts);
 				}
 			}
 			catch (RepositoryException e) {
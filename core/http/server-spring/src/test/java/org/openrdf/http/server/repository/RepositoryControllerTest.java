@@ -0,0 +1,306 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.http.server.repository;
+
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.ModelAndView;
+
+import org.openrdf.http.protocol.Protocol;
+import org.openrdf.http.server.ClientHTTPException;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultWriterRegistry;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+public class RepositoryControllerTest {
+
+	private static final String REPOSITORY_ID = "test";
+
+	private static final String QUERY = "SELECT ?s ?o WHERE { ?s ?p ?o }";
+
+	private SailRepository repository;
+
+	private RepositoryConnection con;
+
+	private QueryResultCache cache;
+
+	private RepositoryController controller;
+
+	private IRI foo;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+
+		ValueFactory vf = repository.getValueFactory();
+		foo = vf.createIRI("urn:foo");
+		con.add(foo, RDFS.LABEL, vf.createLiteral("foo"));
+
+		cache = new QueryResultCache();
+		cache.setRepositoryIDs(Collections.singleton(REPOSITORY_ID));
+
+		controller = new RepositoryController();
+		controller.setQueryResultCache(cache);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testCacheHitReturnsSameBytes()
+		throws Exception
+	{
+		MockHttpServletResponse miss = query(createRequest("GET", QUERY));
+		assertEquals(SC_OK, miss.getStatus());
+		assertTrue(cache.getUsedBytes() > 0);
+		long usedBytes = cache.getUsedBytes();
+
+		MockHttpServletResponse hit = query(createRequest("GET", QUERY));
+		assertEquals(SC_OK, hit.getStatus());
+		assertArrayEquals(miss.getContentAsByteArray(), hit.getContentAsByteArray());
+		assertEquals(miss.getHeader("ETag"), hit.getHeader("ETag"));
+		assertEquals(usedBytes, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testNotModifiedOnIfNoneMatch()
+		throws Exception
+	{
+		MockHttpServletResponse first = query(createRequest("GET", QUERY));
+		String eTag = first.getHeader("ETag");
+		assertNotNull(eTag);
+
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		request.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse second = query(request);
+		assertEquals(SC_NOT_MODIFIED, second.getStatus());
+		assertEquals(0, second.getContentAsByteArray().length);
+
+		request = createRequest("GET", QUERY);
+		request.addHeader("If-None-Match", "\"other\"");
+		assertEquals(SC_OK, query(request).getStatus());
+	}
+
+	@Test
+	public void testNotModifiedOnIfModifiedSince()
+		throws Exception
+	{
+		MockHttpServletResponse first = query(createRequest("GET", QUERY));
+		assertNotNull(first.getHeader("Last-Modified"));
+
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		request.addHeader("If-Modified-Since", new Date());
+		MockHttpServletResponse second = query(request);
+		assertEquals(SC_NOT_MODIFIED, second.getStatus());
+		assertEquals(0, second.getContentAsByteArray().length);
+
+		request = createRequest("GET", QUERY);
+		request.addHeader("If-Modified-Since", new Date(0));
+		assertEquals(SC_OK, query(request).getStatus());
+	}
+
+	@Test
+	public void testCommitWithinSameSecond()
+		throws Exception
+	{
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		query(request);
+		long lastModified = getLastModified(request);
+
+		// the commit follows the first response within the same second
+		con.add(foo, RDFS.COMMENT, repository.getValueFactory().createLiteral("bar"));
+		assertTrue(getLastModified(request) > lastModified);
+
+		request = createRequest("GET", QUERY);
+		request.addHeader("If-Modified-Since", new Date(lastModified));
+		MockHttpServletResponse response = query(request);
+		assertEquals(SC_OK, response.getStatus());
+		assertTrue(response.getContentAsString().contains("bar"));
+	}
+
+	@Test
+	public void testCommitInvalidatesCache()
+		throws Exception
+	{
+		MockHttpServletResponse first = query(createRequest("GET", QUERY));
+		String eTag = first.getHeader("ETag");
+		assertTrue(cache.getUsedBytes() > 0);
+
+		con.add(foo, RDFS.COMMENT, repository.getValueFactory().createLiteral("bar"));
+		assertEquals(0, cache.getUsedBytes());
+
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		request.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse second = query(request);
+		assertEquals(SC_OK, second.getStatus());
+		assertFalse(eTag.equals(second.getHeader("ETag")));
+		assertTrue(second.getContentAsString().contains("bar"));
+	}
+
+	@Test
+	public void testResultOverlappingCommitNotStored()
+		throws Exception
+	{
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		ModelAndView mav = controller.handleRequest(request, response);
+
+		// the repository changes while the result is being sent
+		RepositoryConnection other = repository.getConnection();
+		try {
+			other.add(foo, RDFS.COMMENT, repository.getValueFactory().createLiteral("bar"));
+		}
+		finally {
+			other.close();
+		}
+
+		mav.getView().render(mav.getModel(), request, response);
+		assertEquals(SC_OK, response.getStatus());
+		assertEquals(0, cache.getUsedBytes());
+
+		MockHttpServletResponse next = query(createRequest("GET", QUERY));
+		assertTrue(next.getContentAsString().contains("bar"));
+	}
+
+	@Test
+	public void testPostWithMatchingIfNoneMatch()
+		throws Exception
+	{
+		String eTag = query(createRequest("GET", QUERY)).getHeader("ETag");
+
+		MockHttpServletRequest request = createRequest("POST", QUERY);
+		request.setContentType(Protocol.FORM_MIME_TYPE);
+		request.addHeader("If-None-Match", eTag);
+		try {
+			query(request);
+			fail("POST with matching If-None-Match should fail");
+		}
+		catch (ClientHTTPException e) {
+			assertEquals(SC_PRECONDITION_FAILED, e.getStatusCode());
+		}
+
+		// If-Modified-Since only applies to GET and HEAD
+		request = createRequest("POST", QUERY);
+		request.setContentType(Protocol.FORM_MIME_TYPE);
+		request.addHeader("If-Modified-Since", new Date());
+		MockHttpServletResponse response = query(request);
+		assertEquals(SC_OK, response.getStatus());
+		assertTrue(response.getContentAsByteArray().length > 0);
+	}
+
+	@Test
+	public void testByteBudgetEviction()
+		throws Exception
+	{
+		Object factory = TupleQueryResultWriterRegistry.getInstance().get(TupleQueryResultFormat.SPARQL).get();
+		MockHttpServletRequest request = createRequest("GET", QUERY);
+		byte[] data = new byte[1000];
+
+		QueryResultCache.CachedResult first = cache.lookup(REPOSITORY_ID, repository, "first", request,
+				factory);
+		record(first, data);
+		long firstSize = cache.getUsedBytes();
+		assertTrue(firstSize > data.length);
+
+		// room for a single result
+		cache.setMaxBytes(firstSize + data.length / 2);
+
+		QueryResultCache.CachedResult second = cache.lookup(REPOSITORY_ID, repository, "second", request,
+				factory);
+		record(second, data);
+		assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+
+		// the least recently used result has been evicted
+		assertNull(cache.lookup(REPOSITORY_ID, repository, "first", request, factory).getData());
+		assertNotNull(cache.lookup(REPOSITORY_ID, repository, "second", request, factory).getData());
+
+		// results that exceed the budget are not cached at all
+		QueryResultCache.CachedResult third = cache.lookup(REPOSITORY_ID, repository, "third", request,
+				factory);
+		record(third, new byte[(int)cache.getMaxBytes() + 1]);
+		assertNull(cache.lookup(REPOSITORY_ID, repository, "third", request, factory).getData());
+		assertNotNull(cache.lookup(REPOSITORY_ID, repository, "second", request, factory).getData());
+	}
+
+	private long getLastModified(MockHttpServletRequest request) {
+		Object factory = TupleQueryResultWriterRegistry.getInstance().get(TupleQueryResultFormat.SPARQL).get();
+		return cache.lookup(REPOSITORY_ID, repository, QUERY, request, factory).getLastModified();
+	}
+
+	private MockHttpServletRequest createRequest(String method, String queryStr) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, "/repositories/" + REPOSITORY_ID);
+		request.addParameter(Protocol.QUERY_PARAM_NAME, queryStr);
+		request.addHeader("Accept", TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
+		request.setAttribute(RepositoryInterceptor.REPOSITORY_ID_KEY, REPOSITORY_ID);
+		request.setAttribute(RepositoryInterceptor.REPOSITORY_KEY, repository);
+		request.setAttribute(RepositoryInterceptor.REPOSITORY_CONNECTION_KEY, con);
+		return request;
+	}
+
+	private MockHttpServletResponse query(MockHttpServletRequest request)
+		throws Exception
+	{
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		ModelAndView mav = controller.handleRequest(request, response);
+		if (mav != null) {
+			mav.getView().render(mav.getModel(), request, response);
+		}
+		return response;
+	}
+
+	private void record(QueryResultCache.CachedResult cachedResult, byte[] data)
+		throws Exception
+	{
+		OutputStream out = cachedResult.record(new ByteArrayOutputStream());
+		out.write(data);
+		out.close();
+		cachedResult.store();
+	}
+}
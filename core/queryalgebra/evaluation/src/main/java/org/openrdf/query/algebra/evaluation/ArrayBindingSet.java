@@ -0,0 +1,285 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.SimpleBinding;
+
+/**
+ * An implementation of the {@link BindingSet} interface that stores its values
+ * in an array, indexed by the slots of a {@link BindingSetSchema} that is
+ * shared by all binding sets produced by an operator. Copying such a binding
+ * set is a single array copy and operators that have resolved the slots of
+ * their variables can read and write values without any hashing.
+ */
+public class ArrayBindingSet implements BindingSet {
+
+	private static final long serialVersionUID = 3305618592475950187L;
+
+	private final BindingSetSchema schema;
+
+	/**
+	 * The values by slot, <tt>null</tt> for unbound slots.
+	 */
+	private final Value[] values;
+
+	/**
+	 * Creates a binding set without any bindings.
+	 */
+	public ArrayBindingSet(BindingSetSchema schema) {
+		this.schema = schema;
+		this.values = new Value[schema.size()];
+	}
+
+	/**
+	 * Creates a binding set with the bindings of the supplied binding set.
+	 * 
+	 * @throws IllegalArgumentException
+	 *         If the supplied binding set has a binding whose name is not part
+	 *         of the schema.
+	 */
+	public ArrayBindingSet(BindingSetSchema schema, BindingSet bindings) {
+		this(schema);
+		addAll(bindings);
+	}
+
+	/**
+	 * Creates a copy of the supplied binding set with the same schema.
+	 */
+	public ArrayBindingSet(ArrayBindingSet bindings) {
+		this.schema = bindings.schema;
+		this.values = bindings.values.clone();
+	}
+
+	public BindingSetSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Gets the value of the specified slot of the schema.
+	 * 
+	 * @return The value, or <tt>null</tt> if the slot is unbound.
+	 */
+	public Value getValue(int slot) {
+		return values[slot];
+	}
+
+	/**
+	 * Sets the value of the specified slot of the schema, replacing any existing
+	 * value.
+	 * 
+	 * @param value
+	 *        The value, or <tt>null</tt> to unbind the slot.
+	 */
+	public void setValue(int slot, Value value) {
+		values[slot] = value;
+	}
+
+	/**
+	 * Copies the bindings of the supplied binding set into this one.
+	 * 
+	 * @throws IllegalArgumentException
+	 *         If the supplied binding set has a binding whose name is not part
+	 *         of the schema.
+	 */
+	public void addAll(BindingSet bindings) {
+		if (bindings instanceof ArrayBindingSet && schema.startsWith(((ArrayBindingSet)bindings).schema)) {
+			Value[] other = ((ArrayBindingSet)bindings).values;
+			System.arraycopy(other, 0, values, 0, other.length);
+		}
+		else {
+			for (Binding binding : bindings) {
+				int slot = schema.indexOf(binding.getName());
+				if (slot < 0) {
+					throw new IllegalArgumentException("binding not in schema " + schema + ": "
+							+ binding.getName());
+				}
+				values[slot] = binding.getValue();
+			}
+		}
+	}
+
+	@Override
+	public Iterator<Binding> iterator() {
+		return new Iterator<Binding>() {
+
+			private int next = nextBoundSlot(0);
+
+			@Override
+			public boolean hasNext() {
+				return next < values.length;
+			}
+
+			@Override
+			public Binding next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Binding binding = new SimpleBinding(schema.getName(next), values[next]);
+				next = nextBoundSlot(next + 1);
+				return binding;
+			}
+		};
+	}
+
+	@Override
+	public Set<String> getBindingNames() {
+		return new AbstractSet<String>() {
+
+			@Override
+			public boolean contains(Object name) {
+				return name instanceof String && hasBinding((String)name);
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+
+					private int next = nextBoundSlot(0);
+
+					@Override
+					public boolean hasNext() {
+						return next < values.length;
+					}
+
+					@Override
+					public String next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						String name = schema.getName(next);
+						next = nextBoundSlot(next + 1);
+						return name;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ArrayBindingSet.this.size();
+			}
+		};
+	}
+
+	private int nextBoundSlot(int slot) {
+		while (slot < values.length && values[slot] == null) {
+			slot++;
+		}
+		return slot;
+	}
+
+	@Override
+	public Binding getBinding(String bindingName) {
+		Value value = getValue(bindingName);
+
+		if (value != null) {
+			return new SimpleBinding(bindingName, value);
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean hasBinding(String bindingName) {
+		return getValue(bindingName) != null;
+	}
+
+	@Override
+	public Value getValue(String bindingName) {
+		int slot = schema.indexOf(bindingName);
+		return slot < 0 ? null : values[slot];
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Value value : values) {
+			if (value != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		else if (other instanceof BindingSet) {
+			int otherSize = 0;
+
+			// Compare other's bindings to own
+			for (Binding binding : (BindingSet)other) {
+				Value ownValue = getValue(binding.getName());
+
+				if (!binding.getValue().equals(ownValue)) {
+					// Unequal bindings for this name
+					return false;
+				}
+
+				otherSize++;
+			}
+
+			// All bindings have been matched, sets are equal if this binding set
+			// doesn't have any additional bindings.
+			return otherSize == size();
+		}
+
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		int hashCode = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				// same as the hash code of the binding
+				hashCode ^= schema.getName(i).hashCode() ^ values[i].hashCode();
+			}
+		}
+
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(32 * size());
+
+		sb.append('[');
+
+		Iterator<Binding> iter = iterator();
+		while (iter.hasNext()) {
+			sb.append(iter.next().toString());
+			if (iter.hasNext()) {
+				sb.append(';');
+			}
+		}
+
+		sb.append(']');
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,217 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, ordered list of binding names that assigns each name a slot
+ * in the value arrays of {@link ArrayBindingSet}s. Operators resolve the slots
+ * of the variables they read and write once, after which all binding sets
+ * that share the schema can be accessed by index.
+ */
+public final class BindingSetSchema implements Serializable {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final long serialVersionUID = -4209561745036364513L;
+
+	public static final BindingSetSchema EMPTY = new BindingSetSchema(new String[0], null);
+
+	/**
+	 * Schemas with more names than this use a hash map rather than a linear
+	 * scan to look up slots.
+	 */
+	private static final int INDEX_THRESHOLD = 16;
+
+	/**
+	 * The maximum number of extensions that are remembered per schema.
+	 */
+	private static final int MAX_EXTENSIONS = 64;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final String[] names;
+
+	/**
+	 * The schema that this schema extends, its names are a prefix of this
+	 * schema's names.
+	 */
+	private final BindingSetSchema base;
+
+	private transient volatile Map<String, Integer> index;
+
+	private transient volatile ConcurrentMap<List<String>, BindingSetSchema> extensions;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	private BindingSetSchema(String[] names, BindingSetSchema base) {
+		this.names = names;
+		this.base = base;
+	}
+
+	/**
+	 * Creates a schema for the supplied binding names, in iteration order.
+	 * Duplicate names are ignored.
+	 */
+	public static BindingSetSchema of(Collection<String> names) {
+		if (names.isEmpty()) {
+			return EMPTY;
+		}
+		Set<String> distinct = new LinkedHashSet<String>(names);
+		return new BindingSetSchema(distinct.toArray(new String[distinct.size()]), null);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * Gets the slot of the specified binding name.
+	 * 
+	 * @return The slot, or <tt>-1</tt> if the name is not part of this schema.
+	 */
+	public int indexOf(String name) {
+		// names usually originate from the same query model vars, so try
+		// identity first
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == name) {
+				return i;
+			}
+		}
+
+		if (names.length <= INDEX_THRESHOLD) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		Map<String, Integer> index = this.index;
+		if (index == null) {
+			index = new HashMap<String, Integer>(names.length * 2);
+			for (int i = 0; i < names.length; i++) {
+				index.put(names[i], i);
+			}
+			this.index = index;
+		}
+		Integer slot = index.get(name);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	/**
+	 * Gets a schema that starts with the names of this schema, followed by the
+	 * supplied names that are not yet part of it. Extensions are remembered, so
+	 * repeated calls with equal names return the same schema (except for
+	 * extensions of {@link #EMPTY}).
+	 * 
+	 * @return This schema if it already contains all names, an extension of it
+	 *         otherwise.
+	 */
+	public BindingSetSchema extend(List<String> names) {
+		ConcurrentMap<List<String>, BindingSetSchema> extensions = this.extensions;
+		if (extensions != null) {
+			BindingSetSchema result = extensions.get(names);
+			if (result != null) {
+				return result;
+			}
+		}
+
+		List<String> added = new ArrayList<String>(names.size());
+		for (String name : names) {
+			if (indexOf(name) < 0 && !added.contains(name)) {
+				added.add(name);
+			}
+		}
+
+		BindingSetSchema result = this;
+		if (!added.isEmpty()) {
+			String[] extendedNames = Arrays.copyOf(this.names, this.names.length + added.size());
+			for (int i = 0; i < added.size(); i++) {
+				extendedNames[this.names.length + i] = added.get(i);
+			}
+			result = new BindingSetSchema(extendedNames, this);
+		}
+
+		if (this == EMPTY) {
+			// the empty schema is shared by all queries, remembering its
+			// extensions would keep them alive forever
+			return result;
+		}
+
+		if (extensions == null) {
+			synchronized (this) {
+				extensions = this.extensions;
+				if (extensions == null) {
+					this.extensions = extensions = new ConcurrentHashMap<List<String>, BindingSetSchema>();
+				}
+			}
+		}
+		if (extensions.size() < MAX_EXTENSIONS) {
+			BindingSetSchema existing = extensions.putIfAbsent(new ArrayList<String>(names), result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the names of the supplied schema are a prefix of the names
+	 * of this schema, so that slots of the supplied schema have the same index
+	 * in this one.
+	 */
+	public boolean startsWith(BindingSetSchema other) {
+		for (BindingSetSchema schema = this; schema != null; schema = schema.base) {
+			if (schema == other) {
+				return true;
+			}
+		}
+		return other.names.length == 0;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(names);
+	}
+}
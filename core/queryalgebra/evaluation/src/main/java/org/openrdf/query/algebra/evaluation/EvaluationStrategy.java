@@ -112,4 +112,22 @@ public interface EvaluationStrategy extends FederatedServiceResolver {
 	 */
 	public boolean isTrue(ValueExpr expr, BindingSet bindings)
 		throws ValueExprEvaluationException, QueryEvaluationException;
+
+	/**
+	 * Prepares the value expression for repeated evaluation against many
+	 * binding sets. The returned evaluator must produce the same results as
+	 * {@link #evaluate(ValueExpr, BindingSet)}; implementations can use this to
+	 * resolve functions, fold constants and skip the per-call dispatch on the
+	 * expression's node types. The default implementation simply delegates to
+	 * {@link #evaluate(ValueExpr, BindingSet)}.
+	 * 
+	 * @param expr
+	 *        The value expression to prepare.
+	 * @return An evaluator for the expression.
+	 */
+	public default ValueExprEvaluator precompile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		return bindings -> evaluate(expr, bindings);
+	}
 }
@@ -184,10 +184,12 @@ public class QueryBindingSet implements BindingSet {
 
 	@Override
 	public int hashCode() {
-		int hashCode = 5;
+		int hashCode = 0;
 
+		// entry hash codes are equal to the hash codes of the bindings, see
+		// BindingSet.hashCode()
 		for (Map.Entry<String, Value> entry : bindings.entrySet()) {
-			hashCode = 37 * hashCode + entry.hashCode();
+			hashCode ^= entry.hashCode();
 		}
 
 		return hashCode;
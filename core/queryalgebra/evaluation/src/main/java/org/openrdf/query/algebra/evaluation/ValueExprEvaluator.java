@@ -0,0 +1,46 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ValueExpr;
+
+/**
+ * A {@link ValueExpr} that has been prepared for repeated evaluation by
+ * {@link EvaluationStrategy#precompile(ValueExpr)}. Evaluators are created
+ * once per operator and then applied to every binding set that flows through
+ * it, so they should do as little per-call work as possible.
+ */
+public interface ValueExprEvaluator {
+
+	/**
+	 * Gets the value of the compiled expression.
+	 * 
+	 * @param bindings
+	 *        The variables bindings to use for evaluating the expression, if
+	 *        applicable.
+	 * @return The Value that the expression evaluates to, or <tt>null</tt> if
+	 *         the expression could not be evaluated.
+	 * @throws ValueExprEvaluationException
+	 *         If the expression could not be evaluated for the supplied
+	 *         bindings, for example because of a type error.
+	 */
+	public Value evaluate(BindingSet bindings)
+		throws ValueExprEvaluationException, QueryEvaluationException;
+}
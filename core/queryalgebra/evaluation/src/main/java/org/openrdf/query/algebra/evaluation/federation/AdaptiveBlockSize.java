@@ -0,0 +1,116 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.federation;
+
+/**
+ * The number of input bindings that are sent to a remote endpoint in a single
+ * VALUES block. The size is adjusted to the latency and result size that is
+ * observed for the blocks that have been evaluated: it doubles while blocks
+ * are answered quickly and halves when a block is slow or produces too many
+ * results. Instances are safe for concurrent use by multiple threads.
+ */
+public class AdaptiveBlockSize {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final int DEFAULT_MAX_BLOCK_SIZE = 200;
+
+	public static final long DEFAULT_TARGET_LATENCY = 1000;
+
+	public static final int DEFAULT_MAX_RESULTS = 10000;
+
+	private final int maxBlockSize;
+
+	private final long targetLatency;
+
+	private final int maxResults;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile int blockSize;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public AdaptiveBlockSize(int initialBlockSize) {
+		this(initialBlockSize, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_TARGET_LATENCY, DEFAULT_MAX_RESULTS);
+	}
+
+	/**
+	 * @param initialBlockSize
+	 *        the size of the first blocks, before any have been evaluated.
+	 * @param maxBlockSize
+	 *        the upper bound of the block size.
+	 * @param targetLatency
+	 *        the time in milliseconds that the evaluation of a single block
+	 *        should take at most.
+	 * @param maxResults
+	 *        the number of results that a single block should produce at most.
+	 */
+	public AdaptiveBlockSize(int initialBlockSize, int maxBlockSize, long targetLatency, int maxResults) {
+		if (initialBlockSize < 1 || maxBlockSize < initialBlockSize) {
+			throw new IllegalArgumentException("Invalid block size bounds: " + initialBlockSize + ", "
+					+ maxBlockSize);
+		}
+		this.blockSize = initialBlockSize;
+		this.maxBlockSize = maxBlockSize;
+		this.targetLatency = targetLatency;
+		this.maxResults = maxResults;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the size for the next block.
+	 */
+	public int get() {
+		return blockSize;
+	}
+
+	/**
+	 * Records the evaluation of a block and adjusts the size of subsequent
+	 * blocks accordingly. Blocks that were smaller than the current size, e.g.
+	 * the last block of an input, can shrink but never grow the block size.
+	 * 
+	 * @param size
+	 *        the number of input bindings of the block.
+	 * @param latency
+	 *        the time in milliseconds that the evaluation of the block took.
+	 * @param resultCount
+	 *        the number of results that the block produced.
+	 */
+	public synchronized void update(int size, long latency, int resultCount) {
+		if (latency > targetLatency || resultCount > maxResults) {
+			blockSize = Math.min(blockSize, Math.max(1, size / 2));
+		}
+		else if (latency < targetLatency / 2 && resultCount < maxResults / 2) {
+			blockSize = Math.min(maxBlockSize, Math.max(blockSize, size * 2));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(blockSize);
+	}
+}
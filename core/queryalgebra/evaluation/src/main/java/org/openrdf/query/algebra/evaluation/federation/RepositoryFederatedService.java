@@ -22,6 +22,13 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,31 +69,57 @@ public class RepositoryFederatedService implements FederatedService {
 
 	final static Logger logger = LoggerFactory.getLogger(RepositoryFederatedService.class);
 
+	/**
+	 * The system property that sets the default maximum number of threads that
+	 * evaluate VALUES blocks of a single service concurrently.
+	 */
+	public static final String MAX_THREADS_PROPERTY = "org.openrdf.federation.service.maxThreads";
+
+	/**
+	 * The maximum number of threads that evaluate VALUES blocks of a single
+	 * service concurrently, unless set otherwise using
+	 * {@link #MAX_THREADS_PROPERTY} or {@link #setMaxThreads(int)}.
+	 */
+	public static final int DEFAULT_MAX_THREADS = 16;
+
 	/**
 	 * A convenience iteration for SERVICE expression which evaluates
 	 * intermediate results in batches and manages all results. Uses
 	 * {@link JoinExecutorBase} facilities to guarantee correct access to the
-	 * final results
+	 * final results.
+	 * <p>
+	 * The size of the batches is adapted to the observed latency and result
+	 * size. Up to
+	 * {@link #maxConcurrentRequests} batches are evaluated concurrently, their
+	 * results are made available in the order in which the requests complete.
 	 * 
 	 * @author as
 	 */
 	private class BatchingServiceIteration extends JoinExecutorBase<BindingSet> {
 
-		private final int blockSize;
+		private final AdaptiveBlockSize blockSize;
 
 		private final Service service;
 
+		private final int maxRequests;
+
+		private final Semaphore inFlight;
+
+		private volatile boolean failed;
+
 		/**
 		 * @param inputBindings
 		 * @throws QueryEvaluationException
 		 */
 		public BatchingServiceIteration(CloseableIteration<BindingSet, QueryEvaluationException> inputBindings,
-				int blockSize, Service service)
+				AdaptiveBlockSize blockSize, Service service)
 			throws QueryEvaluationException
 		{
 			super(inputBindings, null, EmptyBindingSet.getInstance());
 			this.blockSize = blockSize;
 			this.service = service;
+			this.maxRequests = Math.max(1, maxConcurrentRequests);
+			this.inFlight = new Semaphore(maxRequests);
 			run();
 		}
 
@@ -94,17 +127,80 @@ public class RepositoryFederatedService implements FederatedService {
 		protected void handleBindings()
 			throws Exception
 		{
-			while (!closed && leftIter.hasNext()) {
+			try {
+				while (!closed && !failed && leftIter.hasNext()) {
+
+					int size = blockSize.get();
+					final ArrayList<BindingSet> blockBindings = new ArrayList<BindingSet>(size);
+					for (int i = 0; i < size; i++) {
+						if (!leftIter.hasNext())
+							break;
+						blockBindings.add(leftIter.next());
+					}
+
+					inFlight.acquire();
+					if (maxRequests == 1) {
+						evaluateBlock(blockBindings);
+					}
+					else {
+						getExecutor().execute(new Runnable() {
+
+							@Override
+							public void run() {
+								evaluateBlock(blockBindings);
+							}
+						});
+					}
+				}
+			}
+			finally {
+				// wait for the outstanding requests before the results are
+				// marked as complete
+				inFlight.acquireUninterruptibly(maxRequests);
+			}
+		}
+
+		/**
+		 * Evaluates a block on a dedicated connection and adds its
+		 * materialized results. Exceptions are passed on to the consumer of
+		 * this iteration.
+		 */
+		private void evaluateBlock(List<BindingSet> blockBindings) {
+			RepositoryConnection blockConn = null;
+			try {
+				if (closed || failed) {
+					return;
+				}
+				if (maxRequests > 1) {
+					blockConn = rep.getConnection();
+					taskConnection.set(blockConn);
+				}
+
+				long start = System.currentTimeMillis();
+				List<BindingSet> results = Iterations.asList(evaluateInternal(service,
+						new CollectionIteration<BindingSet, QueryEvaluationException>(blockBindings),
+						service.getBaseURI()));
+				blockSize.update(blockBindings.size(), System.currentTimeMillis() - start, results.size());
 
-				ArrayList<BindingSet> blockBindings = new ArrayList<BindingSet>(blockSize);
-				for (int i = 0; i < blockSize; i++) {
-					if (!leftIter.hasNext())
-						break;
-					blockBindings.add(leftIter.next());
+				if (!closed) {
+					addResult(new CollectionIteration<BindingSet, QueryEvaluationException>(results));
+				}
+			}
+			catch (Exception e) {
+				failed = true;
+				toss(e);
+			}
+			finally {
+				if (blockConn != null) {
+					taskConnection.remove();
+					try {
+						blockConn.close();
+					}
+					catch (RepositoryException e) {
+						logger.debug("Could not close connection properly: " + e.getMessage(), e);
+					}
 				}
-				CloseableIteration<BindingSet, QueryEvaluationException> materializedIter = new CollectionIteration<BindingSet, QueryEvaluationException>(
-						blockBindings);
-				addResult(evaluateInternal(service, materializedIter, service.getBaseURI()));
+				inFlight.release();
 			}
 		}
 	}
@@ -116,6 +212,28 @@ public class RepositoryFederatedService implements FederatedService {
 
 	protected RepositoryConnection conn = null;
 
+	/**
+	 * The connection of the block that is evaluated by the current thread, if
+	 * blocks are evaluated concurrently.
+	 */
+	private final ThreadLocal<RepositoryConnection> taskConnection = new ThreadLocal<RepositoryConnection>();
+
+	/**
+	 * The number of bindings sent in a single subquery. If the initial block
+	 * size is set to 0, the entire input stream is used as block input.
+	 */
+	private volatile AdaptiveBlockSize blockSize = new AdaptiveBlockSize(15);
+
+	private volatile int maxConcurrentRequests = 4;
+
+	private int maxThreads = getDefaultMaxThreads();
+
+	/**
+	 * Evaluates the blocks of all SERVICE joins on this service, blocks beyond
+	 * {@link #maxThreads} are queued.
+	 */
+	private ThreadPoolExecutor executor;
+
 	/**
 	 * @param repo
 	 * 			the repository to be used
@@ -136,6 +254,67 @@ public class RepositoryFederatedService implements FederatedService {
 		this.shutDown = shutDown;
 	}
 
+	/**
+	 * Sets the number of input bindings that are sent to the endpoint in a
+	 * single VALUES block before the block size has been adapted to the
+	 * endpoint. If set to 0, the entire input is sent in a single block.
+	 */
+	public void setBoundJoinBlockSize(int initialBlockSize) {
+		this.blockSize = initialBlockSize > 0 ? new AdaptiveBlockSize(initialBlockSize, Math.max(
+				initialBlockSize, AdaptiveBlockSize.DEFAULT_MAX_BLOCK_SIZE),
+				AdaptiveBlockSize.DEFAULT_TARGET_LATENCY, AdaptiveBlockSize.DEFAULT_MAX_RESULTS) : null;
+	}
+
+	/**
+	 * Gets the number of input bindings that are currently sent to the
+	 * endpoint in a single VALUES block, or 0 if the entire input is sent in a
+	 * single block.
+	 */
+	public int getBoundJoinBlockSize() {
+		AdaptiveBlockSize blockSize = this.blockSize;
+		return blockSize == null ? 0 : blockSize.get();
+	}
+
+	/**
+	 * Sets the maximum number of VALUES blocks of a single SERVICE join that
+	 * are evaluated concurrently. If set to 1, blocks are evaluated one after
+	 * the other on the calling thread.
+	 */
+	public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * Sets the maximum number of threads that evaluate VALUES blocks of this
+	 * service, shared by all SERVICE joins that are evaluated at the same time.
+	 * Blocks beyond this limit wait for a thread to become available.
+	 */
+	public synchronized void setMaxThreads(int maxThreads) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("maxThreads must be positive: " + maxThreads);
+		}
+		this.maxThreads = maxThreads;
+		if (executor != null) {
+			// the core size may not exceed the maximum size at any time
+			if (maxThreads > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(maxThreads);
+				executor.setCorePoolSize(maxThreads);
+			}
+			else {
+				executor.setCorePoolSize(maxThreads);
+				executor.setMaximumPoolSize(maxThreads);
+			}
+		}
+	}
+
+	public synchronized int getMaxThreads() {
+		return maxThreads;
+	}
+
 	/**
 	 * Evaluate the provided sparqlQueryString at the initialized
 	 * {@link Repository} of this {@link FederatedService}. Insert bindings
@@ -212,13 +391,9 @@ public class RepositoryFederatedService implements FederatedService {
 		throws QueryEvaluationException
 	{
 
-		// the number of bindings sent in a single subquery.
-		// if blockSize is set to 0, the entire input stream is used as block
-		// input
 		// the block size effectively determines the number of remote requests
-		int blockSize = 15; // TODO configurable block size
-
-		if (blockSize > 0) {
+		AdaptiveBlockSize blockSize = this.blockSize;
+		if (blockSize != null) {
 			return new BatchingServiceIteration(bindings, blockSize, service);
 		}
 		else {
@@ -368,6 +543,13 @@ public class RepositoryFederatedService implements FederatedService {
 	public void shutdown()
 		throws QueryEvaluationException
 	{
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
+
 		boolean foundException = false;
 		try {
 			if (conn != null) {
@@ -398,6 +580,11 @@ public class RepositoryFederatedService implements FederatedService {
 	protected RepositoryConnection getConnection()
 		throws RepositoryException
 	{
+		RepositoryConnection blockConn = taskConnection.get();
+		if (blockConn != null) {
+			return blockConn;
+		}
+
 		// use a cache connection if possible
 		// (TODO add mechanism to unset/close connection)
 		if (conn == null) {
@@ -406,6 +593,39 @@ public class RepositoryFederatedService implements FederatedService {
 		return conn;
 	}
 
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "SERVICE evaluation " + rep + " "
+									+ threadCount.incrementAndGet());
+							// must not keep the JVM alive when the service is not shut down
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	private static int getDefaultMaxThreads() {
+		try {
+			Integer value = Integer.getInteger(MAX_THREADS_PROPERTY);
+			if (value != null && value > 0) {
+				return value;
+			}
+		}
+		catch (SecurityException e) {
+			// not allowed to read system properties
+		}
+		return DEFAULT_MAX_THREADS;
+	}
+
 	/**
 	 * Compute the relevant binding names using the variables occuring in the
 	 * service expression and the input bindings. The idea is find all variables
@@ -17,6 +17,7 @@
 package org.openrdf.query.algebra.evaluation.impl;
 
 import java.util.Collection;
+import java.util.Set;
 
 import org.openrdf.query.algebra.ArbitraryLengthPath;
 import org.openrdf.query.algebra.BinaryTupleOperator;
@@ -53,6 +54,26 @@ public class EvaluationStatistics {
 		return cc.getCardinality();
 	}
 
+	/**
+	 * Gets the estimated cardinality of the supplied expression for each
+	 * binding of the specified variables, as needed to order the arguments of a
+	 * join in which these variables are bound by preceding arguments.
+	 * Implementations that have no better estimate than the cardinality of the
+	 * unbound expression return a negative value, in which case the query
+	 * optimizer applies its own heuristics.
+	 * 
+	 * @param expr
+	 *        The expression to estimate the cardinality of.
+	 * @param boundVars
+	 *        The names of the variables that will already be bound when the
+	 *        expression is evaluated.
+	 * @return The estimated cardinality, or a negative value if no such
+	 *         estimate is available.
+	 */
+	public double getCardinality(TupleExpr expr, Set<String> boundVars) {
+		return -1.0;
+	}
+
 	protected CardinalityCalculator createCardinalityCalculator() {
 		return new CardinalityCalculator();
 	}
@@ -407,7 +407,12 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 			List<Var> unboundVars = getUnboundVars(vars);
 			List<Var> constantVars = getConstantVars(vars);
 			int nonConstantVarCount = vars.size() - constantVars.size();
-			if (nonConstantVarCount > 0) {
+			double boundCardinality = statistics.getCardinality(tupleExpr, boundVars);
+			if (boundCardinality >= 0.0) {
+				// The statistics take the bound variables into account
+				cardinality = boundCardinality;
+			}
+			else if (nonConstantVarCount > 0) {
 				double exp = (double)unboundVars.size() / nonConstantVarCount;
 				cardinality = Math.pow(cardinality, exp);
 			}
@@ -16,10 +16,15 @@
  */
 package org.openrdf.query.algebra.evaluation.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 import info.aduna.iteration.CloseableIteration;
@@ -117,10 +122,13 @@ import org.openrdf.query.algebra.ValueConstant;
 import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.ZeroLengthPath;
+import org.openrdf.query.algebra.evaluation.ArrayBindingSet;
+import org.openrdf.query.algebra.evaluation.BindingSetSchema;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluator;
 import org.openrdf.query.algebra.evaluation.federation.FederatedService;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.ServiceJoinIterator;
@@ -137,10 +145,12 @@ import org.openrdf.query.algebra.evaluation.iterator.JoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.LeftJoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.MultiProjectionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.OrderIterator;
+import org.openrdf.query.algebra.evaluation.iterator.ParallelIteration;
 import org.openrdf.query.algebra.evaluation.iterator.PathIteration;
 import org.openrdf.query.algebra.evaluation.iterator.ProjectionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.SPARQLMinusIteration;
 import org.openrdf.query.algebra.evaluation.iterator.SilentIteration;
+import org.openrdf.query.algebra.evaluation.iterator.TransitivePathIteration;
 import org.openrdf.query.algebra.evaluation.iterator.ZeroLengthPathIteration;
 import org.openrdf.query.algebra.evaluation.util.EvaluationStrategies;
 import org.openrdf.query.algebra.evaluation.util.MathUtil;
@@ -182,6 +192,21 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 
 	private final long iterationCacheSyncThreshold;
 
+	/**
+	 * The pool that independent operators are evaluated in, or <tt>null</tt> if
+	 * all operators are evaluated by the calling thread.
+	 */
+	private volatile ForkJoinPool forkJoinPool;
+
+	/**
+	 * Evaluators of the value expressions that have been precompiled, by
+	 * identity of the expression. Operators are re-evaluated for every binding
+	 * set of their parent, the cache ensures they are compiled only once per
+	 * query.
+	 */
+	private final Map<ValueExpr, ValueExprEvaluator> compiledValueExprs = Collections.synchronizedMap(
+			new IdentityHashMap<ValueExpr, ValueExprEvaluator>());
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -211,6 +236,25 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Enables parallel evaluation of independent operators: the arguments of
+	 * unions, both sides of hash joins and independent OPTIONAL groups are
+	 * evaluated concurrently in tasks of the supplied pool, which bounds the
+	 * number of threads that are used. Parallel evaluation requires a
+	 * {@link TripleSource} that can be used by multiple threads at once.
+	 * 
+	 * @param forkJoinPool
+	 *        the pool to evaluate operators in, or <tt>null</tt> to disable
+	 *        parallel evaluation.
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
 	public FederatedService getService(String serviceUrl)
 		throws QueryEvaluationException
 	{
@@ -268,8 +312,58 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		final Var contextVar = alp.getContextVar();
 		final long minLength = alp.getMinLength();
 
-		return new PathIteration(this, scope, subjectVar, pathExpression, objVar, contextVar, minLength,
-				bindings);
+		Value contextValue = getVarValue(contextVar, bindings);
+		if (contextVar != null && contextValue == null
+				|| getVarValue(subjectVar, bindings) == null && getVarValue(objVar, bindings) == null
+				&& subjectVar.getName().equals(objVar.getName()))
+		{
+			// paths within an unbound graph and cyclic paths over a single
+			// unbound variable are evaluated by joining the path expression
+			return new PathIteration(this, scope, subjectVar, pathExpression, objVar, contextVar, minLength,
+					bindings);
+		}
+
+		TransitivePathIteration.Step step = new TransitivePathIteration.ExpressionStep(this, pathExpression,
+				subjectVar, objVar, bindings);
+
+		if (dataset == null && pathExpression instanceof StatementPattern) {
+			// single predicate paths are expanded directly against the triple
+			// source
+			StatementPattern sp = (StatementPattern)pathExpression;
+			Var predVar = sp.getPredicateVar();
+			Var spContextVar = sp.getContextVar();
+			boolean sameContext = spContextVar == null ? contextVar == null : contextVar != null
+					&& spContextVar.getName().equals(contextVar.getName());
+
+			if (predVar.getValue() instanceof IRI && sameContext && sp.getScope() == scope) {
+				String spSubject = sp.getSubjectVar().getName();
+				String spObject = sp.getObjectVar().getName();
+
+				Resource[] contexts;
+				if (contextValue == null) {
+					contexts = new Resource[0];
+				}
+				else if (contextValue instanceof Resource) {
+					contexts = new Resource[] { (Resource)contextValue };
+				}
+				else {
+					return new EmptyIteration<BindingSet, QueryEvaluationException>();
+				}
+				boolean namedContexts = contexts.length == 0 && scope == Scope.NAMED_CONTEXTS;
+
+				if (spSubject.equals(subjectVar.getName()) && spObject.equals(objVar.getName())) {
+					step = new TransitivePathIteration.PatternStep(tripleSource, (IRI)predVar.getValue(), false,
+							contexts, namedContexts);
+				}
+				else if (spSubject.equals(objVar.getName()) && spObject.equals(subjectVar.getName())) {
+					step = new TransitivePathIteration.PatternStep(tripleSource, (IRI)predVar.getValue(), true,
+							contexts, namedContexts);
+				}
+			}
+		}
+
+		return new TransitivePathIteration(this, step, forkJoinPool, scope, subjectVar, objVar, contextVar,
+				minLength, bindings);
 	}
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(ZeroLengthPath zlp,
@@ -578,26 +672,33 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 			}
 		};
 
+		// Resolve the slots of the pattern's variables once, the bindings of all
+		// statements are copies of the same input array
+		final ArrayBindingSet inputBindings = createArrayBindingSet(bindings, subjVar, predVar, objVar, conVar);
+		final BindingSetSchema schema = inputBindings.getSchema();
+		final int subjSlot = getSlot(schema, subjVar);
+		final int predSlot = getSlot(schema, predVar);
+		final int objSlot = getSlot(schema, objVar);
+		final int conSlot = getSlot(schema, conVar);
+
 		// Return an iterator that converts the statements to var bindings
 		return new ConvertingIteration<Statement, BindingSet, QueryEvaluationException>(stIter) {
 
 			@Override
 			protected BindingSet convert(Statement st) {
-				QueryBindingSet result = new QueryBindingSet(bindings);
+				ArrayBindingSet result = new ArrayBindingSet(inputBindings);
 
-				if (subjVar != null && !subjVar.isConstant() && !result.hasBinding(subjVar.getName())) {
-					result.addBinding(subjVar.getName(), st.getSubject());
+				if (subjSlot >= 0 && result.getValue(subjSlot) == null) {
+					result.setValue(subjSlot, st.getSubject());
 				}
-				if (predVar != null && !predVar.isConstant() && !result.hasBinding(predVar.getName())) {
-					result.addBinding(predVar.getName(), st.getPredicate());
+				if (predSlot >= 0 && result.getValue(predSlot) == null) {
+					result.setValue(predSlot, st.getPredicate());
 				}
-				if (objVar != null && !objVar.isConstant() && !result.hasBinding(objVar.getName())) {
-					result.addBinding(objVar.getName(), st.getObject());
+				if (objSlot >= 0 && result.getValue(objSlot) == null) {
+					result.setValue(objSlot, st.getObject());
 				}
-				if (conVar != null && !conVar.isConstant() && !result.hasBinding(conVar.getName())
-						&& st.getContext() != null)
-				{
-					result.addBinding(conVar.getName(), st.getContext());
+				if (conSlot >= 0 && result.getValue(conSlot) == null && st.getContext() != null) {
+					result.setValue(conSlot, st.getContext());
 				}
 
 				return result;
@@ -605,6 +706,36 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		};
 	}
 
+	/**
+	 * Creates a copy of the supplied bindings with a schema that has slots for
+	 * all of the supplied (non-constant) variables.
+	 */
+	private ArrayBindingSet createArrayBindingSet(BindingSet bindings, Var... vars) {
+		BindingSetSchema schema;
+		if (bindings instanceof ArrayBindingSet) {
+			schema = ((ArrayBindingSet)bindings).getSchema();
+		}
+		else {
+			schema = BindingSetSchema.of(bindings.getBindingNames());
+		}
+
+		List<String> names = new ArrayList<String>(vars.length);
+		for (Var var : vars) {
+			if (var != null && !var.isConstant()) {
+				names.add(var.getName());
+			}
+		}
+
+		return new ArrayBindingSet(schema.extend(names), bindings);
+	}
+
+	private int getSlot(BindingSetSchema schema, Var var) {
+		if (var == null || var.isConstant()) {
+			return -1;
+		}
+		return schema.indexOf(var.getName());
+	}
+
 	protected Value getVarValue(Var var, BindingSet bindings) {
 		if (var == null) {
 			return null;
@@ -856,7 +987,14 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		}
 
 		if (TupleExprs.containsProjection(join.getRightArg())) {
-			return new HashJoinIteration(this, join, bindings);
+			ForkJoinPool pool = forkJoinPool;
+			if (pool != null) {
+				return new HashJoinIteration(new ParallelIteration(this, pool, bindings, join.getLeftArg()),
+						join.getLeftArg().getBindingNames(),
+						new ParallelIteration(this, pool, bindings, join.getRightArg()),
+						join.getRightArg().getBindingNames(), false, iterationCacheSyncThreshold);
+			}
+			return new HashJoinIteration(this, join, bindings, iterationCacheSyncThreshold);
 		}
 		else {
 			return new JoinIterator(this, join, bindings);
@@ -881,6 +1019,13 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 
 		if (problemVars.isEmpty()) {
 			// left join is "well designed"
+			ForkJoinPool pool = forkJoinPool;
+			if (pool != null && isIndependentOptional(leftJoin)) {
+				return new HashJoinIteration(new ParallelIteration(this, pool, bindings, leftJoin.getLeftArg()),
+						leftJoin.getLeftArg().getBindingNames(),
+						new ParallelIteration(this, pool, bindings, leftJoin.getRightArg()),
+						leftJoin.getRightArg().getBindingNames(), true, iterationCacheSyncThreshold);
+			}
 			return new LeftJoinIterator(this, leftJoin, bindings);
 		}
 		else {
@@ -888,11 +1033,34 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		}
 	}
 
+	/**
+	 * Checks whether the optional part of a left join can be evaluated
+	 * independently of its left argument and then be joined on a hash of the
+	 * shared variables. This requires that the left join has no condition and
+	 * that the shared variables are always bound by both arguments.
+	 */
+	private boolean isIndependentOptional(LeftJoin leftJoin) {
+		if (leftJoin.hasCondition()) {
+			return false;
+		}
+		Set<String> joinAttributes = new HashSet<String>(leftJoin.getLeftArg().getBindingNames());
+		joinAttributes.retainAll(leftJoin.getRightArg().getBindingNames());
+		return leftJoin.getLeftArg().getAssuredBindingNames().containsAll(joinAttributes)
+				&& leftJoin.getRightArg().getAssuredBindingNames().containsAll(joinAttributes);
+	}
+
 	@SuppressWarnings("unchecked")
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final Union union,
 			final BindingSet bindings)
 		throws QueryEvaluationException
 	{
+		ForkJoinPool pool = forkJoinPool;
+		if (pool != null) {
+			List<TupleExpr> args = new ArrayList<TupleExpr>();
+			addUnionArgs(union, args);
+			return new ParallelIteration(this, pool, bindings, args.toArray(new TupleExpr[args.size()]));
+		}
+
 		Iteration<BindingSet, QueryEvaluationException> leftArg, rightArg;
 
 		leftArg = new DelayedIteration<BindingSet, QueryEvaluationException>() {
@@ -918,6 +1086,20 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		return new UnionIteration<BindingSet, QueryEvaluationException>(leftArg, rightArg);
 	}
 
+	/**
+	 * Collects the arguments of nested unions, so that they can be evaluated by
+	 * a single {@link ParallelIteration}.
+	 */
+	private void addUnionArgs(TupleExpr expr, List<TupleExpr> args) {
+		if (expr instanceof Union) {
+			addUnionArgs(((Union)expr).getLeftArg(), args);
+			addUnionArgs(((Union)expr).getRightArg(), args);
+		}
+		else {
+			args.add(expr);
+		}
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final Intersection intersection,
 			final BindingSet bindings)
 		throws QueryEvaluationException
@@ -1922,6 +2104,18 @@ public class SimpleEvaluationStrategy implements EvaluationStrategy {
 		}
 	}
 
+	@Override
+	public ValueExprEvaluator precompile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator evaluator = compiledValueExprs.get(expr);
+		if (evaluator == null) {
+			evaluator = new ValueExprCompiler(this, tripleSource).compile(expr);
+			compiledValueExprs.put(expr, evaluator);
+		}
+		return evaluator;
+	}
+
 	@Override
 	public boolean isTrue(ValueExpr expr, BindingSet bindings)
 		throws QueryEvaluationException
@@ -0,0 +1,512 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.model.impl.BooleanLiteral;
+import org.openrdf.model.util.Literals;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Bound;
+import org.openrdf.query.algebra.Coalesce;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.FunctionCall;
+import org.openrdf.query.algebra.If;
+import org.openrdf.query.algebra.MathExpr;
+import org.openrdf.query.algebra.MathExpr.MathOp;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Or;
+import org.openrdf.query.algebra.SameTerm;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluator;
+import org.openrdf.query.algebra.evaluation.function.Function;
+import org.openrdf.query.algebra.evaluation.function.FunctionRegistry;
+import org.openrdf.query.algebra.evaluation.function.datetime.Now;
+import org.openrdf.query.algebra.evaluation.util.MathUtil;
+import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+/**
+ * Compiles {@link ValueExpr} trees into trees of {@link ValueExprEvaluator}
+ * closures. The node type dispatch, variable and function lookups are done
+ * once at compile time, operators whose arguments are all constant are folded
+ * and comparisons against constant numeric and string literals parse the
+ * constant only once. Node types without a specialized evaluator are evaluated
+ * by the {@link EvaluationStrategy}, so the compiled evaluators always produce
+ * the same results as the strategy's own evaluation.
+ */
+class ValueExprCompiler {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final TripleSource tripleSource;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ValueExprCompiler(EvaluationStrategy strategy, TripleSource tripleSource) {
+		this.strategy = strategy;
+		this.tripleSource = tripleSource;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public ValueExprEvaluator compile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		if (expr instanceof Var) {
+			return compile((Var)expr);
+		}
+		else if (expr instanceof ValueConstant) {
+			return new Constant(((ValueConstant)expr).getValue());
+		}
+		else if (expr instanceof Bound) {
+			return compile((Bound)expr);
+		}
+		else if (expr instanceof FunctionCall) {
+			return compile((FunctionCall)expr);
+		}
+		else if (expr instanceof And) {
+			return compile((And)expr);
+		}
+		else if (expr instanceof Or) {
+			return compile((Or)expr);
+		}
+		else if (expr instanceof Not) {
+			return compile((Not)expr);
+		}
+		else if (expr instanceof SameTerm) {
+			return compile((SameTerm)expr);
+		}
+		else if (expr instanceof Compare) {
+			return compile((Compare)expr);
+		}
+		else if (expr instanceof MathExpr) {
+			return compile((MathExpr)expr);
+		}
+		else if (expr instanceof If) {
+			return compile((If)expr);
+		}
+		else if (expr instanceof Coalesce) {
+			return compile((Coalesce)expr);
+		}
+		else {
+			return bindings -> strategy.evaluate(expr, bindings);
+		}
+	}
+
+	protected ValueExprEvaluator compile(Var var) {
+		Value value = var.getValue();
+		if (value != null) {
+			return new Constant(value);
+		}
+
+		String name = var.getName();
+		return bindings -> {
+			Value boundValue = bindings.getValue(name);
+			if (boundValue == null) {
+				throw new ValueExprEvaluationException();
+			}
+			return boundValue;
+		};
+	}
+
+	protected ValueExprEvaluator compile(Bound node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator arg = compile(node.getArg());
+		return bindings -> {
+			try {
+				return BooleanLiteral.valueOf(arg.evaluate(bindings) != null);
+			}
+			catch (ValueExprEvaluationException e) {
+				return BooleanLiteral.FALSE;
+			}
+		};
+	}
+
+	protected ValueExprEvaluator compile(FunctionCall node)
+		throws QueryEvaluationException
+	{
+		Optional<Function> function = FunctionRegistry.getInstance().get(node.getURI());
+
+		// unknown functions fail on evaluation, and NOW() shares its value
+		// through the strategy
+		if (!function.isPresent() || function.get() instanceof Now) {
+			return bindings -> strategy.evaluate(node, bindings);
+		}
+
+		Function resolved = function.get();
+		ValueExprEvaluator[] args = compile(node.getArgs());
+
+		return bindings -> {
+			Value[] argValues = new Value[args.length];
+			for (int i = 0; i < args.length; i++) {
+				argValues[i] = args[i].evaluate(bindings);
+			}
+			return resolved.evaluate(tripleSource.getValueFactory(), argValues);
+		};
+	}
+
+	protected ValueExprEvaluator compile(And node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator left = compile(node.getLeftArg());
+		ValueExprEvaluator right = compile(node.getRightArg());
+
+		return fold(bindings -> {
+			try {
+				if (!QueryEvaluationUtil.getEffectiveBooleanValue(left.evaluate(bindings))) {
+					return BooleanLiteral.FALSE;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// result is 'false' when the right argument evaluates to
+				// 'false', failure otherwise
+				if (!QueryEvaluationUtil.getEffectiveBooleanValue(right.evaluate(bindings))) {
+					return BooleanLiteral.FALSE;
+				}
+				throw new ValueExprEvaluationException();
+			}
+			return BooleanLiteral.valueOf(QueryEvaluationUtil.getEffectiveBooleanValue(right.evaluate(bindings)));
+		}, left, right);
+	}
+
+	protected ValueExprEvaluator compile(Or node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator left = compile(node.getLeftArg());
+		ValueExprEvaluator right = compile(node.getRightArg());
+
+		return fold(bindings -> {
+			try {
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(left.evaluate(bindings))) {
+					return BooleanLiteral.TRUE;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// result is 'true' when the right argument evaluates to 'true',
+				// failure otherwise
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(right.evaluate(bindings))) {
+					return BooleanLiteral.TRUE;
+				}
+				throw new ValueExprEvaluationException();
+			}
+			return BooleanLiteral.valueOf(QueryEvaluationUtil.getEffectiveBooleanValue(right.evaluate(bindings)));
+		}, left, right);
+	}
+
+	protected ValueExprEvaluator compile(Not node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator arg = compile(node.getArg());
+
+		return fold(
+				bindings -> BooleanLiteral.valueOf(!QueryEvaluationUtil.getEffectiveBooleanValue(arg.evaluate(bindings))),
+				arg);
+	}
+
+	protected ValueExprEvaluator compile(SameTerm node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator left = compile(node.getLeftArg());
+		ValueExprEvaluator right = compile(node.getRightArg());
+
+		return fold(bindings -> {
+			Value leftVal = left.evaluate(bindings);
+			Value rightVal = right.evaluate(bindings);
+			return BooleanLiteral.valueOf(leftVal != null && leftVal.equals(rightVal));
+		}, left, right);
+	}
+
+	protected ValueExprEvaluator compile(Compare node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator left = compile(node.getLeftArg());
+		ValueExprEvaluator right = compile(node.getRightArg());
+		CompareOp operator = node.getOperator();
+
+		ValueExprEvaluator result = null;
+		if (left instanceof Constant && right instanceof Constant) {
+			result = fold(bindings -> BooleanLiteral.valueOf(QueryEvaluationUtil.compare(left.evaluate(bindings),
+					right.evaluate(bindings), operator)), left, right);
+		}
+		else if (right instanceof Constant && ((Constant)right).value instanceof Literal) {
+			result = compareToConstant(left, (Literal)((Constant)right).value, operator, false);
+		}
+		else if (left instanceof Constant && ((Constant)left).value instanceof Literal) {
+			result = compareToConstant(right, (Literal)((Constant)left).value, operator, true);
+		}
+
+		if (result == null) {
+			result = bindings -> BooleanLiteral.valueOf(QueryEvaluationUtil.compare(left.evaluate(bindings),
+					right.evaluate(bindings), operator));
+		}
+		return result;
+	}
+
+	protected ValueExprEvaluator compile(MathExpr node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator left = compile(node.getLeftArg());
+		ValueExprEvaluator right = compile(node.getRightArg());
+		MathOp operator = node.getOperator();
+
+		return fold(bindings -> {
+			Value leftVal = left.evaluate(bindings);
+			Value rightVal = right.evaluate(bindings);
+
+			if (leftVal instanceof Literal && rightVal instanceof Literal) {
+				return MathUtil.compute((Literal)leftVal, (Literal)rightVal, operator);
+			}
+
+			throw new ValueExprEvaluationException("Both arguments must be numeric literals");
+		}, left, right);
+	}
+
+	protected ValueExprEvaluator compile(If node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator condition = compile(node.getCondition());
+		ValueExprEvaluator result = compile(node.getResult());
+		ValueExprEvaluator alternative = compile(node.getAlternative());
+
+		return bindings -> {
+			boolean conditionIsTrue;
+			try {
+				conditionIsTrue = QueryEvaluationUtil.getEffectiveBooleanValue(condition.evaluate(bindings));
+			}
+			catch (ValueExprEvaluationException e) {
+				// in case of type error, if-construction should result in empty
+				// binding.
+				return null;
+			}
+			return conditionIsTrue ? result.evaluate(bindings) : alternative.evaluate(bindings);
+		};
+	}
+
+	protected ValueExprEvaluator compile(Coalesce node)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator[] args = compile(node.getArguments());
+
+		return bindings -> {
+			for (ValueExprEvaluator arg : args) {
+				try {
+					Value result = arg.evaluate(bindings);
+					// return first result that does not produce an error on
+					// evaluation.
+					if (result != null) {
+						return result;
+					}
+					break;
+				}
+				catch (QueryEvaluationException e) {
+					continue;
+				}
+			}
+			throw new ValueExprEvaluationException("COALESCE arguments do not evaluate to a value: "
+					+ node.getSignature());
+		};
+	}
+
+	private ValueExprEvaluator[] compile(List<ValueExpr> exprs)
+		throws QueryEvaluationException
+	{
+		ValueExprEvaluator[] result = new ValueExprEvaluator[exprs.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = compile(exprs.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the evaluator with its value if all of its arguments are
+	 * constant and it evaluates without errors.
+	 */
+	private ValueExprEvaluator fold(ValueExprEvaluator evaluator, ValueExprEvaluator... args) {
+		for (ValueExprEvaluator arg : args) {
+			if (!(arg instanceof Constant)) {
+				return evaluator;
+			}
+		}
+
+		try {
+			Value value = evaluator.evaluate(EmptyBindingSet.getInstance());
+			return value == null ? evaluator : new Constant(value);
+		}
+		catch (QueryEvaluationException e) {
+			return evaluator;
+		}
+	}
+
+	/**
+	 * Creates a comparison of an operand against a constant numeric or string
+	 * literal. Operand values that have the same datatype as the constant are
+	 * compared directly against the pre-parsed constant, all other values go
+	 * through {@link QueryEvaluationUtil#compare(Value, Value, CompareOp)}.
+	 * 
+	 * @return The comparison, or <tt>null</tt> if the constant has no fast
+	 *         comparison path.
+	 */
+	private ValueExprEvaluator compareToConstant(ValueExprEvaluator operand, Literal constant,
+			CompareOp operator, boolean constantOnLeft)
+	{
+		IRI datatype = constant.getDatatype();
+		LiteralOrder order;
+
+		try {
+			if (Literals.isLanguageLiteral(constant)) {
+				return null;
+			}
+			else if (datatype.equals(XMLSchema.DOUBLE)) {
+				double constantValue = constant.doubleValue();
+				order = literal -> Double.compare(literal.doubleValue(), constantValue);
+			}
+			else if (datatype.equals(XMLSchema.FLOAT)) {
+				float constantValue = constant.floatValue();
+				order = literal -> Float.compare(literal.floatValue(), constantValue);
+			}
+			else if (datatype.equals(XMLSchema.DECIMAL)) {
+				BigDecimal constantValue = constant.decimalValue();
+				order = literal -> literal.decimalValue().compareTo(constantValue);
+			}
+			else if (XMLDatatypeUtil.isIntegerDatatype(datatype)) {
+				BigInteger constantValue = constant.integerValue();
+				order = literal -> literal.integerValue().compareTo(constantValue);
+			}
+			else if (datatype.equals(XMLSchema.STRING)) {
+				String constantValue = constant.getLabel();
+				order = literal -> {
+					if (Literals.isLanguageLiteral(literal)) {
+						throw new IllegalArgumentException();
+					}
+					return literal.getLabel().compareTo(constantValue);
+				};
+			}
+			else {
+				return null;
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// invalid constant, leave the error handling to the generic
+			// comparison
+			return null;
+		}
+
+		return bindings -> {
+			Value value = operand.evaluate(bindings);
+
+			if (value instanceof Literal && datatype.equals(((Literal)value).getDatatype())) {
+				try {
+					int result = Integer.signum(order.compare((Literal)value));
+					return BooleanLiteral.valueOf(matches(constantOnLeft ? -result : result, operator));
+				}
+				catch (IllegalArgumentException e) {
+					// not a valid value, the generic comparison determines
+					// whether this is an error
+				}
+			}
+
+			if (constantOnLeft) {
+				return BooleanLiteral.valueOf(QueryEvaluationUtil.compare(constant, value, operator));
+			}
+			else {
+				return BooleanLiteral.valueOf(QueryEvaluationUtil.compare(value, constant, operator));
+			}
+		};
+	}
+
+	private static boolean matches(int compareResult, CompareOp operator) {
+		switch (operator) {
+			case LT:
+				return compareResult < 0;
+			case LE:
+				return compareResult <= 0;
+			case EQ:
+				return compareResult == 0;
+			case NE:
+				return compareResult != 0;
+			case GE:
+				return compareResult >= 0;
+			case GT:
+				return compareResult > 0;
+			default:
+				throw new IllegalArgumentException("Unknown operator: " + operator);
+		}
+	}
+
+	/*----------------------*
+	 * Inner class Constant *
+	 *----------------------*/
+
+	/**
+	 * An evaluator that returns a fixed value.
+	 */
+	static class Constant implements ValueExprEvaluator {
+
+		final Value value;
+
+		public Constant(Value value) {
+			this.value = value;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings) {
+			return value;
+		}
+	}
+
+	/*--------------------------*
+	 * Inner class LiteralOrder *
+	 *--------------------------*/
+
+	/**
+	 * Compares a literal against a pre-parsed constant.
+	 */
+	private static interface LiteralOrder {
+
+		/**
+		 * @throws IllegalArgumentException
+		 *         If the literal's label is not a valid value of its datatype.
+		 */
+		public int compare(Literal literal);
+	}
+}
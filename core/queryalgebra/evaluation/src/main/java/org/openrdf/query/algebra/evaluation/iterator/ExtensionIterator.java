@@ -16,6 +16,9 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.ConvertingIteration;
 
@@ -26,43 +29,82 @@ import org.openrdf.query.algebra.AggregateOperator;
 import org.openrdf.query.algebra.Extension;
 import org.openrdf.query.algebra.ExtensionElem;
 import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.ArrayBindingSet;
+import org.openrdf.query.algebra.evaluation.BindingSetSchema;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluator;
 
 public class ExtensionIterator extends ConvertingIteration<BindingSet, BindingSet, QueryEvaluationException> {
 
-	private final Extension extension;
+	private final List<ExtensionElem> elements;
+
+	/**
+	 * The precompiled expressions of the {@link #elements}, <tt>null</tt> for
+	 * aggregates.
+	 */
+	private final ValueExprEvaluator[] evaluators;
+
+	/**
+	 * The names of the {@link #elements}.
+	 */
+	private final List<String> names;
+
+	/**
+	 * The schema of the last {@link ArrayBindingSet} that was extended.
+	 */
+	private BindingSetSchema sourceSchema;
 
-	private final EvaluationStrategy strategy;
+	/**
+	 * The extension of {@link #sourceSchema} with the element names.
+	 */
+	private BindingSetSchema targetSchema;
+
+	/**
+	 * The slots of the elements in {@link #targetSchema}.
+	 */
+	private int[] targetSlots;
 
 	public ExtensionIterator(Extension extension,
 			CloseableIteration<BindingSet, QueryEvaluationException> iter, EvaluationStrategy strategy)
 		throws QueryEvaluationException
 	{
 		super(iter);
-		this.extension = extension;
-		this.strategy = strategy;
+		this.elements = extension.getElements();
+		this.evaluators = new ValueExprEvaluator[elements.size()];
+		this.names = new ArrayList<String>(elements.size());
+
+		for (int i = 0; i < evaluators.length; i++) {
+			names.add(elements.get(i).getName());
+			ValueExpr expr = elements.get(i).getExpr();
+			if (!(expr instanceof AggregateOperator)) {
+				evaluators[i] = strategy.precompile(expr);
+			}
+		}
 	}
 
 	@Override
 	public BindingSet convert(BindingSet sourceBindings)
 		throws QueryEvaluationException
 	{
+		if (sourceBindings instanceof ArrayBindingSet) {
+			return convert((ArrayBindingSet)sourceBindings);
+		}
+
 		QueryBindingSet targetBindings = new QueryBindingSet(sourceBindings);
 
-		for (ExtensionElem extElem : extension.getElements()) {
-			ValueExpr expr = extElem.getExpr();
-			if (!(expr instanceof AggregateOperator)) {
+		for (int i = 0; i < evaluators.length; i++) {
+			if (evaluators[i] != null) {
 				try {
 					// we evaluate each extension element over the targetbindings, so that bindings from
 					// a previous extension element in this same extension can be used by other extension elements. 
 					// e.g. if a projection contains (?a + ?b as ?c) (?c * 2 as ?d)
-					Value targetValue = strategy.evaluate(extElem.getExpr(), targetBindings);
+					Value targetValue = evaluators[i].evaluate(targetBindings);
 
 					if (targetValue != null) {
 						// Potentially overwrites bindings from super
-						targetBindings.setBinding(extElem.getName(), targetValue);
+						targetBindings.setBinding(elements.get(i).getName(), targetValue);
 					}
 				}
 				catch (ValueExprEvaluationException e) {
@@ -74,4 +116,37 @@ public class ExtensionIterator extends ConvertingIteration<BindingSet, BindingSe
 
 		return targetBindings;
 	}
+
+	private BindingSet convert(ArrayBindingSet sourceBindings)
+		throws QueryEvaluationException
+	{
+		if (sourceBindings.getSchema() != sourceSchema) {
+			sourceSchema = sourceBindings.getSchema();
+			targetSchema = sourceSchema.extend(names);
+			targetSlots = new int[names.size()];
+			for (int i = 0; i < targetSlots.length; i++) {
+				targetSlots[i] = targetSchema.indexOf(names.get(i));
+			}
+		}
+
+		ArrayBindingSet targetBindings = new ArrayBindingSet(targetSchema, sourceBindings);
+
+		for (int i = 0; i < evaluators.length; i++) {
+			if (evaluators[i] != null) {
+				try {
+					Value targetValue = evaluators[i].evaluate(targetBindings);
+
+					if (targetValue != null) {
+						// Potentially overwrites bindings from super
+						targetBindings.setValue(targetSlots[i], targetValue);
+					}
+				}
+				catch (ValueExprEvaluationException e) {
+					// silently ignore type errors in extension arguments
+				}
+			}
+		}
+
+		return targetBindings;
+	}
 }
@@ -23,12 +23,18 @@ import info.aduna.iteration.FilterIteration;
 
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BNodeGenerator;
 import org.openrdf.query.algebra.Filter;
 import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.SubQueryValueOperator;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluator;
+import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.algebra.helpers.AbstractQueryModelVisitor;
 
 public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationException> {
 
@@ -36,9 +42,7 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 	 * Constants *
 	 *-----------*/
 
-	private final Filter filter;
-
-	private final EvaluationStrategy strategy;
+	private final ValueExprEvaluator condition;
 
 	/**
 	 * The set of binding names that are "in scope" for the filter. The filter
@@ -47,6 +51,13 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 	 */
 	private final Set<String> scopeBindingNames;
 
+	/**
+	 * Indicates whether the bindings need to be limited to
+	 * {@link #scopeBindingNames} before evaluating the condition. This is not
+	 * needed if the condition only reads variables that are in scope anyway.
+	 */
+	private final boolean limitScope;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -56,10 +67,14 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 		throws QueryEvaluationException
 	{
 		super(iter);
-		this.filter = filter;
-		this.strategy = strategy;
+		this.condition = strategy.precompile(filter.getCondition());
 		this.scopeBindingNames = filter.getBindingNames();
-		
+
+		// FIXME J1 scopeBindingNames should include bindings from superquery if
+		// the filter is part of a subquery. This is a workaround: we should fix
+		// the settings of scopeBindingNames, rather than skipping the limiting
+		// of bindings.
+		this.limitScope = !isPartOfSubQuery(filter) && !readsOnlyScopeBindings(filter.getCondition());
 	}
 
 	/*---------*
@@ -79,23 +94,51 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 			return isPartOfSubQuery(parent);
 		}
 	}
-	
+
+	/**
+	 * Checks whether the result of the condition only depends on the bindings
+	 * of variables that are in scope for the filter. Sub-queries and blank node
+	 * generators depend on the complete binding set.
+	 */
+	private boolean readsOnlyScopeBindings(ValueExpr condition) {
+		final boolean[] result = { true };
+
+		condition.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+			@Override
+			public void meet(Var node) {
+				if (!node.hasValue() && !scopeBindingNames.contains(node.getName())) {
+					result[0] = false;
+				}
+			}
+
+			@Override
+			protected void meetNode(QueryModelNode node) {
+				if (node instanceof SubQueryValueOperator || node instanceof BNodeGenerator) {
+					result[0] = false;
+				}
+				else {
+					super.meetNode(node);
+				}
+			}
+		});
+
+		return result[0];
+	}
+
 	@Override
 	protected boolean accept(BindingSet bindings)
 		throws QueryEvaluationException
 	{
 		try {
-			// Limit the bindings to the ones that are in scope for this filter
-			QueryBindingSet scopeBindings = new QueryBindingSet(bindings);
-			
-			// FIXME J1 scopeBindingNames should include bindings from superquery if the filter
-			// is part of a subquery. This is a workaround: we should fix the settings of scopeBindingNames, 
-			// rather than skipping the limiting of bindings.
-			if (!isPartOfSubQuery(filter)) {
+			if (limitScope) {
+				// Limit the bindings to the ones that are in scope for this filter
+				QueryBindingSet scopeBindings = new QueryBindingSet(bindings);
 				scopeBindings.retainAll(scopeBindingNames);
+				bindings = scopeBindings;
 			}
 
-			return strategy.isTrue(filter.getCondition(), scopeBindings);
+			return QueryEvaluationUtil.getEffectiveBooleanValue(condition.evaluate(bindings));
 		}
 		catch (ValueExprEvaluationException e) {
 			// failed to evaluate condition
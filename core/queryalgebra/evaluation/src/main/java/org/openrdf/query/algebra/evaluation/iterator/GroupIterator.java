@@ -16,25 +16,31 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collection;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
 
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.LookAheadIteration;
 import info.aduna.lang.ObjectUtil;
 
+import org.openrdf.model.IRI;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Value;
 import org.openrdf.model.datatypes.XMLDatatypeUtil;
@@ -58,11 +64,20 @@ import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetInputStream;
+import org.openrdf.query.algebra.evaluation.util.BindingSetOutputStream;
 import org.openrdf.query.algebra.evaluation.util.MathUtil;
 import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 import org.openrdf.query.impl.EmptyBindingSet;
 
 /**
+ * Groups the solutions of its argument and computes the aggregates of each
+ * group. If an iteration cache sync threshold is set, the number of groups
+ * that are aggregated in memory at any time is bounded by it: once the group
+ * table is full, solutions of groups that are not in the table are
+ * hash-partitioned to temporary files, which are aggregated one at a time
+ * after the groups in memory have been reported.
+ * 
  * @author David Huynh
  * @author Arjohn Kampman
  * @author Jeen Broekstra
@@ -74,6 +89,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The number of partitions that the solutions of groups that do not fit in
+	 * memory are spread over.
+	 */
+	private static final int PARTITION_COUNT = 32;
+
+	/**
+	 * The maximum number of times that solutions are repartitioned. Groups
+	 * that still do not fit in memory at this depth are aggregated in memory
+	 * regardless of the threshold.
+	 */
+	private static final int MAX_PARTITION_DEPTH = 3;
+
 	private final SimpleValueFactory vf = SimpleValueFactory.getInstance();
 
 	private final EvaluationStrategy strategy;
@@ -86,17 +114,18 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 	private final Object lock = new Object();
 
-	private final File tempFile;
-
-	private final DB db;
-
 	/**
-	 * Number of items cached before internal collections are synced to disk. If
-	 * set to 0, no disk-syncing is done and all internal caching is kept in
-	 * memory.
+	 * Maximum number of groups that are aggregated in memory before the
+	 * solutions of other groups are written to disk. If set to 0, no
+	 * disk-syncing is done and all groups are kept in memory.
 	 */
 	private final long iterationCacheSyncThreshold;
 
+	/**
+	 * Partitions with spilled solutions that still need to be aggregated.
+	 */
+	private final Deque<Partition> partitions = new ArrayDeque<Partition>();
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -115,20 +144,6 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		this.group = group;
 		this.parentBindings = parentBindings;
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
-
-		if (this.iterationCacheSyncThreshold > 0) {
-			try {
-				this.tempFile = File.createTempFile("group-eval", null);
-			}
-			catch (IOException e) {
-				throw new QueryEvaluationException("could not initialize temp db", e);
-			}
-			this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
-		}
-		else {
-			this.tempFile = null;
-			this.db = null;
-		}
 	}
 
 	/*---------*
@@ -142,25 +157,43 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		if (!initialized) {
 			synchronized (lock) {
 				if (!initialized) {
-					super.setIterator(createIterator());
+					CloseableIteration<BindingSet, QueryEvaluationException> iter;
+					iter = strategy.evaluate(group.getArg(), parentBindings);
+					super.setIterator(aggregate(iter, 0).iterator());
 					initialized = true;
 				}
 			}
 		}
-		return super.hasNext();
+
+		while (!super.hasNext()) {
+			Partition partition;
+			synchronized (lock) {
+				partition = partitions.poll();
+			}
+			if (partition == null || isClosed()) {
+				return false;
+			}
+
+			try {
+				super.setIterator(aggregate(partition.openInput(), partition.depth).iterator());
+			}
+			catch (IOException e) {
+				throw new QueryEvaluationException(e);
+			}
+			finally {
+				partition.delete();
+			}
+		}
+
+		return true;
 	}
 
 	@Override
 	public BindingSet next()
 		throws QueryEvaluationException
 	{
-		if (!initialized) {
-			synchronized (lock) {
-				if (!initialized) {
-					super.setIterator(createIterator());
-					initialized = true;
-				}
-			}
+		if (!hasNext()) {
+			throw new NoSuchElementException();
 		}
 		return super.next();
 	}
@@ -170,65 +203,34 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		throws QueryEvaluationException
 	{
 		super.handleClose();
-		if (this.db != null) {
-			this.db.close();
-		}
-	}
-
-	private <T> Set<T> createSet(String setName) {
-		if (db != null) {
-			return db.getHashSet(setName);
-		}
-		else {
-			return new HashSet<T>();
-		}
-	}
-
-	private Iterator<BindingSet> createIterator()
-		throws QueryEvaluationException
-	{
-		Collection<Entry> entries = buildEntries();
-		Set<BindingSet> bindingSets = createSet("bindingsets");
-
-		for (Entry entry : entries) {
-			QueryBindingSet sol = new QueryBindingSet(parentBindings);
-
-			for (String name : group.getGroupBindingNames()) {
-				BindingSet prototype = entry.getPrototype();
-				if (prototype != null) {
-					Value value = prototype.getValue(name);
-					if (value != null) {
-						// Potentially overwrites bindings from super
-						sol.setBinding(name, value);
-					}
-				}
+		synchronized (lock) {
+			for (Partition partition : partitions) {
+				partition.delete();
 			}
-
-			entry.bindSolution(sol);
-
-			bindingSets.add(sol);
+			partitions.clear();
 		}
-
-		return bindingSets.iterator();
 	}
 
-	private Collection<Entry> buildEntries()
+	/**
+	 * Aggregates the groups of the supplied solutions that fit in memory and
+	 * spills the solutions of the other groups to new partitions.
+	 * 
+	 * @return The solutions for the groups that have been aggregated.
+	 */
+	private List<BindingSet> aggregate(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			int depth)
 		throws QueryEvaluationException
 	{
-		CloseableIteration<BindingSet, QueryEvaluationException> iter;
-		iter = strategy.evaluate(group.getArg(), parentBindings);
+		Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+		Partition[] spilled = null;
 
 		try {
-			Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
-
-			if (!iter.hasNext()) {
+			if (depth == 0 && !iter.hasNext()) {
 				// no solutions, still need to process aggregates to produce a
 				// zero-result.
 				entries.put(new Key(EmptyBindingSet.getInstance()), new Entry(EmptyBindingSet.getInstance()));
 			}
 
-			// long count = 0;
-
 			while (iter.hasNext()) {
 				BindingSet sol;
 				try {
@@ -241,6 +243,16 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				Entry entry = entries.get(key);
 
 				if (entry == null) {
+					if (iterationCacheSyncThreshold > 0 && entries.size() >= iterationCacheSyncThreshold
+							&& depth < MAX_PARTITION_DEPTH)
+					{
+						if (spilled == null) {
+							spilled = new Partition[PARTITION_COUNT];
+						}
+						spill(spilled, sol, depth + 1);
+						continue;
+					}
+
 					entry = new Entry(sol);
 					entries.put(key, entry);
 				}
@@ -248,12 +260,81 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				entry.addSolution(sol);
 			}
 
-			return entries.values();
+			if (spilled != null) {
+				synchronized (lock) {
+					for (Partition partition : spilled) {
+						if (partition != null) {
+							partition.closeOutput();
+							partitions.add(partition);
+						}
+					}
+				}
+				spilled = null;
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
 		}
 		finally {
 			iter.close();
+
+			if (spilled != null) {
+				for (Partition partition : spilled) {
+					if (partition != null) {
+						partition.delete();
+					}
+				}
+			}
+		}
+
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>(entries.size());
+
+		for (Entry entry : entries.values()) {
+			QueryBindingSet sol = new QueryBindingSet(parentBindings);
+
+			for (String name : group.getGroupBindingNames()) {
+				BindingSet prototype = entry.getPrototype();
+				if (prototype != null) {
+					Value value = prototype.getValue(name);
+					if (value != null) {
+						// Potentially overwrites bindings from super
+						sol.setBinding(name, value);
+					}
+				}
+			}
+
+			entry.bindSolution(sol);
+
+			bindingSets.add(sol);
 		}
 
+		return bindingSets;
+	}
+
+	/**
+	 * Writes a solution to the partition of its group.
+	 */
+	private void spill(Partition[] spilled, BindingSet sol, int depth)
+		throws IOException
+	{
+		// the Key hash is order-independent, so group values are combined
+		// positionally here to spread groups over the partitions
+		int hash = depth;
+		for (String name : group.getGroupBindingNames()) {
+			Value value = sol.getValue(name);
+			hash = 31 * hash + (value == null ? 0 : value.hashCode());
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		int index = (hash & Integer.MAX_VALUE) % spilled.length;
+		if (spilled[index] == null) {
+			spilled[index] = new Partition(depth);
+		}
+		spilled[index].out.writeBindingSet(sol);
 	}
 
 	/**
@@ -310,7 +391,12 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 		private BindingSet prototype;
 
-		private Map<String, Aggregate> aggregates;
+		/**
+		 * The aggregates of this group, indexed like the group elements. An
+		 * element without a supported aggregate operator has a <tt>null</tt>
+		 * entry.
+		 */
+		private Aggregate[] aggregates;
 
 		public Entry(BindingSet prototype)
 			throws ValueExprEvaluationException, QueryEvaluationException
@@ -319,16 +405,14 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 		}
 
-		private Map<String, Aggregate> getAggregates()
+		private Aggregate[] getAggregates()
 			throws ValueExprEvaluationException, QueryEvaluationException
 		{
 			if (this.aggregates == null) {
-				this.aggregates = new LinkedHashMap<String, Aggregate>();
-				for (GroupElem ge : group.getGroupElements()) {
-					Aggregate create = create(ge.getOperator());
-					if (create != null) {
-						aggregates.put(ge.getName(), create);
-					}
+				List<GroupElem> elements = group.getGroupElements();
+				this.aggregates = new Aggregate[elements.size()];
+				for (int i = 0; i < aggregates.length; i++) {
+					aggregates[i] = create(elements.get(i).getOperator());
 				}
 			}
 			return this.aggregates;
@@ -341,20 +425,28 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		public void addSolution(BindingSet bindingSet)
 			throws QueryEvaluationException
 		{
-			for (Aggregate aggregate : getAggregates().values()) {
-				aggregate.processAggregate(bindingSet);
+			for (Aggregate aggregate : getAggregates()) {
+				if (aggregate != null) {
+					aggregate.processAggregate(bindingSet);
+				}
 			}
 		}
 
 		public void bindSolution(QueryBindingSet sol)
 			throws QueryEvaluationException
 		{
-			for (String name : getAggregates().keySet()) {
+			Aggregate[] aggregates = getAggregates();
+			List<GroupElem> elements = group.getGroupElements();
+
+			for (int i = 0; i < aggregates.length; i++) {
+				if (aggregates[i] == null) {
+					continue;
+				}
 				try {
-					Value value = getAggregates().get(name).getValue();
+					Value value = aggregates[i].getValue();
 					if (value != null) {
 						// Potentially overwrites bindings from super
-						sol.setBinding(name, value);
+						sol.setBinding(elements.get(i).getName(), value);
 					}
 				}
 				catch (ValueExprEvaluationException ex) {
@@ -404,7 +496,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			this.arg = operator.getArg();
 
 			if (operator.isDistinct()) {
-				distinctValues = createSet("distinct-values-" + this.hashCode());
+				distinctValues = new HashSet<Value>();
 			}
 			else {
 				distinctValues = null;
@@ -422,13 +514,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				return true;
 			}
 
-			final boolean result = distinctValues.add(value);
-			if (db != null && distinctValues.size() % iterationCacheSyncThreshold == 0) {
-				// write to disk every $iterationCacheSyncThreshold items
-				db.commit();
-			}
-
-			return result;
+			return distinctValues.add(value);
 		}
 
 		protected ValueExpr getArg() {
@@ -459,7 +545,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			// for a wildcarded count with a DISTINCT clause we need to filter on
 			// distinct bindingsets rather than individual values.
 			if (operator.isDistinct() && getArg() == null) {
-				distinctBindingSets = createSet("distinct-bs-" + this.hashCode());
+				distinctBindingSets = new HashSet<BindingSet>();
 			}
 			else {
 				distinctBindingSets = null;
@@ -489,13 +575,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				return true;
 			}
 
-			final boolean result = distinctBindingSets.add(s);
-			if (db != null && distinctBindingSets.size() % iterationCacheSyncThreshold == 0) {
-				// write to disk every
-				db.commit();
-			}
-
-			return result;
+			return distinctBindingSets.add(s);
 		}
 
 		@Override
@@ -568,7 +648,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 	private class SumAggregate extends Aggregate {
 
-		private Literal sum = vf.createLiteral("0", XMLSchema.INTEGER);
+		private final NumericSum sum = new NumericSum();
 
 		private ValueExprEvaluationException typeError = null;
 
@@ -592,7 +672,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 					if (nextLiteral.getDatatype() != null
 							&& XMLDatatypeUtil.isNumericDatatype(nextLiteral.getDatatype()))
 					{
-						sum = MathUtil.compute(sum, nextLiteral, MathOp.PLUS);
+						sum.add(nextLiteral);
 					}
 					else {
 						typeError = new ValueExprEvaluationException("not a number: " + v);
@@ -612,7 +692,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				throw typeError;
 			}
 
-			return sum;
+			return sum.getValue();
 		}
 	}
 
@@ -620,7 +700,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 		private long count = 0;
 
-		private Literal sum = vf.createLiteral("0", XMLSchema.INTEGER);
+		private final NumericSum sum = new NumericSum();
 
 		private ValueExprEvaluationException typeError = null;
 
@@ -646,7 +726,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 					if (nextLiteral.getDatatype() != null
 							&& XMLDatatypeUtil.isNumericDatatype(nextLiteral.getDatatype()))
 					{
-						sum = MathUtil.compute(sum, nextLiteral, MathOp.PLUS);
+						sum.add(nextLiteral);
 					}
 					else {
 						typeError = new ValueExprEvaluationException("not a number: " + v);
@@ -677,7 +757,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 
 			Literal sizeLit = vf.createLiteral(count);
-			return MathUtil.compute(sum, sizeLit, MathOp.DIVIDE);
+			return MathUtil.compute(sum.getValue(), sizeLit, MathOp.DIVIDE);
 		}
 	}
 
@@ -748,4 +828,144 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			return vf.createLiteral(concatenated.substring(0, len));
 		}
 	}
+
+	/**
+	 * Adds up numeric literals with the same result as repeatedly applying
+	 * {@link MathUtil#compute(Literal, Literal, MathOp)}, starting from an
+	 * xsd:integer zero. Sums of integers and sums of doubles are kept in a
+	 * primitive accumulator; other sums (or a long overflow) fall back to
+	 * literal arithmetic.
+	 */
+	private class NumericSum {
+
+		private boolean isDouble = false;
+
+		private long longSum = 0;
+
+		private double doubleSum = 0;
+
+		private Literal sum = null;
+
+		public void add(Literal literal)
+			throws ValueExprEvaluationException
+		{
+			if (sum == null) {
+				IRI datatype = literal.getDatatype();
+				try {
+					if (isDouble) {
+						doubleSum += literal.doubleValue();
+						return;
+					}
+					else if (datatype.equals(XMLSchema.DOUBLE)) {
+						isDouble = true;
+						doubleSum = longSum + literal.doubleValue();
+						return;
+					}
+					else if (!datatype.equals(XMLSchema.FLOAT) && !datatype.equals(XMLSchema.DECIMAL)) {
+						longSum = Math.addExact(longSum, literal.longValue());
+						return;
+					}
+				}
+				catch (NumberFormatException e) {
+					// let the literal arithmetic report the error
+				}
+				catch (ArithmeticException e) {
+					// overflow, continue with literal arithmetic
+				}
+				sum = getValue();
+			}
+			sum = MathUtil.compute(sum, literal, MathOp.PLUS);
+		}
+
+		public Literal getValue() {
+			if (sum != null) {
+				return sum;
+			}
+			else if (isDouble) {
+				return vf.createLiteral(doubleSum);
+			}
+			else {
+				return vf.createLiteral(BigInteger.valueOf(longSum));
+			}
+		}
+	}
+
+	/**
+	 * A temporary file with the solutions of the groups that hash to the same
+	 * partition.
+	 */
+	private static final class Partition {
+
+		final int depth;
+
+		final File file;
+
+		BindingSetOutputStream out;
+
+		Partition(int depth)
+			throws IOException
+		{
+			this.depth = depth;
+			file = File.createTempFile("group-eval", null);
+			out = new BindingSetOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		}
+
+		void closeOutput()
+			throws IOException
+		{
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		}
+
+		CloseableIteration<BindingSet, QueryEvaluationException> openInput()
+			throws IOException
+		{
+			final BindingSetInputStream in = new BindingSetInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+
+			return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+
+				@Override
+				protected BindingSet getNextElement()
+					throws QueryEvaluationException
+				{
+					try {
+						return in.readBindingSet();
+					}
+					catch (IOException e) {
+						throw new QueryEvaluationException(e);
+					}
+				}
+
+				@Override
+				protected void handleClose()
+					throws QueryEvaluationException
+				{
+					try {
+						super.handleClose();
+					}
+					finally {
+						try {
+							in.close();
+						}
+						catch (IOException e) {
+							throw new QueryEvaluationException(e);
+						}
+					}
+				}
+			};
+		}
+
+		void delete() {
+			try {
+				closeOutput();
+			}
+			catch (IOException e) {
+				// ignore, the file is deleted anyway
+			}
+			file.delete();
+		}
+	}
 }
@@ -16,16 +16,26 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.EmptyIteration;
 import info.aduna.iteration.LookAheadIteration;
 import info.aduna.iterator.UnionIterator;
 
@@ -35,16 +45,40 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.Join;
 import org.openrdf.query.algebra.LeftJoin;
 import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.ArrayBindingSet;
+import org.openrdf.query.algebra.evaluation.BindingSetSchema;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.BindingSetInputStream;
+import org.openrdf.query.algebra.evaluation.util.BindingSetOutputStream;
 import org.openrdf.query.impl.EmptyBindingSet;
 
 /**
  * Generic hash join implementation suitable for use by Sail implementations.
+ * If the hash table would exceed the iteration cache sync threshold, both
+ * arguments are hash-partitioned to temporary files and the partitions are
+ * joined one at a time (a grace hash join). Partitions that are still too
+ * large are partitioned again, up to a fixed depth.
+ * 
  * @author MJAHale
  */
 public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of partitions that the arguments are split into when the hash
+	 * table would grow too large.
+	 */
+	private static final int PARTITION_COUNT = 32;
+
+	/**
+	 * The maximum number of times that a partition is split.
+	 */
+	private static final int MAX_PARTITION_DEPTH = 3;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -66,7 +100,39 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	private Iterator<BindingSet> hashTableValues;
 
 	private final boolean leftJoin;
-	
+
+	/**
+	 * Number of binding sets that are kept in the in-memory hash table before
+	 * the arguments are partitioned to disk. If set to 0, the join is always
+	 * performed in memory.
+	 */
+	private final long iterationCacheSyncThreshold;
+
+	/**
+	 * The partitions that have not been joined yet, or <tt>null</tt> if the
+	 * join is performed in memory.
+	 */
+	private Deque<Partition> partitions;
+
+	private Partition currentPartition;
+
+	/**
+	 * The schemas of the last pair of {@link ArrayBindingSet}s that were
+	 * joined.
+	 */
+	private BindingSetSchema leftSchema, rightSchema;
+
+	/**
+	 * The schema of the joined binding sets of {@link #leftSchema} and
+	 * {@link #rightSchema}.
+	 */
+	private BindingSetSchema joinedSchema;
+
+	/**
+	 * The slots in {@link #joinedSchema} by slot in {@link #rightSchema}.
+	 */
+	private int[] rightSlots;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -77,6 +143,13 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false);
 	}
 
+	public HashJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false, iterationCacheSyncThreshold);
+	}
+
 	public HashJoinIteration(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings)
 			throws QueryEvaluationException
 	{
@@ -86,14 +159,43 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right, BindingSet bindings, boolean leftJoin)
 			throws QueryEvaluationException
 	{
-		leftIter = strategy.evaluate(left, bindings);
-		rightIter = strategy.evaluate(right, bindings);
+		this(strategy, left, right, bindings, leftJoin, 0);
+	}
+
+	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			BindingSet bindings, boolean leftJoin, long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
+	{
+		this(strategy.evaluate(left, bindings), left.getBindingNames(), strategy.evaluate(right, bindings),
+				right.getBindingNames(), leftJoin, iterationCacheSyncThreshold);
+	}
+
+	/**
+	 * Creates a hash join of the results of two arguments that have already
+	 * been evaluated, for instance in parallel.
+	 */
+	public HashJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			Set<String> leftBindingNames, CloseableIteration<BindingSet, QueryEvaluationException> rightIter,
+			Set<String> rightBindingNames, boolean leftJoin)
+		throws QueryEvaluationException
+	{
+		this(leftIter, leftBindingNames, rightIter, rightBindingNames, leftJoin, 0);
+	}
+
+	public HashJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			Set<String> leftBindingNames, CloseableIteration<BindingSet, QueryEvaluationException> rightIter,
+			Set<String> rightBindingNames, boolean leftJoin, long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
+	{
+		this.leftIter = leftIter;
+		this.rightIter = rightIter;
 
-		Set<String> joinAttributeNames = left.getBindingNames();
-		joinAttributeNames.retainAll(right.getBindingNames());
+		Set<String> joinAttributeNames = new HashSet<String>(leftBindingNames);
+		joinAttributeNames.retainAll(rightBindingNames);
 		joinAttributes = joinAttributeNames.toArray(new String[joinAttributeNames.size()]);
 
 		this.leftJoin = leftJoin;
+		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
 
 	/*---------*
@@ -118,6 +220,9 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 				if (restIter.hasNext()) {
 					currentScanElem = restIter.next();
 				}
+				else if (partitions != null && nextPartition()) {
+					continue;
+				}
 				else {
 					// no more elements available
 					return null;
@@ -128,7 +233,13 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 				// the empty bindingset should be merged with all bindingset in the
 				// hash table
 				hashTableValues = new UnionIterator<BindingSet>(hashTable.values());
-				if(!hashTableValues.hasNext()) {
+				// the empty binding set is written to all partitions, which contain
+				// at least one binding set in total
+				if (!hashTableValues.hasNext() && leftJoin && partitions == null) {
+					closeHashValue(hashTableValues);
+					hashTableValues = Collections.singletonList(EmptyBindingSet.getInstance()).iterator();
+				}
+				else if(!hashTableValues.hasNext()) {
 					currentScanElem = null;
 					closeHashValue(hashTableValues);
 					hashTableValues = null;
@@ -153,11 +264,46 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 
 		BindingSet nextHashTableValue = hashTableValues.next();
 
-		QueryBindingSet result = new QueryBindingSet(currentScanElem);
+		BindingSet result = join(currentScanElem, nextHashTableValue);
 
-		for (String name : nextHashTableValue.getBindingNames()) {
+		if (!hashTableValues.hasNext()) {
+			// we've exhausted the current scanlist entry
+			currentScanElem = null;
+			closeHashValue(hashTableValues);
+			hashTableValues = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Merges the bindings of a hash table entry into a copy of the scanned
+	 * bindings.
+	 */
+	private BindingSet join(BindingSet scanElem, BindingSet hashTableValue) {
+		if (scanElem instanceof ArrayBindingSet && hashTableValue instanceof ArrayBindingSet) {
+			ArrayBindingSet left = (ArrayBindingSet)scanElem;
+			ArrayBindingSet right = (ArrayBindingSet)hashTableValue;
+
+			if (left.getSchema() != leftSchema || right.getSchema() != rightSchema) {
+				resolveJoinedSchema(left.getSchema(), right.getSchema());
+			}
+
+			ArrayBindingSet result = new ArrayBindingSet(joinedSchema, left);
+			for (int i = 0; i < rightSlots.length; i++) {
+				Value v = right.getValue(i);
+				if (v != null && result.getValue(rightSlots[i]) == null) {
+					result.setValue(rightSlots[i], v);
+				}
+			}
+			return result;
+		}
+
+		QueryBindingSet result = new QueryBindingSet(scanElem);
+
+		for (String name : hashTableValue.getBindingNames()) {
 			if (!result.hasBinding(name)) {
-				Value v = nextHashTableValue.getValue(name);
+				Value v = hashTableValue.getValue(name);
 				if(v != null)
 				{
 					result.addBinding(name, v);
@@ -165,14 +311,22 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			}
 		}
 
-		if (!hashTableValues.hasNext()) {
-			// we've exhausted the current scanlist entry
-			currentScanElem = null;
-			closeHashValue(hashTableValues);
-			hashTableValues = null;
+		return result;
+	}
+
+	private void resolveJoinedSchema(BindingSetSchema leftSchema, BindingSetSchema rightSchema) {
+		List<String> rightNames = new ArrayList<String>(rightSchema.size());
+		for (int i = 0; i < rightSchema.size(); i++) {
+			rightNames.add(rightSchema.getName(i));
 		}
 
-		return result;
+		this.leftSchema = leftSchema;
+		this.rightSchema = rightSchema;
+		this.joinedSchema = leftSchema.extend(rightNames);
+		this.rightSlots = new int[rightNames.size()];
+		for (int i = 0; i < rightSlots.length; i++) {
+			rightSlots[i] = joinedSchema.indexOf(rightNames.get(i));
+		}
 	}
 
 	@Override
@@ -199,6 +353,13 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			disposeHashTable(hashTable);
 			hashTable = null;
 		}
+		if (partitions != null) {
+			closeCurrentPartition();
+			for (Partition partition : partitions) {
+				partition.delete();
+			}
+			partitions.clear();
+		}
 	}
 
 	private void setupHashTable()
@@ -212,6 +373,10 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = makeIterationCache(leftIter);
 
 			while (leftIter.hasNext() && rightIter.hasNext()) {
+				if (isPartitioningRequired(rightArgResults.size())) {
+					partition(leftArgResults, rightArgResults);
+					return;
+				}
 				add(leftArgResults, leftIter.next());
 				add(rightArgResults, rightIter.next());
 			}
@@ -221,6 +386,10 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = Collections.emptyList();
 
 			while (rightIter.hasNext()) {
+				if (isPartitioningRequired(rightArgResults.size())) {
+					partition(leftArgResults, rightArgResults);
+					return;
+				}
 				add(rightArgResults, rightIter.next());
 			}
 		}
@@ -242,6 +411,12 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		leftArgResults = null;
 		rightArgResults = null;
 
+		buildHashTable(smallestResult);
+	}
+
+	private void buildHashTable(Collection<BindingSet> smallestResult)
+		throws QueryEvaluationException
+	{
 		// create the hash table for our join
 		// hash table will never be any bigger than smallestResult.size()
 		hashTable = makeHashTable(smallestResult.size());
@@ -264,6 +439,205 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 
 	}
 
+	private boolean isPartitioningRequired(int cacheSize) {
+		// binding sets can only be partitioned on their join attributes
+		return iterationCacheSyncThreshold > 0 && cacheSize >= iterationCacheSyncThreshold
+				&& joinAttributes.length > 0;
+	}
+
+	/**
+	 * Partitions the cached and the remaining binding sets of both arguments to
+	 * disk. The right argument is used to build the hash tables of the
+	 * partitions.
+	 */
+	private void partition(Collection<BindingSet> leftArgResults, Collection<BindingSet> rightArgResults)
+		throws QueryEvaluationException
+	{
+		partitions = new ArrayDeque<Partition>(PARTITION_COUNT);
+		Partition[] parts = createPartitions(0);
+		try {
+			for (BindingSet b : rightArgResults) {
+				writeBuild(parts, b);
+			}
+			disposeCache(rightArgResults.iterator());
+			rightArgResults.clear();
+			while (rightIter.hasNext()) {
+				writeBuild(parts, rightIter.next());
+			}
+
+			for (BindingSet b : leftArgResults) {
+				writeProbe(parts, b);
+			}
+			disposeCache(leftArgResults.iterator());
+			leftArgResults.clear();
+			while (leftIter.hasNext()) {
+				writeProbe(parts, leftIter.next());
+			}
+
+			for (Partition partition : parts) {
+				partition.closeOutput();
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		scanList = Collections.<BindingSet> emptyList().iterator();
+		restIter = new EmptyIteration<BindingSet, QueryEvaluationException>();
+		hashTable = makeHashTable(0);
+	}
+
+	private Partition[] createPartitions(int depth)
+		throws QueryEvaluationException
+	{
+		Partition[] parts = new Partition[PARTITION_COUNT];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				parts[i] = new Partition(depth);
+				// register immediately, so that the files are deleted on close
+				partitions.addFirst(parts[i]);
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+		return parts;
+	}
+
+	private void writeBuild(Partition[] parts, BindingSet b)
+		throws IOException
+	{
+		Partition partition = parts[getPartitionIndex(b, parts[0].depth)];
+		partition.buildOut.writeBindingSet(b);
+		partition.buildCount++;
+	}
+
+	private void writeProbe(Partition[] parts, BindingSet b)
+		throws IOException
+	{
+		if (b instanceof EmptyBindingSet) {
+			// joins with the binding sets of every partition
+			for (Partition partition : parts) {
+				partition.probeOut.writeBindingSet(b);
+				partition.probeCount++;
+			}
+		}
+		else {
+			Partition partition = parts[getPartitionIndex(b, parts[0].depth)];
+			partition.probeOut.writeBindingSet(b);
+			partition.probeCount++;
+		}
+	}
+
+	/**
+	 * Determines the partition of a binding set, using a different hash
+	 * function for every level of partitioning.
+	 */
+	private int getPartitionIndex(BindingSet b, int depth) {
+		int h = BindingSetHashKey.create(joinAttributes, b).hashCode() + depth * 0x9E3779B9;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return (h & Integer.MAX_VALUE) % PARTITION_COUNT;
+	}
+
+	/**
+	 * Loads the hash table of the next partition that can produce results.
+	 * 
+	 * @return <tt>false</tt> if all partitions have been joined.
+	 */
+	private boolean nextPartition()
+		throws QueryEvaluationException
+	{
+		closeCurrentPartition();
+		try {
+			while (!partitions.isEmpty()) {
+				Partition partition = partitions.removeFirst();
+				if (partition.probeCount == 0 || partition.buildCount == 0 && !leftJoin) {
+					// can not produce any results
+					partition.delete();
+				}
+				else if (partition.buildCount > iterationCacheSyncThreshold
+						&& partition.depth < MAX_PARTITION_DEPTH)
+				{
+					repartition(partition);
+				}
+				else {
+					currentPartition = partition;
+					List<BindingSet> buildResults = new ArrayList<BindingSet>((int)partition.buildCount);
+					PartitionIteration buildIter = new PartitionIteration(partition.buildFile);
+					try {
+						while (buildIter.hasNext()) {
+							buildResults.add(buildIter.next());
+						}
+					}
+					finally {
+						buildIter.close();
+					}
+					disposeHashTable(hashTable);
+					buildHashTable(buildResults);
+					restIter = new PartitionIteration(partition.probeFile);
+					return true;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+		return false;
+	}
+
+	/**
+	 * Splits a partition whose build side is still too large to fit the hash
+	 * table.
+	 */
+	private void repartition(Partition partition)
+		throws IOException, QueryEvaluationException
+	{
+		Partition[] parts = createPartitions(partition.depth + 1);
+
+		PartitionIteration iter = new PartitionIteration(partition.buildFile);
+		try {
+			while (iter.hasNext()) {
+				writeBuild(parts, iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		iter = new PartitionIteration(partition.probeFile);
+		try {
+			while (iter.hasNext()) {
+				writeProbe(parts, iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		for (Partition part : parts) {
+			part.closeOutput();
+		}
+		partition.delete();
+	}
+
+	private void closeCurrentPartition()
+		throws QueryEvaluationException
+	{
+		if (currentPartition != null) {
+			try {
+				restIter.close();
+			}
+			finally {
+				currentPartition.delete();
+				currentPartition = null;
+			}
+		}
+	}
+
 	protected void putHashTableEntry(Map<BindingSetHashKey, List<BindingSet>> hashTable, BindingSetHashKey hashKey,
 			List<BindingSet> hashValue, boolean newEntry)
 		throws QueryEvaluationException
@@ -292,7 +666,11 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	 */
 	protected Map<BindingSetHashKey, List<BindingSet>> makeHashTable(int initialSize) {
 		Map<BindingSetHashKey, List<BindingSet>> hashTable;
-		if(joinAttributes.length > 0)
+		if (initialSize == 0) {
+			// nothing will be put in the hash table
+			hashTable = Collections.emptyMap();
+		}
+		else if(joinAttributes.length > 0)
 		{
 			// we should probably adjust for the load factor
 			// but we are only one rehash away and this might save a bit of memory
@@ -301,7 +679,7 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		}
 		else
 		{
-			List<BindingSet> l = (initialSize > 0) ? new ArrayList<BindingSet>(initialSize) : null;
+			List<BindingSet> l = new ArrayList<BindingSet>(initialSize);
 			hashTable = Collections.<BindingSetHashKey,List<BindingSet>>singletonMap(BindingSetHashKey.EMPTY, l);
 		}
 		return hashTable;
@@ -357,4 +735,110 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	{
 		col.addAll(values);
 	}
+
+	/*-----------------------*
+	 * Inner class Partition *
+	 *-----------------------*/
+
+	/**
+	 * A pair of temporary files with the binding sets of both arguments that
+	 * hash to the same partition.
+	 */
+	private static final class Partition {
+
+		final int depth;
+
+		final File buildFile;
+
+		final File probeFile;
+
+		BindingSetOutputStream buildOut;
+
+		BindingSetOutputStream probeOut;
+
+		long buildCount;
+
+		long probeCount;
+
+		Partition(int depth)
+			throws IOException
+		{
+			this.depth = depth;
+			buildFile = File.createTempFile("hash-join-build", null);
+			probeFile = File.createTempFile("hash-join-probe", null);
+			buildOut = new BindingSetOutputStream(new BufferedOutputStream(new FileOutputStream(buildFile)));
+			probeOut = new BindingSetOutputStream(new BufferedOutputStream(new FileOutputStream(probeFile)));
+		}
+
+		void closeOutput()
+			throws IOException
+		{
+			if (buildOut != null) {
+				buildOut.close();
+				buildOut = null;
+			}
+			if (probeOut != null) {
+				probeOut.close();
+				probeOut = null;
+			}
+		}
+
+		void delete() {
+			try {
+				closeOutput();
+			}
+			catch (IOException e) {
+				// ignore, the files are deleted anyway
+			}
+			buildFile.delete();
+			probeFile.delete();
+		}
+	}
+
+	/*--------------------------------*
+	 * Inner class PartitionIteration *
+	 *--------------------------------*/
+
+	/**
+	 * Reads the binding sets of a partition file.
+	 */
+	private static final class PartitionIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final BindingSetInputStream in;
+
+		PartitionIteration(File file)
+			throws IOException
+		{
+			in = new BindingSetInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			try {
+				return in.readBindingSet();
+			}
+			catch (IOException e) {
+				throw new QueryEvaluationException(e);
+			}
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				try {
+					in.close();
+				}
+				catch (IOException e) {
+					throw new QueryEvaluationException(e);
+				}
+			}
+		}
+	}
 }
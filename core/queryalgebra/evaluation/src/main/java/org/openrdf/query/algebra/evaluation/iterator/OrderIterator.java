@@ -16,21 +16,24 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.IOError;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.TreeMap;
 
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.DelayedIteration;
 import info.aduna.iteration.Iteration;
@@ -38,15 +41,33 @@ import info.aduna.iteration.LookAheadIteration;
 
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetInputStream;
+import org.openrdf.query.algebra.evaluation.util.BindingSetOutputStream;
 
 /**
- * Sorts the input and optionally applies limit and distinct.
+ * Sorts the input and optionally applies limit and distinct. Small inputs and
+ * top-K selections (a limit without distinct) are sorted in memory, the latter
+ * using a heap that is bounded by the limit. If an iteration sync threshold is
+ * set and the result may exceed it, an external merge sort is used: the input
+ * is cut into sorted runs of at most that many binding sets, which are written
+ * to temporary files and merged on the fly.
  * 
  * @author James Leigh
  * @author Arjohn Kampman
  */
 public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationException> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of runs that are merged in a single pass. If the
+	 * external sort produces more runs, these are first merged into larger
+	 * runs.
+	 */
+	private static final int MAX_MERGE_WIDTH = 64;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -59,10 +80,6 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 
 	private final boolean distinct;
 
-	private final File tempFile;
-
-	private final DB db;
-
 	/**
 	 * Number of items cached before internal collection is synced to disk. If
 	 * set to 0, no disk-syncing is done and all internal caching is kept in
@@ -70,6 +87,11 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	 */
 	private final long iterationSyncThreshold;
 
+	/**
+	 * The temporary files with the sorted runs of an external sort.
+	 */
+	private final List<File> runFiles = new ArrayList<File>();
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -94,86 +116,126 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		this.limit = limit;
 		this.distinct = distinct;
 		this.iterationSyncThreshold = iterationSyncThreshold;
+	}
 
-		if (iterationSyncThreshold > 0) {
-			try {
-				this.tempFile = File.createTempFile("order-eval", null);
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	protected NavigableMap<BindingSet, Integer> makeOrderedMap() {
+		return new TreeMap<BindingSet, Integer>(comparator);
+	}
+
+	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+		throws QueryEvaluationException
+	{
+		try {
+			if (iterationSyncThreshold > 0 && limit > iterationSyncThreshold) {
+				return createExternalSortIteration();
 			}
-			catch (IOException e) {
-				throw new IOError(e);
+			else if (!distinct && limit < Integer.MAX_VALUE) {
+				return createTopKIteration();
+			}
+			else if (!distinct) {
+				return createSortedListIteration();
+			}
+			else {
+				return createOrderedMapIteration();
 			}
-			this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
 		}
-		else {
-			this.tempFile = null;
-			this.db = null;
+		finally {
+			iter.close();
 		}
 	}
 
-	/*---------*
-	 * Methods *
-	 *---------*/
+	/**
+	 * Sorts the complete input in memory.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createSortedListIteration()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> list = new ArrayList<BindingSet>();
 
-	protected NavigableMap<BindingSet, Integer> makeOrderedMap() {
-		if (db == null) {
-			// no disk-syncing - we use a simple in-memory TreeMap instead.
-			return new TreeMap<BindingSet, Integer>(comparator);
+		while (iter.hasNext()) {
+			add(iter.next(), list);
 		}
-		else {
-			return db.createTreeMap("iteration").comparator(comparator).makeOrGet();
+
+		Collections.sort(list, comparator);
+
+		return new SortedIteration(list.iterator());
+	}
+
+	/**
+	 * Selects the first <tt>limit</tt> binding sets using a heap that has the
+	 * binding set that is currently sorted last at its head.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createTopKIteration()
+		throws QueryEvaluationException
+	{
+		PriorityQueue<BindingSet> heap = new PriorityQueue<BindingSet>(11,
+				Collections.reverseOrder(comparator));
+
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
+
+			if (heap.size() < limit) {
+				add(next, heap);
+			}
+			else if (!heap.isEmpty() && comparator.compare(next, heap.peek()) < 0) {
+				add(next, heap);
+				removeLast(heap);
+			}
 		}
+
+		List<BindingSet> list = new ArrayList<BindingSet>(heap);
+		Collections.sort(list, comparator);
+
+		return new SortedIteration(list.iterator());
 	}
 
-	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+	/**
+	 * Sorts the input in memory, counting duplicates and optionally applying
+	 * limit and distinct.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createOrderedMapIteration()
 		throws QueryEvaluationException
 	{
 		final NavigableMap<BindingSet, Integer> map = makeOrderedMap();
 		long size = 0;
 
-		try {
-			while (iter.hasNext()) {
-				BindingSet next = iter.next();
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
 
-				// Add this binding set if the limit hasn't been reached yet, or if
-				// it is sorted before the current lowest value
-				if (size < limit || comparator.compare(next, map.lastKey()) < 0) {
+			// Add this binding set if the limit hasn't been reached yet, or if
+			// it is sorted before the current lowest value
+			if (size < limit || !map.isEmpty() && comparator.compare(next, map.lastKey()) < 0) {
 
-					Integer count = map.get(next);
+				Integer count = map.get(next);
 
-					if (count == null) {
-						put(map, next, 1);
-						size++;
-					}
-					else if (!distinct) {
-						put(map, next, ++count);
-						size++;
-					}
+				if (count == null) {
+					put(map, next, 1);
+					size++;
+				}
+				else if (!distinct) {
+					put(map, next, ++count);
+					size++;
+				}
 
-					if (db != null && size % iterationSyncThreshold == 0L) {
-						// sync collection to disk every X new entries (where X is a
-						// multiple of the cache size)
-						db.commit();
-					}
+				if (size > limit) {
+					// Discard binding set that is currently sorted last
+					BindingSet lastKey = map.lastKey();
 
-					if (size > limit) {
-						// Discard binding set that is currently sorted last
-						BindingSet lastKey = map.lastKey();
-
-						Integer lastCount = map.get(lastKey);
-						if (lastCount > 1) {
-							put(map, lastKey, --lastCount);
-						}
-						else {
-							removeLast(map.navigableKeySet());
-						}
-						size--;
+					Integer lastCount = map.get(lastKey);
+					if (lastCount > 1) {
+						put(map, lastKey, --lastCount);
 					}
+					else {
+						removeLast(map.navigableKeySet());
+					}
+					size--;
 				}
 			}
 		}
-		finally {
-			iter.close();
-		}
 
 		return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
 
@@ -200,6 +262,82 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		};
 	}
 
+	/**
+	 * Cuts the input into sorted runs of at most
+	 * <tt>iterationSyncThreshold</tt> binding sets. If the input fits in a
+	 * single run it is returned directly, otherwise the runs are written to
+	 * disk and merged.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createExternalSortIteration()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> buffer = new ArrayList<BindingSet>();
+
+		try {
+			while (iter.hasNext()) {
+				add(iter.next(), buffer);
+
+				if (buffer.size() >= iterationSyncThreshold) {
+					Collections.sort(buffer, comparator);
+					writeRun(new SortedIteration(buffer.iterator()));
+					buffer.clear();
+				}
+			}
+
+			Collections.sort(buffer, comparator);
+
+			if (runFiles.isEmpty()) {
+				return new SortedIteration(buffer.iterator());
+			}
+
+			if (!buffer.isEmpty()) {
+				writeRun(new SortedIteration(buffer.iterator()));
+				buffer.clear();
+			}
+
+			// Merge the oldest runs into larger ones until a single pass suffices
+			while (runFiles.size() > MAX_MERGE_WIDTH) {
+				List<File> files = new ArrayList<File>(runFiles.subList(0, MAX_MERGE_WIDTH));
+				runFiles.subList(0, MAX_MERGE_WIDTH).clear();
+
+				MergeIteration merge = new MergeIteration(files);
+				try {
+					writeRun(merge);
+				}
+				finally {
+					merge.close();
+				}
+			}
+
+			return new MergeIteration(new ArrayList<File>(runFiles));
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Writes a sorted sequence of binding sets to a new run file, applying
+	 * limit and distinct on the way.
+	 */
+	private void writeRun(Iteration<BindingSet, QueryEvaluationException> sorted)
+		throws IOException, QueryEvaluationException
+	{
+		File file = File.createTempFile("order-eval", null);
+		runFiles.add(file);
+
+		BindingSetOutputStream out = new BindingSetOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			while (sorted.hasNext()) {
+				out.writeBindingSet(sorted.next());
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
 	protected void removeLast(Collection<BindingSet> lastResults) {
 		if (lastResults instanceof LinkedList<?>) {
 			((LinkedList<BindingSet>)lastResults).removeLast();
@@ -207,6 +345,10 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		else if (lastResults instanceof List<?>) {
 			((List<BindingSet>)lastResults).remove(lastResults.size() - 1);
 		}
+		else if (lastResults instanceof PriorityQueue<?>) {
+			// the heap of a top-K selection is in reverse order
+			((Queue<BindingSet>)lastResults).remove();
+		}
 		else {
 			Iterator<BindingSet> iter = lastResults.iterator();
 			while (iter.hasNext()) {
@@ -239,10 +381,196 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	protected void handleClose()
 		throws QueryEvaluationException
 	{
-		iter.close();
-		if (db != null) {
-			this.db.close();
+		try {
+			iter.close();
+			super.handleClose();
+		}
+		finally {
+			for (File file : runFiles) {
+				file.delete();
+			}
+			runFiles.clear();
+		}
+	}
+
+	/*-----------------------------*
+	 * Inner class SortedIteration *
+	 *-----------------------------*/
+
+	/**
+	 * Iterates over sorted binding sets, skipping duplicates if distinct is
+	 * set and stopping when the limit is reached.
+	 */
+	private class SortedIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final Iterator<BindingSet> iterator;
+
+		private BindingSet previous;
+
+		private long count;
+
+		SortedIteration(Iterator<BindingSet> iterator) {
+			this.iterator = iterator;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (count < limit && hasNextSorted()) {
+				BindingSet next = nextSorted();
+
+				if (!distinct || previous == null || comparator.compare(previous, next) != 0) {
+					previous = next;
+					count++;
+					return next;
+				}
+			}
+
+			return null;
+		}
+
+		protected boolean hasNextSorted()
+			throws QueryEvaluationException
+		{
+			return iterator.hasNext();
+		}
+
+		protected BindingSet nextSorted()
+			throws QueryEvaluationException
+		{
+			return iterator.next();
+		}
+	}
+
+	/*----------------------------*
+	 * Inner class MergeIteration *
+	 *----------------------------*/
+
+	/**
+	 * Merges the binding sets of a number of sorted run files.
+	 */
+	private class MergeIteration extends SortedIteration {
+
+		private final List<File> files;
+
+		private final List<Run> runs = new ArrayList<Run>();
+
+		private final PriorityQueue<Run> queue;
+
+		MergeIteration(List<File> files)
+			throws IOException
+		{
+			super(null);
+			this.files = files;
+			this.queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+
+				public int compare(Run r1, Run r2) {
+					int result = comparator.compare(r1.head, r2.head);
+					if (result == 0) {
+						// keep the merge stable
+						result = r1.index < r2.index ? -1 : r1.index == r2.index ? 0 : 1;
+					}
+					return result;
+				}
+			});
+
+			try {
+				for (File file : files) {
+					Run run = new Run(runs.size(), file);
+					runs.add(run);
+					if (run.advance()) {
+						queue.add(run);
+					}
+				}
+			}
+			catch (IOException e) {
+				closeRuns();
+				throw e;
+			}
+		}
+
+		@Override
+		protected boolean hasNextSorted() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		protected BindingSet nextSorted()
+			throws QueryEvaluationException
+		{
+			Run run = queue.remove();
+			BindingSet next = run.head;
+
+			try {
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+			catch (IOException e) {
+				throw new QueryEvaluationException(e);
+			}
+
+			return next;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				closeRuns();
+			}
+		}
+
+		private void closeRuns() {
+			for (Run run : runs) {
+				try {
+					run.in.close();
+				}
+				catch (IOException e) {
+					// ignore, the file is deleted anyway
+				}
+			}
+			runs.clear();
+			queue.clear();
+
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/*-----------------*
+	 * Inner class Run *
+	 *-----------------*/
+
+	/**
+	 * A reader of a sorted run file, positioned at the run's current head.
+	 */
+	private static final class Run {
+
+		final int index;
+
+		final BindingSetInputStream in;
+
+		BindingSet head;
+
+		Run(int index, File file)
+			throws IOException
+		{
+			this.index = index;
+			this.in = new BindingSetInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		boolean advance()
+			throws IOException
+		{
+			head = in.readBindingSet();
+			return head != null;
 		}
-		super.handleClose();
 	}
 }
@@ -0,0 +1,298 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+
+/**
+ * Evaluates one or more tuple expressions in tasks of a {@link ForkJoinPool}
+ * and merges their results through a bounded queue. The evaluation starts as
+ * soon as the iteration is created, which means that the iteration must always
+ * be closed. The results of the different expressions are returned in no
+ * particular order.
+ * <p>
+ * Expressions whose task has not been started by the pool when the consumer
+ * runs out of results are evaluated by the consuming thread itself. As a
+ * consequence, nested parallel iterations always make progress, even if all
+ * threads of the pool are busy.
+ */
+public class ParallelIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of results that are buffered before the evaluating
+	 * tasks are blocked.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The number of milliseconds that a task waits for room in a full queue
+	 * before checking whether the iteration has been closed.
+	 */
+	private static final long OFFER_TIMEOUT = 100;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final BindingSet bindings;
+
+	private final Branch[] branches;
+
+	/**
+	 * Contains binding sets, {@link Failure}s and the {@link Branch}es that
+	 * have finished.
+	 */
+	private final BlockingQueue<Object> queue;
+
+	private volatile boolean closed;
+
+	/**
+	 * The number of branches that still have results, only accessed by the
+	 * consuming thread.
+	 */
+	private int openBranches;
+
+	/**
+	 * The results of a branch that is evaluated by the consuming thread.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> localIter;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelIteration(EvaluationStrategy strategy, ForkJoinPool pool, BindingSet bindings,
+			TupleExpr... exprs)
+	{
+		this(strategy, pool, DEFAULT_CAPACITY, bindings, exprs);
+	}
+
+	public ParallelIteration(EvaluationStrategy strategy, ForkJoinPool pool, int capacity,
+			BindingSet bindings, TupleExpr... exprs)
+	{
+		this.strategy = strategy;
+		this.bindings = bindings;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.branches = new Branch[exprs.length];
+		this.openBranches = exprs.length;
+
+		boolean fork = ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool;
+		for (int i = 0; i < exprs.length; i++) {
+			branches[i] = new Branch(exprs[i]);
+			if (fork) {
+				// push to the local work queue, idle threads steal from it
+				branches[i].fork();
+			}
+			else {
+				pool.execute(branches[i]);
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		while (true) {
+			if (localIter != null) {
+				if (localIter.hasNext()) {
+					return localIter.next();
+				}
+				localIter.close();
+				localIter = null;
+				openBranches--;
+			}
+
+			if (openBranches == 0) {
+				return null;
+			}
+
+			Object next = queue.poll();
+			if (next == null) {
+				Branch branch = claimBranch();
+				if (branch != null) {
+					// the pool has not started this branch yet
+					localIter = strategy.evaluate(branch.expr, bindings);
+					continue;
+				}
+				try {
+					next = queue.take();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new QueryEvaluationException(e);
+				}
+			}
+
+			if (next instanceof Branch) {
+				openBranches--;
+			}
+			else if (next instanceof Failure) {
+				Throwable cause = ((Failure)next).cause;
+				if (cause instanceof QueryEvaluationException) {
+					throw (QueryEvaluationException)cause;
+				}
+				else if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				else if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw new QueryEvaluationException(cause);
+			}
+			else {
+				return (BindingSet)next;
+			}
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		closed = true;
+		try {
+			super.handleClose();
+		}
+		finally {
+			for (Branch branch : branches) {
+				// prevent branches that have not been started from running
+				branch.claimed.set(true);
+			}
+			queue.clear();
+			if (localIter != null) {
+				localIter.close();
+				localIter = null;
+			}
+		}
+	}
+
+	private Branch claimBranch() {
+		for (Branch branch : branches) {
+			if (!branch.claimed.get() && branch.claimed.compareAndSet(false, true)) {
+				return branch;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a result to the queue, waiting for room as long as this iteration is
+	 * open.
+	 * 
+	 * @return <tt>false</tt> if the result was not added because the iteration
+	 *         has been closed.
+	 */
+	boolean put(Object item) {
+		try {
+			while (!closed) {
+				if (queue.offer(item, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/*--------------------*
+	 * Inner class Branch *
+	 *--------------------*/
+
+	/**
+	 * Evaluates a single expression, unless the consuming thread has claimed it
+	 * before the task was started.
+	 */
+	private final class Branch extends RecursiveAction {
+
+		private static final long serialVersionUID = 2749271648357386411L;
+
+		final TupleExpr expr;
+
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		Branch(TupleExpr expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		protected void compute() {
+			if (!claimed.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				CloseableIteration<BindingSet, QueryEvaluationException> iter;
+				iter = strategy.evaluate(expr, bindings);
+				try {
+					while (!closed && iter.hasNext()) {
+						if (!put(iter.next())) {
+							break;
+						}
+					}
+				}
+				finally {
+					iter.close();
+				}
+			}
+			catch (Throwable e) {
+				put(new Failure(e));
+			}
+			finally {
+				put(this);
+			}
+		}
+	}
+
+	/*---------------------*
+	 * Inner class Failure *
+	 *---------------------*/
+
+	private static final class Failure {
+
+		final Throwable cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+}
@@ -165,13 +165,7 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 							if (!v1.equals(v2)) {
 								addToQueue(valueQueue, vp);
 							}
-							if (!nextElement.hasBinding(startVar.getName())) {
-								((QueryBindingSet)nextElement).addBinding(startVar.getName(), v1);
-							}
-							if (!nextElement.hasBinding(endVar.getName())) {
-								((QueryBindingSet)nextElement).addBinding(endVar.getName(), v2);
-							}
-							return nextElement;
+							return bindEndpoints(nextElement, v1, v2);
 						}
 						else {
 							if (add(unreportedValues, vp)) {
@@ -187,13 +181,7 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 						if (!v1.equals(v2)) {
 							addToQueue(valueQueue, vp);
 						}
-						if (!nextElement.hasBinding(startVar.getName())) {
-							((QueryBindingSet)nextElement).addBinding(startVar.getName(), v1);
-						}
-						if (!nextElement.hasBinding(endVar.getName())) {
-							((QueryBindingSet)nextElement).addBinding(endVar.getName(), v2);
-						}
-						return nextElement;
+						return bindEndpoints(nextElement, v1, v2);
 					}
 				}
 				else {
@@ -253,6 +241,28 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 		return v;
 	}
 
+	/**
+	 * Adds the start and end values to the bindings if the start and end
+	 * variables are not bound yet.
+	 */
+	private BindingSet bindEndpoints(BindingSet bindings, Value v1, Value v2) {
+		QueryBindingSet result;
+		if (bindings instanceof QueryBindingSet) {
+			result = (QueryBindingSet)bindings;
+		}
+		else {
+			result = new QueryBindingSet(bindings);
+		}
+
+		if (!result.hasBinding(startVar.getName())) {
+			result.addBinding(startVar.getName(), v1);
+		}
+		if (!result.hasBinding(endVar.getName())) {
+			result.addBinding(endVar.getName(), v2);
+		}
+		return result;
+	}
+
 	private boolean isCyclicPath(Value v1, Value v2) {
 		if (currentLength <= 2) {
 			return false;
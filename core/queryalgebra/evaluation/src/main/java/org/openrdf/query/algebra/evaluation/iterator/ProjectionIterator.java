@@ -16,6 +16,9 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.ConvertingIteration;
 
@@ -25,6 +28,8 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.Projection;
 import org.openrdf.query.algebra.ProjectionElem;
 import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.evaluation.ArrayBindingSet;
+import org.openrdf.query.algebra.evaluation.BindingSetSchema;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 
 public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingSet, QueryEvaluationException>
@@ -34,10 +39,19 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 	 * Constants *
 	 *-----------*/
 
-	private final Projection projection;
-
 	private final BindingSet parentBindings;
 
+	/**
+	 * The schema of the projected binding sets, with a slot for each projection
+	 * element's target name.
+	 */
+	private final BindingSetSchema schema;
+
+	/**
+	 * The source names of the projection elements, by target slot.
+	 */
+	private final String[] sourceNames;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -47,8 +61,22 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 		throws QueryEvaluationException
 	{
 		super(iter);
-		this.projection = projection;
 		this.parentBindings = parentBindings;
+
+		List<ProjectionElem> elements = projection.getProjectionElemList().getElements();
+		List<String> targetNames = new ArrayList<String>(elements.size());
+		for (ProjectionElem pe : elements) {
+			targetNames.add(pe.getTargetName());
+		}
+		this.schema = BindingSetSchema.of(targetNames);
+
+		this.sourceNames = new String[schema.size()];
+		for (ProjectionElem pe : elements) {
+			int slot = schema.indexOf(pe.getTargetName());
+			if (sourceNames[slot] == null) {
+				sourceNames[slot] = pe.getSourceName();
+			}
+		}
 	}
 
 	/*---------*
@@ -59,8 +87,17 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 	protected BindingSet convert(BindingSet sourceBindings)
 		throws QueryEvaluationException
 	{
+		ArrayBindingSet resultBindings = new ArrayBindingSet(schema);
 
-		return project(projection.getProjectionElemList(), sourceBindings, parentBindings);
+		for (int i = 0; i < sourceNames.length; i++) {
+			Value targetValue = sourceBindings.getValue(sourceNames[i]);
+			if (targetValue == null) {
+				targetValue = parentBindings.getValue(sourceNames[i]);
+			}
+			resultBindings.setValue(i, targetValue);
+		}
+
+		return resultBindings;
 	}
 
 	public static BindingSet project(ProjectionElemList projElemList, BindingSet sourceBindings,
@@ -0,0 +1,674 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.ConvertingIteration;
+import info.aduna.iteration.FilterIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.StatementPattern.Scope;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.ZeroLengthPath;
+import org.openrdf.query.algebra.evaluation.ArrayBindingSet;
+import org.openrdf.query.algebra.evaluation.BindingSetSchema;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.helpers.AbstractQueryModelVisitor;
+
+/**
+ * Evaluates an arbitrary-length path with a breadth-first search over the
+ * values that are connected by single steps of the path expression. Every
+ * search keeps the set of values it has visited, so each value is expanded at
+ * most once and every connected pair is reported once:
+ * <ul>
+ * <li>if the start of the path is bound, the search follows the path forward
+ * from the start value;</li>
+ * <li>if only the end is bound, the search follows the path backward from the
+ * end value;</li>
+ * <li>if both are bound, the path is searched from both ends at once, always
+ * expanding the smaller frontier, until the searches meet;</li>
+ * <li>if neither is bound, a forward search is done for every distinct value
+ * that starts a step.</li>
+ * </ul>
+ * If a {@link ForkJoinPool} is supplied, large frontiers are expanded by
+ * multiple tasks of the pool.
+ */
+public class TransitivePathIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The name of the variable that replaces the start of the path in the path
+	 * expression of an {@link ExpressionStep}.
+	 */
+	public static final String START_VAR = "path-internal-start";
+
+	/**
+	 * The name of the variable that replaces the end of the path in the path
+	 * expression of an {@link ExpressionStep}.
+	 */
+	public static final String END_VAR = "path-internal-end";
+
+	/**
+	 * The minimum size of a frontier that is expanded in parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	/**
+	 * The number of frontier values that a single task expands.
+	 */
+	private static final int TASK_SIZE = 16;
+
+	private final EvaluationStrategy strategy;
+
+	private final Step step;
+
+	private final ForkJoinPool pool;
+
+	private final BindingSet bindings;
+
+	private final long minLength;
+
+	/**
+	 * The bound values of the start and end of the path, or <tt>null</tt> if
+	 * unbound.
+	 */
+	private final Value startValue, endValue;
+
+	/**
+	 * Copy of the input bindings with slots for the ends of the path.
+	 */
+	private final ArrayBindingSet template;
+
+	/**
+	 * The slots of the ends of the path in the {@link #template}.
+	 */
+	private final int startSlot, endSlot;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> zeroLengthIter;
+
+	private CloseableIteration<? extends Value, QueryEvaluationException> startValues;
+
+	private Set<Value> searchedStartValues;
+
+	private boolean searched;
+
+	/**
+	 * The value that the current search started from.
+	 */
+	private Value origin;
+
+	private Set<Value> visited;
+
+	private List<Value> frontier;
+
+	/**
+	 * The values of the current frontier that still need to be reported.
+	 */
+	private Iterator<Value> reportable;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public TransitivePathIteration(EvaluationStrategy strategy, Step step, ForkJoinPool pool, Scope scope,
+			Var startVar, Var endVar, Var contextVar, long minLength, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		this.strategy = strategy;
+		this.step = step;
+		this.pool = pool;
+		this.bindings = bindings;
+		this.minLength = minLength;
+		this.startValue = getVarValue(startVar, bindings);
+		this.endValue = getVarValue(endVar, bindings);
+
+		BindingSetSchema schema;
+		if (bindings instanceof ArrayBindingSet) {
+			schema = ((ArrayBindingSet)bindings).getSchema();
+		}
+		else {
+			schema = BindingSetSchema.of(bindings.getBindingNames());
+		}
+		List<String> names = new ArrayList<String>(3);
+		names.add(startVar.getName());
+		names.add(endVar.getName());
+		if (contextVar != null) {
+			names.add(contextVar.getName());
+		}
+		schema = schema.extend(names);
+		this.template = new ArrayBindingSet(schema, bindings);
+		this.startSlot = schema.indexOf(startVar.getName());
+		this.endSlot = schema.indexOf(endVar.getName());
+
+		// the ends and graph of the path are reported even if they are
+		// constants
+		if (startValue != null) {
+			template.setValue(startSlot, startValue);
+		}
+		if (endValue != null) {
+			template.setValue(endSlot, endValue);
+		}
+		if (contextVar != null) {
+			template.setValue(schema.indexOf(contextVar.getName()), getVarValue(contextVar, bindings));
+		}
+
+		if (minLength == 0) {
+			// the zero length paths are reported first, every search then
+			// starts with its origin marked as visited
+			ZeroLengthPath zlp = new ZeroLengthPath(scope, startVar.clone(), endVar.clone(),
+					contextVar == null ? null : contextVar.clone());
+			zeroLengthIter = strategy.evaluate(zlp, bindings);
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	private static Value getVarValue(Var var, BindingSet bindings) {
+		if (var.hasValue()) {
+			return var.getValue();
+		}
+		return bindings.getValue(var.getName());
+	}
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (zeroLengthIter != null) {
+			if (zeroLengthIter.hasNext()) {
+				return zeroLengthIter.next();
+			}
+			zeroLengthIter.close();
+			zeroLengthIter = null;
+		}
+
+		if (startValue != null && endValue != null) {
+			if (searched) {
+				return null;
+			}
+			searched = true;
+
+			if (minLength == 0 && startValue.equals(endValue)) {
+				// already reported as a zero length path
+				return null;
+			}
+			return isConnected(startValue, endValue) ? template : null;
+		}
+
+		while (true) {
+			if (reportable != null && reportable.hasNext()) {
+				return createBindings(reportable.next());
+			}
+			else if (frontier != null && !frontier.isEmpty()) {
+				List<Value> next = new ArrayList<Value>();
+				for (Value value : expand(frontier, endValue == null)) {
+					if (visited.add(value)) {
+						next.add(value);
+					}
+				}
+				frontier = next;
+				reportable = next.iterator();
+			}
+			else if (!startNextSearch()) {
+				return null;
+			}
+		}
+	}
+
+	private boolean startNextSearch()
+		throws QueryEvaluationException
+	{
+		if (startValue != null || endValue != null) {
+			if (searched) {
+				return false;
+			}
+			searched = true;
+			startSearch(startValue != null ? startValue : endValue);
+			return true;
+		}
+
+		if (startValues == null) {
+			startValues = step.getStartValues();
+			searchedStartValues = new HashSet<Value>();
+		}
+		while (startValues.hasNext()) {
+			Value value = startValues.next();
+			if (searchedStartValues.add(value)) {
+				startSearch(value);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void startSearch(Value origin) {
+		this.origin = origin;
+		this.visited = new HashSet<Value>();
+		if (minLength == 0) {
+			visited.add(origin);
+		}
+		this.frontier = Collections.singletonList(origin);
+		this.reportable = null;
+	}
+
+	private BindingSet createBindings(Value value) {
+		ArrayBindingSet result = new ArrayBindingSet(template);
+		if (endValue == null) {
+			result.setValue(startSlot, origin);
+			result.setValue(endSlot, value);
+		}
+		else {
+			result.setValue(startSlot, value);
+			result.setValue(endSlot, origin);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the path connects the start to the end value in at least
+	 * one step.
+	 */
+	private boolean isConnected(Value start, Value end)
+		throws QueryEvaluationException
+	{
+		// values reachable from the start in one or more steps
+		Set<Value> forwardVisited = new HashSet<Value>();
+		List<Value> forwardFrontier = Collections.singletonList(start);
+
+		// values that reach the end in zero or more steps
+		Set<Value> backwardVisited = new HashSet<Value>();
+		backwardVisited.add(end);
+		List<Value> backwardFrontier = Collections.singletonList(end);
+
+		while (!forwardFrontier.isEmpty() || !backwardFrontier.isEmpty()) {
+			boolean forward = !forwardFrontier.isEmpty()
+					&& (backwardFrontier.isEmpty() || forwardFrontier.size() <= backwardFrontier.size());
+
+			Set<Value> ownVisited = forward ? forwardVisited : backwardVisited;
+			Set<Value> otherVisited = forward ? backwardVisited : forwardVisited;
+
+			List<Value> next = new ArrayList<Value>();
+			for (Value value : expand(forward ? forwardFrontier : backwardFrontier, forward)) {
+				if (ownVisited.add(value)) {
+					if (otherVisited.contains(value)) {
+						return true;
+					}
+					next.add(value);
+				}
+			}
+
+			if (forward) {
+				forwardFrontier = next;
+			}
+			else {
+				backwardFrontier = next;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the values that are one step away from the values of the frontier.
+	 * The result may contain duplicates.
+	 */
+	private List<Value> expand(List<Value> frontier, boolean forward)
+		throws QueryEvaluationException
+	{
+		if (pool == null || frontier.size() < PARALLEL_THRESHOLD) {
+			List<Value> result = new ArrayList<Value>();
+			for (Value value : frontier) {
+				step.expand(value, forward, result);
+			}
+			return result;
+		}
+
+		ExpandTask task = new ExpandTask(frontier, forward);
+		try {
+			if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+				return task.invoke();
+			}
+			else {
+				return pool.invoke(task);
+			}
+		}
+		catch (RuntimeException e) {
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof QueryEvaluationException) {
+					throw (QueryEvaluationException)cause;
+				}
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				if (zeroLengthIter != null) {
+					zeroLengthIter.close();
+				}
+			}
+			finally {
+				if (startValues != null) {
+					startValues.close();
+				}
+			}
+		}
+	}
+
+	/*----------------------*
+	 * Inner interface Step *
+	 *----------------------*/
+
+	/**
+	 * A single step of the path expression.
+	 */
+	public static interface Step {
+
+		/**
+		 * Adds the values that are one step away from the supplied value to the
+		 * result.
+		 * 
+		 * @param forward
+		 *        <tt>true</tt> to follow the step from its start to its end,
+		 *        <tt>false</tt> to follow it from its end to its start.
+		 */
+		public void expand(Value value, boolean forward, Collection<Value> result)
+			throws QueryEvaluationException;
+
+		/**
+		 * Gets the values that start at least one step. The iteration may
+		 * contain duplicates.
+		 */
+		public CloseableIteration<? extends Value, QueryEvaluationException> getStartValues()
+			throws QueryEvaluationException;
+	}
+
+	/*-------------------------*
+	 * Inner class PatternStep *
+	 *-------------------------*/
+
+	/**
+	 * A step that is a single statement pattern with a constant predicate,
+	 * which is expanded directly against the triple source.
+	 */
+	public static class PatternStep implements Step {
+
+		private final TripleSource tripleSource;
+
+		private final IRI predicate;
+
+		private final boolean inverse;
+
+		private final Resource[] contexts;
+
+		private final boolean namedContexts;
+
+		/**
+		 * @param inverse
+		 *        <tt>true</tt> if the step leads from the object to the subject
+		 *        of the pattern.
+		 * @param namedContexts
+		 *        <tt>true</tt> if statements without a context are to be
+		 *        ignored.
+		 */
+		public PatternStep(TripleSource tripleSource, IRI predicate, boolean inverse, Resource[] contexts,
+				boolean namedContexts)
+		{
+			this.tripleSource = tripleSource;
+			this.predicate = predicate;
+			this.inverse = inverse;
+			this.contexts = contexts;
+			this.namedContexts = namedContexts;
+		}
+
+		@Override
+		public void expand(Value value, boolean forward, Collection<Value> result)
+			throws QueryEvaluationException
+		{
+			boolean fromSubject = forward != inverse;
+
+			CloseableIteration<? extends Statement, QueryEvaluationException> iter;
+			if (fromSubject) {
+				if (!(value instanceof Resource)) {
+					return;
+				}
+				iter = tripleSource.getStatements((Resource)value, predicate, null, contexts);
+			}
+			else {
+				iter = tripleSource.getStatements(null, predicate, value, contexts);
+			}
+
+			try {
+				while (iter.hasNext()) {
+					Statement st = iter.next();
+					if (!namedContexts || st.getContext() != null) {
+						result.add(fromSubject ? st.getObject() : st.getSubject());
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+
+		@Override
+		public CloseableIteration<? extends Value, QueryEvaluationException> getStartValues()
+			throws QueryEvaluationException
+		{
+			CloseableIteration<? extends Statement, QueryEvaluationException> iter = tripleSource.getStatements(
+					null, predicate, null, contexts);
+
+			if (namedContexts) {
+				iter = new FilterIteration<Statement, QueryEvaluationException>(iter) {
+
+					@Override
+					protected boolean accept(Statement st) {
+						return st.getContext() != null;
+					}
+				};
+			}
+
+			return new ConvertingIteration<Statement, Value, QueryEvaluationException>(iter) {
+
+				@Override
+				protected Value convert(Statement st) {
+					return inverse ? st.getObject() : st.getSubject();
+				}
+			};
+		}
+	}
+
+	/*----------------------------*
+	 * Inner class ExpressionStep *
+	 *----------------------------*/
+
+	/**
+	 * A step that is an arbitrary tuple expression, which is evaluated with
+	 * one end bound to expand a value. The start and end of the path are
+	 * replaced by the variables {@link TransitivePathIteration#START_VAR} and
+	 * {@link TransitivePathIteration#END_VAR} in a copy of the expression.
+	 */
+	public static class ExpressionStep implements Step {
+
+		private final EvaluationStrategy strategy;
+
+		private final TupleExpr expr;
+
+		private final BindingSet bindings;
+
+		public ExpressionStep(EvaluationStrategy strategy, TupleExpr pathExpression, Var startVar, Var endVar,
+				BindingSet bindings)
+		{
+			this.strategy = strategy;
+			this.expr = pathExpression.clone();
+			this.bindings = bindings;
+
+			final String startName = startVar.getName();
+			final String endName = endVar.getName();
+
+			expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+				@Override
+				public void meet(Var var) {
+					QueryModelNode parent = var.getParentNode();
+					if (parent instanceof StatementPattern
+							&& ((StatementPattern)parent).getPredicateVar() == var)
+					{
+						// constants for the path's ends can share their name with
+						// a predicate
+						return;
+					}
+
+					Var replacement = null;
+					if (var.getName().equals(startName)) {
+						replacement = new Var(START_VAR);
+					}
+					else if (var.getName().equals(endName)) {
+						replacement = new Var(END_VAR);
+					}
+
+					if (replacement != null) {
+						parent.replaceChildNode(var, replacement);
+						replacement.setParentNode(parent);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void expand(Value value, boolean forward, Collection<Value> result)
+			throws QueryEvaluationException
+		{
+			QueryBindingSet stepBindings = new QueryBindingSet(bindings);
+			stepBindings.setBinding(forward ? START_VAR : END_VAR, value);
+
+			CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(expr,
+					stepBindings);
+			try {
+				while (iter.hasNext()) {
+					Value next = iter.next().getValue(forward ? END_VAR : START_VAR);
+					if (next != null) {
+						result.add(next);
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+
+		@Override
+		public CloseableIteration<? extends Value, QueryEvaluationException> getStartValues()
+			throws QueryEvaluationException
+		{
+			CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(expr, bindings);
+
+			return new ConvertingIteration<BindingSet, Value, QueryEvaluationException>(iter) {
+
+				@Override
+				protected Value convert(BindingSet bindings) {
+					return bindings.getValue(START_VAR);
+				}
+			};
+		}
+	}
+
+	/*------------------------*
+	 * Inner class ExpandTask *
+	 *------------------------*/
+
+	/**
+	 * Expands a part of a frontier, splitting it over multiple tasks if it is
+	 * large.
+	 */
+	private class ExpandTask extends RecursiveTask<List<Value>> {
+
+		private static final long serialVersionUID = 3140244434917414484L;
+
+		private final List<Value> values;
+
+		private final boolean forward;
+
+		public ExpandTask(List<Value> values, boolean forward) {
+			this.values = values;
+			this.forward = forward;
+		}
+
+		@Override
+		protected List<Value> compute() {
+			if (values.size() <= TASK_SIZE) {
+				List<Value> result = new ArrayList<Value>();
+				try {
+					for (Value value : values) {
+						step.expand(value, forward, result);
+					}
+				}
+				catch (QueryEvaluationException e) {
+					throw new IllegalStateException(e);
+				}
+				return result;
+			}
+
+			int middle = values.size() / 2;
+			ExpandTask left = new ExpandTask(values.subList(0, middle), forward);
+			ExpandTask right = new ExpandTask(values.subList(middle, values.size()), forward);
+			left.fork();
+			List<Value> result = right.compute();
+			result.addAll(left.join());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+/**
+ * Reads binding sets that have been written by a
+ * {@link BindingSetOutputStream}.
+ */
+public class BindingSetInputStream extends DataInputStream {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ValueFactory vf;
+
+	private final List<String> symbols = new ArrayList<String>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BindingSetInputStream(InputStream in) {
+		this(in, SimpleValueFactory.getInstance());
+	}
+
+	public BindingSetInputStream(InputStream in, ValueFactory vf) {
+		super(in);
+		this.vf = vf;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Reads the next binding set from the stream.
+	 * 
+	 * @return The next binding set, or <tt>null</tt> if the end of the stream
+	 *         has been reached. A binding set without bindings is returned as
+	 *         the {@link EmptyBindingSet} instance.
+	 */
+	public BindingSet readBindingSet()
+		throws IOException
+	{
+		int first = read();
+		if (first == -1) {
+			return null;
+		}
+		int size = readVarInt(first);
+		if (size == 0) {
+			return EmptyBindingSet.getInstance();
+		}
+		QueryBindingSet bindings = new QueryBindingSet(size);
+		for (int i = 0; i < size; i++) {
+			String name = readSymbol();
+			bindings.addBinding(name, readValue());
+		}
+		return bindings;
+	}
+
+	public Value readValue()
+		throws IOException
+	{
+		int type = readUnsignedByte();
+		switch (type) {
+			case BindingSetOutputStream.IRI_VALUE:
+				return vf.createIRI(readString());
+			case BindingSetOutputStream.BNODE_VALUE:
+				return vf.createBNode(readString());
+			case BindingSetOutputStream.STRING_LITERAL_VALUE:
+				return vf.createLiteral(readString());
+			case BindingSetOutputStream.LANG_LITERAL_VALUE:
+				String label = readString();
+				return vf.createLiteral(label, readSymbol());
+			case BindingSetOutputStream.TYPED_LITERAL_VALUE:
+				String typedLabel = readString();
+				return vf.createLiteral(typedLabel, vf.createIRI(readSymbol()));
+			default:
+				throw new IOException("Unknown value type: " + type);
+		}
+	}
+
+	private String readSymbol()
+		throws IOException
+	{
+		int id = readVarInt();
+		if (id == symbols.size()) {
+			// first occurrence
+			symbols.add(readString());
+		}
+		return symbols.get(id);
+	}
+
+	private String readString()
+		throws IOException
+	{
+		byte[] bytes = new byte[readVarInt()];
+		readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public int readVarInt()
+		throws IOException
+	{
+		return readVarInt(readUnsignedByte());
+	}
+
+	private int readVarInt(int b)
+		throws IOException
+	{
+		int value = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,155 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+
+/**
+ * Writes binding sets in a compact binary encoding that can be read back with
+ * a {@link BindingSetInputStream}. Binding names and datatypes are written
+ * only once per stream and are referenced by number afterwards. Used by
+ * operators that spill intermediate results to disk.
+ */
+public class BindingSetOutputStream extends DataOutputStream {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	static final int IRI_VALUE = 1;
+
+	static final int BNODE_VALUE = 2;
+
+	static final int STRING_LITERAL_VALUE = 3;
+
+	static final int LANG_LITERAL_VALUE = 4;
+
+	static final int TYPED_LITERAL_VALUE = 5;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BindingSetOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public void writeBindingSet(BindingSet bindings)
+		throws IOException
+	{
+		writeVarInt(bindings.size());
+		for (Binding binding : bindings) {
+			writeSymbol(binding.getName());
+			writeValue(binding.getValue());
+		}
+	}
+
+	public void writeValue(Value value)
+		throws IOException
+	{
+		if (value instanceof IRI) {
+			write(IRI_VALUE);
+			writeString(value.toString());
+		}
+		else if (value instanceof BNode) {
+			write(BNODE_VALUE);
+			writeString(((BNode)value).getID());
+		}
+		else if (value instanceof Literal) {
+			Literal literal = (Literal)value;
+			if (literal.getLanguage().isPresent()) {
+				write(LANG_LITERAL_VALUE);
+				writeString(literal.getLabel());
+				writeSymbol(literal.getLanguage().get());
+			}
+			else if (literal.getDatatype() == null || XMLSchema.STRING.equals(literal.getDatatype())) {
+				write(STRING_LITERAL_VALUE);
+				writeString(literal.getLabel());
+			}
+			else {
+				write(TYPED_LITERAL_VALUE);
+				writeString(literal.getLabel());
+				writeSymbol(literal.getDatatype().toString());
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported value type: " + value);
+		}
+	}
+
+	/**
+	 * Writes a string that is likely to be repeated, such as a binding name.
+	 */
+	private void writeSymbol(String symbol)
+		throws IOException
+	{
+		Integer id = symbols.get(symbol);
+		if (id == null) {
+			// first occurrence, written in full
+			writeVarInt(symbols.size());
+			writeString(symbol);
+			symbols.put(symbol, symbols.size());
+		}
+		else {
+			writeVarInt(id);
+		}
+	}
+
+	private void writeString(String string)
+		throws IOException
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		write(bytes);
+	}
+
+	/**
+	 * Writes a non-negative integer using one byte per seven bits.
+	 */
+	public void writeVarInt(int value)
+		throws IOException
+	{
+		while ((value & ~0x7F) != 0) {
+			write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		write(value);
+	}
+}
@@ -0,0 +1,131 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.impl.MapBindingSet;
+
+public class ArrayBindingSetTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final Value a = vf.createIRI("urn:a");
+
+	private final Value b = vf.createLiteral("b");
+
+	@Test
+	public void testSchemaExtension() {
+		BindingSetSchema schema = BindingSetSchema.of(Arrays.asList("x", "y"));
+		BindingSetSchema extended = schema.extend(Arrays.asList("y", "z", "z"));
+
+		assertEquals(3, extended.size());
+		assertEquals(0, extended.indexOf("x"));
+		assertEquals(2, extended.indexOf("z"));
+		assertEquals(-1, extended.indexOf("w"));
+		assertTrue(extended.startsWith(schema));
+		assertFalse(schema.startsWith(extended));
+
+		assertSame(extended, schema.extend(Arrays.asList("y", "z", "z")));
+		assertSame(schema, schema.extend(Arrays.asList("x")));
+	}
+
+	@Test
+	public void testLargeSchema() {
+		String[] names = new String[40];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "var" + i;
+		}
+		BindingSetSchema schema = BindingSetSchema.of(Arrays.asList(names));
+
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(i, schema.indexOf(new String(names[i])));
+		}
+		assertEquals(-1, schema.indexOf("var40"));
+	}
+
+	@Test
+	public void testBindings() {
+		BindingSetSchema schema = BindingSetSchema.of(Arrays.asList("x", "y", "z"));
+		ArrayBindingSet bindings = new ArrayBindingSet(schema);
+		bindings.setValue(schema.indexOf("x"), a);
+		bindings.setValue(schema.indexOf("z"), b);
+
+		assertEquals(2, bindings.size());
+		assertEquals(a, bindings.getValue("x"));
+		assertNull(bindings.getValue("y"));
+		assertNull(bindings.getBinding("y"));
+		assertFalse(bindings.hasBinding("y"));
+		assertFalse(bindings.hasBinding("w"));
+		assertEquals(new HashSet<String>(Arrays.asList("x", "z")), bindings.getBindingNames());
+
+		ArrayBindingSet copy = new ArrayBindingSet(bindings);
+		copy.setValue(schema.indexOf("y"), b);
+		assertEquals(2, bindings.size());
+		assertEquals(3, copy.size());
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		BindingSetSchema schema = BindingSetSchema.of(Arrays.asList("x", "y", "z"));
+		ArrayBindingSet bindings = new ArrayBindingSet(schema);
+		bindings.setValue(schema.indexOf("x"), a);
+		bindings.setValue(schema.indexOf("z"), b);
+
+		MapBindingSet map = new MapBindingSet();
+		map.addBinding("z", b);
+		map.addBinding("x", a);
+
+		QueryBindingSet query = new QueryBindingSet();
+		query.addBinding("x", a);
+		query.addBinding("z", b);
+
+		ArrayBindingSet other = new ArrayBindingSet(BindingSetSchema.of(Arrays.asList("z", "x")), map);
+
+		assertEquals(bindings, map);
+		assertEquals(map, bindings);
+		assertEquals(bindings, query);
+		assertEquals(query, bindings);
+		assertEquals(bindings, other);
+		assertEquals(map.hashCode(), bindings.hashCode());
+		assertEquals(map.hashCode(), query.hashCode());
+		assertEquals(map.hashCode(), other.hashCode());
+
+		other.setValue(0, null);
+		assertFalse(bindings.equals(other));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBindingNotInSchema() {
+		QueryBindingSet query = new QueryBindingSet();
+		query.addBinding("w", a);
+
+		new ArrayBindingSet(BindingSetSchema.of(Arrays.asList("x")), query);
+	}
+}
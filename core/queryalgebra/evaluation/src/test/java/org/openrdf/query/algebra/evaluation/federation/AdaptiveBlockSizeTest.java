@@ -0,0 +1,69 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.federation;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveBlockSizeTest {
+
+	private final AdaptiveBlockSize blockSize = new AdaptiveBlockSize(10, 100, 1000, 500);
+
+	@Test
+	public void testGrowsWhenFast() {
+		blockSize.update(10, 100, 10);
+		assertEquals(20, blockSize.get());
+		blockSize.update(20, 100, 10);
+		blockSize.update(40, 100, 10);
+		blockSize.update(80, 100, 10);
+		assertEquals(100, blockSize.get());
+	}
+
+	@Test
+	public void testShrinksWhenSlow() {
+		blockSize.update(10, 2000, 10);
+		assertEquals(5, blockSize.get());
+		blockSize.update(5, 2000, 10);
+		blockSize.update(2, 2000, 10);
+		blockSize.update(1, 2000, 10);
+		assertEquals(1, blockSize.get());
+	}
+
+	@Test
+	public void testShrinksOnLargeResults() {
+		blockSize.update(10, 100, 1000);
+		assertEquals(5, blockSize.get());
+	}
+
+	@Test
+	public void testKeepsSizeWithinTarget() {
+		blockSize.update(10, 700, 10);
+		assertEquals(10, blockSize.get());
+	}
+
+	@Test
+	public void testPartialBlockDoesNotShrinkWhenFast() {
+		blockSize.update(3, 100, 1);
+		assertEquals(10, blockSize.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBounds() {
+		new AdaptiveBlockSize(10, 5, 1000, 500);
+	}
+}
@@ -0,0 +1,204 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.BooleanLiteral;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.FN;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Bound;
+import org.openrdf.query.algebra.Coalesce;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.FunctionCall;
+import org.openrdf.query.algebra.If;
+import org.openrdf.query.algebra.IsLiteral;
+import org.openrdf.query.algebra.MathExpr;
+import org.openrdf.query.algebra.MathExpr.MathOp;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Or;
+import org.openrdf.query.algebra.SameTerm;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluator;
+
+public class ValueExprCompilerTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final SimpleEvaluationStrategy strategy = new SimpleEvaluationStrategy(new EmptyTripleSource(vf),
+			null);
+
+	private final List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+
+	public ValueExprCompilerTest() {
+		Value[] values = {
+				vf.createLiteral(5),
+				vf.createLiteral("5", XMLSchema.INTEGER),
+				vf.createLiteral("10", XMLSchema.INTEGER),
+				vf.createLiteral("abc", XMLSchema.INTEGER),
+				vf.createLiteral(2.5),
+				vf.createLiteral("2.50", XMLSchema.DECIMAL),
+				vf.createLiteral("b"),
+				vf.createLiteral("b", "en"),
+				vf.createLiteral(true),
+				vf.createIRI("urn:x"),
+				vf.createBNode() };
+
+		bindingSets.add(new QueryBindingSet());
+		for (Value x : values) {
+			for (Value y : values) {
+				QueryBindingSet bindings = new QueryBindingSet();
+				bindings.addBinding("x", x);
+				bindings.addBinding("y", y);
+				bindingSets.add(bindings);
+			}
+		}
+	}
+
+	@Test
+	public void testComparisons()
+		throws Exception
+	{
+		ValueExpr[] constants = {
+				new ValueConstant(vf.createLiteral("5", XMLSchema.INTEGER)),
+				new ValueConstant(vf.createLiteral(2.5)),
+				new ValueConstant(vf.createLiteral("2.5", XMLSchema.DECIMAL)),
+				new ValueConstant(vf.createLiteral("abc", XMLSchema.INTEGER)),
+				new ValueConstant(vf.createLiteral("a")),
+				new ValueConstant(vf.createLiteral("c", "en")),
+				new ValueConstant(vf.createIRI("urn:x")) };
+
+		for (CompareOp op : CompareOp.values()) {
+			assertEquivalent(new Compare(new Var("x"), new Var("y"), op));
+			for (ValueExpr constant : constants) {
+				assertEquivalent(new Compare(new Var("x"), constant.clone(), op));
+				assertEquivalent(new Compare(constant.clone(), new Var("x"), op));
+			}
+		}
+	}
+
+	@Test
+	public void testOperators()
+		throws Exception
+	{
+		Var x = new Var("x");
+		Var y = new Var("y");
+
+		assertEquivalent(new And(x.clone(), y.clone()));
+		assertEquivalent(new Or(x.clone(), y.clone()));
+		assertEquivalent(new Not(x.clone()));
+		assertEquivalent(new SameTerm(x.clone(), y.clone()));
+		assertEquivalent(new Bound(x.clone()));
+		Coalesce coalesce = new Coalesce();
+		coalesce.addArgument(new Var("z"));
+		coalesce.addArgument(x.clone());
+		coalesce.addArgument(y.clone());
+		assertEquivalent(coalesce);
+		assertEquivalent(new If(x.clone(), y.clone(), new ValueConstant(vf.createLiteral(0))));
+		assertEquivalent(new IsLiteral(x.clone()));
+		for (MathOp op : MathOp.values()) {
+			assertEquivalent(new MathExpr(x.clone(), y.clone(), op));
+		}
+		assertEquivalent(new FunctionCall(FN.STRING_LENGTH.stringValue(), x.clone()));
+		assertEquivalent(new FunctionCall("urn:unknown", x.clone()));
+	}
+
+	@Test
+	public void testConstantFolding()
+		throws Exception
+	{
+		ValueExpr expr = new Compare(new MathExpr(new ValueConstant(vf.createLiteral(1)), new ValueConstant(
+				vf.createLiteral(2)), MathOp.PLUS), new Var("three", vf.createLiteral(3)), CompareOp.EQ);
+
+		ValueExprEvaluator evaluator = compile(expr);
+		assertTrue(evaluator instanceof ValueExprCompiler.Constant);
+		assertSame(BooleanLiteral.TRUE, evaluator.evaluate(new QueryBindingSet()));
+
+		// type errors are left to be reported on evaluation
+		expr = new Not(new ValueConstant(vf.createIRI("urn:x")));
+		assertTrue(!(compile(expr) instanceof ValueExprCompiler.Constant));
+		assertEquivalent(expr);
+	}
+
+	@Test
+	public void testCompileOnce()
+		throws Exception
+	{
+		ValueExpr expr = new Compare(new Var("x"), new ValueConstant(vf.createLiteral(1)));
+		assertSame(strategy.precompile(expr), strategy.precompile(expr));
+	}
+
+	private ValueExprEvaluator compile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		return new ValueExprCompiler(strategy, new EmptyTripleSource(vf)).compile(expr);
+	}
+
+	private void assertEquivalent(ValueExpr expr)
+		throws Exception
+	{
+		ValueExprEvaluator evaluator = compile(expr);
+
+		for (BindingSet bindings : bindingSets) {
+			String expected = evaluate(expr, bindings);
+			String actual;
+			try {
+				actual = toString(evaluator.evaluate(bindings));
+			}
+			catch (QueryEvaluationException e) {
+				actual = e.getClass().getSimpleName();
+			}
+			assertEquals(expr + " " + bindings, expected, actual);
+		}
+	}
+
+	private String evaluate(ValueExpr expr, BindingSet bindings) {
+		try {
+			return toString(strategy.evaluate(expr, bindings));
+		}
+		catch (QueryEvaluationException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+
+	private String toString(Value value) {
+		if (value instanceof Literal) {
+			// compare the computed values, not the value classes
+			return ((Literal)value).getLabel() + "^^" + ((Literal)value).getDatatype();
+		}
+		return String.valueOf(value);
+	}
+}
@@ -0,0 +1,224 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Avg;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.Max;
+import org.openrdf.query.algebra.Min;
+import org.openrdf.query.algebra.Sum;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.*;
+
+public class GroupIteratorTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final EvaluationStrategy evaluator = new SimpleEvaluationStrategy(null, null);
+
+	@Test
+	public void testIntegerSum()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(createValues(100, 10));
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+
+		Map<String, BindingSet> result = evaluate(group, 0);
+		assertEquals(10, result.size());
+		// v runs from 0 to 99, group k contains k, k+10, ..., k+90
+		Literal sum = (Literal)result.get("k3").getValue("sum");
+		assertEquals(XMLSchema.INTEGER, sum.getDatatype());
+		assertEquals(10 * 3 + 450, sum.intValue());
+	}
+
+	@Test
+	public void testMixedSum()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> values = new ArrayList<BindingSet>();
+		values.add(createBindingSet("k", vf.createLiteral(1)));
+		values.add(createBindingSet("k", vf.createLiteral(0.5d)));
+		values.add(createBindingSet("k", vf.createLiteral(Long.MAX_VALUE)));
+		Group group = createGroup(values);
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+
+		Literal sum = (Literal)evaluate(group, 0).get("k").getValue("sum");
+		assertEquals(XMLSchema.DOUBLE, sum.getDatatype());
+		assertEquals(1.5d + Long.MAX_VALUE, sum.doubleValue(), 0.0d);
+	}
+
+	@Test
+	public void testLongOverflowSum()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> values = new ArrayList<BindingSet>();
+		values.add(createBindingSet("k", vf.createLiteral(Long.MAX_VALUE)));
+		values.add(createBindingSet("k", vf.createLiteral(Long.MAX_VALUE)));
+		Group group = createGroup(values);
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+
+		Literal sum = (Literal)evaluate(group, 0).get("k").getValue("sum");
+		assertEquals(XMLSchema.INTEGER, sum.getDatatype());
+		assertEquals("18446744073709551614", sum.getLabel());
+	}
+
+	@Test
+	public void testSpilledAggregates()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(createValues(10000, 1000));
+		group.addGroupElement(new GroupElem("count", new Count(new Var("v"))));
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+		group.addGroupElement(new GroupElem("avg", new Avg(new Var("v"))));
+		group.addGroupElement(new GroupElem("min", new Min(new Var("v"))));
+		group.addGroupElement(new GroupElem("max", new Max(new Var("v"))));
+
+		int tempFiles = countTempFiles();
+		Map<String, BindingSet> expected = evaluate(group, 0);
+		Map<String, BindingSet> actual = evaluate(group, 10);
+
+		assertEquals(1000, expected.size());
+		assertEquals(expected, actual);
+		assertEquals(tempFiles, countTempFiles());
+
+		BindingSet k7 = actual.get("k7");
+		assertEquals(10, ((Literal)k7.getValue("count")).intValue());
+		assertEquals(7, ((Literal)k7.getValue("min")).intValue());
+		assertEquals(9007, ((Literal)k7.getValue("max")).intValue());
+		assertEquals(45070, ((Literal)k7.getValue("sum")).intValue());
+		assertEquals(4507, ((Literal)k7.getValue("avg")).intValue());
+	}
+
+	@Test
+	public void testSpilledBatches()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(createValues(10000, 1000));
+		group.addGroupElement(new GroupElem("count", new Count(new Var("v"))));
+
+		Map<String, BindingSet> expected = evaluate(group, 0);
+
+		Map<String, BindingSet> actual = new HashMap<String, BindingSet>();
+		GroupIterator iter = new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), 10);
+		try {
+			List<BindingSet> batch;
+			while (!(batch = iter.nextBatch(64)).isEmpty()) {
+				assertTrue(batch.size() <= 64);
+				for (BindingSet bs : batch) {
+					assertNull(actual.put(bs.getValue("k").stringValue(), bs));
+				}
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		assertEquals(1000, actual.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testEmptyInput()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(new ArrayList<BindingSet>());
+		group.addGroupElement(new GroupElem("count", new Count(null)));
+
+		GroupIterator iter = new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), 10);
+		try {
+			assertTrue(iter.hasNext());
+			assertEquals(0, ((Literal)iter.next().getValue("count")).intValue());
+			assertFalse(iter.hasNext());
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private Map<String, BindingSet> evaluate(Group group, long threshold)
+		throws QueryEvaluationException
+	{
+		Map<String, BindingSet> result = new HashMap<String, BindingSet>();
+		GroupIterator iter = new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), threshold);
+		try {
+			while (iter.hasNext()) {
+				BindingSet bs = iter.next();
+				assertNull(result.put(bs.getValue("k").stringValue(), bs));
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return result;
+	}
+
+	private Group createGroup(List<BindingSet> values) {
+		BindingSetAssignment arg = new BindingSetAssignment();
+		arg.setBindingSets(values);
+		Group group = new Group(arg);
+		group.addGroupBindingName("k");
+		return group;
+	}
+
+	private List<BindingSet> createValues(int count, int groupCount) {
+		List<BindingSet> values = new ArrayList<BindingSet>();
+		for (int i = 0; i < count; i++) {
+			values.add(createBindingSet("k" + (i % groupCount), vf.createLiteral(i)));
+		}
+		return values;
+	}
+
+	private BindingSet createBindingSet(String key, Literal value) {
+		QueryBindingSet bs = new QueryBindingSet();
+		bs.addBinding("k", vf.createLiteral(key));
+		bs.addBinding("v", value);
+		return bs;
+	}
+
+	private int countTempFiles() {
+		String[] files = new File(System.getProperty("java.io.tmpdir")).list();
+		int count = 0;
+		for (String file : files) {
+			if (file.startsWith("group-eval")) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
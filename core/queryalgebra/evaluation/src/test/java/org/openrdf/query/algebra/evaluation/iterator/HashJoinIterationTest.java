@@ -16,7 +16,10 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -115,4 +118,131 @@ public class HashJoinIterationTest {
 		assertEquals("x", actual.getValue("i").stringValue());
 		assertFalse(actual.hasBinding("b"));
 	}
+
+	@Test
+	public void testLeftJoinWithoutMatches() throws QueryEvaluationException {
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(Arrays.<BindingSet>asList(EmptyBindingSet.getInstance()));
+
+		BindingSetAssignment right = new BindingSetAssignment();
+		right.setBindingSets(Arrays.<BindingSet>asList());
+
+		HashJoinIteration iter = new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), true);
+		assertTrue(iter.hasNext());
+		BindingSet actual = iter.next();
+
+		assertEquals(0, actual.size());
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testPartitionedInnerJoin() throws QueryEvaluationException {
+		// 1000 binding sets on each side with 10 binding sets per key
+		BindingSetAssignment left = createValues("a", 1000, 100);
+		BindingSetAssignment right = createValues("b", 1000, 100);
+
+		HashJoinIteration iter = new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), false, 50);
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				BindingSet actual = iter.next();
+				assertEquals(Integer.parseInt(actual.getValue("a").stringValue()) % 100,
+						Integer.parseInt(actual.getValue("i").stringValue()));
+				assertEquals(Integer.parseInt(actual.getValue("b").stringValue()) % 100,
+						Integer.parseInt(actual.getValue("i").stringValue()));
+				count++;
+			}
+			assertEquals(1000 * 10, count);
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Test
+	public void testRepartitionedInnerJoin() throws QueryEvaluationException {
+		BindingSetAssignment left = createValues("a", 100, 3200);
+		BindingSetAssignment right = createValues("b", 3200, 3200);
+
+		HashJoinIteration iter = new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), false, 50);
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				BindingSet actual = iter.next();
+				assertEquals(actual.getValue("a"), actual.getValue("b"));
+				count++;
+			}
+			assertEquals(100, count);
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Test
+	public void testPartitionedLeftJoin() throws QueryEvaluationException {
+		// only the keys 0 to 99 have matches
+		BindingSetAssignment left = createValues("a", 200, 200);
+		BindingSetAssignment right = createValues("b", 100, 100);
+
+		HashJoinIteration iter = new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), true, 10);
+		try {
+			int matched = 0;
+			int unmatched = 0;
+			while (iter.hasNext()) {
+				BindingSet actual = iter.next();
+				if (actual.hasBinding("b")) {
+					assertEquals(actual.getValue("a"), actual.getValue("b"));
+					matched++;
+				}
+				else {
+					assertTrue(Integer.parseInt(actual.getValue("i").stringValue()) >= 100);
+					unmatched++;
+				}
+			}
+			assertEquals(100, matched);
+			assertEquals(100, unmatched);
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Test
+	public void testPartitionedJoinWithEmptyBindingSet() throws QueryEvaluationException {
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(Arrays.<BindingSet>asList(EmptyBindingSet.getInstance()));
+		left.setBindingNames(Collections.singleton("i"));
+		BindingSetAssignment right = createValues("b", 100, 100);
+
+		HashJoinIteration iter = new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), true, 10);
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				assertTrue(iter.next().hasBinding("b"));
+				count++;
+			}
+			assertEquals(100, count);
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Creates binding sets that bind the specified name to a number and the
+	 * join variable <tt>i</tt> to that number modulo the key count.
+	 */
+	private BindingSetAssignment createValues(String name, int count, int keyCount) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int n = 0; n < count; n++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding(name, vf.createLiteral(Integer.toString(n)));
+			b.addBinding("i", vf.createLiteral(Integer.toString(n % keyCount)));
+			bindingSets.add(b);
+		}
+		BindingSetAssignment values = new BindingSetAssignment();
+		values.setBindingSets(bindingSets);
+		return values;
+	}
 }
@@ -28,10 +28,14 @@ import junit.framework.TestCase;
 
 import info.aduna.iteration.CloseableIteratorIteration;
 
+import org.openrdf.model.Literal;
 import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
 import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.impl.MapBindingSet;
 
 
 /**
@@ -186,6 +190,92 @@ public class OrderIteratorTest extends TestCase {
 		assertFalse(order.hasNext());
 	}
 
+	public void testTopK() throws Exception {
+		order = new OrderIterator(iteration, cmp, 3, false);
+		assertEquals(b1, order.next());
+		assertEquals(b2, order.next());
+		assertEquals(b2, order.next());
+		assertFalse(order.hasNext());
+	}
+
+	public void testExternalSort() throws Exception {
+		List<BindingSet> input = createValues(1000, 1000);
+		List<BindingSet> result = sort(input, Integer.MAX_VALUE, false, 100);
+		assertEquals(1000, result.size());
+		assertSorted(result);
+	}
+
+	public void testExternalSortWithManyRuns() throws Exception {
+		// more runs than can be merged in a single pass
+		List<BindingSet> input = createValues(1000, 1000);
+		List<BindingSet> result = sort(input, Integer.MAX_VALUE, false, 5);
+		assertEquals(1000, result.size());
+		assertSorted(result);
+	}
+
+	public void testExternalSortWithLimitAndDistinct() throws Exception {
+		List<BindingSet> input = createValues(1000, 100);
+		List<BindingSet> result = sort(input, 50, true, 10);
+		assertEquals(50, result.size());
+		assertSorted(result);
+		for (int i = 0; i < result.size(); i++) {
+			assertEquals(i, intValue(result.get(i)));
+		}
+	}
+
+	public void testExternalSortKeepsDuplicates() throws Exception {
+		List<BindingSet> input = createValues(1000, 100);
+		List<BindingSet> result = sort(input, 500, false, 10);
+		assertEquals(500, result.size());
+		assertSorted(result);
+		assertEquals(49, intValue(result.get(499)));
+	}
+
+	private List<BindingSet> sort(List<BindingSet> input, long limit, boolean distinct, long threshold)
+		throws QueryEvaluationException
+	{
+		iteration = new IterationStub();
+		iteration.setIterator(input.iterator());
+		OrderIterator sorted = new OrderIterator(iteration, new ValueComparator(), limit, distinct, threshold);
+		try {
+			List<BindingSet> result = new ArrayList<BindingSet>();
+			while (sorted.hasNext()) {
+				result.add(sorted.next());
+			}
+			return result;
+		}
+		finally {
+			sorted.close();
+		}
+	}
+
+	private List<BindingSet> createValues(int count, int distinctCount) {
+		ValueFactory vf = SimpleValueFactory.getInstance();
+		List<BindingSet> values = new ArrayList<BindingSet>();
+		for (int i = 0; i < count; i++) {
+			MapBindingSet bs = new MapBindingSet();
+			bs.addBinding("v", vf.createLiteral((i * 7919) % distinctCount));
+			values.add(bs);
+		}
+		return values;
+	}
+
+	private void assertSorted(List<BindingSet> result) {
+		for (int i = 1; i < result.size(); i++) {
+			assertTrue(intValue(result.get(i - 1)) <= intValue(result.get(i)));
+		}
+	}
+
+	private static int intValue(BindingSet bs) {
+		return ((Literal)bs.getValue("v")).intValue();
+	}
+
+	class ValueComparator implements Comparator<BindingSet> {
+		public int compare(BindingSet o1, BindingSet o2) {
+			return Integer.valueOf(intValue(o1)).compareTo(Integer.valueOf(intValue(o2)));
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		list = Arrays.asList(b3, b5, b2, b1, b4, b2);
@@ -0,0 +1,139 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+public class ParallelIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final SimpleEvaluationStrategy evaluator = new SimpleEvaluationStrategy(null, null);
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void testAllResults()
+		throws QueryEvaluationException
+	{
+		ParallelIteration iter = new ParallelIteration(evaluator, pool, 4, EmptyBindingSet.getInstance(),
+				createValues("a", 0, 100), createValues("a", 100, 100), createValues("a", 200, 100));
+		try {
+			assertEquals(createLabels(0, 300), collect(iter, "a"));
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Test
+	public void testCloseEarly()
+		throws QueryEvaluationException
+	{
+		ParallelIteration iter = new ParallelIteration(evaluator, pool, 1, EmptyBindingSet.getInstance(),
+				createValues("a", 0, 1000), createValues("a", 1000, 1000));
+		assertTrue(iter.hasNext());
+		iter.next();
+		iter.close();
+		pool.shutdown();
+		pool.awaitQuiescence(10, TimeUnit.SECONDS);
+		assertTrue(pool.isQuiescent());
+	}
+
+	@Test
+	public void testNestedUnionsInSingleThreadedPool()
+		throws QueryEvaluationException
+	{
+		pool.shutdownNow();
+		pool = new ForkJoinPool(1);
+		evaluator.setForkJoinPool(pool);
+
+		TupleExpr expr = new Union(new Union(createValues("a", 0, 50), createValues("a", 50, 50)),
+				new Union(createValues("a", 100, 50), createValues("a", 150, 50)));
+		ParallelIteration iter = new ParallelIteration(evaluator, pool, 1, EmptyBindingSet.getInstance(),
+				expr, createValues("a", 200, 50));
+		try {
+			assertEquals(createLabels(0, 250), collect(iter, "a"));
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private BindingSetAssignment createValues(String name, int start, int count) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = start; i < start + count; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding(name, vf.createLiteral(Integer.toString(i)));
+			bindingSets.add(bs);
+		}
+		BindingSetAssignment values = new BindingSetAssignment();
+		values.setBindingSets(bindingSets);
+		return values;
+	}
+
+	private Set<String> createLabels(int start, int count) {
+		Set<String> labels = new HashSet<String>();
+		for (int i = start; i < start + count; i++) {
+			labels.add(Integer.toString(i));
+		}
+		return labels;
+	}
+
+	private Set<String> collect(ParallelIteration iter, String name)
+		throws QueryEvaluationException
+	{
+		Set<String> labels = new HashSet<String>();
+		while (iter.hasNext()) {
+			assertTrue(labels.add(iter.next().getValue(name).stringValue()));
+		}
+		return labels;
+	}
+}
@@ -0,0 +1,169 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.StatementPattern.Scope;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+public class TransitivePathIterationTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final Map<Value, List<Value>> edges = new HashMap<Value, List<Value>>();
+
+	private final TransitivePathIteration.Step step = new TransitivePathIteration.Step() {
+
+		@Override
+		public void expand(Value value, boolean forward, Collection<Value> result) {
+			for (Map.Entry<Value, List<Value>> entry : edges.entrySet()) {
+				if (forward && entry.getKey().equals(value)) {
+					result.addAll(entry.getValue());
+				}
+				else if (!forward && entry.getValue().contains(value)) {
+					result.add(entry.getKey());
+				}
+			}
+		}
+
+		@Override
+		public CloseableIteration<? extends Value, QueryEvaluationException> getStartValues() {
+			return new CloseableIteratorIteration<Value, QueryEvaluationException>(
+					new ArrayList<Value>(edges.keySet()).iterator());
+		}
+	};
+
+	private IRI iri(String name) {
+		return vf.createIRI("urn:" + name);
+	}
+
+	private void addEdge(String from, String to) {
+		List<Value> targets = edges.get(iri(from));
+		if (targets == null) {
+			targets = new ArrayList<Value>();
+			edges.put(iri(from), targets);
+		}
+		targets.add(iri(to));
+	}
+
+	private Set<String> evaluate(ForkJoinPool pool, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		TransitivePathIteration iter = new TransitivePathIteration(null, step, pool, Scope.DEFAULT_CONTEXTS,
+				new Var("s"), new Var("o"), null, 1, bindings);
+		Set<String> result = new HashSet<String>();
+		try {
+			while (iter.hasNext()) {
+				BindingSet next = iter.next();
+				assertTrue(result.add(next.getValue("s").stringValue() + " " + next.getValue("o").stringValue()));
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return result;
+	}
+
+	private BindingSet bind(String name, String value) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding(name, iri(value));
+		return bindings;
+	}
+
+	@Test
+	public void testCycle()
+		throws Exception
+	{
+		addEdge("a", "b");
+		addEdge("b", "c");
+		addEdge("c", "a");
+		addEdge("c", "d");
+
+		Set<String> fromA = evaluate(null, bind("s", "a"));
+		assertEquals(4, fromA.size());
+		assertTrue(fromA.contains("urn:a urn:a"));
+		assertTrue(fromA.contains("urn:a urn:d"));
+
+		Set<String> toD = evaluate(null, bind("o", "d"));
+		assertEquals(3, toD.size());
+		assertFalse(toD.contains("urn:d urn:d"));
+
+		assertEquals(12, evaluate(null, new QueryBindingSet()).size());
+	}
+
+	@Test
+	public void testBothEndsBound()
+		throws Exception
+	{
+		addEdge("a", "b");
+		addEdge("b", "c");
+		addEdge("d", "a");
+
+		QueryBindingSet bindings = new QueryBindingSet(bind("s", "a"));
+		bindings.addBinding("o", iri("c"));
+		assertEquals(1, evaluate(null, bindings).size());
+
+		bindings.setBinding("o", iri("d"));
+		assertEquals(0, evaluate(null, bindings).size());
+
+		bindings.setBinding("o", iri("a"));
+		assertEquals(0, evaluate(null, bindings).size());
+	}
+
+	@Test
+	public void testParallelExpansion()
+		throws Exception
+	{
+		for (int i = 0; i < 200; i++) {
+			addEdge("root", "n" + i);
+			addEdge("n" + i, "leaf" + i);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(400, evaluate(pool, bind("s", "root")).size());
+			assertEquals(evaluate(null, new QueryBindingSet()), evaluate(pool, new QueryBindingSet()));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+public class BindingSetStreamTest {
+
+	private ValueFactory f = SimpleValueFactory.getInstance();
+
+	@Test
+	public void testRoundTrip()
+		throws IOException
+	{
+		QueryBindingSet first = new QueryBindingSet();
+		first.addBinding("iri", f.createIRI("http://example.org/é"));
+		first.addBinding("bnode", f.createBNode("b1"));
+		first.addBinding("plain", f.createLiteral("plain"));
+		first.addBinding("lang", f.createLiteral("chat", "fr"));
+		first.addBinding("typed", f.createLiteral("42", XMLSchema.INTEGER));
+
+		QueryBindingSet second = new QueryBindingSet();
+		second.addBinding("typed", f.createLiteral("43", XMLSchema.INTEGER));
+		second.addBinding("long", f.createLiteral(new String(new char[70000]).replace('\0', 'x')));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BindingSetOutputStream out = new BindingSetOutputStream(bytes);
+		out.writeBindingSet(first);
+		out.writeBindingSet(EmptyBindingSet.getInstance());
+		out.writeBindingSet(second);
+		out.close();
+
+		BindingSetInputStream in = new BindingSetInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		BindingSet actual = in.readBindingSet();
+		assertEquals(first, actual);
+		assertSame(EmptyBindingSet.getInstance(), in.readBindingSet());
+		assertEquals(second, in.readBindingSet());
+		assertNull(in.readBindingSet());
+		in.close();
+	}
+
+	@Test
+	public void testVarInt()
+		throws IOException
+	{
+		int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BindingSetOutputStream out = new BindingSetOutputStream(bytes);
+		for (int value : values) {
+			out.writeVarInt(value);
+		}
+		out.close();
+
+		BindingSetInputStream in = new BindingSetInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		for (int value : values) {
+			assertEquals(value, in.readVarInt());
+		}
+		in.close();
+	}
+}
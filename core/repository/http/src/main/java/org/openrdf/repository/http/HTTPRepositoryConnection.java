@@ -18,8 +18,6 @@ package org.openrdf.repository.http;
 
 import static org.openrdf.rio.RDFFormat.NTRIPLES;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -29,6 +27,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -58,8 +57,10 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.IRI;
 import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.model.impl.SimpleNamespace;
+import org.openrdf.model.impl.SimpleValueFactory;
 import org.openrdf.model.vocabulary.SESAME;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.BooleanQuery;
@@ -110,9 +111,14 @@ class HTTPRepositoryConnection extends AbstractRepositoryConnection implements H
 
 	private boolean active;
 
-	private Model toAdd;
+	/**
+	 * Statements to add in the active transaction that have not been sent yet.
+	 * Plain lists are used instead of models, as the buffers are only ever
+	 * streamed to the server.
+	 */
+	private List<Statement> toAdd;
 
-	private Model toRemove;
+	private List<Statement> toRemove;
 
 	/**
 	 * Maximum size (in number of statements) allowed for statement buffers
@@ -607,26 +613,33 @@ class HTTPRepositoryConnection extends AbstractRepositoryConnection implements H
 		flushTransactionState(Protocol.Action.ADD);
 
 		if (toAdd == null) {
-			toAdd = new LinkedHashModel();
+			toAdd = new ArrayList<Statement>();
 		}
-		toAdd.add(subject, predicate, object, contexts);
+		bufferStatement(toAdd, subject, predicate, object, contexts);
 	}
 
-	private void addModel(Model m)
+	private void bufferStatement(List<Statement> buffer, Resource subject, IRI predicate, Value object,
+			Resource... contexts)
+	{
+		ValueFactory vf = SimpleValueFactory.getInstance();
+		if (contexts.length == 0) {
+			buffer.add(vf.createStatement(subject, predicate, object));
+		}
+		else {
+			for (Resource context : contexts) {
+				buffer.add(vf.createStatement(subject, predicate, object, context));
+			}
+		}
+	}
+
+	private void addModel(Collection<Statement> m)
 		throws RepositoryException
 	{
 		// TODO we should dynamically pick a format from the available writers
 		// perhaps?
 		RDFFormat format = RDFFormat.BINARY;
 		try {
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			Rio.write(m, out, format);
-			ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
-			client.addData(in, null, format);
-
-		}
-		catch (RDFHandlerException e) {
-			throw new RepositoryException("error while writing statement", e);
+			client.addData(m, format);
 		}
 		catch (RDFParseException e) {
 			throw new RepositoryException(e);
@@ -636,19 +649,12 @@ class HTTPRepositoryConnection extends AbstractRepositoryConnection implements H
 		}
 	}
 
-	private void removeModel(Model m)
+	private void removeModel(Collection<Statement> m)
 		throws RepositoryException
 	{
 		RDFFormat format = RDFFormat.BINARY;
 		try {
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			Rio.write(m, out, format);
-			ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
-			client.removeData(in, null, format);
-
-		}
-		catch (RDFHandlerException e) {
-			throw new RepositoryException("error while writing statement", e);
+			client.removeData(m, format);
 		}
 		catch (RDFParseException e) {
 			throw new RepositoryException(e);
@@ -723,7 +729,7 @@ class HTTPRepositoryConnection extends AbstractRepositoryConnection implements H
 		flushTransactionState(Protocol.Action.DELETE);
 
 		if (toRemove == null) {
-			toRemove = new LinkedHashModel();
+			toRemove = new ArrayList<Statement>();
 		}
 		if (subject == null) {
 			subject = SESAME.WILDCARD;
@@ -734,7 +740,7 @@ class HTTPRepositoryConnection extends AbstractRepositoryConnection implements H
 		if (object == null) {
 			object = SESAME.WILDCARD;
 		}
-		toRemove.add(subject, predicate, object, contexts);
+		bufferStatement(toRemove, subject, predicate, object, contexts);
 	}
 
 	@Override
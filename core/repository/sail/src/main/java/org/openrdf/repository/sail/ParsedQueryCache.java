@@ -0,0 +1,260 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.repository.sail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.parser.ParsedBooleanQuery;
+import org.openrdf.query.parser.ParsedGraphQuery;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.ParsedTupleQuery;
+import org.openrdf.query.parser.QueryParserUtil;
+
+/**
+ * A bounded cache of parsed queries, keyed on query language, query string and
+ * base URI. The least recently used queries are evicted first. Every lookup
+ * returns a private copy of the cached query model, so that callers are free to
+ * modify it. Bindings and datasets that are set on a prepared query are not
+ * part of the query model and do not affect caching.
+ * 
+ * @see SailRepository#setQueryCacheSize(int)
+ */
+public class ParsedQueryCache {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Map<Key, ParsedQuery> cache;
+
+	private long hitCount;
+
+	private long missCount;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param maxSize
+	 *        The maximum number of queries to cache.
+	 */
+	public ParsedQueryCache(final int maxSize) {
+		cache = new LinkedHashMap<Key, ParsedQuery>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -7166426917946632455L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, ParsedQuery> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Parses the supplied query, or copies the result of parsing an identical
+	 * query before.
+	 * 
+	 * @see QueryParserUtil#parseQuery(QueryLanguage, String, String)
+	 */
+	public ParsedQuery parseQuery(QueryLanguage ql, String query, String baseURI)
+		throws MalformedQueryException
+	{
+		Key key = new Key(ql, query, baseURI);
+		ParsedQuery cached;
+		synchronized (cache) {
+			cached = cache.get(key);
+			if (cached != null) {
+				hitCount++;
+			}
+			else {
+				missCount++;
+			}
+		}
+
+		if (cached == null) {
+			ParsedQuery parsedQuery = QueryParserUtil.parseQuery(ql, query, baseURI);
+			cached = copy(parsedQuery);
+			if (cached == null) {
+				// unknown query type, can not be copied
+				return parsedQuery;
+			}
+			synchronized (cache) {
+				cache.put(key, cached);
+			}
+			return parsedQuery;
+		}
+
+		return copy(cached);
+	}
+
+	/**
+	 * @see QueryParserUtil#parseTupleQuery(QueryLanguage, String, String)
+	 */
+	public ParsedTupleQuery parseTupleQuery(QueryLanguage ql, String query, String baseURI)
+		throws MalformedQueryException
+	{
+		ParsedQuery q = parseQuery(ql, query, baseURI);
+
+		if (q instanceof ParsedTupleQuery) {
+			return (ParsedTupleQuery)q;
+		}
+
+		throw new IllegalArgumentException("query is not a tuple query: " + query);
+	}
+
+	/**
+	 * @see QueryParserUtil#parseGraphQuery(QueryLanguage, String, String)
+	 */
+	public ParsedGraphQuery parseGraphQuery(QueryLanguage ql, String query, String baseURI)
+		throws MalformedQueryException
+	{
+		ParsedQuery q = parseQuery(ql, query, baseURI);
+
+		if (q instanceof ParsedGraphQuery) {
+			return (ParsedGraphQuery)q;
+		}
+
+		throw new IllegalArgumentException("query is not a graph query: " + query);
+	}
+
+	/**
+	 * @see QueryParserUtil#parseBooleanQuery(QueryLanguage, String, String)
+	 */
+	public ParsedBooleanQuery parseBooleanQuery(QueryLanguage ql, String query, String baseURI)
+		throws MalformedQueryException
+	{
+		ParsedQuery q = parseQuery(ql, query, baseURI);
+
+		if (q instanceof ParsedBooleanQuery) {
+			return (ParsedBooleanQuery)q;
+		}
+
+		throw new IllegalArgumentException("query is not a boolean query: " + query);
+	}
+
+	/**
+	 * Gets the number of queries that were found in the cache.
+	 */
+	public long getHitCount() {
+		synchronized (cache) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Gets the number of queries that had to be parsed.
+	 */
+	public long getMissCount() {
+		synchronized (cache) {
+			return missCount;
+		}
+	}
+
+	/**
+	 * Gets the number of queries that are currently cached.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Removes all queries from the cache.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Creates a deep copy of the supplied query model.
+	 * 
+	 * @return The copy, or <tt>null</tt> if the type of query is not known.
+	 */
+	private ParsedQuery copy(ParsedQuery query) {
+		TupleExpr tupleExpr = query.getTupleExpr().clone();
+		ParsedQuery copy;
+		if (query.getClass() == ParsedTupleQuery.class) {
+			copy = new ParsedTupleQuery(query.getSourceString(), tupleExpr);
+		}
+		else if (query.getClass() == ParsedGraphQuery.class) {
+			copy = new ParsedGraphQuery(query.getSourceString(), tupleExpr,
+					((ParsedGraphQuery)query).getQueryNamespaces());
+		}
+		else if (query.getClass() == ParsedBooleanQuery.class) {
+			copy = new ParsedBooleanQuery(query.getSourceString(), tupleExpr);
+		}
+		else {
+			return null;
+		}
+		copy.setDataset(query.getDataset());
+		return copy;
+	}
+
+	/*-----------------*
+	 * Inner class Key *
+	 *-----------------*/
+
+	private static class Key {
+
+		private final QueryLanguage ql;
+
+		private final String query;
+
+		private final String baseURI;
+
+		public Key(QueryLanguage ql, String query, String baseURI) {
+			this.ql = ql;
+			this.query = query;
+			this.baseURI = baseURI;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (other instanceof Key) {
+				Key o = (Key)other;
+				return ql.equals(o.ql) && query.equals(o.query)
+						&& (baseURI == null ? o.baseURI == null : baseURI.equals(o.baseURI));
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = ql.hashCode();
+			result = 31 * result + query.hashCode();
+			result = 31 * result + (baseURI == null ? 0 : baseURI.hashCode());
+			return result;
+		}
+	}
+}
@@ -73,8 +73,20 @@ public class SailRepository extends AbstractRepository implements FederatedServi
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The default maximum number of parsed queries that are cached by a
+	 * repository.
+	 */
+	public static final int DEFAULT_QUERY_CACHE_SIZE = 256;
+
 	private final Sail sail;
 
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile ParsedQueryCache queryCache = new ParsedQueryCache(DEFAULT_QUERY_CACHE_SIZE);
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -195,6 +207,33 @@ public class SailRepository extends AbstractRepository implements FederatedServi
 		return sail;
 	}
 
+	/**
+	 * Gets the cache of parsed queries that is shared by this repository's
+	 * connections.
+	 * 
+	 * @return The query cache, or <tt>null</tt> if query caching has been
+	 *         disabled.
+	 */
+	public ParsedQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the maximum number of parsed queries that are cached by this
+	 * repository, discarding any queries that have been cached so far. Defaults
+	 * to {@link #DEFAULT_QUERY_CACHE_SIZE}.
+	 * 
+	 * @param size
+	 *        The maximum number of queries to cache, or <tt>0</tt> to disable
+	 *        query caching.
+	 */
+	public void setQueryCacheSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("query cache size must not be negative: " + size);
+		}
+		queryCache = size > 0 ? new ParsedQueryCache(size) : null;
+	}
+
 	public boolean isWritable()
 		throws RepositoryException
 	{
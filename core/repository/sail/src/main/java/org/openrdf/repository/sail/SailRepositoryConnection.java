@@ -89,6 +89,11 @@ public class SailRepositoryConnection extends AbstractRepositoryConnection imple
 		this.sailConnection = sailConnection;
 	}
 
+	@Override
+	public SailRepository getRepository() {
+		return (SailRepository)super.getRepository();
+	}
+
 	/*---------*
 	 * Methods *
 	 *---------*/
@@ -227,7 +232,9 @@ public class SailRepositoryConnection extends AbstractRepositoryConnection imple
 	public SailQuery prepareQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedQuery parsedQuery = QueryParserUtil.parseQuery(ql, queryString, baseURI);
+		ParsedQueryCache queryCache = getRepository().getQueryCache();
+		ParsedQuery parsedQuery = (queryCache != null) ? queryCache.parseQuery(ql, queryString,
+				baseURI) : QueryParserUtil.parseQuery(ql, queryString, baseURI);
 
 		if (parsedQuery instanceof ParsedTupleQuery) {
 			return new SailTupleQuery((ParsedTupleQuery)parsedQuery, this);
@@ -247,7 +254,9 @@ public class SailRepositoryConnection extends AbstractRepositoryConnection imple
 	public SailTupleQuery prepareTupleQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedTupleQuery parsedQuery = QueryParserUtil.parseTupleQuery(ql, queryString, baseURI);
+		ParsedQueryCache queryCache = getRepository().getQueryCache();
+		ParsedTupleQuery parsedQuery = (queryCache != null) ? queryCache.parseTupleQuery(ql, queryString,
+				baseURI) : QueryParserUtil.parseTupleQuery(ql, queryString, baseURI);
 		return new SailTupleQuery(parsedQuery, this);
 	}
 
@@ -255,7 +264,9 @@ public class SailRepositoryConnection extends AbstractRepositoryConnection imple
 	public SailGraphQuery prepareGraphQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedGraphQuery parsedQuery = QueryParserUtil.parseGraphQuery(ql, queryString, baseURI);
+		ParsedQueryCache queryCache = getRepository().getQueryCache();
+		ParsedGraphQuery parsedQuery = (queryCache != null) ? queryCache.parseGraphQuery(ql, queryString,
+				baseURI) : QueryParserUtil.parseGraphQuery(ql, queryString, baseURI);
 		return new SailGraphQuery(parsedQuery, this);
 	}
 
@@ -263,7 +274,9 @@ public class SailRepositoryConnection extends AbstractRepositoryConnection imple
 	public SailBooleanQuery prepareBooleanQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedBooleanQuery parsedQuery = QueryParserUtil.parseBooleanQuery(ql, queryString, baseURI);
+		ParsedQueryCache queryCache = getRepository().getQueryCache();
+		ParsedBooleanQuery parsedQuery = (queryCache != null) ? queryCache.parseBooleanQuery(ql, queryString,
+				baseURI) : QueryParserUtil.parseBooleanQuery(ql, queryString, baseURI);
 		return new SailBooleanQuery(parsedQuery, this);
 	}
 
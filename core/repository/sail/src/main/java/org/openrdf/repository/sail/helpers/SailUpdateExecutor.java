@@ -19,6 +19,7 @@ package org.openrdf.repository.sail.helpers;
 import java.io.IOException;
 import java.io.StringReader;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -31,11 +32,13 @@ import info.aduna.iteration.ConvertingIteration;
 import info.aduna.iteration.TimeLimitIteration;
 
 import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.IRI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.TreeModel;
 import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
@@ -75,7 +78,9 @@ import org.openrdf.sail.UpdateContext;
  * Implementation of {@link SailUpdate#execute()} using
  * {@link SailConnection#evaluate(TupleExpr, Dataset, BindingSet, boolean)} and
  * other {@link SailConnection} methods. LOAD is handled at the Repository API
- * level because it requires access to the Rio parser.
+ * level because it requires access to the Rio parser. Statements produced by
+ * DELETE/INSERT, ADD, COPY and MOVE operations are buffered in sorted,
+ * duplicate-free batches before they are passed on to the connection.
  * 
  * @author jeen
  * @author James Leigh
@@ -93,6 +98,13 @@ import org.openrdf.sail.UpdateContext;
  */
 public class SailUpdateExecutor {
 
+	/**
+	 * The maximum number of statements that are buffered by DELETE/INSERT,
+	 * ADD, COPY and MOVE operations before they are passed on to the
+	 * {@link SailConnection}.
+	 */
+	private static final int BATCH_SIZE = 10000;
+
 	private final Logger logger = LoggerFactory.getLogger(SailUpdateExecutor.class);
 
 	private final SailConnection con;
@@ -259,10 +271,7 @@ public class SailUpdateExecutor {
 		}
 
 		try {
-			while (statements.hasNext()) {
-				Statement st = statements.next();
-				con.addStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), (Resource)destination);
-			}
+			addStatements(statements, destination, uc);
 		}
 		finally {
 			statements.close();
@@ -305,10 +314,7 @@ public class SailUpdateExecutor {
 		}
 
 		try {
-			while (statements.hasNext()) {
-				Statement st = statements.next();
-				con.addStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), (Resource)destination);
-			}
+			addStatements(statements, destination, uc);
 		}
 		finally {
 			statements.close();
@@ -362,15 +368,34 @@ public class SailUpdateExecutor {
 		}
 
 		try {
-			while (statements.hasNext()) {
-				Statement st = statements.next();
-				con.addStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), (Resource)destination);
-				con.removeStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), (Resource)source);
-			}
+			addStatements(statements, destination, uc);
 		}
 		finally {
 			statements.close();
 		}
+
+		// remove the source graph as a whole rather than statement by statement
+		con.clear((Resource)source);
+	}
+
+	/**
+	 * Adds the statements to the destination graph in sorted, duplicate-free
+	 * batches of at most {@link #BATCH_SIZE} statements.
+	 */
+	private void addStatements(CloseableIteration<? extends Statement, SailException> statements,
+			Resource destination, UpdateContext uc)
+				throws SailException
+	{
+		Model batch = new TreeModel();
+		while (statements.hasNext()) {
+			Statement st = statements.next();
+			batch.add(st.getSubject(), st.getPredicate(), st.getObject(), destination);
+			if (batch.size() >= BATCH_SIZE) {
+				addStatements(batch, uc);
+				batch.clear();
+			}
+		}
+		addStatements(batch, uc);
 	}
 
 	/**
@@ -500,19 +525,34 @@ public class SailUpdateExecutor {
 				whereClause = new QueryRoot(whereClause);
 			}
 
+			List<StatementPattern> deletePatterns = getStatementPatterns(modify.getDeleteExpr());
+			List<StatementPattern> insertPatterns = getStatementPatterns(modify.getInsertExpr());
+			IRI[] removeGraphs = getDefaultRemoveGraphs(uc.getDataset());
+
+			// statements to remove from all contexts
+			Model removeAny = new TreeModel();
+			// statements to remove from their own context
+			Model removeIn = new TreeModel();
+			Model insert = new TreeModel();
+
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> sourceBindings;
 			sourceBindings = evaluateWhereClause(whereClause, uc, maxExecutionTime);
 			try {
 				while (sourceBindings.hasNext()) {
 					BindingSet sourceBinding = sourceBindings.next();
-					deleteBoundTriples(sourceBinding, modify.getDeleteExpr(), uc);
+					deleteBoundTriples(sourceBinding, deletePatterns, removeGraphs, removeAny, removeIn);
+
+					insertBoundTriples(sourceBinding, insertPatterns, uc, insert);
 
-					insertBoundTriples(sourceBinding, modify.getInsertExpr(), uc);
+					if (removeAny.size() + removeIn.size() + insert.size() >= BATCH_SIZE) {
+						applyBatch(removeAny, removeIn, insert, uc);
+					}
 				}
 			}
 			finally {
 				sourceBindings.close();
 			}
+			applyBatch(removeAny, removeIn, insert, uc);
 		}
 		catch (QueryEvaluationException e) {
 			throw new SailException(e);
@@ -528,6 +568,46 @@ public class SailUpdateExecutor {
 		return set.toArray(new IRI[set.size()]);
 	}
 
+	private List<StatementPattern> getStatementPatterns(TupleExpr clause) {
+		if (clause == null) {
+			return Collections.emptyList();
+		}
+		return StatementPatternCollector.process(clause);
+	}
+
+	/**
+	 * Passes a batch of buffered DELETE/INSERT statements on to the
+	 * {@link SailConnection} and empties the buffers. All removals of the batch
+	 * are realized before any of its insertions.
+	 */
+	private void applyBatch(Model removeAny, Model removeIn, Model insert, UpdateContext uc)
+		throws SailException
+	{
+		for (Statement st : removeAny) {
+			con.removeStatement(uc, st.getSubject(), st.getPredicate(), st.getObject());
+		}
+		for (Statement st : removeIn) {
+			con.removeStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+		addStatements(insert, uc);
+		removeAny.clear();
+		removeIn.clear();
+		insert.clear();
+	}
+
+	private void addStatements(Model statements, UpdateContext uc)
+		throws SailException
+	{
+		for (Statement st : statements) {
+			if (st.getContext() == null) {
+				con.addStatement(uc, st.getSubject(), st.getPredicate(), st.getObject());
+			}
+			else {
+				con.addStatement(uc, st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+		}
+	}
+
 	private CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateWhereClause(
 			final TupleExpr whereClause, final UpdateContext uc, final int maxExecutionTime)
 				throws SailException, QueryEvaluationException
@@ -583,76 +663,65 @@ public class SailUpdateExecutor {
 	}
 
 	/**
-	 * @param whereBinding
-	 * @param deleteClause
-	 * @throws SailException
+	 * Buffers the statements of the DELETE template that are bound by the
+	 * given solution.
 	 */
-	private void deleteBoundTriples(BindingSet whereBinding, TupleExpr deleteClause, UpdateContext uc)
-		throws SailException
+	private void deleteBoundTriples(BindingSet whereBinding, List<StatementPattern> deletePatterns,
+			IRI[] removeGraphs, Model removeAny, Model removeIn)
+				throws SailException
 	{
-		if (deleteClause != null) {
-			List<StatementPattern> deletePatterns = StatementPatternCollector.process(deleteClause);
+		for (StatementPattern deletePattern : deletePatterns) {
 
-			for (StatementPattern deletePattern : deletePatterns) {
+			Resource subject = (Resource)getValueForVar(deletePattern.getSubjectVar(), whereBinding);
+			IRI predicate = (IRI)getValueForVar(deletePattern.getPredicateVar(), whereBinding);
+			Value object = getValueForVar(deletePattern.getObjectVar(), whereBinding);
 
-				Resource subject = (Resource)getValueForVar(deletePattern.getSubjectVar(), whereBinding);
-				IRI predicate = (IRI)getValueForVar(deletePattern.getPredicateVar(), whereBinding);
-				Value object = getValueForVar(deletePattern.getObjectVar(), whereBinding);
-
-				Resource context = null;
-				if (deletePattern.getContextVar() != null) {
-					context = (Resource)getValueForVar(deletePattern.getContextVar(), whereBinding);
-				}
+			Resource context = null;
+			if (deletePattern.getContextVar() != null) {
+				context = (Resource)getValueForVar(deletePattern.getContextVar(), whereBinding);
+			}
 
-				if (subject == null || predicate == null || object == null) {
-					// skip removal of triple if any variable is unbound (may happen
-					// with optional patterns)
-					// See SES-1047.
-					continue;
-				}
+			if (subject == null || predicate == null || object == null) {
+				// skip removal of triple if any variable is unbound (may happen
+				// with optional patterns)
+				// See SES-1047.
+				continue;
+			}
 
-				if (context != null) {
-					con.removeStatement(uc, subject, predicate, object, context);
-				}
-				else {
-					IRI[] remove = getDefaultRemoveGraphs(uc.getDataset());
-					con.removeStatement(uc, subject, predicate, object, remove);
-				}
+			if (context != null) {
+				removeIn.add(subject, predicate, object, context);
+			}
+			else if (removeGraphs.length == 0) {
+				removeAny.add(subject, predicate, object);
+			}
+			else {
+				removeIn.add(subject, predicate, object, removeGraphs);
 			}
 		}
 	}
 
 	/**
-	 * @param whereBinding
-	 * @param insertClause
-	 * @throws SailException
+	 * Buffers the statements of the INSERT template that are bound by the
+	 * given solution.
 	 */
-	private void insertBoundTriples(BindingSet whereBinding, TupleExpr insertClause, UpdateContext uc)
-		throws SailException
+	private void insertBoundTriples(BindingSet whereBinding, List<StatementPattern> insertPatterns,
+			UpdateContext uc, Model insert)
+				throws SailException
 	{
-		if (insertClause != null) {
-			List<StatementPattern> insertPatterns = StatementPatternCollector.process(insertClause);
-
-			// bnodes in the insert pattern are locally scoped for each
-			// individual source binding.
-			MapBindingSet bnodeMapping = new MapBindingSet();
-			for (StatementPattern insertPattern : insertPatterns) {
-				Statement toBeInserted = createStatementFromPattern(insertPattern, whereBinding, bnodeMapping);
-
-				if (toBeInserted != null) {
-					IRI with = uc.getDataset().getDefaultInsertGraph();
-					if (with == null && toBeInserted.getContext() == null) {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject());
-					}
-					else if (toBeInserted.getContext() == null) {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject(), with);
-					}
-					else {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject(), toBeInserted.getContext());
-					}
+		// bnodes in the insert pattern are locally scoped for each
+		// individual source binding.
+		MapBindingSet bnodeMapping = new MapBindingSet();
+		for (StatementPattern insertPattern : insertPatterns) {
+			Statement toBeInserted = createStatementFromPattern(insertPattern, whereBinding, bnodeMapping);
+
+			if (toBeInserted != null) {
+				IRI with = uc.getDataset().getDefaultInsertGraph();
+				if (toBeInserted.getContext() == null) {
+					insert.add(toBeInserted.getSubject(), toBeInserted.getPredicate(),
+							toBeInserted.getObject(), with);
+				}
+				else {
+					insert.add(toBeInserted);
 				}
 			}
 		}
@@ -0,0 +1,171 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.repository.sail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.parser.ParsedTupleQuery;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.sail.memory.MemoryStore;
+
+public class ParsedQueryCacheTest {
+
+	private static final String QUERY = "SELECT ?s WHERE { ?s ?p ?o }";
+
+	private SailRepository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		repository.shutDown();
+	}
+
+	@Test
+	public void testCopiesAreIndependent()
+		throws Exception
+	{
+		ParsedQueryCache cache = new ParsedQueryCache(10);
+
+		ParsedTupleQuery first = cache.parseTupleQuery(QueryLanguage.SPARQL, QUERY, null);
+		ParsedTupleQuery second = cache.parseTupleQuery(QueryLanguage.SPARQL, QUERY, null);
+
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertNotSame(first.getTupleExpr(), second.getTupleExpr());
+		assertEquals(first.getTupleExpr(), second.getTupleExpr());
+		assertEquals(QUERY, second.getSourceString());
+	}
+
+	@Test
+	public void testEviction()
+		throws Exception
+	{
+		ParsedQueryCache cache = new ParsedQueryCache(2);
+
+		cache.parseQuery(QueryLanguage.SPARQL, QUERY, null);
+		cache.parseQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }", null);
+		cache.parseQuery(QueryLanguage.SPARQL, QUERY, null);
+		cache.parseQuery(QueryLanguage.SPARQL, "CONSTRUCT WHERE { ?s ?p ?o }", null);
+		assertEquals(2, cache.size());
+
+		// the ASK query was least recently used and should have been evicted
+		cache.parseQuery(QueryLanguage.SPARQL, QUERY, null);
+		cache.parseQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }", null);
+		assertEquals(2, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+	}
+
+	@Test
+	public void testMalformedQueryNotCached() {
+		ParsedQueryCache cache = new ParsedQueryCache(10);
+		try {
+			cache.parseQuery(QueryLanguage.SPARQL, "SELECT WHERE", null);
+			fail("expected MalformedQueryException");
+		}
+		catch (MalformedQueryException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testWrongQueryType()
+		throws Exception
+	{
+		ParsedQueryCache cache = new ParsedQueryCache(10);
+		try {
+			cache.parseBooleanQuery(QueryLanguage.SPARQL, QUERY, null);
+			fail("expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPreparedQueriesWithBindings()
+		throws Exception
+	{
+		ValueFactory vf = repository.getValueFactory();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			con.add(RDFS.CLASS, RDFS.LABEL, vf.createLiteral("Class"));
+			con.add(RDFS.RESOURCE, RDFS.LABEL, vf.createLiteral("Resource"));
+
+			String query = "SELECT ?label WHERE { ?s <" + RDFS.LABEL + "> ?label }";
+			for (int i = 0; i < 3; i++) {
+				TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+				tq.setBinding("s", i % 2 == 0 ? RDFS.CLASS : RDFS.RESOURCE);
+				TupleQueryResult result = tq.evaluate();
+				try {
+					BindingSet bs = result.next();
+					assertEquals(i % 2 == 0 ? "Class" : "Resource", bs.getValue("label").stringValue());
+					assertFalse(result.hasNext());
+				}
+				finally {
+					result.close();
+				}
+			}
+
+			assertEquals(2, repository.getQueryCache().getHitCount());
+			assertEquals(1, repository.getQueryCache().getMissCount());
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@Test
+	public void testDisableCache()
+		throws Exception
+	{
+		repository.setQueryCacheSize(0);
+		assertNull(repository.getQueryCache());
+
+		RepositoryConnection con = repository.getConnection();
+		try {
+			con.prepareBooleanQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }").evaluate();
+		}
+		finally {
+			con.close();
+		}
+	}
+}
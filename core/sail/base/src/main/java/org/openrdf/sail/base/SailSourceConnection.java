@@ -337,7 +337,11 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 	{
 		try {
 			if (includeInferredBranch != null) {
-				includeInferredBranch.flush();
+				// flush explicit changes first, so that an inferred statement is
+				// not dropped when it replaces an explicit statement that was
+				// removed in the same transaction
+				explicitOnlyBranch.flush();
+				inferredOnlyBranch.flush();
 			}
 		}
 		finally {
@@ -54,28 +54,38 @@ abstract class AbstractEchoWriteConnection extends AbstractFederationConnection
 	public void rollbackInternal()
 		throws SailException
 	{
-		excute(new Procedure() {
-
-			public void run(RepositoryConnection con)
-				throws RepositoryException
-			{
-				con.rollback();
-			}
-		});
+		try {
+			excute(new Procedure() {
+
+				public void run(RepositoryConnection con)
+					throws RepositoryException
+				{
+					con.rollback();
+				}
+			});
+		}
+		finally {
+			endUpdates();
+		}
 	}
 
 	@Override
 	public void commitInternal()
 		throws SailException
 	{
-		excute(new Procedure() {
-
-			public void run(RepositoryConnection con)
-				throws RepositoryException
-			{
-				con.commit();
-			}
-		});
+		try {
+			excute(new Procedure() {
+
+				public void run(RepositoryConnection con)
+					throws RepositoryException
+				{
+					con.commit();
+				}
+			});
+		}
+		finally {
+			endUpdates();
+		}
 	}
 
 	public void setNamespaceInternal(final String prefix, final String name)
@@ -124,6 +134,7 @@ abstract class AbstractEchoWriteConnection extends AbstractFederationConnection
 			final Resource... contexts)
 		throws SailException
 	{
+		markUpdated();
 		excute(new Procedure() {
 
 			public void run(RepositoryConnection con)
@@ -73,6 +73,7 @@ import org.openrdf.sail.SailException;
 import org.openrdf.sail.federation.evaluation.FederationStrategy;
 import org.openrdf.sail.federation.optimizers.EmptyPatternOptimizer;
 import org.openrdf.sail.federation.optimizers.FederationJoinOptimizer;
+import org.openrdf.sail.federation.optimizers.ObservedEvaluationStatistics;
 import org.openrdf.sail.federation.optimizers.OwnedTupleExprPruner;
 import org.openrdf.sail.federation.optimizers.PrepareOwnedTupleExpr;
 import org.openrdf.sail.federation.optimizers.QueryModelPruner;
@@ -104,6 +105,13 @@ abstract class AbstractFederationConnection extends AbstractSailConnection imple
 	 */
 	private FederatedServiceResolver federatedServiceResolver;
 
+	/**
+	 * If statements have been added or removed in the current transaction,
+	 * which makes the federation's cached information about the members
+	 * unreliable for this connection.
+	 */
+	private volatile boolean updated;
+
 	public AbstractFederationConnection(Federation federation, List<RepositoryConnection> members) {
 		super(new AbstractSail() {
 
@@ -160,6 +168,24 @@ abstract class AbstractFederationConnection extends AbstractSailConnection imple
 		return valueFactory;
 	}
 
+	/**
+	 * Marks the current transaction as having modified the members.
+	 */
+	protected void markUpdated() {
+		updated = true;
+	}
+
+	/**
+	 * Ends the updates of the current transaction, invalidating the cached
+	 * information about the members if they have been modified.
+	 */
+	protected void endUpdates() {
+		if (updated) {
+			updated = false;
+			federation.membersModified();
+		}
+	}
+
 	@Override
 	public void closeInternal()
 		throws SailException
@@ -448,13 +474,16 @@ abstract class AbstractFederationConnection extends AbstractSailConnection imple
 		new QueryMultiJoinOptimizer().optimize(query, dataset, bindings);
 		// new FilterOptimizer().optimize(query, dataset, bindings);
 
-		new EmptyPatternOptimizer(members).optimize(query, dataset, bindings);
+		// uncommitted changes of this connection are not reflected by the cache
+		SourceSelectionCache cache = updated ? null : federation.getSourceSelectionCache();
+		new EmptyPatternOptimizer(members, cache).optimize(query, dataset, bindings);
 		boolean distinct = federation.isDistinct();
 		PrefixHashSet local = federation.getLocalPropertySpace();
-		new FederationJoinOptimizer(members, distinct, local).optimize(query, dataset, bindings);
+		new FederationJoinOptimizer(members, distinct, local, cache).optimize(query, dataset, bindings);
 		new OwnedTupleExprPruner().optimize(query, dataset, bindings);
 		new QueryModelPruner().optimize(query, dataset, bindings);
-		new QueryMultiJoinOptimizer().optimize(query, dataset, bindings);
+		new QueryMultiJoinOptimizer(new ObservedEvaluationStatistics(federation.getJoinStatistics())).optimize(
+				query, dataset, bindings);
 
 		new PrepareOwnedTupleExpr().optimize(query, dataset, bindings);
 
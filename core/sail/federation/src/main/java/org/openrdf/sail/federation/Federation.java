@@ -22,8 +22,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
@@ -52,6 +54,7 @@ import org.openrdf.sail.Sail;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.federation.evaluation.FederationStrategy;
+import org.openrdf.sail.federation.evaluation.JoinStatistics;
 
 /**
  * Union multiple (possibly remote) Repositories into a single RDF store.
@@ -65,9 +68,31 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(Federation.class);
 
+	/**
+	 * The default maximum number of threads that evaluate joins in parallel.
+	 */
+	public static final int DEFAULT_MAX_THREADS = 32;
+
+	/**
+	 * The default time in milliseconds that the members that contain a
+	 * statement pattern are remembered. The cache is disabled by default, as
+	 * members are commonly changed without going through the federation.
+	 */
+	public static final long DEFAULT_SOURCE_SELECTION_CACHE_TIME = 0;
+
 	private final List<Repository> members = new ArrayList<Repository>();
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	/**
+	 * Joins that find no idle thread are evaluated lazily by the thread that
+	 * consumes their results, see {@link #execute(Runnable)}.
+	 */
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, DEFAULT_MAX_THREADS, 60L,
+			TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+	private final SourceSelectionCache sourceSelectionCache = new SourceSelectionCache(
+			DEFAULT_SOURCE_SELECTION_CACHE_TIME);
+
+	private final JoinStatistics joinStatistics = new JoinStatistics();
 
 	private PrefixHashSet localPropertySpace; // NOPMD
 
@@ -137,6 +162,49 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 		this.readOnly = readOnly;
 	}
 
+	public int getMaxThreads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Sets the maximum number of threads that evaluate joins in parallel. Joins
+	 * beyond this limit are evaluated by the threads that consume their
+	 * results.
+	 */
+	public void setMaxThreads(int maxThreads) {
+		executor.setMaximumPoolSize(maxThreads);
+	}
+
+	public long getSourceSelectionCacheTime() {
+		return sourceSelectionCache.getExpiry();
+	}
+
+	/**
+	 * Sets the time in milliseconds that the members that contain a statement
+	 * pattern are remembered, 0 disables the cache. Changes that are made to
+	 * the members without going through the federation may go unnoticed for
+	 * this long.
+	 */
+	public void setSourceSelectionCacheTime(long millis) {
+		sourceSelectionCache.setExpiry(millis);
+	}
+
+	SourceSelectionCache getSourceSelectionCache() {
+		return sourceSelectionCache;
+	}
+
+	JoinStatistics getJoinStatistics() {
+		return joinStatistics;
+	}
+
+	/**
+	 * Forgets the cached information about the contents of the members.
+	 */
+	void membersModified() {
+		sourceSelectionCache.clear();
+		joinStatistics.clear();
+	}
+
 	/**
 	 * @return Returns the SERVICE resolver.
 	 */
@@ -252,6 +320,9 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 
 	/**
 	 * Required by {@link java.util.concurrent.Executor Executor} interface.
+	 * 
+	 * @throws RejectedExecutionException
+	 *         if all threads are busy.
 	 */
 	public void execute(Runnable command) {
 		executor.execute(command);
@@ -279,7 +350,8 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 	}
 
 	protected EvaluationStrategy createEvaluationStrategy(TripleSource tripleSource, Dataset dataset, FederatedServiceResolver resolver) {
-		return new FederationStrategy(this, tripleSource, dataset, getFederatedServiceResolver());
+		return new FederationStrategy(this, joinStatistics, tripleSource, dataset,
+				getFederatedServiceResolver());
 	}
 
 	private void closeAll(Iterable<RepositoryConnection> connections) {
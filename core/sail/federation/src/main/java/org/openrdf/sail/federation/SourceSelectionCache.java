@@ -0,0 +1,132 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+/**
+ * Remembers which federation members contain statements matching a pattern,
+ * so that source selection does not need to ask every member again for every
+ * query. Answers expire after a configurable time, to pick up changes that
+ * are made to the members directly; changes made through the federation
+ * clear the cache when they are committed. The cache is disabled unless a
+ * time is configured.
+ * 
+ * @see Federation#setSourceSelectionCacheTime(long)
+ */
+public class SourceSelectionCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int MAX_SIZE = 10000;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile long expiry;
+
+	private final Map<List<Object>, Long> answers = new LinkedHashMap<List<Object>, Long>(1024, 0.75f, true)
+	{
+
+		private static final long serialVersionUID = 6154296632617283549L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Long> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param expiry
+	 *        the time in milliseconds that an answer is remembered, 0 disables
+	 *        the cache.
+	 */
+	public SourceSelectionCache(long expiry) {
+		this.expiry = expiry;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public long getExpiry() {
+		return expiry;
+	}
+
+	public void setExpiry(long expiry) {
+		this.expiry = expiry;
+		clear();
+	}
+
+	/**
+	 * Checks whether the member contains (inferred) statements matching the
+	 * pattern, asking the member only if no unexpired answer is known.
+	 */
+	public boolean hasStatement(RepositoryConnection member, Resource subj, IRI pred, Value obj,
+			Resource... contexts)
+		throws RepositoryException
+	{
+		long expiry = this.expiry;
+		if (expiry <= 0) {
+			return member.hasStatement(subj, pred, obj, true, contexts);
+		}
+
+		List<Object> key = Arrays.<Object> asList(member.getRepository(), subj, pred, obj,
+				Arrays.asList(contexts));
+		long now = System.currentTimeMillis();
+		synchronized (answers) {
+			Long answer = answers.get(key);
+			if (answer != null && Math.abs(answer) > now) {
+				return answer > 0;
+			}
+		}
+
+		boolean result = member.hasStatement(subj, pred, obj, true, contexts);
+
+		// the sign of the expiry time holds the answer
+		long until = now + expiry;
+		synchronized (answers) {
+			answers.put(key, result ? until : -until);
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all answers, e.g. because members have been modified.
+	 */
+	public void clear() {
+		synchronized (answers) {
+			answers.clear();
+		}
+	}
+}
@@ -61,6 +61,7 @@ class WritableConnection extends AbstractEchoWriteConnection {
 	public void addStatementInternal(Resource subj, IRI pred, Value obj, Resource... contexts)
 		throws SailException
 	{
+		markUpdated();
 		add(members.get(addIndex), subj, pred, obj, contexts);
 	}
 
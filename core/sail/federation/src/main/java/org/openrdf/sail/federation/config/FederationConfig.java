@@ -38,6 +38,7 @@ import org.openrdf.repository.config.RepositoryConfigException;
 import org.openrdf.repository.config.RepositoryImplConfig;
 import org.openrdf.sail.config.AbstractSailImplConfig;
 import org.openrdf.sail.config.SailConfigException;
+import org.openrdf.sail.federation.Federation;
 
 /**
  * Lists the members of a federation and which properties describe a resource
@@ -71,6 +72,18 @@ public class FederationConfig extends AbstractSailImplConfig {
 	 */
 	public static final IRI READ_ONLY = vf.createIRI(NAMESPACE + "readOnly");
 
+	/**
+	 * The maximum number of threads that evaluate joins in parallel.
+	 */
+	public static final IRI MAX_THREADS = vf.createIRI(NAMESPACE + "maxThreads");
+
+	/**
+	 * The time in milliseconds that the members that contain a statement
+	 * pattern are remembered, 0 disables the cache.
+	 */
+	public static final IRI SOURCE_SELECTION_CACHE_TIME = vf.createIRI(NAMESPACE
+			+ "sourceSelectionCacheTime");
+
 	private List<RepositoryImplConfig> members = new ArrayList<RepositoryImplConfig>();
 
 	private final Set<String> localPropertySpace = new HashSet<String>(); // NOPMD
@@ -79,6 +92,10 @@ public class FederationConfig extends AbstractSailImplConfig {
 
 	private boolean readOnly;
 
+	private int maxThreads = Federation.DEFAULT_MAX_THREADS;
+
+	private long sourceSelectionCacheTime = Federation.DEFAULT_SOURCE_SELECTION_CACHE_TIME;
+
 	public List<RepositoryImplConfig> getMembers() {
 		return members;
 	}
@@ -115,6 +132,22 @@ public class FederationConfig extends AbstractSailImplConfig {
 		this.readOnly = readOnly;
 	}
 
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public long getSourceSelectionCacheTime() {
+		return sourceSelectionCacheTime;
+	}
+
+	public void setSourceSelectionCacheTime(long sourceSelectionCacheTime) {
+		this.sourceSelectionCacheTime = sourceSelectionCacheTime;
+	}
+
 	@Override
 	public Resource export(Model model) {
 		ValueFactory valueFactory = SimpleValueFactory.getInstance();
@@ -127,6 +160,8 @@ public class FederationConfig extends AbstractSailImplConfig {
 		}
 		model.add(self, DISTINCT, valueFactory.createLiteral(distinct));
 		model.add(self, READ_ONLY, valueFactory.createLiteral(readOnly));
+		model.add(self, MAX_THREADS, valueFactory.createLiteral(maxThreads));
+		model.add(self, SOURCE_SELECTION_CACHE_TIME, valueFactory.createLiteral(sourceSelectionCacheTime));
 		return self;
 	}
 
@@ -156,6 +191,15 @@ public class FederationConfig extends AbstractSailImplConfig {
 			if (bool.isPresent() && bool.get().booleanValue()) {
 				readOnly = true;
 			}
+			Optional<Literal> threads = Models.objectLiteral(model.filter(implNode, MAX_THREADS, null));
+			if (threads.isPresent()) {
+				maxThreads = threads.get().intValue();
+			}
+			Optional<Literal> cacheTime = Models.objectLiteral(model.filter(implNode,
+					SOURCE_SELECTION_CACHE_TIME, null));
+			if (cacheTime.isPresent()) {
+				sourceSelectionCacheTime = cacheTime.get().longValue();
+			}
 		}
 		catch (ModelException e) {
 			throw new SailConfigException(e);
@@ -170,6 +214,13 @@ public class FederationConfig extends AbstractSailImplConfig {
 		if (members.isEmpty()) {
 			throw new SailConfigException("No federation members specified");
 		}
+		if (maxThreads < 1) {
+			throw new SailConfigException("Maximum number of threads must be positive: " + maxThreads);
+		}
+		if (sourceSelectionCacheTime < 0) {
+			throw new SailConfigException("Source selection cache time must not be negative: "
+					+ sourceSelectionCacheTime);
+		}
 		for (RepositoryImplConfig member : members) {
 			try {
 				member.validate();
@@ -74,6 +74,8 @@ public class FederationFactory implements SailFactory {
 		sail.setLocalPropertySpace(cfg.getLocalPropertySpace());
 		sail.setDistinct(cfg.isDistinct());
 		sail.setReadOnly(cfg.isReadOnly());
+		sail.setMaxThreads(cfg.getMaxThreads());
+		sail.setSourceSelectionCacheTime(cfg.getSourceSelectionCacheTime());
 		return sail;
 	}
 }
@@ -22,6 +22,7 @@ import info.aduna.iteration.UnionIteration;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
@@ -40,7 +41,8 @@ import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
 
 /**
  * Evaluates Join, LeftJoin and Union in parallel and only evaluate if
- * {@link OwnedTupleExpr} is the given member.
+ * {@link OwnedTupleExpr} is the given member. Joins are evaluated lazily in
+ * the consuming thread if the executor has no thread available.
  * 
  * @see ParallelJoinCursor
  * @see ParallelLeftJoinCursor
@@ -50,11 +52,26 @@ public class FederationStrategy extends SimpleEvaluationStrategy {
 
 	private final Executor executor;
 
+	private final JoinStatistics statistics;
+
 	public FederationStrategy(Executor executor, TripleSource tripleSource, Dataset dataset,
 			FederatedServiceResolver serviceManager)
+	{
+		this(executor, null, tripleSource, dataset, serviceManager);
+	}
+
+	/**
+	 * @param statistics
+	 *        the observed member response sizes and latencies that joins with
+	 *        a member subquery choose their algorithm by, or <tt>null</tt> to
+	 *        always evaluate bind joins.
+	 */
+	public FederationStrategy(Executor executor, JoinStatistics statistics, TripleSource tripleSource,
+			Dataset dataset, FederatedServiceResolver serviceManager)
 	{
 		super(tripleSource, dataset, serviceManager);
 		this.executor = executor;
+		this.statistics = statistics;
 	}
 
 	@Override
@@ -81,8 +98,15 @@ public class FederationStrategy extends SimpleEvaluationStrategy {
 	{
 		CloseableIteration<BindingSet, QueryEvaluationException> result = evaluate(join.getLeftArg(), bindings);
 		for (int i = 1, n = 2; i < n; i++) {
-			result = new ParallelJoinCursor(this, result, join.getRightArg()); // NOPMD
-			executor.execute((Runnable)result);
+			ParallelJoinCursor cursor = new ParallelJoinCursor(this, result, join.getRightArg(), bindings,
+					statistics); // NOPMD
+			try {
+				executor.execute(cursor);
+			}
+			catch (RejectedExecutionException e) {
+				cursor.evaluateLazily();
+			}
+			result = cursor;
 		}
 		return result;
 	}
@@ -93,8 +117,15 @@ public class FederationStrategy extends SimpleEvaluationStrategy {
 		assert join.getNumberOfArguments() > 0;
 		CloseableIteration<BindingSet, QueryEvaluationException> result = evaluate(join.getArg(0), bindings);
 		for (int i = 1, n = join.getNumberOfArguments(); i < n; i++) {
-			result = new ParallelJoinCursor(this, result, join.getArg(i)); // NOPMD
-			executor.execute((Runnable)result);
+			ParallelJoinCursor cursor = new ParallelJoinCursor(this, result, join.getArg(i), bindings,
+					statistics); // NOPMD
+			try {
+				executor.execute(cursor);
+			}
+			catch (RejectedExecutionException e) {
+				cursor.evaluateLazily();
+			}
+			result = cursor;
 		}
 		return result;
 	}
@@ -117,8 +148,14 @@ public class FederationStrategy extends SimpleEvaluationStrategy {
 		CloseableIteration<BindingSet, QueryEvaluationException> result;
 		if (problemVars.isEmpty()) {
 			// left join is "well designed"
-			result = new ParallelLeftJoinCursor(this, leftJoin, bindings);
-			executor.execute((Runnable)result);
+			ParallelLeftJoinCursor cursor = new ParallelLeftJoinCursor(this, leftJoin, bindings);
+			try {
+				executor.execute(cursor);
+			}
+			catch (RejectedExecutionException e) {
+				cursor.evaluateLazily();
+			}
+			result = cursor;
 		}
 		else {
 			result = new BadlyDesignedLeftJoinIterator(this, leftJoin, bindings, problemVars);
@@ -144,7 +181,8 @@ public class FederationStrategy extends SimpleEvaluationStrategy {
 		CloseableIteration<BindingSet, QueryEvaluationException> result = expr.evaluate(dataset, bindings);
 		if (result == null) {
 			TripleSource source = new RepositoryTripleSource(expr.getOwner());
-			EvaluationStrategy eval = new FederationStrategy(executor, source, dataset, serviceResolver);
+			EvaluationStrategy eval = new FederationStrategy(executor, statistics, source, dataset,
+					serviceResolver);
 			result = eval.evaluate(expr.getArg(), bindings);
 		}
 		return result;
@@ -0,0 +1,163 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation.evaluation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
+
+/**
+ * Response sizes and latencies that have been observed for the subqueries
+ * that are sent to the federation members. The {@link FederationStrategy}
+ * uses them to choose between bind and hash joins and the optimizer uses them
+ * to order joins.
+ */
+public class JoinStatistics {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int MAX_SIZE = 1000;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Map<List<Object>, Observation> observations = new LinkedHashMap<List<Object>, Observation>(
+			64, 0.75f, true)
+	{
+
+		private static final long serialVersionUID = -2390524128880406812L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Observation> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the number of results of the subquery without any bindings from
+	 * other join arguments.
+	 * 
+	 * @return The observed number of results, <tt>Long.MAX_VALUE</tt> if
+	 *         evaluation was aborted because there were too many, or -1 if
+	 *         unknown.
+	 */
+	public long getResultSize(OwnedTupleExpr expr) {
+		Observation observation = get(expr);
+		return observation == null ? -1 : observation.resultSize;
+	}
+
+	/**
+	 * Gets the time in milliseconds that the subquery took to evaluate without
+	 * any bindings from other join arguments, or -1 if unknown.
+	 */
+	public long getLatency(OwnedTupleExpr expr) {
+		Observation observation = get(expr);
+		return observation == null ? -1 : observation.latency;
+	}
+
+	/**
+	 * Gets the average time in milliseconds that the subquery took to respond
+	 * when evaluated with bindings from other join arguments, or -1 if
+	 * unknown.
+	 */
+	public double getBoundLatency(OwnedTupleExpr expr) {
+		Observation observation = get(expr);
+		if (observation == null || observation.boundRequests == 0) {
+			return -1;
+		}
+		return (double)observation.boundLatency / observation.boundRequests;
+	}
+
+	/**
+	 * Records an evaluation of the subquery without bindings from other join
+	 * arguments.
+	 * 
+	 * @param resultSize
+	 *        the number of results, or <tt>Long.MAX_VALUE</tt> if evaluation
+	 *        was aborted because there were too many.
+	 */
+	public void addUnboundEvaluation(OwnedTupleExpr expr, long resultSize, long latency) {
+		synchronized (observations) {
+			Observation observation = getOrCreate(expr);
+			observation.resultSize = resultSize;
+			observation.latency = latency;
+		}
+	}
+
+	/**
+	 * Records an evaluation of the subquery with bindings from other join
+	 * arguments.
+	 */
+	public void addBoundEvaluation(OwnedTupleExpr expr, long latency) {
+		synchronized (observations) {
+			Observation observation = getOrCreate(expr);
+			observation.boundRequests++;
+			observation.boundLatency += latency;
+		}
+	}
+
+	public void clear() {
+		synchronized (observations) {
+			observations.clear();
+		}
+	}
+
+	private Observation get(OwnedTupleExpr expr) {
+		synchronized (observations) {
+			return observations.get(getKey(expr));
+		}
+	}
+
+	private Observation getOrCreate(OwnedTupleExpr expr) {
+		List<Object> key = getKey(expr);
+		Observation observation = observations.get(key);
+		if (observation == null) {
+			observation = new Observation();
+			observations.put(key, observation);
+		}
+		return observation;
+	}
+
+	private List<Object> getKey(OwnedTupleExpr expr) {
+		return Arrays.<Object> asList(expr.getOwner().getRepository(), expr.getArg().toString());
+	}
+
+	/*-------------------------*
+	 * Inner class Observation *
+	 *-------------------------*/
+
+	private static class Observation {
+
+		long resultSize = -1;
+
+		long latency = -1;
+
+		long boundRequests;
+
+		long boundLatency;
+	}
+}
@@ -19,14 +19,33 @@ package org.openrdf.sail.federation.evaluation;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.LookAheadIteration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.iterator.CollectionIteration;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
 
 /**
  * Iterate the left side and evaluate the right side in separate thread, only
  * iterate the right side in the controlling thread.
+ * <p>
+ * If the right side is a subquery of a single member and
+ * {@link JoinStatistics} are available, the join is evaluated either as a
+ * bind join, sending a subquery per left binding, or as a hash join, sending
+ * a single subquery without the left bindings. The choice is made at runtime
+ * from the number of left bindings and the observed response sizes and
+ * latencies of the member.
  * 
  * @author James Leigh
  */
@@ -38,10 +57,26 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The number of left bindings that are read before choosing the join
+	 * algorithm.
+	 */
+	private static final int BIND_JOIN_LIMIT = 32;
+
+	/**
+	 * The maximum number of right results that are kept in memory for a hash
+	 * join.
+	 */
+	private static final int HASH_JOIN_LIMIT = 10000;
+
 	private final EvaluationStrategy strategy;
 
 	private final TupleExpr rightArg;
 
+	private final BindingSet bindings;
+
+	private final JoinStatistics statistics;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -54,6 +89,8 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 
 	private volatile boolean closed;
 
+	private volatile boolean lazy;
+
 	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
 			1024);
 
@@ -64,22 +101,53 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 	public ParallelJoinCursor(EvaluationStrategy strategy,
 			CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg)
 		throws QueryEvaluationException
+	{
+		this(strategy, leftIter, rightArg, EmptyBindingSet.getInstance(), null);
+	}
+
+	/**
+	 * @param bindings
+	 *        the bindings that the join is evaluated with.
+	 * @param statistics
+	 *        the statistics to choose the join algorithm with, or
+	 *        <tt>null</tt> to always evaluate a bind join.
+	 */
+	public ParallelJoinCursor(EvaluationStrategy strategy,
+			CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg,
+			BindingSet bindings, JoinStatistics statistics)
+		throws QueryEvaluationException
 	{
 		super();
 		this.strategy = strategy;
 		this.leftIter = leftIter;
 		this.rightArg = rightArg;
+		this.bindings = bindings;
+		this.statistics = statistics;
 	}
 
 	/*---------*
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Evaluates the right side for one left binding at a time in the thread
+	 * that iterates this cursor, instead of in {@link #run()}. Used when no
+	 * thread is available to run this cursor.
+	 */
+	public void evaluateLazily() {
+		lazy = true;
+	}
+
 	public void run() {
 		evaluationThread = Thread.currentThread();
 		try {
-			while (!closed && leftIter.hasNext()) {
-				rightQueue.put(strategy.evaluate(rightArg, leftIter.next()));
+			if (statistics != null && rightArg instanceof OwnedTupleExpr) {
+				adaptiveJoin((OwnedTupleExpr)rightArg);
+			}
+			else {
+				while (!closed && leftIter.hasNext()) {
+					rightQueue.put(strategy.evaluate(rightArg, leftIter.next()));
+				}
 			}
 		}
 		catch (RuntimeException e) {
@@ -94,14 +162,139 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 		}
 	}
 
+	private void adaptiveJoin(OwnedTupleExpr owned)
+		throws QueryEvaluationException, InterruptedException
+	{
+		List<BindingSet> leftBindings = new ArrayList<BindingSet>(BIND_JOIN_LIMIT);
+		while (!closed && leftBindings.size() < BIND_JOIN_LIMIT && leftIter.hasNext()) {
+			leftBindings.add(leftIter.next());
+		}
+		if (closed || leftBindings.isEmpty()) {
+			return;
+		}
+
+		List<BindingSet> rightResults = null;
+		if (isHashJoinPreferred(owned, leftBindings.size(), leftIter.hasNext())) {
+			rightResults = evaluateUnbound(owned);
+		}
+
+		if (rightResults == null) {
+			for (BindingSet leftBinding : leftBindings) {
+				bindJoin(owned, leftBinding);
+			}
+			while (!closed && leftIter.hasNext()) {
+				bindJoin(owned, leftIter.next());
+			}
+		}
+		else {
+			HashIndex index = new HashIndex(rightResults, leftBindings.get(0));
+			for (BindingSet leftBinding : leftBindings) {
+				hashJoin(index, leftBinding);
+			}
+			while (!closed && leftIter.hasNext()) {
+				hashJoin(index, leftIter.next());
+			}
+		}
+	}
+
+	/**
+	 * A hash join is preferred if there are many left bindings, unless the
+	 * right side is known to be too large, or if the single subquery is known
+	 * to respond faster than the subqueries for all left bindings.
+	 */
+	private boolean isHashJoinPreferred(OwnedTupleExpr owned, int leftSize, boolean moreLeftBindings) {
+		long resultSize = statistics.getResultSize(owned);
+		if (resultSize > HASH_JOIN_LIMIT) {
+			return false;
+		}
+		if (moreLeftBindings) {
+			return true;
+		}
+		long latency = statistics.getLatency(owned);
+		double boundLatency = statistics.getBoundLatency(owned);
+		return resultSize >= 0 && boundLatency >= 0 && latency < boundLatency * leftSize;
+	}
+
+	/**
+	 * Evaluates the right side without the left bindings.
+	 * 
+	 * @return The results, or <tt>null</tt> if there are too many to keep in
+	 *         memory.
+	 */
+	private List<BindingSet> evaluateUnbound(OwnedTupleExpr owned)
+		throws QueryEvaluationException
+	{
+		long start = System.currentTimeMillis();
+		List<BindingSet> results = new ArrayList<BindingSet>();
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(owned, bindings);
+		try {
+			while (!closed && iter.hasNext()) {
+				if (results.size() == HASH_JOIN_LIMIT) {
+					statistics.addUnboundEvaluation(owned, Long.MAX_VALUE, System.currentTimeMillis() - start);
+					return null;
+				}
+				results.add(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		statistics.addUnboundEvaluation(owned, results.size(), System.currentTimeMillis() - start);
+		return results;
+	}
+
+	private void bindJoin(OwnedTupleExpr owned, BindingSet leftBinding)
+		throws QueryEvaluationException, InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		CloseableIteration<BindingSet, QueryEvaluationException> result = strategy.evaluate(owned, leftBinding);
+		statistics.addBoundEvaluation(owned, System.currentTimeMillis() - start);
+		rightQueue.put(result);
+	}
+
+	private void hashJoin(HashIndex index, BindingSet leftBinding)
+		throws InterruptedException
+	{
+		List<BindingSet> joined = new ArrayList<BindingSet>();
+		for (BindingSet rightBinding : index.getCandidates(leftBinding)) {
+			BindingSet result = join(leftBinding, rightBinding);
+			if (result != null) {
+				joined.add(result);
+			}
+		}
+		if (!joined.isEmpty()) {
+			rightQueue.put(new CollectionIteration<BindingSet, QueryEvaluationException>(joined));
+		}
+	}
+
+	/**
+	 * Joins two compatible binding sets.
+	 * 
+	 * @return The joined binding set, or <tt>null</tt> if they bind the same
+	 *         name to different values.
+	 */
+	private static BindingSet join(BindingSet leftBinding, BindingSet rightBinding) {
+		QueryBindingSet result = new QueryBindingSet(leftBinding);
+		for (Binding binding : rightBinding) {
+			Value leftValue = leftBinding.getValue(binding.getName());
+			if (leftValue == null) {
+				result.addBinding(binding);
+			}
+			else if (!leftValue.equals(binding.getValue())) {
+				return null;
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public synchronized BindingSet getNextElement()
 		throws QueryEvaluationException
 	{
 		BindingSet result = null;
-		while (rightIter != null || rightQueue.hasNext()) {
+		while (rightIter != null || hasNextRightIter()) {
 			if (rightIter == null) {
-				rightIter = rightQueue.next();
+				rightIter = nextRightIter();
 			}
 			if (rightIter.hasNext()) {
 				result = rightIter.next();
@@ -116,6 +309,18 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 		return result;
 	}
 
+	private boolean hasNextRightIter()
+		throws QueryEvaluationException
+	{
+		return lazy ? leftIter.hasNext() : rightQueue.hasNext();
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> nextRightIter()
+		throws QueryEvaluationException
+	{
+		return lazy ? strategy.evaluate(rightArg, leftIter.next()) : rightQueue.next();
+	}
+
 	@Override
 	public synchronized void handleClose()
 		throws QueryEvaluationException
@@ -138,4 +343,83 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 		String right = (null == rightIter) ? rightArg.toString() : rightIter.toString();
 		return "ParallelJoin\n\t" + left + "\n\t" + right.replace("\n", "\n\t");
 	}
+
+	/*-----------------------*
+	 * Inner class HashIndex *
+	 *-----------------------*/
+
+	/**
+	 * Indexes the right results of a hash join on the names that they share
+	 * with the left bindings.
+	 */
+	private class HashIndex {
+
+		private final List<String> keyNames = new ArrayList<String>();
+
+		private final List<BindingSet> all;
+
+		private final Map<List<Value>, List<BindingSet>> index = new HashMap<List<Value>, List<BindingSet>>();
+
+		/**
+		 * Right results that do not bind all key names and thus are candidates
+		 * for every left binding.
+		 */
+		private final List<BindingSet> unkeyed = new ArrayList<BindingSet>();
+
+		public HashIndex(List<BindingSet> rightResults, BindingSet sampleLeftBinding) {
+			this.all = rightResults;
+
+			Set<String> rightNames = rightArg.getBindingNames();
+			for (String name : sampleLeftBinding.getBindingNames()) {
+				if (rightNames.contains(name) && !bindings.hasBinding(name)) {
+					keyNames.add(name);
+				}
+			}
+
+			for (BindingSet rightBinding : rightResults) {
+				List<Value> key = getKey(rightBinding);
+				if (key == null) {
+					unkeyed.add(rightBinding);
+				}
+				else {
+					List<BindingSet> entry = index.get(key);
+					if (entry == null) {
+						index.put(key, entry = new ArrayList<BindingSet>()); // NOPMD
+					}
+					entry.add(rightBinding);
+				}
+			}
+		}
+
+		/**
+		 * Gets the right results that may be compatible with the left binding.
+		 */
+		public List<BindingSet> getCandidates(BindingSet leftBinding) {
+			List<Value> key = getKey(leftBinding);
+			if (key == null) {
+				return all;
+			}
+			List<BindingSet> entry = index.get(key);
+			if (unkeyed.isEmpty()) {
+				return entry == null ? unkeyed : entry;
+			}
+			List<BindingSet> candidates = new ArrayList<BindingSet>(unkeyed);
+			if (entry != null) {
+				candidates.addAll(entry);
+			}
+			return candidates;
+		}
+
+		private List<Value> getKey(BindingSet bindingSet) {
+			List<Value> key = new ArrayList<Value>(keyNames.size());
+			for (String name : keyNames) {
+				Value value = bindingSet.getValue(name);
+				if (value == null) {
+					return null;
+				}
+				key.add(value);
+			}
+			return key;
+		}
+	}
 }
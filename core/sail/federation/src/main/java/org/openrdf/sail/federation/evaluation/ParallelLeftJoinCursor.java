@@ -67,6 +67,8 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 
 	private volatile boolean closed;
 
+	private volatile boolean lazy;
+
 	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
 			1024);
 
@@ -88,6 +90,15 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Evaluates the right side for one left binding at a time in the thread
+	 * that iterates this cursor, instead of in {@link #run()}. Used when no
+	 * thread is available to run this cursor.
+	 */
+	public void evaluateLazily() {
+		lazy = true;
+	}
+
 	public void run() {
 		evaluationThread = Thread.currentThread();
 		try {
@@ -111,6 +122,13 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 
 	private void addToRightQueue(ValueExpr condition, BindingSet leftBindings)
 		throws QueryEvaluationException, InterruptedException
+	{
+		rightQueue.put(evaluateRightArg(condition, leftBindings));
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluateRightArg(ValueExpr condition,
+			BindingSet leftBindings)
+		throws QueryEvaluationException
 	{
 		CloseableIteration<BindingSet, QueryEvaluationException> result = strategy.evaluate(join.getRightArg(),
 				leftBindings);
@@ -119,7 +137,7 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 		}
 		CloseableIteration<BindingSet, QueryEvaluationException> alt = new SingletonIteration<BindingSet, QueryEvaluationException>(
 				leftBindings);
-		rightQueue.put(new AlternativeCursor<BindingSet>(result, alt));
+		return new AlternativeCursor<BindingSet>(result, alt);
 	}
 
 	@Override
@@ -127,9 +145,9 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 		throws QueryEvaluationException
 	{
 		BindingSet result = null;
-		while (rightIter != null || rightQueue.hasNext()) {
+		while (rightIter != null || (lazy ? leftIter.hasNext() : rightQueue.hasNext())) {
 			if (rightIter == null) {
-				rightIter = rightQueue.next();
+				rightIter = lazy ? evaluateRightArg(join.getCondition(), leftIter.next()) : rightQueue.next();
 			}
 			if (rightIter.hasNext()) {
 				result = rightIter.next();
@@ -32,6 +32,7 @@ import org.openrdf.query.algebra.evaluation.QueryOptimizer;
 import org.openrdf.query.algebra.helpers.AbstractQueryModelVisitor;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.federation.SourceSelectionCache;
 
 /**
  * Remove StatementPatterns that have no statements.
@@ -44,9 +45,23 @@ public class EmptyPatternOptimizer extends AbstractQueryModelVisitor<RepositoryE
 
 	private final Collection<? extends RepositoryConnection> members;
 
+	private final SourceSelectionCache cache;
+
 	public EmptyPatternOptimizer(Collection<? extends RepositoryConnection> members) {
+		this(members, null);
+	}
+
+	/**
+	 * @param cache
+	 *        remembers which members contain statements matching a pattern,
+	 *        or <tt>null</tt> to always ask the members.
+	 */
+	public EmptyPatternOptimizer(Collection<? extends RepositoryConnection> members,
+			SourceSelectionCache cache)
+	{
 		super();
 		this.members = members;
+		this.cache = cache;
 	}
 
 	public void optimize(TupleExpr query, Dataset dataset, BindingSet bindings) {
@@ -67,13 +82,23 @@ public class EmptyPatternOptimizer extends AbstractQueryModelVisitor<RepositoryE
 		Value obj = node.getObjectVar().getValue();
 		Resource[] ctx = getContexts(node.getContextVar());
 		for (RepositoryConnection member : members) {
-			if (member.hasStatement(subj, pred, obj, true, ctx)) {
+			if (hasStatement(member, subj, pred, obj, ctx)) {
 				return;
 			}
 		}
 		node.replaceWith(new EmptySet());
 	}
 
+	private boolean hasStatement(RepositoryConnection member, Resource subj, IRI pred, Value obj,
+			Resource[] ctx)
+		throws RepositoryException
+	{
+		if (cache == null) {
+			return member.hasStatement(subj, pred, obj, true, ctx);
+		}
+		return cache.hasStatement(member, subj, pred, obj, ctx);
+	}
+
 	private Resource[] getContexts(Var var) {
 		return (var == null || !var.hasValue()) ? new Resource[0] : new Resource[] { (Resource)var.getValue() };
 	}
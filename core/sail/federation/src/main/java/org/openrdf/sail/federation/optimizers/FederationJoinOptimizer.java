@@ -47,6 +47,7 @@ import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.sail.federation.PrefixHashSet;
+import org.openrdf.sail.federation.SourceSelectionCache;
 import org.openrdf.sail.federation.algebra.NaryJoin;
 import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
 
@@ -68,15 +69,29 @@ public class FederationJoinOptimizer extends AbstractQueryModelVisitor<Repositor
 
 	private final boolean distinct;
 
+	private final SourceSelectionCache cache;
+
 	private Dataset dataset;
 
 	public FederationJoinOptimizer(Collection<? extends RepositoryConnection> members, boolean distinct,
 			PrefixHashSet localSpace)
+	{
+		this(members, distinct, localSpace, null);
+	}
+
+	/**
+	 * @param cache
+	 *        remembers which members contain statements matching a pattern,
+	 *        or <tt>null</tt> to always ask the members.
+	 */
+	public FederationJoinOptimizer(Collection<? extends RepositoryConnection> members, boolean distinct,
+			PrefixHashSet localSpace, SourceSelectionCache cache)
 	{
 		super();
 		this.members = members;
 		this.localSpace = localSpace;
 		this.distinct = distinct;
+		this.cache = cache;
 	}
 
 	private static Map<Resource, List<RepositoryConnection>> createContextToMemberMap(
@@ -358,6 +373,10 @@ public class FederationJoinOptimizer extends AbstractQueryModelVisitor<Repositor
 					results.addAll(contextRepos);
 				}
 			}
+			if (explicitContexts.isEmpty()) {
+				// any member may contain the statements
+				results.addAll(members);
+			}
 			if(results.size() == 1) {
 				result = results.iterator().next();
 			}
@@ -365,7 +384,7 @@ public class FederationJoinOptimizer extends AbstractQueryModelVisitor<Repositor
 				// fallback to using hasStatement()
 				// but hopefully we narrowed it down to results
 				for (RepositoryConnection member : results) {
-					if (member.hasStatement(subj, pred, obj, true, ctx)) {
+					if (hasStatement(member, subj, pred, obj, ctx)) {
 						if (result == null) {
 							result = member;
 						}
@@ -379,6 +398,16 @@ public class FederationJoinOptimizer extends AbstractQueryModelVisitor<Repositor
 			return result;
 		}
 
+		private boolean hasStatement(RepositoryConnection member, Resource subj, IRI pred, Value obj,
+				Resource[] ctx)
+			throws RepositoryException
+		{
+			if (cache == null) {
+				return member.hasStatement(subj, pred, obj, true, ctx);
+			}
+			return cache.hasStatement(member, subj, pred, obj, ctx);
+		}
+
 		private void usedBy(RepositoryConnection member) {
 			if (!shared && owner == null) {
 				// first owner sensitive element
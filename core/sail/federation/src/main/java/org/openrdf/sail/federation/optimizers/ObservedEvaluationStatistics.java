@@ -0,0 +1,60 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation.optimizers;
+
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
+import org.openrdf.sail.federation.evaluation.JoinStatistics;
+
+/**
+ * Uses the response sizes that have been observed for member subqueries as
+ * their cardinality, so that joins are reordered according to the actual
+ * contents of the members once a subquery has been evaluated.
+ */
+public class ObservedEvaluationStatistics extends EvaluationStatistics {
+
+	private final JoinStatistics statistics;
+
+	public ObservedEvaluationStatistics(JoinStatistics statistics) {
+		super();
+		this.statistics = statistics;
+	}
+
+	@Override
+	protected CardinalityCalculator createCardinalityCalculator() {
+		return new ObservedCardinalityCalculator();
+	}
+
+	/*-------------------------------------------*
+	 * Inner class ObservedCardinalityCalculator *
+	 *-------------------------------------------*/
+
+	protected class ObservedCardinalityCalculator extends CardinalityCalculator {
+
+		@Override
+		public void meetOther(QueryModelNode node) {
+			if (node instanceof OwnedTupleExpr) {
+				long resultSize = statistics.getResultSize((OwnedTupleExpr)node);
+				if (resultSize >= 0) {
+					cardinality = resultSize;
+					return;
+				}
+			}
+			super.meetOther(node);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.sail.federation.config.FederationConfig;
+import org.openrdf.sail.federation.config.FederationFactory;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.memory.config.MemoryStoreConfig;
+
+/**
+ * Tests joins between members of a bounded {@link Federation}, the reuse of
+ * cached source selection answers and their configuration.
+ */
+public class FederationJoinTest {
+
+	private static final String NS = "urn:test:";
+
+	private static final String JOIN_QUERY = "SELECT * { ?s <urn:test:p> ?o . ?o <urn:test:q> ?v }";
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private SailRepository left;
+
+	private SailRepository right;
+
+	private Federation federation;
+
+	private SailRepository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		left = new SailRepository(new MemoryStore());
+		left.initialize();
+		right = new SailRepository(new MemoryStore());
+		right.initialize();
+		RepositoryConnection lc = left.getConnection();
+		RepositoryConnection rc = right.getConnection();
+		try {
+			for (int i = 0; i < 500; i++) {
+				IRI o = vf.createIRI(NS, "o" + i);
+				lc.add(vf.createIRI(NS, "s" + i), vf.createIRI(NS, "p"), o);
+				if (i % 2 == 0) {
+					rc.add(o, vf.createIRI(NS, "q"), vf.createLiteral(i));
+				}
+			}
+		}
+		finally {
+			lc.close();
+			rc.close();
+		}
+		federation = new Federation();
+		federation.addMember(left);
+		federation.addMember(right);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		if (repository != null) {
+			repository.shutDown();
+		}
+		left.shutDown();
+		right.shutDown();
+	}
+
+	@Test
+	public void testRepeatedJoin()
+		throws Exception
+	{
+		federation.setSourceSelectionCacheTime(60000);
+		initFederation();
+		for (int run = 0; run < 3; run++) {
+			assertJoinResults(evaluate(JOIN_QUERY));
+		}
+	}
+
+	@Test
+	public void testJoinWithSingleThread()
+		throws Exception
+	{
+		federation.setMaxThreads(1);
+		initFederation();
+		for (int run = 0; run < 2; run++) {
+			assertJoinResults(evaluate(JOIN_QUERY));
+		}
+	}
+
+	@Test
+	public void testSourceSelectionAfterUpdate()
+		throws Exception
+	{
+		initFederation();
+		String query = "SELECT * { ?s <urn:test:r> ?o }";
+		assertEquals(0, evaluate(query).size());
+		RepositoryConnection con = repository.getConnection();
+		try {
+			con.begin();
+			con.add(vf.createIRI(NS, "a"), vf.createIRI(NS, "r"), vf.createIRI(NS, "b"));
+			assertEquals(1, Iterations.asList(
+					con.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+		assertEquals(1, evaluate(query).size());
+	}
+
+	@Test
+	public void testDirectMemberUpdateWithoutCache()
+		throws Exception
+	{
+		initFederation();
+		String query = "SELECT * { ?s <urn:test:r> ?o }";
+		assertEquals(0, evaluate(query).size());
+
+		// changes made to a member directly are seen immediately by default
+		RepositoryConnection con = right.getConnection();
+		try {
+			con.add(vf.createIRI(NS, "a"), vf.createIRI(NS, "r"), vf.createIRI(NS, "b"));
+		}
+		finally {
+			con.close();
+		}
+		assertEquals(1, evaluate(query).size());
+	}
+
+	@Test
+	public void testSourceSelectionCacheConfig()
+		throws Exception
+	{
+		FederationConfig config = new FederationConfig();
+		config.setType(FederationFactory.SAIL_TYPE);
+		assertEquals(0L, config.getSourceSelectionCacheTime());
+		config.addMember(new SailRepositoryConfig(new MemoryStoreConfig()));
+		config.setSourceSelectionCacheTime(30000);
+
+		Model model = new LinkedHashModel();
+		Resource node = config.export(model);
+		FederationConfig parsed = new FederationConfig();
+		parsed.parse(model, node);
+		parsed.validate();
+		assertEquals(30000L, parsed.getSourceSelectionCacheTime());
+
+		Federation sail = (Federation)new FederationFactory().getSail(parsed);
+		assertEquals(30000L, sail.getSourceSelectionCacheTime());
+	}
+
+	private void initFederation()
+		throws Exception
+	{
+		repository = new SailRepository(federation);
+		repository.initialize();
+	}
+
+	private List<BindingSet> evaluate(String query)
+		throws Exception
+	{
+		RepositoryConnection con = repository.getConnection();
+		try {
+			return Iterations.asList(con.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private void assertJoinResults(List<BindingSet> results) {
+		assertEquals(250, results.size());
+		for (BindingSet bs : results) {
+			String s = bs.getValue("s").stringValue();
+			String o = bs.getValue("o").stringValue();
+			int v = Integer.parseInt(bs.getValue("v").stringValue());
+			assertEquals(NS + "s" + v, s);
+			assertEquals(NS + "o" + v, o);
+		}
+	}
+}
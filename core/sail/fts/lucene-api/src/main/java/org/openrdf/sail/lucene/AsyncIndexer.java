@@ -0,0 +1,404 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.lucene.LuceneSailBuffer.AddRemoveOperation;
+import org.openrdf.sail.lucene.LuceneSailBuffer.ClearContextOperation;
+import org.openrdf.sail.lucene.LuceneSailBuffer.ClearOperation;
+import org.openrdf.sail.lucene.LuceneSailBuffer.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the changes of committed transactions to a {@link SearchIndex} in a
+ * background thread, so that committing a transaction does not have to wait
+ * for the index. The changes that are committed within one refresh interval
+ * are merged and written to the index in a single index commit, which makes
+ * them visible to searches.
+ * <p>
+ * The queue of changes is kept in memory. While changes are pending, or after
+ * they could not be indexed, a marker file is kept next to the index. If the
+ * JVM terminates abnormally, the marker shows that the index is out of date,
+ * and {@link LuceneSail} rebuilds it using {@link LuceneSail#reindex()} when it
+ * is initialized again. An indexing error is reported by {@link #getFailure()}
+ * until the index has been rebuilt.
+ * 
+ * @see LuceneSail#ASYNC_INDEXING_KEY
+ * @see LuceneSail#INDEX_REFRESH_INTERVAL_KEY
+ */
+public class AsyncIndexer {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final SearchIndex index;
+
+	private final long refreshInterval;
+
+	/**
+	 * The file that exists while the index is out of date, or <tt>null</tt> if
+	 * the index does not survive a restart.
+	 */
+	private final File dirtyMarker;
+
+	private final Thread thread;
+
+	/**
+	 * The transactions that have been committed but not yet indexed. Also used
+	 * as lock for the fields below.
+	 */
+	private final LinkedList<Transaction> queue = new LinkedList<Transaction>();
+
+	private long submitted;
+
+	private long indexed;
+
+	/**
+	 * The commit time of the oldest transaction that is currently being
+	 * indexed, or 0 if no transactions are being indexed.
+	 */
+	private long indexingSince;
+
+	/**
+	 * The number of threads waiting for the index to catch up, in which case
+	 * queued changes are indexed right away.
+	 */
+	private int waiting;
+
+	private boolean shutDown;
+
+	/**
+	 * The error that caused changes to be missing from the index, or
+	 * <tt>null</tt> if all indexed changes were written successfully.
+	 */
+	private Exception failure;
+
+	/**
+	 * @param index
+	 *        The index to write changes to.
+	 * @param refreshInterval
+	 *        The number of milliseconds to collect changes for before they are
+	 *        written to the index.
+	 */
+	public AsyncIndexer(SearchIndex index, long refreshInterval) {
+		this(index, refreshInterval, null);
+	}
+
+	/**
+	 * @param index
+	 *        The index to write changes to.
+	 * @param refreshInterval
+	 *        The number of milliseconds to collect changes for before they are
+	 *        written to the index.
+	 * @param dirtyMarker
+	 *        The file that marks the index as out of date while changes are
+	 *        pending or after they could not be indexed, or <tt>null</tt> if no
+	 *        such file should be kept.
+	 */
+	public AsyncIndexer(SearchIndex index, long refreshInterval, File dirtyMarker) {
+		this.index = index;
+		this.refreshInterval = refreshInterval;
+		this.dirtyMarker = dirtyMarker;
+		thread = new Thread(new Runnable() {
+
+			public void run() {
+				try {
+					processQueue();
+				}
+				catch (InterruptedException e) {
+					logger.warn("asynchronous indexing interrupted");
+				}
+			}
+		}, "LuceneSail indexer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues the operations of a committed transaction for indexing.
+	 */
+	public void submit(List<Operation> operations)
+		throws SailException
+	{
+		if (operations.isEmpty()) {
+			return;
+		}
+		synchronized (queue) {
+			if (shutDown) {
+				throw new SailException("Asynchronous indexer has been shut down");
+			}
+			queue.add(new Transaction(new ArrayList<Operation>(operations), System.currentTimeMillis()));
+			submitted++;
+			try {
+				updateDirtyMarker();
+			}
+			catch (IOException e) {
+				throw new SailException("Could not mark the index as out of date", e);
+			}
+			queue.notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the number of committed transactions that have not been indexed
+	 * yet.
+	 */
+	public long getPendingTransactions() {
+		synchronized (queue) {
+			return submitted - indexed;
+		}
+	}
+
+	/**
+	 * Gets the number of milliseconds that the index lags behind, i.e. the time
+	 * since the oldest transaction that has not been indexed yet was committed.
+	 * 
+	 * @return The lag in milliseconds, or 0 if the index is up to date.
+	 */
+	public long getLag() {
+		synchronized (queue) {
+			long since = indexingSince;
+			if (since == 0 && !queue.isEmpty()) {
+				since = queue.getFirst().time;
+			}
+			return since == 0 ? 0 : System.currentTimeMillis() - since;
+		}
+	}
+
+	/**
+	 * Gets the error that caused changes to be missing from the index. The
+	 * index remains out of date until it has been rebuilt, after which
+	 * {@link #indexRebuilt()} should be called.
+	 * 
+	 * @return The error, or <tt>null</tt> if all changes have been indexed
+	 *         successfully.
+	 */
+	public Exception getFailure() {
+		synchronized (queue) {
+			return failure;
+		}
+	}
+
+	/**
+	 * Records that the index has been rebuilt from the indexed data, which
+	 * clears any earlier failure.
+	 */
+	public void indexRebuilt()
+		throws IOException
+	{
+		synchronized (queue) {
+			failure = null;
+			updateDirtyMarker();
+		}
+	}
+
+	/**
+	 * Blocks until all transactions that have been submitted before this call
+	 * have been indexed.
+	 */
+	public void waitForIndex()
+		throws InterruptedException
+	{
+		synchronized (queue) {
+			long target = submitted;
+			waiting++;
+			try {
+				queue.notifyAll();
+				while (indexed < target && thread.isAlive()) {
+					queue.wait(100);
+				}
+			}
+			finally {
+				waiting--;
+			}
+		}
+	}
+
+	/**
+	 * Indexes the remaining queued transactions and stops the background
+	 * thread.
+	 */
+	public void shutDown()
+		throws InterruptedException
+	{
+		synchronized (queue) {
+			shutDown = true;
+			queue.notifyAll();
+		}
+		thread.join();
+	}
+
+	private void processQueue()
+		throws InterruptedException
+	{
+		while (true) {
+			List<Transaction> batch;
+			synchronized (queue) {
+				while (queue.isEmpty() && !shutDown) {
+					queue.wait();
+				}
+				if (queue.isEmpty()) {
+					return;
+				}
+				// collect changes for the rest of the refresh interval
+				long until = queue.getFirst().time + refreshInterval;
+				long delay = until - System.currentTimeMillis();
+				while (delay > 0 && waiting == 0 && !shutDown) {
+					queue.wait(delay);
+					delay = until - System.currentTimeMillis();
+				}
+				batch = new ArrayList<Transaction>(queue);
+				queue.clear();
+				indexingSince = batch.get(0).time;
+			}
+
+			Exception error = null;
+			try {
+				index(batch);
+			}
+			catch (Exception e) {
+				logger.error("Could not index " + batch.size()
+						+ " transactions, the Lucene index is now out of date", e);
+				error = e;
+			}
+			finally {
+				synchronized (queue) {
+					indexed += batch.size();
+					indexingSince = 0;
+					if (error != null && failure == null) {
+						failure = error;
+					}
+					try {
+						updateDirtyMarker();
+					}
+					catch (IOException e) {
+						logger.warn("Could not update " + dirtyMarker, e);
+					}
+					queue.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void index(List<Transaction> batch)
+		throws IOException
+	{
+		logger.debug("indexing {} transactions", batch.size());
+		// successive additions and removals are merged, so that every subject
+		// is only updated once; clear operations are applied in order
+		AddRemoveOperation merged = new AddRemoveOperation();
+		for (Transaction transaction : batch) {
+			for (Operation op : transaction.operations) {
+				if (op instanceof AddRemoveOperation) {
+					AddRemoveOperation addremove = (AddRemoveOperation)op;
+					for (Statement st : addremove.getRemoved()) {
+						merged.remove(st);
+					}
+					for (Statement st : addremove.getAdded()) {
+						merged.add(st);
+					}
+				}
+				else if (op instanceof ClearContextOperation) {
+					addRemoveStatements(merged);
+					merged = new AddRemoveOperation();
+					index.begin();
+					try {
+						index.clearContexts(((ClearContextOperation)op).getContexts());
+						index.commit();
+					}
+					catch (IOException e) {
+						index.rollback();
+						throw e;
+					}
+				}
+				else if (op instanceof ClearOperation) {
+					merged = new AddRemoveOperation();
+					index.begin();
+					try {
+						index.clear();
+						index.commit();
+					}
+					catch (IOException e) {
+						index.rollback();
+						throw e;
+					}
+				}
+				else {
+					throw new RuntimeException("Cannot interpret operation " + op + " of type "
+							+ op.getClass().getName());
+				}
+			}
+		}
+		addRemoveStatements(merged);
+	}
+
+	private void addRemoveStatements(AddRemoveOperation addremove)
+		throws IOException
+	{
+		if (addremove.getAdded().isEmpty() && addremove.getRemoved().isEmpty()) {
+			return;
+		}
+		index.begin();
+		try {
+			index.addRemoveStatements(addremove.getAdded(), addremove.getRemoved());
+			index.commit();
+		}
+		catch (IOException e) {
+			index.rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the dirty marker if changes are pending or missing from the index,
+	 * and deletes it otherwise. Must be called while holding the queue lock.
+	 */
+	private void updateDirtyMarker()
+		throws IOException
+	{
+		if (dirtyMarker == null) {
+			return;
+		}
+		if (indexed < submitted || failure != null) {
+			if (!dirtyMarker.exists() && !dirtyMarker.createNewFile()) {
+				throw new IOException("Could not create " + dirtyMarker);
+			}
+		}
+		else if (dirtyMarker.exists() && !dirtyMarker.delete()) {
+			throw new IOException("Could not delete " + dirtyMarker);
+		}
+	}
+
+	private static class Transaction {
+
+		final List<Operation> operations;
+
+		final long time;
+
+		Transaction(List<Operation> operations, long time) {
+			this.operations = operations;
+			this.time = time;
+		}
+	}
+}
@@ -321,6 +321,26 @@ public class LuceneSail extends NotifyingSailWrapper {
 	 */
 	public static final String INCOMPLETE_QUERY_FAIL_KEY = "incompletequeryfail";
 
+	/**
+	 * Set the key "asyncIndexing=true" as sail parameter to let a background
+	 * thread update the index after transactions have been committed, instead
+	 * of updating it as part of the commit. Searches may then not reflect the
+	 * most recent changes. For an index in a {@link #LUCENE_DIR_KEY directory},
+	 * a marker file next to it records that changes are pending, so that the
+	 * index is rebuilt on initialization if they were lost. See
+	 * {@link AsyncIndexer}.
+	 */
+	public static final String ASYNC_INDEXING_KEY = "asyncIndexing";
+
+	/**
+	 * Set the key "indexRefreshInterval=&lt;ms&gt;" as sail parameter to
+	 * configure for how many milliseconds committed changes are collected
+	 * before they are written to the index when indexing asynchronously, and
+	 * hence how long it takes for them to become visible to searches. The
+	 * default is 1000.
+	 */
+	public static final String INDEX_REFRESH_INTERVAL_KEY = "indexRefreshInterval";
+
 	/**
 	 * The LuceneIndex holding the indexed literals.
 	 */
@@ -338,6 +358,8 @@ public class LuceneSail extends NotifyingSailWrapper {
 
 	private IndexableStatementFilter filter = null;
 
+	private AsyncIndexer asyncIndexer;
+
 	public void setLuceneIndex(SearchIndex luceneIndex) {
 		this.luceneIndex = luceneIndex;
 	}
@@ -346,6 +368,30 @@ public class LuceneSail extends NotifyingSailWrapper {
 		return luceneIndex;
 	}
 
+	/**
+	 * Gets the indexer that updates the index in the background.
+	 * 
+	 * @return The indexer, or <tt>null</tt> if the index is updated as part of
+	 *         each commit.
+	 * @see #ASYNC_INDEXING_KEY
+	 */
+	public AsyncIndexer getAsyncIndexer() {
+		return asyncIndexer;
+	}
+
+	/**
+	 * Gets the error that left the index out of date when indexing
+	 * asynchronously. The index can be repaired using {@link #reindex()}.
+	 *
+	 * @return The error, or <tt>null</tt> if the index is up to date or is
+	 *         updated as part of each commit.
+	 * @see AsyncIndexer#getFailure()
+	 */
+	public Exception getIndexingFailure() {
+		AsyncIndexer indexer = asyncIndexer;
+		return indexer == null ? null : indexer.getFailure();
+	}
+
 	@Override
 	public NotifyingSailConnection getConnection()
 		throws SailException
@@ -358,6 +404,10 @@ public class LuceneSail extends NotifyingSailWrapper {
 		throws SailException
 	{
 		try {
+			if (asyncIndexer != null) {
+				asyncIndexer.shutDown();
+				asyncIndexer = null;
+			}
 			if (luceneIndex != null) {
 				luceneIndex.shutDown();
 			}
@@ -365,6 +415,9 @@ public class LuceneSail extends NotifyingSailWrapper {
 		catch (IOException e) {
 			throw new SailException(e);
 		}
+		catch (InterruptedException e) {
+			throw new SailException(e);
+		}
 		finally {
 			// ensure that super is also invoked when the LuceneIndex causes an
 			// IOException
@@ -416,12 +469,39 @@ public class LuceneSail extends NotifyingSailWrapper {
 			if (luceneIndex == null) {
 				initializeLuceneIndex();
 			}
+			File dirtyMarker = getDirtyMarker();
+			boolean dirty = dirtyMarker != null && dirtyMarker.exists();
+			if (Boolean.parseBoolean(parameters.getProperty(ASYNC_INDEXING_KEY))) {
+				long refreshInterval = Long.parseLong(parameters.getProperty(INDEX_REFRESH_INTERVAL_KEY,
+						"1000"));
+				asyncIndexer = new AsyncIndexer(luceneIndex, refreshInterval, dirtyMarker);
+			}
+			if (dirty) {
+				logger.warn("Lucene index is missing changes that were not indexed, reindexing");
+				reindex();
+			}
 		}
 		catch (Exception e) {
 			throw new SailException("Could not initialize LuceneSail: " + e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Gets the file that marks the index as out of date when indexing
+	 * asynchronously.
+	 * 
+	 * @return The file next to the index directory, or <tt>null</tt> if the
+	 *         index is not stored in a directory.
+	 */
+	private File getDirtyMarker() {
+		String luceneDir = parameters.getProperty(LUCENE_DIR_KEY);
+		if (luceneDir == null || Boolean.parseBoolean(parameters.getProperty(LUCENE_RAMDIR_KEY))) {
+			return null;
+		}
+		File indexDir = new File(luceneDir).getAbsoluteFile();
+		return new File(indexDir.getParentFile(), indexDir.getName() + ".pending");
+	}
+
 	protected void initializeLuceneIndex()
 		throws Exception
 	{
@@ -482,6 +562,10 @@ public class LuceneSail extends NotifyingSailWrapper {
 	public void reindex()
 		throws Exception
 	{
+		if (asyncIndexer != null) {
+			// don't let pending changes interfere with the reindexing
+			asyncIndexer.waitForIndex();
+		}
 		// clear
 		logger.info("Reindexing sail: clearing...");
 		luceneIndex.clear();
@@ -536,6 +620,16 @@ public class LuceneSail extends NotifyingSailWrapper {
 			// commit the changes
 			luceneIndex.commit();
 
+			if (asyncIndexer != null) {
+				asyncIndexer.indexRebuilt();
+			}
+			else {
+				File dirtyMarker = getDirtyMarker();
+				if (dirtyMarker != null && dirtyMarker.exists() && !dirtyMarker.delete()) {
+					logger.warn("Could not delete {}", dirtyMarker);
+				}
+			}
+
 			logger.info("Reindexing sail: done.");
 		}
 		catch (Exception e) {
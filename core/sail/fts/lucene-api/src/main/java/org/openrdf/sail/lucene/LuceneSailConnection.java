@@ -209,6 +209,10 @@ public class LuceneSailConnection extends NotifyingSailConnectionWrapper {
 	{
 		super.begin();
 		buffer.reset();
+		if (sail.getAsyncIndexer() != null) {
+			// the index is only written by the indexer
+			return;
+		}
 		try {
 			luceneIndex.begin();
 		}
@@ -223,6 +227,19 @@ public class LuceneSailConnection extends NotifyingSailConnectionWrapper {
 	{
 		super.commit();
 
+		AsyncIndexer indexer = sail.getAsyncIndexer();
+		if (indexer != null) {
+			logger.debug("Queueing Lucene transaction with {} operations.", buffer.operations().size());
+			try {
+				buffer.optimize();
+				indexer.submit(buffer.operations());
+			}
+			finally {
+				buffer.reset();
+			}
+			return;
+		}
+
 		logger.debug("Committing Lucene transaction with {} operations.", buffer.operations().size());
 		try {
 			try {
@@ -526,6 +543,10 @@ public class LuceneSailConnection extends NotifyingSailConnectionWrapper {
 	{
 		super.rollback();
 		buffer.reset();
+		if (sail.getAsyncIndexer() != null) {
+			// nothing has been written to the index yet
+			return;
+		}
 		try {
 			luceneIndex.rollback();
 		}
@@ -0,0 +1,275 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.BindingSet;
+import org.openrdf.sail.lucene.LuceneSailBuffer.Operation;
+
+public class AsyncIndexerTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final Statement st1 = vf.createStatement(vf.createIRI("urn:s1"), RDFS.LABEL,
+			vf.createLiteral("one"));
+
+	private final Statement st2 = vf.createStatement(vf.createIRI("urn:s2"), RDFS.LABEL,
+			vf.createLiteral("two"));
+
+	@Rule
+	public TemporaryFolder tempDir = new TemporaryFolder();
+
+	private RecordingIndex index;
+
+	private AsyncIndexer indexer;
+
+	@Before
+	public void setUp() {
+		index = new RecordingIndex();
+		// a long refresh interval, so that all changes end up in one batch
+		indexer = new AsyncIndexer(index, 60000);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		indexer.shutDown();
+	}
+
+	@Test
+	public void testChangesAreMerged()
+		throws Exception
+	{
+		LuceneSailBuffer buffer = new LuceneSailBuffer();
+		buffer.add(st1);
+		indexer.submit(buffer.operations());
+		buffer.reset();
+		buffer.remove(st1);
+		buffer.add(st2);
+		indexer.submit(buffer.operations());
+		buffer.reset();
+		assertEquals(2, indexer.getPendingTransactions());
+		assertTrue(indexer.getLag() >= 0);
+
+		indexer.waitForIndex();
+
+		assertEquals(0, indexer.getPendingTransactions());
+		assertEquals(0, indexer.getLag());
+		assertEquals(Collections.singleton(st2), index.added);
+		assertTrue(index.removed.isEmpty());
+		assertEquals(1, index.commits);
+	}
+
+	@Test
+	public void testClearDiscardsEarlierChanges()
+		throws Exception
+	{
+		LuceneSailBuffer buffer = new LuceneSailBuffer();
+		buffer.add(st1);
+		buffer.clear(null);
+		buffer.add(st2);
+		indexer.submit(buffer.operations());
+
+		indexer.waitForIndex();
+
+		assertEquals(1, index.clears);
+		assertEquals(Collections.singleton(st2), index.added);
+		// the clear and the subsequent addition are both committed
+		assertEquals(2, index.commits);
+	}
+
+	@Test
+	public void testDirtyMarkerWhilePending()
+		throws Exception
+	{
+		indexer.shutDown();
+		File marker = new File(tempDir.getRoot(), "index.pending");
+		indexer = new AsyncIndexer(index, 60000, marker);
+		assertFalse(marker.exists());
+
+		LuceneSailBuffer buffer = new LuceneSailBuffer();
+		buffer.add(st1);
+		indexer.submit(buffer.operations());
+		assertTrue(marker.exists());
+
+		indexer.waitForIndex();
+		assertFalse(marker.exists());
+		assertNull(indexer.getFailure());
+	}
+
+	@Test
+	public void testFailureIsReported()
+		throws Exception
+	{
+		indexer.shutDown();
+		File marker = new File(tempDir.getRoot(), "index.pending");
+		indexer = new AsyncIndexer(index, 60000, marker);
+		index.fail = true;
+
+		LuceneSailBuffer buffer = new LuceneSailBuffer();
+		buffer.add(st1);
+		indexer.submit(buffer.operations());
+		indexer.waitForIndex();
+
+		assertNotNull(indexer.getFailure());
+		assertEquals(1, index.rollbacks);
+		// the index remains out of date
+		assertTrue(marker.exists());
+
+		index.fail = false;
+		buffer.reset();
+		buffer.add(st2);
+		indexer.submit(buffer.operations());
+		indexer.waitForIndex();
+		assertNotNull(indexer.getFailure());
+		assertTrue(marker.exists());
+
+		indexer.indexRebuilt();
+		assertNull(indexer.getFailure());
+		assertFalse(marker.exists());
+	}
+
+	@Test
+	public void testShutDownIndexesPendingChanges()
+		throws Exception
+	{
+		LuceneSailBuffer buffer = new LuceneSailBuffer();
+		buffer.add(st1);
+		List<Operation> operations = new ArrayList<Operation>(buffer.operations());
+		indexer.submit(operations);
+
+		indexer.shutDown();
+
+		assertEquals(Collections.singleton(st1), index.added);
+	}
+
+	private static class RecordingIndex implements SearchIndex {
+
+		final Set<Statement> added = new HashSet<Statement>();
+
+		final Set<Statement> removed = new HashSet<Statement>();
+
+		int commits;
+
+		int clears;
+
+		int rollbacks;
+
+		volatile boolean fail;
+
+		public void initialize(Properties parameters) {
+		}
+
+		public Collection<BindingSet> evaluate(QuerySpec query) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Collection<BindingSet> evaluate(SearchQueryEvaluator query) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void beginReading() {
+		}
+
+		public void endReading() {
+		}
+
+		public void shutDown() {
+		}
+
+		public boolean accept(Literal literal) {
+			return true;
+		}
+
+		public boolean isGeoField(String propertyName) {
+			return false;
+		}
+
+		public void begin() {
+		}
+
+		public synchronized void commit() {
+			commits++;
+		}
+
+		public synchronized void rollback() {
+			rollbacks++;
+		}
+
+		public void addStatement(Statement statement) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void removeStatement(Statement statement) {
+			throw new UnsupportedOperationException();
+		}
+
+		public synchronized void addRemoveStatements(Collection<Statement> added,
+				Collection<Statement> removed)
+			throws IOException
+		{
+			if (fail) {
+				throw new IOException("index failure");
+			}
+			this.added.addAll(added);
+			this.removed.addAll(removed);
+		}
+
+		public void clearContexts(Resource... contexts) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void addDocuments(Resource subject, List<Statement> statements) {
+			throw new UnsupportedOperationException();
+		}
+
+		public synchronized void clear()
+			throws IOException
+		{
+			clears++;
+			added.clear();
+			removed.clear();
+		}
+	}
+}
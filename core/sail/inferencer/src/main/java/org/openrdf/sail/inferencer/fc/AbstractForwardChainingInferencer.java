@@ -28,6 +28,18 @@ public abstract class AbstractForwardChainingInferencer extends NotifyingSailWra
 
 	private static final IsolationLevels READ_COMMITTED = IsolationLevels.READ_COMMITTED;
 
+	/**
+	 * The default maximum number of statements that can be removed in one go
+	 * while maintaining the inferred statements incrementally.
+	 */
+	public static final int DEFAULT_MAX_REMOVED_STATEMENTS = 100000;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile int maxRemovedStatements = DEFAULT_MAX_REMOVED_STATEMENTS;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -44,6 +56,20 @@ public abstract class AbstractForwardChainingInferencer extends NotifyingSailWra
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Sets the maximum number of statements that can be removed in one go while
+	 * maintaining the inferred statements incrementally. Larger removals cause
+	 * the inferred statements to be recomputed from scratch. Defaults to
+	 * {@link #DEFAULT_MAX_REMOVED_STATEMENTS}.
+	 */
+	public void setMaxRemovedStatements(int maxRemovedStatements) {
+		this.maxRemovedStatements = maxRemovedStatements;
+	}
+
+	public int getMaxRemovedStatements() {
+		return maxRemovedStatements;
+	}
+
 	@Override
 	public IsolationLevel getDefaultIsolationLevel() {
 		IsolationLevel level = super.getDefaultIsolationLevel();
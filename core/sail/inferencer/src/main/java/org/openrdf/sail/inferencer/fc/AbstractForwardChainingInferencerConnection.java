@@ -47,11 +47,31 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 
 	private Sail sail;
 
+	/**
+	 * The maximum number of removed statements that are recorded for
+	 * incremental maintenance of the inferred statements. Larger removals cause
+	 * the inferred statements to be recomputed from scratch.
+	 */
+	private final int maxRemoved;
+
 	/**
 	 * true if the base Sail reported removed statements.
 	 */
 	private boolean statementsRemoved;
 
+	/**
+	 * Contains the statements that have been reported by the base Sail as
+	 * removed, or <tt>null</tt> if too many statements were removed to maintain
+	 * the inferred statements incrementally.
+	 */
+	private Model removedStatements;
+
+	/**
+	 * true while inferred statements are being retracted, in which case removed
+	 * statements are not recorded.
+	 */
+	private boolean retracting;
+
 	/**
 	 * Contains the statements that have been reported by the base Sail as
 	 */
@@ -66,6 +86,12 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	public AbstractForwardChainingInferencerConnection(Sail sail, InferencerConnection con) {
 		super(con);
 		this.sail = sail;
+		if (sail instanceof AbstractForwardChainingInferencer) {
+			maxRemoved = ((AbstractForwardChainingInferencer)sail).getMaxRemovedStatements();
+		}
+		else {
+			maxRemoved = AbstractForwardChainingInferencer.DEFAULT_MAX_REMOVED_STATEMENTS;
+		}
 		con.addConnectionListener(this);
 	}
 
@@ -76,7 +102,7 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	// Called by base sail
 	@Override
 	public void statementAdded(Statement st) {
-		if (statementsRemoved) {
+		if (statementsRemoved && removedStatements == null) {
 			// No need to record, starting from scratch anyway
 			return;
 		}
@@ -92,8 +118,26 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	// Called by base sail
 	@Override
 	public void statementRemoved(Statement st) {
-		statementsRemoved = true;
-		newStatements = null;
+		if (newStatements != null) {
+			// a statement that is added and removed again must not trigger rules
+			newStatements.remove(st);
+		}
+		if (retracting) {
+			return;
+		}
+		if (!statementsRemoved) {
+			statementsRemoved = true;
+			removedStatements = createModel();
+		}
+		if (removedStatements != null) {
+			if (removedStatements.size() < maxRemoved) {
+				removedStatements.add(st);
+			}
+			else {
+				removedStatements = null;
+				newStatements = null;
+			}
+		}
 	}
 
 	@Override
@@ -103,13 +147,27 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 		super.flushUpdates();
 
 		if (statementsRemoved) {
-			logger.debug("statements removed, starting inferencing from scratch");
-			clearInferred();
-			addAxiomStatements();
-
-			newStatements = new SailModel(getWrappedConnection(), true);
+			boolean retracted = false;
+			if (removedStatements != null) {
+				retracting = true;
+				try {
+					retracted = retractInferred(removedStatements);
+				}
+				finally {
+					retracting = false;
+				}
+			}
+
+			if (!retracted) {
+				logger.debug("statements removed, starting inferencing from scratch");
+				clearInferred();
+				addAxiomStatements();
+
+				newStatements = new SailModel(getWrappedConnection(), true);
+			}
 
 			statementsRemoved = false;
+			removedStatements = null;
 		}
 
 		if(hasNewStatements()) {
@@ -150,6 +208,7 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 		super.rollback();
 
 		statementsRemoved = false;
+		removedStatements = null;
 		newStatements = null;
 	}
 
@@ -159,6 +218,25 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	 */
 	protected abstract void addAxiomStatements() throws SailException;
 
+	/**
+	 * Removes the inferred statements that no longer hold now that the
+	 * specified statements have been removed, and re-adds removed statements
+	 * that can still be inferred. Inferred statements that are (re-)added by
+	 * this method are picked up by the subsequent inferencing round. The
+	 * default implementation does nothing and returns <tt>false</tt>, which
+	 * causes all inferred statements to be recomputed from scratch.
+	 * 
+	 * @param removed
+	 *        The statements that were removed since the last update.
+	 * @return <tt>true</tt> if the inferred statements have been maintained,
+	 *         <tt>false</tt> if they need to be recomputed from scratch.
+	 */
+	protected boolean retractInferred(Model removed)
+		throws SailException
+	{
+		return false;
+	}
+
 	protected void doInferencing()
 		throws SailException
 	{
@@ -169,6 +247,9 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 		while (hasNewStatements()) {
 			iteration++;
 			logger.debug("starting iteration " + iteration);
+			// make the statements inferred so far visible, so that they are not
+			// reported as new again
+			getWrappedConnection().flush();
 			Model newThisIteration = prepareIteration();
 
 			int nofInferred = applyRules(newThisIteration);
@@ -16,7 +16,16 @@
  */
 package org.openrdf.sail.inferencer.fc;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.UnionIteration;
 import info.aduna.text.ASCIIUtil;
 
 import org.openrdf.model.Model;
@@ -40,6 +49,22 @@ import org.openrdf.sail.inferencer.InferencerConnection;
  */
 class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInferencerConnection
 {
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The RDF and RDFS axiomatic triples.
+	 */
+	private static final Model AXIOMS = createAxioms();
+
+	/**
+	 * The maximum number of inferred statements that are tentatively deleted
+	 * when statements are removed, before falling back to recomputing all
+	 * inferred statements.
+	 */
+	private static final int MAX_OVERDELETED = 100000;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -61,6 +86,33 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 	 */
 	private int[] ruleCount = new int[RDFSRules.RULECOUNT];
 
+	/**
+	 * The rdfs:domain, rdfs:range, rdfs:subPropertyOf and rdfs:subClassOf
+	 * objects per subject, loaded lazily during an inferencing round and kept
+	 * up-to-date with the statements that are added meanwhile.
+	 */
+	private final Map<IRI, Map<Resource, Set<Value>>> schema = new HashMap<IRI, Map<Resource, Set<Value>>>();
+
+	/**
+	 * Inferred statements that are tentatively deleted because they (may)
+	 * depend on removed statements, or <tt>null</tt> when rules add the
+	 * statements they infer.
+	 */
+	private Model overdeleted;
+
+	/**
+	 * The statements that have been added to {@link #overdeleted} by the
+	 * current iteration.
+	 */
+	private Model overdeletedThisIteration;
+
+	/**
+	 * Inferred statements that were found to be unaffected by the removal.
+	 * Rules tend to infer the same statement from many removed statements, so
+	 * these are remembered to avoid checking them over and over again.
+	 */
+	private Model retained;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -79,6 +131,23 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		return new TreeModel();
 	}
 
+	// Called by base sail
+	@Override
+	public void statementAdded(Statement st) {
+		super.statementAdded(st);
+
+		Map<Resource, Set<Value>> index = schema.get(st.getPredicate());
+		if (index != null) {
+			Set<Value> objects = index.get(st.getSubject());
+			if (objects != null && !objects.contains(st.getObject())) {
+				// copy on write, the current set may be iterated over
+				objects = new HashSet<Value>(objects);
+				objects.add(st.getObject());
+				index.put(st.getSubject(), objects);
+			}
+		}
+	}
+
 	/**
 	 * Adds all basic set of axiom statements from which the complete set can be
 	 * inferred to the underlying Sail.
@@ -89,65 +158,75 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 	{
 		logger.debug("Inserting axiom statements");
 
+		for (Statement st : AXIOMS) {
+			addInferredStatement(st.getSubject(), st.getPredicate(), st.getObject());
+		}
+	}
+
+	private static Model createAxioms() {
+		Model axioms = new TreeModel();
+
 		// RDF axiomatic triples (from RDF Semantics, section 3.1):
 
-		addInferredStatement(RDF.TYPE, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.SUBJECT, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.PREDICATE, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.OBJECT, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.TYPE, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.SUBJECT, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.PREDICATE, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.OBJECT, RDF.TYPE, RDF.PROPERTY);
 
-		addInferredStatement(RDF.FIRST, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.REST, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.VALUE, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.FIRST, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.REST, RDF.TYPE, RDF.PROPERTY);
+		axioms.add(RDF.VALUE, RDF.TYPE, RDF.PROPERTY);
 
-		addInferredStatement(RDF.NIL, RDF.TYPE, RDF.LIST);
+		axioms.add(RDF.NIL, RDF.TYPE, RDF.LIST);
 
 		// RDFS axiomatic triples (from RDF Semantics, section 4.1):
 
-		addInferredStatement(RDF.TYPE, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.DOMAIN, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.RANGE, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBPROPERTYOF, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBCLASSOF, RDFS.DOMAIN, RDFS.CLASS);
-		addInferredStatement(RDF.SUBJECT, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDF.PREDICATE, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDF.OBJECT, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDFS.MEMBER, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDF.FIRST, RDFS.DOMAIN, RDF.LIST);
-		addInferredStatement(RDF.REST, RDFS.DOMAIN, RDF.LIST);
-		addInferredStatement(RDFS.SEEALSO, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.COMMENT, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.LABEL, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDF.VALUE, RDFS.DOMAIN, RDFS.RESOURCE);
-
-		addInferredStatement(RDF.TYPE, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.DOMAIN, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.RANGE, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.SUBPROPERTYOF, RDFS.RANGE, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBCLASSOF, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDF.SUBJECT, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.PREDICATE, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.OBJECT, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.MEMBER, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.FIRST, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.REST, RDFS.RANGE, RDF.LIST);
-		addInferredStatement(RDFS.SEEALSO, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.COMMENT, RDFS.RANGE, RDFS.LITERAL);
-		addInferredStatement(RDFS.LABEL, RDFS.RANGE, RDFS.LITERAL);
-		addInferredStatement(RDF.VALUE, RDFS.RANGE, RDFS.RESOURCE);
-
-		addInferredStatement(RDF.ALT, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDF.BAG, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDF.SEQ, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDFS.CONTAINERMEMBERSHIPPROPERTY, RDFS.SUBCLASSOF, RDF.PROPERTY);
-
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.SUBPROPERTYOF, RDFS.SEEALSO);
-
-		addInferredStatement(RDF.XMLLITERAL, RDF.TYPE, RDFS.DATATYPE);
-		addInferredStatement(RDF.XMLLITERAL, RDFS.SUBCLASSOF, RDFS.LITERAL);
-		addInferredStatement(RDFS.DATATYPE, RDFS.SUBCLASSOF, RDFS.CLASS);
+		axioms.add(RDF.TYPE, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDFS.DOMAIN, RDFS.DOMAIN, RDF.PROPERTY);
+		axioms.add(RDFS.RANGE, RDFS.DOMAIN, RDF.PROPERTY);
+		axioms.add(RDFS.SUBPROPERTYOF, RDFS.DOMAIN, RDF.PROPERTY);
+		axioms.add(RDFS.SUBCLASSOF, RDFS.DOMAIN, RDFS.CLASS);
+		axioms.add(RDF.SUBJECT, RDFS.DOMAIN, RDF.STATEMENT);
+		axioms.add(RDF.PREDICATE, RDFS.DOMAIN, RDF.STATEMENT);
+		axioms.add(RDF.OBJECT, RDFS.DOMAIN, RDF.STATEMENT);
+		axioms.add(RDFS.MEMBER, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDF.FIRST, RDFS.DOMAIN, RDF.LIST);
+		axioms.add(RDF.REST, RDFS.DOMAIN, RDF.LIST);
+		axioms.add(RDFS.SEEALSO, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDFS.ISDEFINEDBY, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDFS.COMMENT, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDFS.LABEL, RDFS.DOMAIN, RDFS.RESOURCE);
+		axioms.add(RDF.VALUE, RDFS.DOMAIN, RDFS.RESOURCE);
+
+		axioms.add(RDF.TYPE, RDFS.RANGE, RDFS.CLASS);
+		axioms.add(RDFS.DOMAIN, RDFS.RANGE, RDFS.CLASS);
+		axioms.add(RDFS.RANGE, RDFS.RANGE, RDFS.CLASS);
+		axioms.add(RDFS.SUBPROPERTYOF, RDFS.RANGE, RDF.PROPERTY);
+		axioms.add(RDFS.SUBCLASSOF, RDFS.RANGE, RDFS.CLASS);
+		axioms.add(RDF.SUBJECT, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDF.PREDICATE, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDF.OBJECT, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDFS.MEMBER, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDF.FIRST, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDF.REST, RDFS.RANGE, RDF.LIST);
+		axioms.add(RDFS.SEEALSO, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDFS.ISDEFINEDBY, RDFS.RANGE, RDFS.RESOURCE);
+		axioms.add(RDFS.COMMENT, RDFS.RANGE, RDFS.LITERAL);
+		axioms.add(RDFS.LABEL, RDFS.RANGE, RDFS.LITERAL);
+		axioms.add(RDF.VALUE, RDFS.RANGE, RDFS.RESOURCE);
+
+		axioms.add(RDF.ALT, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		axioms.add(RDF.BAG, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		axioms.add(RDF.SEQ, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		axioms.add(RDFS.CONTAINERMEMBERSHIPPROPERTY, RDFS.SUBCLASSOF, RDF.PROPERTY);
+
+		axioms.add(RDFS.ISDEFINEDBY, RDFS.SUBPROPERTYOF, RDFS.SEEALSO);
+
+		axioms.add(RDF.XMLLITERAL, RDF.TYPE, RDFS.DATATYPE);
+		axioms.add(RDF.XMLLITERAL, RDFS.SUBCLASSOF, RDFS.LITERAL);
+		axioms.add(RDFS.DATATYPE, RDFS.SUBCLASSOF, RDFS.CLASS);
+
+		return axioms;
 	}
 
 	@Override
@@ -160,7 +239,13 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			checkRuleNextIter[i] = true;
 		}
 
-		super.doInferencing();
+		schema.clear();
+		try {
+			super.doInferencing();
+		}
+		finally {
+			schema.clear();
+		}
 
 		// Print some statistics
 		logger.debug("---RdfMTInferencer statistics:---");
@@ -201,6 +286,213 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		return nofInferred;
 	}
 
+	/**
+	 * Maintains the inferred statements using the delete and rederive (DRed)
+	 * approach: all inferred statements that can be derived from the removed
+	 * statements are deleted, after which those that still have an alternative
+	 * derivation are added again. The rederived statements are then used as
+	 * the starting point of the next inferencing round.
+	 */
+	@Override
+	protected boolean retractInferred(Model removed)
+		throws SailException
+	{
+		Model seeds = new TreeModel();
+		for (Statement st : removed) {
+			Resource subj = st.getSubject();
+			IRI pred = st.getPredicate();
+			Value obj = st.getObject();
+			// a removed statement may also have been inferred
+			if (!seeds.contains(subj, pred, obj) && !getWrappedConnection().hasStatement(subj, pred, obj, false)) {
+				seeds.add(subj, pred, obj);
+			}
+		}
+
+		// determine all inferred statements that may depend on the seeds
+		Model deleted = new TreeModel(seeds);
+		overdeleted = deleted;
+		retained = new TreeModel();
+		try {
+			Model iteration = seeds;
+			while (!iteration.isEmpty()) {
+				overdeletedThisIteration = new TreeModel();
+				// cached schema lookups do not include the latest deletions
+				schema.clear();
+				newThisIteration = iteration;
+				for (int rule = 0; rule < RDFSRules.RULECOUNT; rule++) {
+					applyRuleInternal(rule);
+				}
+				if (deleted.size() > MAX_OVERDELETED) {
+					logger.debug("too many inferred statements affected by removal");
+					return false;
+				}
+				iteration = overdeletedThisIteration;
+			}
+		}
+		finally {
+			newThisIteration = null;
+			overdeleted = null;
+			overdeletedThisIteration = null;
+			retained = null;
+			schema.clear();
+		}
+
+		logger.debug("deleting {} inferred statements", deleted.size());
+		for (Statement st : deleted) {
+			removeInferredStatement(st.getSubject(), st.getPredicate(), st.getObject());
+		}
+		// re-added statements are only reported once the removals are visible
+		getWrappedConnection().flush();
+
+		// re-add the statements that can still be inferred
+		for (Statement st : deleted) {
+			Resource subj = st.getSubject();
+			IRI pred = st.getPredicate();
+			Value obj = st.getObject();
+			if (AXIOMS.contains(subj, pred, obj) || isDerivable(subj, pred, obj, true)) {
+				addInferredStatement(subj, pred, obj);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the specified statement can be inferred in a single step.
+	 * 
+	 * @param includeInferred
+	 *        Whether inferred statements may be used, otherwise only explicit
+	 *        statements and axioms are considered.
+	 */
+	private boolean isDerivable(Resource subj, IRI pred, Value obj, boolean includeInferred)
+		throws SailException
+	{
+		// rdfs7: aaa rdfs:subPropertyOf pred && subj aaa obj
+		for (Statement st : match(null, RDFS.SUBPROPERTYOF, pred, includeInferred)) {
+			Resource aaa = st.getSubject();
+			if (aaa instanceof IRI && !aaa.equals(pred) && exists(subj, (IRI)aaa, obj, includeInferred)) {
+				return true;
+			}
+		}
+
+		if (RDF.TYPE.equals(pred) && obj instanceof Resource) {
+			if (subj instanceof IRI) {
+				boolean isPredicate = exists(null, (IRI)subj, null, includeInferred);
+				// rdf1
+				if (RDF.PROPERTY.equals(obj) && isPredicate) {
+					return true;
+				}
+				// rdfx1
+				if (RDFS.CONTAINERMEMBERSHIPPROPERTY.equals(obj) && isPredicate
+						&& isMembershipProperty((IRI)subj))
+				{
+					return true;
+				}
+			}
+			// rdfs4a, rdfs4b
+			if (RDFS.RESOURCE.equals(obj)
+					&& (exists(subj, null, null, includeInferred) || exists(null, null, subj, includeInferred)))
+			{
+				return true;
+			}
+			// rdfs2: aaa rdfs:domain obj && subj aaa yyy
+			for (Statement st : match(null, RDFS.DOMAIN, obj, includeInferred)) {
+				Resource aaa = st.getSubject();
+				if (aaa instanceof IRI && exists(subj, (IRI)aaa, null, includeInferred)) {
+					return true;
+				}
+			}
+			// rdfs3: aaa rdfs:range obj && xxx aaa subj
+			for (Statement st : match(null, RDFS.RANGE, obj, includeInferred)) {
+				Resource aaa = st.getSubject();
+				if (aaa instanceof IRI && exists(null, (IRI)aaa, subj, includeInferred)) {
+					return true;
+				}
+			}
+			// rdfs9: xxx rdfs:subClassOf obj && subj rdf:type xxx
+			for (Statement st : match(null, RDFS.SUBCLASSOF, obj, includeInferred)) {
+				Resource xxx = st.getSubject();
+				if (!xxx.equals(obj) && exists(subj, RDF.TYPE, xxx, includeInferred)) {
+					return true;
+				}
+			}
+		}
+		else if (RDFS.SUBPROPERTYOF.equals(pred)) {
+			// rdfs6
+			if (subj.equals(obj) && exists(subj, RDF.TYPE, RDF.PROPERTY, includeInferred)) {
+				return true;
+			}
+			// rdfs12
+			if (RDFS.MEMBER.equals(obj)
+					&& exists(subj, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY, includeInferred))
+			{
+				return true;
+			}
+			// rdfs5
+			return isTransitive(subj, RDFS.SUBPROPERTYOF, obj, includeInferred);
+		}
+		else if (RDFS.SUBCLASSOF.equals(pred)) {
+			// rdfs8, rdfs10
+			if ((RDFS.RESOURCE.equals(obj) || subj.equals(obj))
+					&& exists(subj, RDF.TYPE, RDFS.CLASS, includeInferred))
+			{
+				return true;
+			}
+			// rdfs13
+			if (RDFS.LITERAL.equals(obj) && exists(subj, RDF.TYPE, RDFS.DATATYPE, includeInferred)) {
+				return true;
+			}
+			// rdfs11
+			return isTransitive(subj, RDFS.SUBCLASSOF, obj, includeInferred);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether <tt>(subj pred bbb)</tt> and <tt>(bbb pred obj)</tt> exist
+	 * for some <tt>bbb</tt> other than <tt>subj</tt> and <tt>obj</tt>.
+	 */
+	private boolean isTransitive(Resource subj, IRI pred, Value obj, boolean includeInferred)
+		throws SailException
+	{
+		for (Statement st : match(subj, pred, null, includeInferred)) {
+			Value bbb = st.getObject();
+			if (bbb instanceof Resource && !bbb.equals(subj) && !bbb.equals(obj)
+					&& exists((Resource)bbb, pred, obj, includeInferred))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean exists(Resource subj, IRI pred, Value obj, boolean includeInferred)
+		throws SailException
+	{
+		return getWrappedConnection().hasStatement(subj, pred, obj, includeInferred) || !includeInferred
+				&& AXIOMS.contains(subj, pred, obj);
+	}
+
+	private List<Statement> match(Resource subj, IRI pred, Value obj, boolean includeInferred)
+		throws SailException
+	{
+		List<Statement> result = new ArrayList<Statement>();
+		CloseableIteration<? extends Statement, SailException> iter;
+		iter = getWrappedConnection().getStatements(subj, pred, obj, includeInferred);
+		try {
+			while (iter.hasNext()) {
+				result.add(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		if (!includeInferred) {
+			result.addAll(AXIOMS.filter(subj, pred, obj));
+		}
+		return result;
+	}
+
 	@Override
 	protected Model prepareIteration() {
 		for (int i = 0; i < RDFSRules.RULECOUNT; i++) {
@@ -319,6 +611,90 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		return result;
 	}
 
+	/**
+	 * Adds an inferred statement, or tentatively deletes it while inferred
+	 * statements are being retracted.
+	 * 
+	 * @return <tt>true</tt> if the statement was added or deleted.
+	 */
+	private boolean infer(Resource subj, IRI pred, Value obj)
+		throws SailException
+	{
+		if (overdeleted == null) {
+			return addInferredStatement(subj, pred, obj);
+		}
+		if (overdeleted.contains(subj, pred, obj) || retained.contains(subj, pred, obj)
+				|| AXIOMS.contains(subj, pred, obj))
+		{
+			return false;
+		}
+		if (getWrappedConnection().hasStatement(subj, pred, obj, false)
+				|| !getWrappedConnection().hasStatement(subj, pred, obj, true)
+				|| isDerivable(subj, pred, obj, false))
+		{
+			// explicit statements and statements that follow directly from
+			// explicit statements are not affected
+			retained.add(subj, pred, obj);
+			return false;
+		}
+		overdeletedThisIteration.add(subj, pred, obj);
+		return overdeleted.add(subj, pred, obj);
+	}
+
+	/**
+	 * Gets the objects of all (explicit and inferred) statements with the
+	 * specified subject and schema predicate.
+	 */
+	private Set<Value> getSchemaObjects(Resource subj, IRI pred)
+		throws SailException
+	{
+		Map<Resource, Set<Value>> index = schema.get(pred);
+		if (index == null) {
+			index = new HashMap<Resource, Set<Value>>();
+			schema.put(pred, index);
+		}
+		Set<Value> objects = index.get(subj);
+		if (objects == null) {
+			objects = new HashSet<Value>();
+			CloseableIteration<? extends Statement, SailException> iter;
+			iter = getStatements(subj, pred, null);
+			try {
+				while (iter.hasNext()) {
+					objects.add(iter.next().getObject());
+				}
+			}
+			finally {
+				iter.close();
+			}
+			index.put(subj, objects);
+		}
+		return objects;
+	}
+
+	/**
+	 * Gets the (explicit and inferred) statements that match the specified
+	 * pattern. While inferred statements are being retracted, this includes
+	 * the statements that have already been deleted, so that their
+	 * consequences are found as well.
+	 */
+	private CloseableIteration<? extends Statement, SailException> getStatements(Resource subj, IRI pred,
+			Value obj)
+		throws SailException
+	{
+		CloseableIteration<? extends Statement, SailException> iter;
+		iter = getWrappedConnection().getStatements(subj, pred, obj, true);
+		if (overdeleted == null) {
+			return iter;
+		}
+		// copied, as more statements are deleted while iterating
+		List<Statement> deleted = new ArrayList<Statement>(overdeleted.filter(subj, pred, obj));
+		List<CloseableIteration<? extends Statement, SailException>> args;
+		args = new ArrayList<CloseableIteration<? extends Statement, SailException>>(2);
+		args.add(iter);
+		args.add(new CloseableIteratorIteration<Statement, SailException>(deleted.iterator()));
+		return new UnionIteration<Statement, SailException>(args);
+	}
+
 	// xxx aaa yyy --> aaa rdf:type rdf:Property
 	private int applyRuleRdf1()
 		throws SailException
@@ -328,7 +704,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		Model iter = newThisIteration.filter(null, null, null);
 
 		for(Statement st : iter) {
-			boolean added = addInferredStatement(st.getPredicate(), RDF.TYPE, RDF.PROPERTY);
+			boolean added = infer(st.getPredicate(), RDF.TYPE, RDF.PROPERTY);
 
 			if (added) {
 				nofInferred++;
@@ -350,21 +726,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource xxx = nt.getSubject();
 			IRI aaa = nt.getPredicate();
 
-			CloseableIteration<? extends Statement, SailException> t1Iter;
-			t1Iter = getWrappedConnection().getStatements(aaa, RDFS.DOMAIN, null, true);
-
-			while (t1Iter.hasNext()) {
-				Statement t1 = t1Iter.next();
-
-				Value zzz = t1.getObject();
+			for (Value zzz : getSchemaObjects(aaa, RDFS.DOMAIN)) {
 				if (zzz instanceof Resource) {
-					boolean added = addInferredStatement(xxx, RDF.TYPE, zzz);
+					boolean added = infer(xxx, RDF.TYPE, zzz);
 					if (added) {
 						nofInferred++;
 					}
 				}
 			}
-			t1Iter.close();
 		}
 
 		return nofInferred;
@@ -384,13 +753,13 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (aaa instanceof IRI && zzz instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (IRI)aaa, null, true);
+				t1Iter = getStatements(null, (IRI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource xxx = t1.getSubject();
-					boolean added = addInferredStatement(xxx, RDF.TYPE, zzz);
+					boolean added = infer(xxx, RDF.TYPE, zzz);
 					if (added) {
 						nofInferred++;
 					}
@@ -415,21 +784,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Value uuu = nt.getObject();
 
 			if (uuu instanceof Resource) {
-				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(aaa, RDFS.RANGE, null, true);
-
-				while (t1Iter.hasNext()) {
-					Statement t1 = t1Iter.next();
-
-					Value zzz = t1.getObject();
+				for (Value zzz : getSchemaObjects(aaa, RDFS.RANGE)) {
 					if (zzz instanceof Resource) {
-						boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, zzz);
+						boolean added = infer((Resource)uuu, RDF.TYPE, zzz);
 						if (added) {
 							nofInferred++;
 						}
 					}
 				}
-				t1Iter.close();
 			}
 		}
 		return nofInferred;
@@ -449,14 +811,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (aaa instanceof IRI && zzz instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (IRI)aaa, null, true);
+				t1Iter = getStatements(null, (IRI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Value uuu = t1.getObject();
 					if (uuu instanceof Resource) {
-						boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, zzz);
+						boolean added = infer((Resource)uuu, RDF.TYPE, zzz);
 						if (added) {
 							nofInferred++;
 						}
@@ -479,7 +841,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		Model iter = newThisIteration.filter(null, null, null);
 
 		for(Statement st : iter) {
-			boolean added = addInferredStatement(st.getSubject(), RDF.TYPE, RDFS.RESOURCE);
+			boolean added = infer(st.getSubject(), RDF.TYPE, RDFS.RESOURCE);
 			if (added) {
 				nofInferred++;
 			}
@@ -499,7 +861,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Value uuu = st.getObject();
 			if (uuu instanceof Resource) {
-				boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, RDFS.RESOURCE);
+				boolean added = infer((Resource)uuu, RDF.TYPE, RDFS.RESOURCE);
 				if (added) {
 					nofInferred++;
 				}
@@ -522,23 +884,16 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource aaa = nt.getSubject();
 			Value bbb = nt.getObject();
 
-			if (bbb instanceof Resource) {
-				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)bbb, RDFS.SUBPROPERTYOF, null, true);
-
-				while (t1Iter.hasNext()) {
-					Statement t1 = t1Iter.next();
-
-					Value ccc = t1.getObject();
+			// a reflexive statement only infers its join partners
+			if (bbb instanceof Resource && !aaa.equals(bbb)) {
+				for (Value ccc : getSchemaObjects((Resource)bbb, RDFS.SUBPROPERTYOF)) {
 					if (ccc instanceof Resource) {
-						boolean added = addInferredStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
+						boolean added = infer(aaa, RDFS.SUBPROPERTYOF, ccc);
 						if (added) {
 							nofInferred++;
 						}
 					}
 				}
-				t1Iter.close();
-
 			}
 		}
 
@@ -558,15 +913,16 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource bbb = nt.getSubject();
 			Value ccc = nt.getObject();
 
-			if (ccc instanceof Resource) {
+			// a reflexive statement only infers its join partners
+			if (ccc instanceof Resource && !bbb.equals(ccc)) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDFS.SUBPROPERTYOF, bbb, true);
+				t1Iter = getStatements(null, RDFS.SUBPROPERTYOF, bbb);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource aaa = t1.getSubject();
-					boolean added = addInferredStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
+					boolean added = infer(aaa, RDFS.SUBPROPERTYOF, ccc);
 					if (added) {
 						nofInferred++;
 					}
@@ -588,7 +944,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
-			boolean added = addInferredStatement(xxx, RDFS.SUBPROPERTYOF, xxx);
+			boolean added = infer(xxx, RDFS.SUBPROPERTYOF, xxx);
 			if (added) {
 				nofInferred++;
 			}
@@ -610,21 +966,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			IRI aaa = nt.getPredicate();
 			Value yyy = nt.getObject();
 
-			CloseableIteration<? extends Statement, SailException> t1Iter;
-			t1Iter = getWrappedConnection().getStatements(aaa, RDFS.SUBPROPERTYOF, null, true);
-
-			while (t1Iter.hasNext()) {
-				Statement t1 = t1Iter.next();
-
-				Value bbb = t1.getObject();
+			for (Value bbb : getSchemaObjects(aaa, RDFS.SUBPROPERTYOF)) {
 				if (bbb instanceof IRI) {
-					boolean added = addInferredStatement(xxx, (IRI)bbb, yyy);
+					boolean added = infer(xxx, (IRI)bbb, yyy);
 					if (added) {
 						nofInferred++;
 					}
 				}
 			}
-			t1Iter.close();
 		}
 
 		return nofInferred;
@@ -642,9 +991,10 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource aaa = nt.getSubject();
 			Value bbb = nt.getObject();
 
-			if (aaa instanceof IRI && bbb instanceof IRI) {
+			// a reflexive statement only infers its join partners
+			if (aaa instanceof IRI && bbb instanceof IRI && !aaa.equals(bbb)) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (IRI)aaa, null, true);
+				t1Iter = getStatements(null, (IRI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
@@ -652,7 +1002,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 					Resource xxx = t1.getSubject();
 					Value yyy = t1.getObject();
 
-					boolean added = addInferredStatement(xxx, (IRI)bbb, yyy);
+					boolean added = infer(xxx, (IRI)bbb, yyy);
 					if (added) {
 						nofInferred++;
 					}
@@ -675,7 +1025,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, RDFS.RESOURCE);
+			boolean added = infer(xxx, RDFS.SUBCLASSOF, RDFS.RESOURCE);
 			if (added) {
 				nofInferred++;
 			}
@@ -696,16 +1046,17 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource xxx = nt.getSubject();
 			Value yyy = nt.getObject();
 
-			if (yyy instanceof Resource) {
+			// a reflexive statement only infers its join partners
+			if (yyy instanceof Resource && !xxx.equals(yyy)) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDF.TYPE, xxx, true);
+				t1Iter = getStatements(null, RDF.TYPE, xxx);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource aaa = t1.getSubject();
 
-					boolean added = addInferredStatement(aaa, RDF.TYPE, yyy);
+					boolean added = infer(aaa, RDF.TYPE, yyy);
 					if (added) {
 						nofInferred++;
 					}
@@ -730,22 +1081,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Value xxx = nt.getObject();
 
 			if (xxx instanceof Resource) {
-				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)xxx, RDFS.SUBCLASSOF, null, true);
-
-				while (t1Iter.hasNext()) {
-					Statement t1 = t1Iter.next();
-
-					Value yyy = t1.getObject();
-
+				for (Value yyy : getSchemaObjects((Resource)xxx, RDFS.SUBCLASSOF)) {
 					if (yyy instanceof Resource) {
-						boolean added = addInferredStatement(aaa, RDF.TYPE, yyy);
+						boolean added = infer(aaa, RDF.TYPE, yyy);
 						if (added) {
 							nofInferred++;
 						}
 					}
 				}
-				t1Iter.close();
 			}
 		}
 
@@ -763,7 +1106,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, xxx);
+			boolean added = infer(xxx, RDFS.SUBCLASSOF, xxx);
 			if (added) {
 				nofInferred++;
 			}
@@ -785,23 +1128,16 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource xxx = nt.getSubject();
 			Value yyy = nt.getObject();
 
-			if (yyy instanceof Resource) {
-				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)yyy, RDFS.SUBCLASSOF, null, true);
-
-				while (t1Iter.hasNext()) {
-					Statement t1 = t1Iter.next();
-
-					Value zzz = t1.getObject();
-
+			// a reflexive statement only infers its join partners
+			if (yyy instanceof Resource && !xxx.equals(yyy)) {
+				for (Value zzz : getSchemaObjects((Resource)yyy, RDFS.SUBCLASSOF)) {
 					if (zzz instanceof Resource) {
-						boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, zzz);
+						boolean added = infer(xxx, RDFS.SUBCLASSOF, zzz);
 						if (added) {
 							nofInferred++;
 						}
 					}
 				}
-				t1Iter.close();
 			}
 		}
 
@@ -821,16 +1157,17 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Resource yyy = nt.getSubject();
 			Value zzz = nt.getObject();
 
-			if (zzz instanceof Resource) {
+			// a reflexive statement only infers its join partners
+			if (zzz instanceof Resource && !yyy.equals(zzz)) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDFS.SUBCLASSOF, yyy, true);
+				t1Iter = getStatements(null, RDFS.SUBCLASSOF, yyy);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource xxx = t1.getSubject();
 
-					boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, zzz);
+					boolean added = infer(xxx, RDFS.SUBCLASSOF, zzz);
 					if (added) {
 						nofInferred++;
 					}
@@ -854,7 +1191,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBPROPERTYOF, RDFS.MEMBER);
+			boolean added = infer(xxx, RDFS.SUBPROPERTYOF, RDFS.MEMBER);
 			if (added) {
 				nofInferred++;
 			}
@@ -874,7 +1211,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, RDFS.LITERAL);
+			boolean added = infer(xxx, RDFS.SUBCLASSOF, RDFS.LITERAL);
 			if (added) {
 				nofInferred++;
 			}
@@ -891,15 +1228,13 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 	{
 		int nofInferred = 0;
 
-		String prefix = RDF.NAMESPACE + "_";
 		Model iter = newThisIteration.filter(null, null, null);
 
 		for(Statement st : iter) {
 			IRI predNode = st.getPredicate();
-			String predURI = predNode.toString();
 
-			if (predURI.startsWith(prefix) && isValidPredicateNumber(predURI.substring(prefix.length()))) {
-				boolean added = addInferredStatement(predNode, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY);
+			if (isMembershipProperty(predNode)) {
+				boolean added = infer(predNode, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY);
 				if (added) {
 					nofInferred++;
 				}
@@ -909,6 +1244,16 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		return nofInferred;
 	}
 
+	/**
+	 * Checks whether the specified IRI is one of the list membership properties
+	 * <tt>rdf:_1</tt>, <tt>rdf:_2</tt>, <tt>rdf:_3</tt>, ...
+	 */
+	private boolean isMembershipProperty(IRI pred) {
+		String prefix = RDF.NAMESPACE + "_";
+		String predURI = pred.toString();
+		return predURI.startsWith(prefix) && isValidPredicateNumber(predURI.substring(prefix.length()));
+	}
+
 	/**
 	 * Util method for {@link #applyRuleX1}.
 	 */
@@ -19,8 +19,10 @@ package org.openrdf.sail.memory;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +71,19 @@ class MemorySailStore implements SailStore {
 
 	final Logger logger = LoggerFactory.getLogger(MemorySailStore.class);
 
+	/**
+	 * The maximum number of changes that a transaction applies optimistically.
+	 * Larger transactions switch to exclusive mode, as the changes of an
+	 * optimistic transaction are recorded in order to roll them back on
+	 * conflicts.
+	 */
+	private static final int MAX_OPTIMISTIC_CHANGES = 100000;
+
+	/**
+	 * The number of locks that guard the changes to individual statements.
+	 */
+	private static final int STATEMENT_LOCK_COUNT = 64;
+
 	/**
 	 * Factory/cache for MemValue objects.
 	 */
@@ -96,9 +111,35 @@ class MemorySailStore implements SailStore {
 	private final ReadWriteLockManager statementListLockManager;
 
 	/**
-	 * Lock manager used to prevent concurrent writes.
+	 * Lock manager used to coordinate concurrent writes. Transactions hold the
+	 * read lock while they apply their changes optimistically and acquire the
+	 * write lock when they need exclusive access, see {@link MemoryTransaction}.
+	 */
+	final ReentrantReadWriteLock txnLockManager = new ReentrantReadWriteLock();
+
+	/**
+	 * Locks that make the check for and the update of a single statement
+	 * atomic, selected by the statement's hash code.
+	 */
+	private final Object[] statementLocks = new Object[STATEMENT_LOCK_COUNT];
+
+	/**
+	 * The transaction of each thread that has an open sink.
+	 */
+	private final ThreadLocal<MemoryTransaction> transactions = new ThreadLocal<MemoryTransaction>();
+
+	/**
+	 * Snapshots that have been assigned to transactions, but that have not been
+	 * flushed yet. The current snapshot is never raised beyond the lowest
+	 * pending snapshot, so that transactions become visible in order.
 	 */
-	final ReentrantLock txnLockManager = new ReentrantLock();
+	private final TreeSet<Integer> pendingSnapshots = new TreeSet<Integer>();
+
+	/**
+	 * The last snapshot that has been assigned to a transaction, guarded by
+	 * {@link #pendingSnapshots}.
+	 */
+	private int lastSnapshot;
 
 	/**
 	 * Cleanup thread that removes deprecated statements when no other threads
@@ -114,6 +155,9 @@ class MemorySailStore implements SailStore {
 
 	public MemorySailStore(boolean debug) {
 		statementListLockManager = new ReadPrefReadWriteLockManager(debug);
+		for (int i = 0; i < statementLocks.length; i++) {
+			statementLocks[i] = new Object();
+		}
 	}
 
 	@Override
@@ -256,6 +300,76 @@ class MemorySailStore implements SailStore {
 				snapshot, memContexts);
 	}
 
+	/**
+	 * Assigns a new snapshot to a transaction. The snapshot becomes visible once
+	 * it and all snapshots that were assigned before it have been completed.
+	 */
+	int assignSnapshot() {
+		synchronized (pendingSnapshots) {
+			lastSnapshot = Math.max(lastSnapshot, currentSnapshot) + 1;
+			pendingSnapshots.add(lastSnapshot);
+			return lastSnapshot;
+		}
+	}
+
+	/**
+	 * Marks the specified snapshot as complete and raises the current snapshot
+	 * up to the first snapshot that is still pending.
+	 */
+	void completeSnapshot(int snapshot) {
+		synchronized (pendingSnapshots) {
+			if (pendingSnapshots.remove(snapshot)) {
+				if (pendingSnapshots.isEmpty()) {
+					currentSnapshot = lastSnapshot;
+				}
+				else {
+					currentSnapshot = pendingSnapshots.first() - 1;
+				}
+				pendingSnapshots.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the specified completed snapshot has become visible, i.e.
+	 * until all snapshots that were assigned before it have been completed as
+	 * well. The holders of those snapshots never wait for later snapshots, so
+	 * this always terminates.
+	 */
+	void awaitSnapshot(int snapshot) {
+		boolean interrupted = false;
+		synchronized (pendingSnapshots) {
+			while (currentSnapshot < snapshot) {
+				try {
+					pendingSnapshots.wait();
+				}
+				catch (InterruptedException e) {
+					// the changes are already applied, they must become visible
+					// before returning
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Object getStatementLock(MemStatement st) {
+		return getStatementLock(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+	}
+
+	private Object getStatementLock(MemResource subj, MemIRI pred, MemValue obj, MemResource context) {
+		int hash = subj.hashCode();
+		hash = 31 * hash + pred.hashCode();
+		hash = 31 * hash + obj.hashCode();
+		if (context != null) {
+			hash = 31 * hash + context.hashCode();
+		}
+		hash ^= (hash >>> 16);
+		return statementLocks[(hash & Integer.MAX_VALUE) % statementLocks.length];
+	}
+
 	/**
 	 * Removes statements from old snapshots from the main statement list and
 	 * resets the snapshot to 1 for the rest of the statements.
@@ -372,11 +486,9 @@ class MemorySailStore implements SailStore {
 
 		private final Lock txnStLock;
 
-		private int nextSnapshot;
-
 		private Set<StatementPattern> observations;
 
-		private boolean txnLock;
+		private MemoryTransaction txn;
 
 		public MemorySailSink(boolean explicit, boolean serializable)
 			throws SailException
@@ -399,8 +511,8 @@ class MemorySailStore implements SailStore {
 			else {
 				sb.append("inferred ");
 			}
-			if (txnLock) {
-				sb.append("snapshot ").append(nextSnapshot);
+			if (txn != null) {
+				sb.append(txn);
 			}
 			else {
 				sb.append(super.toString());
@@ -412,8 +524,12 @@ class MemorySailStore implements SailStore {
 		public void prepare()
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
+			MemoryTransaction txn = beginTransaction();
 			if (observations != null) {
+				// observed state can only be validated against a store without
+				// other pending changes
+				txn.escalate();
+				int nextSnapshot = txn.getSnapshot();
 				for (StatementPattern p : observations) {
 					Resource subj = (Resource)p.getSubjectVar().getValue();
 					IRI pred = (IRI)p.getPredicateVar().getValue();
@@ -451,17 +567,17 @@ class MemorySailStore implements SailStore {
 		public void flush()
 			throws SailException
 		{
-			if (txnLock) {
-				currentSnapshot = Math.max(currentSnapshot, nextSnapshot);
+			if (txn != null) {
+				txn.flush();
 				scheduleSnapshotCleanup();
 			}
 		}
 
 		@Override
 		public void close() {
-			if (txnLock) {
-				txnLockManager.unlock();
-				txnLock = false;
+			if (txn != null) {
+				txn.release();
+				txn = null;
 			}
 			if (txnStLock != null) {
 				txnStLock.release();
@@ -472,7 +588,7 @@ class MemorySailStore implements SailStore {
 		public synchronized void setNamespace(String prefix, String name)
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
+			beginTransaction().escalate();
 			namespaceStore.setNamespace(prefix, name);
 		}
 
@@ -480,7 +596,7 @@ class MemorySailStore implements SailStore {
 		public void removeNamespace(String prefix)
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
+			beginTransaction().escalate();
 			namespaceStore.removeNamespace(prefix);
 		}
 
@@ -488,7 +604,7 @@ class MemorySailStore implements SailStore {
 		public void clearNamespaces()
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
+			beginTransaction().escalate();
 			namespaceStore.clear();
 		}
 
@@ -515,60 +631,253 @@ class MemorySailStore implements SailStore {
 		}
 
 		@Override
-		public void clear(Resource... contexts)
+		public void clear(final Resource... contexts)
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
-			CloseableIteration<MemStatement, SailException> iter;
-			iter = createStatementIterator(null, null, null, explicit, nextSnapshot, contexts);
-			try {
-				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
+			beginTransaction().apply(new StatementChange() {
+
+				public void apply(MemoryTransaction txn)
+					throws SailException
+				{
+					txn.deprecateStatements(null, null, null, explicit, contexts);
 				}
-			}
-			finally {
-				iter.close();
-			}
+			});
 		}
 
 		@Override
-		public synchronized void approve(Resource subj, IRI pred, Value obj, Resource ctx)
+		public synchronized void approve(final Resource subj, final IRI pred, final Value obj,
+				final Resource ctx)
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
-			addStatement(subj, pred, obj, ctx, explicit);
+			beginTransaction().apply(new StatementChange() {
+
+				public void apply(MemoryTransaction txn)
+					throws SailException
+				{
+					txn.addStatement(subj, pred, obj, ctx, explicit);
+				}
+			});
 		}
 
 		@Override
-		public synchronized void deprecate(Resource subj, IRI pred, Value obj, Resource ctx)
+		public synchronized void deprecate(final Resource subj, final IRI pred, final Value obj,
+				final Resource ctx)
 			throws SailException
 		{
-			acquireExclusiveTransactionLock();
-			CloseableIteration<MemStatement, SailException> iter;
-			iter = createStatementIterator(subj, pred, obj, explicit, nextSnapshot, ctx);
-			try {
-				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
+			beginTransaction().apply(new StatementChange() {
+
+				public void apply(MemoryTransaction txn)
+					throws SailException
+				{
+					txn.deprecateStatements(subj, pred, obj, explicit, ctx);
 				}
+			});
+		}
+
+		/**
+		 * Joins the transaction of the current thread, starting a new one if the
+		 * thread has no other open sinks.
+		 */
+		private MemoryTransaction beginTransaction() {
+			if (txn == null) {
+				txn = transactions.get();
+				if (txn == null) {
+					txn = new MemoryTransaction();
+					transactions.set(txn);
+				}
+				txn.sinkCount++;
 			}
-			finally {
-				iter.close();
+			txn.begin();
+			return txn;
+		}
+	}
+
+	/**
+	 * A change to the statement lists that can be replayed when a transaction
+	 * switches to exclusive mode.
+	 */
+	private interface StatementChange {
+
+		public void apply(MemoryTransaction txn)
+			throws SailException;
+	}
+
+	/**
+	 * The snapshots of a statement before it was changed by an optimistic
+	 * transaction.
+	 */
+	private static final class StatementVersion {
+
+		final MemStatement statement;
+
+		final int since;
+
+		final int till;
+
+		public StatementVersion(MemStatement statement, int since, int till) {
+			this.statement = statement;
+			this.since = since;
+			this.till = till;
+		}
+	}
+
+	/**
+	 * Signals that an optimistic transaction touched a statement that has been
+	 * changed by another transaction that has not been flushed yet.
+	 */
+	private static final class StatementConflictException extends RuntimeException {
+
+		private static final long serialVersionUID = -2570478637513458812L;
+
+		public StatementConflictException() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * The changes that a thread applies to the statement lists, shared by all
+	 * sinks that the thread has open. Changes are applied optimistically while
+	 * holding the read lock of {@link MemorySailStore#txnLockManager}, so that
+	 * transactions of other threads can apply their changes concurrently. A
+	 * transaction that touches a statement with a pending change of another
+	 * transaction rolls back its optimistic changes and replays them while
+	 * holding the write lock.
+	 */
+	private final class MemoryTransaction {
+
+		/**
+		 * The snapshot that changes are applied to, or 0 if no snapshot has been
+		 * assigned yet.
+		 */
+		private int snapshot;
+
+		private int sinkCount;
+
+		private boolean shared;
+
+		private boolean exclusive;
+
+		/**
+		 * The changes applied in optimistic mode since the last flush, or
+		 * <tt>null</tt> in exclusive mode.
+		 */
+		private List<StatementChange> changes = new ArrayList<StatementChange>();
+
+		/**
+		 * The original versions of the statements changed in optimistic mode
+		 * since the last flush, or <tt>null</tt> in exclusive mode.
+		 */
+		private List<StatementVersion> versions = new ArrayList<StatementVersion>();
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(exclusive ? "exclusive " : "optimistic ");
+			sb.append("snapshot ").append(snapshot);
+			return sb.toString();
+		}
+
+		public int getSnapshot() {
+			return snapshot;
+		}
+
+		public void begin() {
+			if (!shared && !exclusive) {
+				txnLockManager.readLock().lock();
+				shared = true;
+			}
+			if (snapshot == 0) {
+				snapshot = assignSnapshot();
 			}
 		}
 
-		private void acquireExclusiveTransactionLock()
+		public void apply(StatementChange change)
 			throws SailException
 		{
-			if (!txnLock) {
-				txnLockManager.lock();
-				nextSnapshot = currentSnapshot + 1;
-				txnLock = true;
+			if (!exclusive && changes.size() >= MAX_OPTIMISTIC_CHANGES) {
+				escalate();
+			}
+			if (exclusive) {
+				change.apply(this);
+			}
+			else {
+				changes.add(change);
+				try {
+					change.apply(this);
+				}
+				catch (StatementConflictException e) {
+					// replays this change too
+					escalate();
+				}
 			}
 		}
 
-		private MemStatement addStatement(Resource subj, IRI pred, Value obj, Resource context, boolean explicit)
+		/**
+		 * Switches this transaction to exclusive mode, rolling back the
+		 * optimistic changes and replaying them once all other transactions have
+		 * finished.
+		 */
+		public void escalate()
+			throws SailException
+		{
+			if (exclusive) {
+				return;
+			}
+			rollback();
+			List<StatementChange> replay = changes;
+			changes = null;
+			versions = null;
+			if (snapshot != 0) {
+				// all changes of this snapshot have been rolled back
+				completeSnapshot(snapshot);
+				snapshot = 0;
+			}
+			if (shared) {
+				txnLockManager.readLock().unlock();
+				shared = false;
+			}
+			txnLockManager.writeLock().lock();
+			exclusive = true;
+			snapshot = assignSnapshot();
+			for (StatementChange change : replay) {
+				change.apply(this);
+			}
+		}
+
+		public void flush() {
+			if (snapshot != 0) {
+				completeSnapshot(snapshot);
+				// a flushed change must be visible to the committing connection
+				// and to listeners of the resulting change event
+				awaitSnapshot(snapshot);
+				snapshot = 0;
+			}
+			if (!exclusive) {
+				// flushed changes are never rolled back
+				changes.clear();
+				versions.clear();
+			}
+		}
+
+		public void release() {
+			if (--sinkCount > 0) {
+				return;
+			}
+			if (transactions.get() == this) {
+				transactions.remove();
+			}
+			flush();
+			if (exclusive) {
+				txnLockManager.writeLock().unlock();
+				exclusive = false;
+			}
+			else if (shared) {
+				txnLockManager.readLock().unlock();
+				shared = false;
+			}
+		}
+
+		public MemStatement addStatement(Resource subj, IRI pred, Value obj, Resource context,
+				boolean explicit)
 			throws SailException
 		{
 			// Get or create MemValues for the operands
@@ -577,26 +886,41 @@ class MemorySailStore implements SailStore {
 			MemValue memObj = valueFactory.getOrCreateMemValue(obj);
 			MemResource memContext = (context == null) ? null : valueFactory.getOrCreateMemResource(context);
 
-			if (memSubj.hasStatements() && memPred.hasStatements() && memObj.hasStatements()
-					&& (memContext == null || memContext.hasStatements()))
-			{
-				// All values are used in at least one statement. Possibly, the
-				// statement is already present. Check this.
-				CloseableIteration<MemStatement, SailException> stIter = createStatementIterator(memSubj,
-						memPred, memObj, null, Integer.MAX_VALUE - 1, memContext);
+			synchronized (getStatementLock(memSubj, memPred, memObj, memContext)) {
+				if (memSubj.hasStatements() && memPred.hasStatements() && memObj.hasStatements()
+						&& (memContext == null || memContext.hasStatements()))
+				{
+					// All values are used in at least one statement. Possibly, the
+					// statement is already present or has pending changes of
+					// another transaction. Check this.
+					CloseableIteration<MemStatement, SailException> stIter = createStatementIterator(memSubj,
+							memPred, memObj, null, -1, memContext);
+
+					MemStatement st = null;
+					try {
+						while (stIter.hasNext()) {
+							MemStatement next = stIter.next();
+							checkConflict(next);
+							if (st == null && next.getTillSnapshot() == Integer.MAX_VALUE) {
+								st = next;
+							}
+						}
+					}
+					finally {
+						stIter.close();
+					}
 
-				try {
-					if (stIter.hasNext()) {
+					if (st != null) {
 						// statement is already present, update its transaction
 						// status if appropriate
-						MemStatement st = stIter.next();
-
 						if (!st.isExplicit() && explicit) {
 							// Implicit statement is now added explicitly
-							st.setTillSnapshot(nextSnapshot);
+							recordVersion(st);
+							st.setTillSnapshot(snapshot);
 						}
-						else if (!st.isInSnapshot(nextSnapshot)) {
-							st.setSinceSnapshot(nextSnapshot);
+						else if (!st.isInSnapshot(snapshot)) {
+							recordVersion(st);
+							st.setSinceSnapshot(snapshot);
 						}
 						else {
 							// statement already exists
@@ -604,16 +928,71 @@ class MemorySailStore implements SailStore {
 						}
 					}
 				}
-				finally {
-					stIter.close();
+
+				// completely new statement
+				MemStatement st = new MemStatement(memSubj, memPred, memObj, memContext, explicit, snapshot);
+				if (!exclusive) {
+					// a rolled back statement is in no snapshot at all
+					versions.add(new StatementVersion(st, snapshot, snapshot));
+				}
+				statements.add(st);
+				st.addToComponentLists();
+				return st;
+			}
+		}
+
+		public void deprecateStatements(Resource subj, IRI pred, Value obj, Boolean explicit,
+				Resource... contexts)
+			throws SailException
+		{
+			CloseableIteration<MemStatement, SailException> iter;
+			iter = createStatementIterator(subj, pred, obj, explicit, snapshot, contexts);
+			try {
+				while (iter.hasNext()) {
+					MemStatement st = iter.next();
+					synchronized (getStatementLock(st)) {
+						checkConflict(st);
+						if (st.isInSnapshot(snapshot)) {
+							recordVersion(st);
+							st.setTillSnapshot(snapshot);
+						}
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+
+		private void rollback() {
+			for (int i = versions.size() - 1; i >= 0; i--) {
+				StatementVersion version = versions.get(i);
+				MemStatement st = version.statement;
+				synchronized (getStatementLock(st)) {
+					st.setSinceSnapshot(version.since);
+					st.setTillSnapshot(version.till);
 				}
 			}
+		}
+
+		private void recordVersion(MemStatement st) {
+			if (!exclusive) {
+				versions.add(new StatementVersion(st, st.getSinceSnapshot(), st.getTillSnapshot()));
+			}
+		}
+
+		private void checkConflict(MemStatement st) {
+			if (!exclusive && (isPending(st.getSinceSnapshot()) || isPending(st.getTillSnapshot()))) {
+				throw new StatementConflictException();
+			}
+		}
 
-			// completely new statement
-			MemStatement st = new MemStatement(memSubj, memPred, memObj, memContext, explicit, nextSnapshot);
-			statements.add(st);
-			st.addToComponentLists();
-			return st;
+		/**
+		 * Checks whether the specified snapshot belongs to another transaction
+		 * that might still be rolled back or that is not visible yet.
+		 */
+		private boolean isPending(int version) {
+			return version != snapshot && version != Integer.MAX_VALUE && version > currentSnapshot;
 		}
 	}
 
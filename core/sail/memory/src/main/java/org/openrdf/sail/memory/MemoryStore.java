@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
 
 import info.aduna.concurrent.locks.Lock;
 
@@ -29,6 +30,7 @@ import org.openrdf.model.IRI;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverImpl;
+import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
 import org.openrdf.sail.NotifyingSailConnection;
 import org.openrdf.sail.SailChangedEvent;
 import org.openrdf.sail.SailException;
@@ -121,6 +123,18 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 	 */
 	private final Object syncTimerSemaphore = new Object();
 
+	/**
+	 * The number of threads used for parallel query evaluation.
+	 * 
+	 * @see #setEvaluationParallelism
+	 */
+	private volatile int evaluationParallelism = 0;
+
+	/**
+	 * The pool used for parallel query evaluation, null if disabled.
+	 */
+	private volatile ForkJoinPool evaluationPool;
+
 	/** independent life cycle */
 	private FederatedServiceResolver serviceResolver;
 
@@ -205,6 +219,35 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 		return syncDelay;
 	}
 
+	/**
+	 * Sets the number of threads that queries on this store may use to evaluate
+	 * independent operators, such as the arguments of a union, concurrently.
+	 * Must be called before initialization. The threads are shared by all
+	 * queries on the store. By default, this value is <tt>0</tt>, which
+	 * evaluates each query in the calling thread only.
+	 * 
+	 * @see SimpleEvaluationStrategy#setForkJoinPool(ForkJoinPool)
+	 */
+	public void setEvaluationParallelism(int evaluationParallelism) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been initialized");
+		}
+
+		this.evaluationParallelism = evaluationParallelism;
+	}
+
+	public int getEvaluationParallelism() {
+		return evaluationParallelism;
+	}
+
+	/**
+	 * Gets the pool in which queries evaluate operators concurrently, or
+	 * <tt>null</tt> if parallel evaluation is disabled.
+	 */
+	ForkJoinPool getEvaluationPool() {
+		return evaluationPool;
+	}
+
 	/**
 	 * @return Returns the SERVICE resolver.
 	 */
@@ -328,6 +371,10 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 
 		contentsChanged = false;
 
+		if (evaluationParallelism > 0) {
+			evaluationPool = new ForkJoinPool(evaluationParallelism);
+		}
+
 		logger.debug("MemoryStore initialized");
 	}
 
@@ -350,6 +397,10 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 			if (dependentServiceResolver != null) {
 				dependentServiceResolver.shutDown();
 			}
+			if (evaluationPool != null) {
+				evaluationPool.shutdownNow();
+				evaluationPool = null;
+			}
 		}
 	}
 
@@ -125,7 +125,11 @@ public class MemoryStoreConnection extends SailSourceConnection {
 	
 	@Override
 	protected EvaluationStrategy getEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
-		return new SimpleEvaluationStrategy(tripleSource, dataset, getFederatedServiceResolver(), sail.getIterationCacheSyncThreshold());
+		SimpleEvaluationStrategy strategy = new SimpleEvaluationStrategy(tripleSource, dataset,
+				getFederatedServiceResolver(), sail.getIterationCacheSyncThreshold());
+		// memory statement lists can be read by multiple threads at once
+		strategy.setForkJoinPool(sail.getEvaluationPool());
+		return strategy;
 	}
 
 	@Override
@@ -16,6 +16,7 @@
  */
 package org.openrdf.sail.memory.config;
 
+import static org.openrdf.sail.memory.config.MemoryStoreSchema.EVALUATION_PARALLELISM;
 import static org.openrdf.sail.memory.config.MemoryStoreSchema.PERSIST;
 import static org.openrdf.sail.memory.config.MemoryStoreSchema.SYNC_DELAY;
 
@@ -37,6 +38,8 @@ public class MemoryStoreConfig extends AbstractSailImplConfig {
 
 	private long syncDelay = 0L;
 
+	private int evaluationParallelism = 0;
+
 	public MemoryStoreConfig() {
 		super(MemoryStoreFactory.SAIL_TYPE);
 	}
@@ -67,6 +70,14 @@ public class MemoryStoreConfig extends AbstractSailImplConfig {
 		this.syncDelay = syncDelay;
 	}
 
+	public int getEvaluationParallelism() {
+		return evaluationParallelism;
+	}
+
+	public void setEvaluationParallelism(int evaluationParallelism) {
+		this.evaluationParallelism = evaluationParallelism;
+	}
+
 	@Override
 	public Resource export(Model graph) {
 		Resource implNode = super.export(graph);
@@ -79,6 +90,11 @@ public class MemoryStoreConfig extends AbstractSailImplConfig {
 			graph.add(implNode, SYNC_DELAY, SimpleValueFactory.getInstance().createLiteral(syncDelay));
 		}
 
+		if (evaluationParallelism > 0) {
+			graph.add(implNode, EVALUATION_PARALLELISM,
+					SimpleValueFactory.getInstance().createLiteral(evaluationParallelism));
+		}
+
 		return implNode;
 	}
 
@@ -109,6 +125,17 @@ public class MemoryStoreConfig extends AbstractSailImplConfig {
 							"Long integer value required for " + SYNC_DELAY + " property, found " + syncDelayValue);
 				}
 			});
+
+			Models.objectLiteral(graph.filter(implNode, EVALUATION_PARALLELISM, null)).ifPresent(
+					parallelismValue -> {
+						try {
+							setEvaluationParallelism(parallelismValue.intValue());
+						}
+						catch (NumberFormatException e) {
+							throw new SailConfigException("Integer value required for " + EVALUATION_PARALLELISM
+									+ " property, found " + parallelismValue);
+						}
+					});
 		}
 		catch (ModelException e) {
 			throw new SailConfigException(e.getMessage(), e);
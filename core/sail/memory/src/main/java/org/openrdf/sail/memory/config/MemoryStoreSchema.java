@@ -38,9 +38,13 @@ public class MemoryStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/memory#syncDelay</tt> */
 	public final static IRI SYNC_DELAY;
 
+	/** <tt>http://www.openrdf.org/config/sail/memory#evaluationParallelism</tt> */
+	public final static IRI EVALUATION_PARALLELISM;
+
 	static {
 		ValueFactory factory = SimpleValueFactory.getInstance();
 		PERSIST = factory.createIRI(NAMESPACE, "persist");
 		SYNC_DELAY = factory.createIRI(NAMESPACE, "syncDelay");
+		EVALUATION_PARALLELISM = factory.createIRI(NAMESPACE, "evaluationParallelism");
 	}
 }
@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail.memory.model;
 
+import java.util.List;
+
 import info.aduna.iteration.LookAheadIteration;
 import info.aduna.lang.ObjectUtil;
 
@@ -125,36 +127,75 @@ public class MemStatementIterator<X extends Exception> extends LookAheadIteratio
 		for (; statementIdx < statementList.size(); statementIdx++) {
 			MemStatement st = statementList.get(statementIdx);
 
-			if (isInSnapshot(st) && (subject == null || subject == st.getSubject())
-					&& (predicate == null || predicate == st.getPredicate())
-					&& (object == null || object == st.getObject()))
-			{
-				// A matching statement has been found, check if it should be
-				// skipped due to explicitOnly, contexts and readMode requirements
-
-				if (contexts != null && contexts.length > 0) {
-					boolean matchingContext = false;
-					for (int i = 0; i < contexts.length && !matchingContext; i++) {
-						matchingContext = ObjectUtil.nullEquals(st.getContext(), contexts[i]);
-					}
-					if (!matchingContext) {
-						// statement does not appear in one of the specified contexts,
-						// skip it.
-						continue;
-					}
+			if (matches(st)) {
+				return st;
+			}
+		}
+
+		// No more matching statements.
+		return null;
+	}
+
+	/**
+	 * Scans statementList for up to <tt>max</tt> matching statements in one
+	 * pass, updating <tt>statementIdx</tt> only once per batch.
+	 */
+	@Override
+	protected boolean getNextElements(List<MemStatement> batch, int max) {
+		int idx = statementIdx + 1;
+		int found = 0;
+
+		for (; idx < statementList.size(); idx++) {
+			MemStatement st = statementList.get(idx);
+
+			if (matches(st)) {
+				batch.add(st);
+
+				if (++found == max) {
+					statementIdx = idx;
+					return true;
 				}
+			}
+		}
 
-				if (explicit != null && explicit.booleanValue() != st.isExplicit()) {
-					// Explicit flag does not match
-					continue;
+		// No more matching statements.
+		statementIdx = idx;
+		return false;
+	}
+
+	/**
+	 * Checks whether the supplied statement matches the constraints that have
+	 * been set for this iterator.
+	 */
+	private boolean matches(MemStatement st) {
+		if (isInSnapshot(st) && (subject == null || subject == st.getSubject())
+				&& (predicate == null || predicate == st.getPredicate())
+				&& (object == null || object == st.getObject()))
+		{
+			// A matching statement has been found, check if it should be
+			// skipped due to explicitOnly, contexts and readMode requirements
+
+			if (contexts != null && contexts.length > 0) {
+				boolean matchingContext = false;
+				for (int i = 0; i < contexts.length && !matchingContext; i++) {
+					matchingContext = ObjectUtil.nullEquals(st.getContext(), contexts[i]);
 				}
+				if (!matchingContext) {
+					// statement does not appear in one of the specified contexts,
+					// skip it.
+					return false;
+				}
+			}
 
-				return st;
+			if (explicit != null && explicit.booleanValue() != st.isExplicit()) {
+				// Explicit flag does not match
+				return false;
 			}
+
+			return true;
 		}
 
-		// No more matching statements.
-		return null;
+		return false;
 	}
 
 	private boolean isInSnapshot(MemStatement st) {
@@ -20,7 +20,9 @@ import java.util.Arrays;
 
 /**
  * A dedicated data structure for storing MemStatement objects, offering
- * operations optimized for their use in the memory Sail.
+ * operations optimized for their use in the memory Sail. Modifications are
+ * synchronized so that concurrent transactions can add statements to the same
+ * list, reads do not block.
  */
 public class MemStatementList {
 
@@ -72,7 +74,7 @@ public class MemStatementList {
 		return statements[index];
 	}
 
-	public void add(MemStatement st) {
+	public synchronized void add(MemStatement st) {
 		if (size == statements.length) {
 			// Grow array
 			growArray((size == 0) ? 1 : 2 * size);
@@ -82,7 +84,7 @@ public class MemStatementList {
 		++size;
 	}
 
-	public void addAll(MemStatementList other) {
+	public synchronized void addAll(MemStatementList other) {
 		if (size + other.size >= statements.length) {
 			// Grow array
 			growArray(size + other.size);
@@ -92,7 +94,7 @@ public class MemStatementList {
 		size += other.size;
 	}
 
-	public void remove(int index) {
+	public synchronized void remove(int index) {
 		assert index >= 0 : "index < 0";
 		assert index < size : "index >= size";
 
@@ -110,7 +112,7 @@ public class MemStatementList {
 		}
 	}
 
-	public void remove(MemStatement st) {
+	public synchronized void remove(MemStatement st) {
 		for (int i = 0; i < size; ++i) {
 			if (statements[i] == st) {
 				remove(i);
@@ -119,12 +121,12 @@ public class MemStatementList {
 		}
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		Arrays.fill(statements, 0, size, null);
 		size = 0;
 	}
 
-	public void cleanSnapshots(int currentSnapshot) {
+	public synchronized void cleanSnapshots(int currentSnapshot) {
 		int i = size - 1;
 
 		// remove all deprecated statements from the end of the list
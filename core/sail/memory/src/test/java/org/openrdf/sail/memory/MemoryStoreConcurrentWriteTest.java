@@ -0,0 +1,228 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.IsolationLevels;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+
+/**
+ * Tests that transactions of multiple threads that are applied to a
+ * {@link MemoryStore} concurrently, with and without conflicting changes,
+ * leave the store in a consistent state.
+ */
+public class MemoryStoreConcurrentWriteTest {
+
+	private static final int THREAD_COUNT = 8;
+
+	private static final int TRANSACTION_COUNT = 50;
+
+	private static final int STATEMENT_COUNT = 20;
+
+	private MemoryStore store;
+
+	private ValueFactory vf;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemoryStore();
+		store.initialize();
+		vf = store.getValueFactory();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+	}
+
+	@Test
+	public void testDisjointWriters()
+		throws Exception
+	{
+		runWriters(false);
+
+		assertEquals(THREAD_COUNT * TRANSACTION_COUNT * STATEMENT_COUNT, countStatements());
+	}
+
+	@Test
+	public void testConflictingWriters()
+		throws Exception
+	{
+		runWriters(true);
+
+		// every transaction replaces the shared statements, which must be
+		// present exactly once
+		List<Statement> statements = getStatements();
+		Set<Statement> distinct = new HashSet<Statement>(statements);
+		assertEquals("duplicate statements", distinct.size(), statements.size());
+		assertEquals(THREAD_COUNT * TRANSACTION_COUNT * STATEMENT_COUNT + STATEMENT_COUNT, statements.size());
+	}
+
+	@Test
+	public void testCommitVisibleDespiteEarlierPendingTransaction()
+		throws Exception
+	{
+		// simulates a slower transaction that started writing first
+		final MemorySailStore sailStore = (MemorySailStore)store.getSailStore();
+		int earlier = sailStore.assignSnapshot();
+
+		final IRI subj = vf.createIRI("urn:late");
+		final IRI pred = vf.createIRI("urn:p");
+		final AtomicBoolean committed = new AtomicBoolean();
+		final AtomicBoolean visible = new AtomicBoolean();
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Thread writer = new Thread(new Runnable() {
+
+			public void run() {
+				try {
+					SailConnection con = store.getConnection();
+					try {
+						con.begin();
+						con.addStatement(subj, pred, vf.createLiteral(1));
+						con.commit();
+						committed.set(true);
+						visible.set(con.hasStatement(subj, pred, null, false));
+					}
+					finally {
+						con.close();
+					}
+				}
+				catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			}
+		});
+		writer.start();
+
+		writer.join(500);
+		assertFalse("commit returned before its changes were visible", committed.get());
+
+		sailStore.completeSnapshot(earlier);
+		writer.join();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertTrue(committed.get());
+		assertTrue("connection could not read its own commit", visible.get());
+	}
+
+	private void runWriters(final boolean shared)
+		throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			final int thread = t;
+			threads.add(new Thread(new Runnable() {
+
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < TRANSACTION_COUNT; i++) {
+							SailConnection con = store.getConnection();
+							try {
+								con.begin(IsolationLevels.SNAPSHOT_READ);
+								IRI subj = vf.createIRI("urn:thread:" + thread + ":" + i);
+								for (int j = 0; j < STATEMENT_COUNT; j++) {
+									con.addStatement(subj, vf.createIRI("urn:p:" + j), vf.createLiteral(j));
+									if (shared) {
+										IRI sharedSubj = vf.createIRI("urn:shared");
+										IRI pred = vf.createIRI("urn:p:" + j);
+										con.removeStatements(sharedSubj, pred, null);
+										con.addStatement(sharedSubj, pred, vf.createLiteral(j));
+									}
+								}
+								con.commit();
+							}
+							finally {
+								con.close();
+							}
+						}
+					}
+					catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	private int countStatements()
+		throws SailException
+	{
+		return getStatements().size();
+	}
+
+	private List<Statement> getStatements()
+		throws SailException
+	{
+		List<Statement> result = new ArrayList<Statement>();
+		SailConnection con = store.getConnection();
+		try {
+			CloseableIteration<? extends Statement, SailException> iter = con.getStatements(null, null, null,
+					false);
+			try {
+				while (iter.hasNext()) {
+					result.add(iter.next());
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,141 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.util.Arrays;
+
+import org.openrdf.query.algebra.Compare.CompareOp;
+
+/**
+ * An equi-depth histogram over a sample of numeric values, used to estimate
+ * the selectivity of range comparisons. Each bucket covers the same number of
+ * sampled values; values are assumed to be uniformly distributed within a
+ * bucket.
+ */
+class EquiDepthHistogram {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int MAX_BUCKETS = 16;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	/**
+	 * The lower bound of the first bucket followed by the upper bounds of all
+	 * buckets.
+	 */
+	private final double[] bounds;
+
+	/**
+	 * The fraction of the sample that consists of values covered by this
+	 * histogram.
+	 */
+	private final double valueFraction;
+
+	private final int sampleSize;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new histogram.
+	 * 
+	 * @param values
+	 *        The values to build the histogram from, in arbitrary order.
+	 * @param sampleSize
+	 *        The size of the sample that the values were taken from, including
+	 *        any sampled items that could not be converted to numeric values.
+	 */
+	public EquiDepthHistogram(double[] values, int sampleSize) {
+		this.sampleSize = sampleSize;
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		int bucketCount = Math.min(MAX_BUCKETS, sorted.length);
+		bounds = new double[sorted.length == 0 ? 0 : bucketCount + 1];
+		for (int i = 0; i < bounds.length; i++) {
+			bounds[i] = sorted[(int)((long)i * (sorted.length - 1) / bucketCount)];
+		}
+
+		valueFraction = sampleSize == 0 ? 0.0 : (double)sorted.length / sampleSize;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Estimates the fraction of the sampled items that are numeric values
+	 * smaller than the specified value.
+	 */
+	public double getFractionBelow(double value) {
+		if (bounds.length == 0 || value <= bounds[0]) {
+			return 0.0;
+		}
+
+		int bucketCount = bounds.length - 1;
+		if (value > bounds[bucketCount]) {
+			return valueFraction;
+		}
+
+		int bucket = 0;
+		while (value > bounds[bucket + 1]) {
+			bucket++;
+		}
+
+		double width = bounds[bucket + 1] - bounds[bucket];
+		double withinBucket = width == 0.0 ? 1.0 : (value - bounds[bucket]) / width;
+
+		return valueFraction * (bucket + withinBucket) / bucketCount;
+	}
+
+	/**
+	 * Estimates the fraction of the sampled items that satisfy a range
+	 * comparison with the specified value. As the estimate is based on a
+	 * sample, it is never lower than the weight of a single sampled item.
+	 * 
+	 * @param op
+	 *        The comparison operator, where the sampled item is the left
+	 *        operand.
+	 * @return The estimated fraction, or <tt>1.0</tt> for operators other than
+	 *         range comparisons.
+	 */
+	public double getSelectivity(CompareOp op, double value) {
+		double result;
+
+		switch (op) {
+			case LT:
+			case LE:
+				result = getFractionBelow(value);
+				break;
+			case GT:
+			case GE:
+				result = valueFraction - getFractionBelow(value);
+				break;
+			default:
+				return 1.0;
+		}
+
+		return Math.max(result, 1.0 / (sampleSize + 1));
+	}
+}
@@ -0,0 +1,98 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.ObjectStreamException;
+
+import org.openrdf.sail.nativerdf.model.NativeBNode;
+
+/**
+ * A {@link NativeBNode} that only knows its internal ID until its node ID is
+ * requested, at which point it is read from the {@link ValueStore}.
+ * 
+ * @see ValueStore#getLazyValue(int)
+ */
+class LazyNativeBNode extends NativeBNode {
+
+	private static final long serialVersionUID = 6482113719325360347L;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile boolean initialized;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	LazyNativeBNode(ValueStoreRevision revision, int internalID) {
+		super(revision, internalID);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	private void init() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					setID(((NativeBNode)ValueStore.loadValue(this)).getID());
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getID() {
+		init();
+		return super.getID();
+	}
+
+	@Override
+	public String stringValue() {
+		init();
+		return super.stringValue();
+	}
+
+	@Override
+	public int hashCode() {
+		init();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		init();
+		return super.toString();
+	}
+
+	/**
+	 * Gets a copy of this blank node that holds its node ID.
+	 */
+	NativeBNode materialize() {
+		return new NativeBNode(getValueStoreRevision(), getID(), getInternalID());
+	}
+
+	private Object writeReplace()
+		throws ObjectStreamException
+	{
+		return materialize();
+	}
+}
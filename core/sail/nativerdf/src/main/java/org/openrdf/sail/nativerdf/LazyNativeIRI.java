@@ -0,0 +1,106 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.ObjectStreamException;
+
+import org.openrdf.sail.nativerdf.model.NativeIRI;
+
+/**
+ * A {@link NativeIRI} that only knows its internal ID until its IRI string is
+ * requested, at which point it is read from the {@link ValueStore}. IRIs that
+ * are only used as join keys or as arguments to subsequent lookups are never
+ * decoded.
+ * 
+ * @see ValueStore#getLazyValue(int)
+ */
+class LazyNativeIRI extends NativeIRI {
+
+	private static final long serialVersionUID = -2215178291138513742L;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile boolean initialized;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	LazyNativeIRI(ValueStoreRevision revision, int internalID) {
+		super(revision, internalID);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	private void init() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					setIRIString(ValueStore.loadValue(this).stringValue());
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		init();
+		return super.toString();
+	}
+
+	@Override
+	public String stringValue() {
+		init();
+		return super.stringValue();
+	}
+
+	@Override
+	public String getNamespace() {
+		init();
+		return super.getNamespace();
+	}
+
+	@Override
+	public String getLocalName() {
+		init();
+		return super.getLocalName();
+	}
+
+	@Override
+	public int hashCode() {
+		init();
+		return super.hashCode();
+	}
+
+	/**
+	 * Gets a copy of this IRI that holds its IRI string.
+	 */
+	NativeIRI materialize() {
+		return new NativeIRI(getValueStoreRevision(), stringValue(), getInternalID());
+	}
+
+	private Object writeReplace()
+		throws ObjectStreamException
+	{
+		return materialize();
+	}
+}
@@ -0,0 +1,142 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.ObjectStreamException;
+import java.util.Optional;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.sail.nativerdf.model.NativeLiteral;
+
+/**
+ * A {@link NativeLiteral} that only knows its internal ID until its label,
+ * language or datatype is requested, at which point it is read from the
+ * {@link ValueStore}.
+ * 
+ * @see ValueStore#getLazyValue(int)
+ */
+class LazyNativeLiteral extends NativeLiteral {
+
+	private static final long serialVersionUID = 3105470123651245297L;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile boolean initialized;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	LazyNativeLiteral(ValueStoreRevision revision, int internalID) {
+		super(revision, internalID);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	private void init() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					Literal literal = (Literal)ValueStore.loadValue(this);
+					setLabel(literal.getLabel());
+					if (literal.getLanguage().isPresent()) {
+						setLanguage(literal.getLanguage().get());
+					}
+					else {
+						setDatatype(literal.getDatatype());
+					}
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getLabel() {
+		init();
+		return super.getLabel();
+	}
+
+	@Override
+	public Optional<String> getLanguage() {
+		init();
+		return super.getLanguage();
+	}
+
+	@Override
+	public IRI getDatatype() {
+		init();
+		return super.getDatatype();
+	}
+
+	@Override
+	public String stringValue() {
+		init();
+		return super.stringValue();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof NativeLiteral) {
+			NativeLiteral other = (NativeLiteral)o;
+
+			if (other.getInternalID() != UNKNOWN_ID
+					&& getValueStoreRevision().equals(other.getValueStoreRevision()))
+			{
+				return getInternalID() == other.getInternalID();
+			}
+		}
+
+		// SimpleLiteral compares its label field directly
+		init();
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		init();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		init();
+		return super.toString();
+	}
+
+	/**
+	 * Gets a copy of this literal that holds its label, language and datatype.
+	 */
+	NativeLiteral materialize() {
+		if (getLanguage().isPresent()) {
+			return new NativeLiteral(getValueStoreRevision(), getLabel(), getLanguage().get(),
+					getInternalID());
+		}
+		return new NativeLiteral(getValueStoreRevision(), getLabel(), getDatatype(), getInternalID());
+	}
+
+	private Object writeReplace()
+		throws ObjectStreamException
+	{
+		return materialize();
+	}
+}
@@ -0,0 +1,543 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.aduna.concurrent.locks.Lock;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.helpers.DirectoryLockManager;
+import org.openrdf.sail.nativerdf.btree.RecordComparator;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Loads large numbers of statements into an empty native store considerably
+ * faster than adding them through a connection. Statements are collected in a
+ * buffer. Whenever the buffer is full, the IDs of all values in the buffer are
+ * assigned in one go and the buffer is sorted in the order of every triple
+ * index and written to disk as a sorted run. When the loader is closed, the
+ * runs of each index are merged and the index is built bottom-up from
+ * completely filled B-Tree nodes.
+ * <p>
+ * The loader requires exclusive access to the data directory, so the native
+ * store must not be initialized while statements are being loaded. Loading is
+ * not transactional: the statements become visible once {@link #close()} has
+ * returned and the data directory should be discarded if loading fails.
+ * 
+ * @see NativeStore#createBulkLoader()
+ */
+public class NativeBulkLoader {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of statements that is buffered in memory before a
+	 * sorted run is written to disk.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 500000;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final File dataDir;
+
+	private final Lock dirLock;
+
+	private final ValueStore valueStore;
+
+	private final TripleStore tripleStore;
+
+	private final List<RecordComparator> comparators;
+
+	/**
+	 * Statements that have been added since the last sorted run was written.
+	 */
+	private final Statement[] buffer;
+
+	private int bufferedCount;
+
+	/**
+	 * Directory containing the sorted runs, created when the first run is
+	 * written.
+	 */
+	private File runDir;
+
+	/**
+	 * The files containing the sorted runs, for each triple index.
+	 */
+	private final List<List<File>> runFiles;
+
+	private long statementCount;
+
+	private boolean closed;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new bulk loader for the native store in the specified
+	 * directory, using the specified triple indexes.
+	 * 
+	 * @param dataDir
+	 *        The data directory of the native store.
+	 * @param tripleIndexes
+	 *        The triple index specification, or <tt>null</tt> to use the
+	 *        default or existing indexes.
+	 * @throws SailException
+	 *         If the data directory is in use or contains statements.
+	 */
+	public NativeBulkLoader(File dataDir, String tripleIndexes)
+		throws SailException
+	{
+		this(dataDir, tripleIndexes, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new bulk loader for the native store in the specified
+	 * directory, using the specified triple indexes.
+	 * 
+	 * @param dataDir
+	 *        The data directory of the native store.
+	 * @param tripleIndexes
+	 *        The triple index specification, or <tt>null</tt> to use the
+	 *        default or existing indexes.
+	 * @param bufferSize
+	 *        The number of statements to buffer in memory before writing a
+	 *        sorted run to disk.
+	 * @throws SailException
+	 *         If the data directory is in use or contains statements.
+	 */
+	public NativeBulkLoader(File dataDir, String tripleIndexes, int bufferSize)
+		throws SailException
+	{
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be larger than 0");
+		}
+		if (!dataDir.exists() && !dataDir.mkdirs()) {
+			throw new SailException("Unable to create data directory: " + dataDir);
+		}
+
+		this.dataDir = dataDir;
+		this.dirLock = new DirectoryLockManager(dataDir).lockOrFail();
+
+		ValueStore valueStore = null;
+		TripleStore tripleStore = null;
+		boolean initialized = false;
+		try {
+			valueStore = new ValueStore(dataDir);
+			tripleStore = new TripleStore(dataDir, tripleIndexes);
+
+			RecordIterator iter = tripleStore.getTriples(-1, -1, -1, -1);
+			try {
+				if (iter.next() != null) {
+					throw new SailException("Bulk loading requires an empty store: " + dataDir);
+				}
+			}
+			finally {
+				iter.close();
+			}
+
+			initialized = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+		finally {
+			if (!initialized) {
+				try {
+					closeStores(valueStore, tripleStore);
+				}
+				catch (IOException e) {
+					logger.warn("Failed to close stores", e);
+				}
+				dirLock.release();
+			}
+		}
+
+		this.valueStore = valueStore;
+		this.tripleStore = tripleStore;
+		this.comparators = tripleStore.getIndexComparators();
+		this.buffer = new Statement[bufferSize];
+
+		runFiles = new ArrayList<List<File>>(comparators.size());
+		for (int i = 0; i < comparators.size(); i++) {
+			runFiles.add(new ArrayList<File>());
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Adds a statement to the store. Duplicate statements are ignored.
+	 */
+	public void add(Statement st)
+		throws SailException
+	{
+		if (closed) {
+			throw new IllegalStateException("Bulk loader has been closed");
+		}
+
+		buffer[bufferedCount++] = st;
+		statementCount++;
+
+		if (bufferedCount == buffer.length) {
+			try {
+				writeRuns(assignIDs());
+			}
+			catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of statements that have been added so far, including any
+	 * duplicates.
+	 */
+	public long getStatementCount() {
+		return statementCount;
+	}
+
+	/**
+	 * Builds the triple indexes from the added statements and releases the
+	 * data directory. The native store can be initialized once this method has
+	 * returned.
+	 */
+	public void close()
+		throws SailException
+	{
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			byte[][] records = assignIDs();
+
+			if (runDir != null && records.length > 0) {
+				writeRuns(records);
+			}
+
+			for (int i = 0; i < comparators.size(); i++) {
+				RecordIterator sortedTriples;
+
+				if (runDir == null) {
+					// Everything fits in memory
+					Arrays.sort(records, toComparator(comparators.get(i)));
+					sortedTriples = new ArrayRecordIterator(records);
+				}
+				else {
+					sortedTriples = new RunMergeIterator(runFiles.get(i), comparators.get(i));
+				}
+
+				try {
+					tripleStore.bulkLoad(i, sortedTriples);
+				}
+				finally {
+					sortedTriples.close();
+				}
+			}
+
+			valueStore.sync();
+
+			logger.debug("Bulk loaded {} statements", statementCount);
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+		finally {
+			try {
+				closeStores(valueStore, tripleStore);
+
+				if (runDir != null) {
+					FileUtils.deleteDirectory(runDir);
+				}
+			}
+			catch (IOException e) {
+				throw new SailException(e);
+			}
+			finally {
+				dirLock.release();
+			}
+		}
+	}
+
+	/**
+	 * Assigns IDs to the values of the buffered statements and converts the
+	 * statements to triple records, emptying the buffer. Each distinct value in
+	 * the buffer is only looked up once.
+	 */
+	private byte[][] assignIDs()
+		throws IOException
+	{
+		Map<Value, Integer> idMap = new HashMap<Value, Integer>();
+		byte[][] records = new byte[bufferedCount][];
+
+		for (int i = 0; i < bufferedCount; i++) {
+			Statement st = buffer[i];
+			buffer[i] = null;
+
+			int subj = getID(st.getSubject(), idMap);
+			int pred = getID(st.getPredicate(), idMap);
+			int obj = getID(st.getObject(), idMap);
+			Resource context = st.getContext();
+			int contextID = context == null ? 0 : getID(context, idMap);
+
+			records[i] = TripleStore.getData(subj, pred, obj, contextID, TripleStore.EXPLICIT_FLAG);
+		}
+
+		bufferedCount = 0;
+		return records;
+	}
+
+	private int getID(Value value, Map<Value, Integer> idMap)
+		throws IOException
+	{
+		Integer id = idMap.get(value);
+
+		if (id == null) {
+			id = valueStore.storeValue(value);
+			idMap.put(value, id);
+		}
+
+		return id.intValue();
+	}
+
+	/**
+	 * Sorts the records in the order of every triple index and writes them to a
+	 * new run file for that index.
+	 */
+	private void writeRuns(byte[][] records)
+		throws IOException
+	{
+		if (runDir == null) {
+			runDir = Files.createTempDirectory(dataDir.toPath(), "bulkload").toFile();
+		}
+
+		for (int i = 0; i < comparators.size(); i++) {
+			Arrays.sort(records, toComparator(comparators.get(i)));
+
+			List<File> files = runFiles.get(i);
+			File runFile = new File(runDir, "run-" + i + "-" + files.size() + ".dat");
+			files.add(runFile);
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16);
+			try {
+				for (byte[] record : records) {
+					out.write(record);
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+	}
+
+	private static void closeStores(ValueStore valueStore, TripleStore tripleStore)
+		throws IOException
+	{
+		try {
+			if (valueStore != null) {
+				valueStore.close();
+			}
+		}
+		finally {
+			if (tripleStore != null) {
+				tripleStore.close();
+			}
+		}
+	}
+
+	private static Comparator<byte[]> toComparator(final RecordComparator comparator) {
+		return new Comparator<byte[]>() {
+
+			public int compare(byte[] record1, byte[] record2) {
+				return comparator.compareBTreeValues(record1, record2, 0, record2.length);
+			}
+		};
+	}
+
+	/*---------------------------------*
+	 * Inner class ArrayRecordIterator *
+	 *---------------------------------*/
+
+	private static class ArrayRecordIterator implements RecordIterator {
+
+		private final byte[][] records;
+
+		private int index;
+
+		public ArrayRecordIterator(byte[][] records) {
+			this.records = records;
+		}
+
+		public byte[] next() {
+			return index < records.length ? records[index++] : null;
+		}
+
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			index = records.length;
+		}
+	}
+
+	/*------------------------------*
+	 * Inner class RunMergeIterator *
+	 *------------------------------*/
+
+	/**
+	 * Merges a number of sorted run files into a single sorted sequence of
+	 * records.
+	 */
+	private static class RunMergeIterator implements RecordIterator {
+
+		private final PriorityQueue<RunReader> queue;
+
+		private final List<RunReader> readers;
+
+		public RunMergeIterator(List<File> runFiles, RecordComparator comparator)
+			throws IOException
+		{
+			final Comparator<byte[]> recordComparator = toComparator(comparator);
+
+			queue = new PriorityQueue<RunReader>(Math.max(1, runFiles.size()), new Comparator<RunReader>() {
+
+				public int compare(RunReader reader1, RunReader reader2) {
+					return recordComparator.compare(reader1.current, reader2.current);
+				}
+			});
+			readers = new ArrayList<RunReader>(runFiles.size());
+
+			try {
+				for (File runFile : runFiles) {
+					RunReader reader = new RunReader(runFile);
+					readers.add(reader);
+
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+			}
+			catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		public byte[] next()
+			throws IOException
+		{
+			RunReader reader = queue.poll();
+
+			if (reader == null) {
+				return null;
+			}
+
+			byte[] record = reader.current;
+
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+
+			return record;
+		}
+
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close()
+			throws IOException
+		{
+			queue.clear();
+
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	private static class RunReader {
+
+		private final DataInputStream in;
+
+		private byte[] current;
+
+		public RunReader(File runFile)
+			throws IOException
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+		}
+
+		/**
+		 * Reads the next record of the run.
+		 * 
+		 * @return <tt>false</tt> if the end of the run has been reached.
+		 */
+		public boolean advance()
+			throws IOException
+		{
+			byte[] record = new byte[TripleStore.RECORD_LENGTH];
+
+			try {
+				in.readFully(record);
+			}
+			catch (EOFException e) {
+				current = null;
+				return false;
+			}
+
+			current = record;
+			return true;
+		}
+	}
+}
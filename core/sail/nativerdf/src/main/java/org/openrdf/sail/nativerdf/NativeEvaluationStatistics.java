@@ -17,19 +17,39 @@
 package org.openrdf.sail.nativerdf;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.openrdf.model.Resource;
 import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
 import org.openrdf.model.Value;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.openrdf.sail.nativerdf.model.NativeValue;
 
 /**
+ * Estimates the cardinality of statement patterns from the
+ * {@link TripleStatistics} that are maintained by the {@link TripleStore},
+ * falling back to range estimates on the triple indexes for patterns that the
+ * statistics don't cover.
+ * 
  * @author Arjohn Kampman
  * @author Enrico Minack
  */
@@ -41,11 +61,30 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 
 	private final TripleStore tripleStore;
 
+	/**
+	 * Histograms of the sampled objects per predicate ID.
+	 */
+	private final ConcurrentMap<Integer, ObjectHistograms> histograms = new ConcurrentHashMap<Integer, ObjectHistograms>();
+
 	public NativeEvaluationStatistics(ValueStore valueStore, TripleStore tripleStore) {
 		this.valueStore = valueStore;
 		this.tripleStore = tripleStore;
 	}
 
+	@Override
+	public double getCardinality(TupleExpr expr, Set<String> boundVars) {
+		if (expr instanceof StatementPattern) {
+			try {
+				return getCardinality((StatementPattern)expr, boundVars);
+			}
+			catch (IOException e) {
+				log.error("Failed to estimate statement pattern cardinality", e);
+			}
+		}
+
+		return super.getCardinality(expr, boundVars);
+	}
+
 	@Override
 	protected CardinalityCalculator createCardinalityCalculator() {
 		return new NativeCardinalityCalculator();
@@ -56,6 +95,12 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 		@Override
 		protected double getCardinality(StatementPattern sp) {
 			try {
+				double cardinality = NativeEvaluationStatistics.this.getCardinality(sp,
+						Collections.<String> emptySet());
+				if (cardinality >= 0.0) {
+					return cardinality;
+				}
+
 				Value subj = getConstantValue(sp.getSubjectVar());
 				if (!(subj instanceof Resource)) {
 					// can happen when a previous optimizer has inlined a comparison operator. 
@@ -89,6 +134,197 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 		}
 	}
 
+	/**
+	 * Estimates the cardinality of a statement pattern from the triple
+	 * statistics.
+	 * 
+	 * @param boundVars
+	 *        The names of variables that are bound by preceding join arguments.
+	 * @return The estimated cardinality, or a negative value if the pattern has
+	 *         a bound context, for which no statistics are kept.
+	 */
+	private double getCardinality(StatementPattern sp, Set<String> boundVars)
+		throws IOException
+	{
+		Var contextVar = sp.getContextVar();
+		if (contextVar != null && (contextVar.hasValue() || boundVars.contains(contextVar.getName()))) {
+			return -1.0;
+		}
+
+		TripleStatistics statistics = tripleStore.getStatistics();
+
+		// Values that don't fit their position are ignored, see SES-970
+		int pred = getConstantID(sp.getPredicateVar(), IRI.class);
+		if (pred == NativeValue.UNKNOWN_ID) {
+			return 0.0;
+		}
+		int subj = getConstantID(sp.getSubjectVar(), Resource.class);
+		int obj = getConstantID(sp.getObjectVar(), Value.class);
+		if (subj == NativeValue.UNKNOWN_ID || obj == NativeValue.UNKNOWN_ID) {
+			return 0.0;
+		}
+
+		if (pred == 0) {
+			pred = TripleStatistics.ALL_PREDICATES;
+		}
+
+		double cardinality = statistics.getTripleCount(pred);
+		if (cardinality == 0.0) {
+			return 0.0;
+		}
+
+		boolean subjBound = subj != 0 || boundVars.contains(sp.getSubjectVar().getName());
+		boolean objBound = obj != 0 || boundVars.contains(sp.getObjectVar().getName());
+
+		if (subjBound) {
+			cardinality /= Math.max(1.0, statistics.getDistinctSubjects(pred));
+		}
+		if (objBound) {
+			cardinality /= Math.max(1.0, statistics.getDistinctObjects(pred));
+		}
+		else if (pred != TripleStatistics.ALL_PREDICATES) {
+			cardinality *= getFilterSelectivity(sp, pred);
+		}
+
+		if (pred == TripleStatistics.ALL_PREDICATES && boundVars.contains(sp.getPredicateVar().getName())) {
+			cardinality /= Math.max(1, statistics.getPredicateCount());
+		}
+
+		return cardinality;
+	}
+
+	/**
+	 * Gets the ID of a variable's value.
+	 * 
+	 * @return The ID of the value, <tt>0</tt> if the variable has no value of
+	 *         the specified type, or {@link NativeValue#UNKNOWN_ID} if the value
+	 *         does not exist in the store.
+	 */
+	private int getConstantID(Var var, Class<? extends Value> type)
+		throws IOException
+	{
+		if (var == null || !type.isInstance(var.getValue())) {
+			return 0;
+		}
+
+		return valueStore.getID(var.getValue());
+	}
+
+	/**
+	 * Estimates the fraction of the matches of a statement pattern that pass
+	 * the filters on the pattern's object that are applied to the joins that
+	 * contain the pattern.
+	 */
+	private double getFilterSelectivity(StatementPattern sp, int pred)
+		throws IOException
+	{
+		double selectivity = 1.0;
+
+		QueryModelNode node = sp.getParentNode();
+		while (node instanceof Join || node instanceof Filter) {
+			if (node instanceof Filter && ((Filter)node).getCondition() instanceof Compare) {
+				Compare compare = (Compare)((Filter)node).getCondition();
+				selectivity *= getSelectivity(compare, sp.getObjectVar().getName(), pred);
+			}
+			node = node.getParentNode();
+		}
+
+		return selectivity;
+	}
+
+	private double getSelectivity(Compare compare, String varName, int pred)
+		throws IOException
+	{
+		CompareOp op = compare.getOperator();
+		Value value;
+
+		if (isVar(compare.getLeftArg(), varName)) {
+			value = getConstantValue(compare.getRightArg());
+		}
+		else if (isVar(compare.getRightArg(), varName)) {
+			value = getConstantValue(compare.getLeftArg());
+			op = mirror(op);
+		}
+		else {
+			return 1.0;
+		}
+
+		TripleStatistics statistics = tripleStore.getStatistics();
+
+		if (op == CompareOp.EQ || op == CompareOp.NE) {
+			double equal = 1.0 / Math.max(1.0, statistics.getDistinctObjects(pred));
+			return op == CompareOp.EQ ? equal : 1.0 - equal;
+		}
+
+		if (!(value instanceof Literal)) {
+			return 1.0;
+		}
+
+		Literal literal = (Literal)value;
+		IRI datatype = literal.getDatatype();
+
+		try {
+			if (XMLDatatypeUtil.isNumericDatatype(datatype)) {
+				return getHistograms(pred).numeric.getSelectivity(op, literal.doubleValue());
+			}
+			else if (XMLDatatypeUtil.isCalendarDatatype(datatype)) {
+				return getHistograms(pred).calendar.getSelectivity(op, toMillis(literal));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// invalid lexical value, can't be compared
+		}
+
+		return 1.0;
+	}
+
+	private boolean isVar(ValueExpr expr, String varName) {
+		return expr instanceof Var && !((Var)expr).hasValue() && ((Var)expr).getName().equals(varName);
+	}
+
+	private Value getConstantValue(ValueExpr expr) {
+		if (expr instanceof ValueConstant) {
+			return ((ValueConstant)expr).getValue();
+		}
+		else if (expr instanceof Var) {
+			return ((Var)expr).getValue();
+		}
+		return null;
+	}
+
+	private CompareOp mirror(CompareOp op) {
+		switch (op) {
+			case LT:
+				return CompareOp.GT;
+			case LE:
+				return CompareOp.GE;
+			case GT:
+				return CompareOp.LT;
+			case GE:
+				return CompareOp.LE;
+			default:
+				return op;
+		}
+	}
+
+	private static double toMillis(Literal literal) {
+		return literal.calendarValue().toGregorianCalendar().getTimeInMillis();
+	}
+
+	private ObjectHistograms getHistograms(int pred)
+		throws IOException
+	{
+		int[] sample = tripleStore.getStatistics().getObjectSample(pred);
+
+		ObjectHistograms result = histograms.get(pred);
+		if (result == null || !Arrays.equals(result.sample, sample)) {
+			result = new ObjectHistograms(sample);
+			histograms.put(pred, result);
+		}
+
+		return result;
+	}
+
 	private double cardinality(Resource subj, IRI pred, Value obj, Resource context)
 		throws IOException
 	{
@@ -126,4 +362,52 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 
 		return tripleStore.cardinality(subjID, predID, objID, contextID);
 	}
+
+	/*------------------------------*
+	 * Inner class ObjectHistograms *
+	 *------------------------------*/
+
+	/**
+	 * Histograms of the numeric and calendar values in a sample of objects.
+	 */
+	private class ObjectHistograms {
+
+		private final int[] sample;
+
+		private final EquiDepthHistogram numeric;
+
+		private final EquiDepthHistogram calendar;
+
+		public ObjectHistograms(int[] sample)
+			throws IOException
+		{
+			this.sample = sample;
+
+			double[] numericValues = new double[sample.length];
+			double[] calendarValues = new double[sample.length];
+			int numericCount = 0;
+			int calendarCount = 0;
+
+			for (int id : sample) {
+				Value value = valueStore.getValue(id);
+				if (value instanceof Literal) {
+					Literal literal = (Literal)value;
+					try {
+						if (XMLDatatypeUtil.isNumericDatatype(literal.getDatatype())) {
+							numericValues[numericCount++] = literal.doubleValue();
+						}
+						else if (XMLDatatypeUtil.isCalendarDatatype(literal.getDatatype())) {
+							calendarValues[calendarCount++] = toMillis(literal);
+						}
+					}
+					catch (IllegalArgumentException e) {
+						// invalid lexical value, ignore
+					}
+				}
+			}
+
+			numeric = new EquiDepthHistogram(Arrays.copyOf(numericValues, numericCount), sample.length);
+			calendar = new EquiDepthHistogram(Arrays.copyOf(calendarValues, calendarCount), sample.length);
+		}
+	}
 }
@@ -71,6 +71,12 @@ class NativeSailStore implements SailStore {
 
 	final NamespaceStore namespaceStore;
 
+	/**
+	 * Shared by all queries so that histograms don't need to be rebuilt for
+	 * each query.
+	 */
+	final NativeEvaluationStatistics evaluationStatistics;
+
 	/**
 	 * Lock manager used to prevent concurrent transactions.
 	 */
@@ -82,23 +88,26 @@ class NativeSailStore implements SailStore {
 	public NativeSailStore(File dataDir, String tripleIndexes)
 		throws IOException, SailException
 	{
-		this(dataDir, tripleIndexes, false, ValueStore.VALUE_CACHE_SIZE,
-				ValueStore.VALUE_ID_CACHE_SIZE, ValueStore.NAMESPACE_CACHE_SIZE, ValueStore.NAMESPACE_ID_CACHE_SIZE);
+		this(dataDir, tripleIndexes, false, false, -1, -1, ValueStore.VALUE_CACHE_MEMORY,
+				ValueStore.VALUE_ID_CACHE_MEMORY, ValueStore.NAMESPACE_CACHE_SIZE, ValueStore.NAMESPACE_ID_CACHE_SIZE,
+				TripleStore.NODE_CACHE_MEMORY);
 	}
 
 	/**
 	 * Creates a new {@link NativeSailStore}.
 	 */
-	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
-			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize)
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, boolean memoryMapped,
+			int valueCacheSize, int valueIDCacheSize, long valueCacheMemory, long valueIDCacheMemory,
+			int namespaceCacheSize, int namespaceIDCacheSize, long nodeCacheMemory)
 		throws IOException, SailException
 	{
 		boolean initialized = false;
 		try {
 			namespaceStore = new NamespaceStore(dataDir);
-			valueStore = new ValueStore(dataDir, forceSync, valueCacheSize, valueIDCacheSize,
-					namespaceCacheSize, namespaceIDCacheSize);
-			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync);
+			valueStore = new ValueStore(dataDir, forceSync, memoryMapped, valueCacheSize, valueIDCacheSize,
+					valueCacheMemory, valueIDCacheMemory, namespaceCacheSize, namespaceIDCacheSize);
+			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync, memoryMapped, nodeCacheMemory);
+			evaluationStatistics = new NativeEvaluationStatistics(valueStore, tripleStore);
 			initialized = true;
 		}
 		finally {
@@ -131,7 +140,7 @@ class NativeSailStore implements SailStore {
 
 	@Override
 	public EvaluationStatistics getEvaluationStatistics() {
-		return new NativeEvaluationStatistics(valueStore, tripleStore);
+		return evaluationStatistics;
 	}
 
 	public SailSource getExplicitSailSource() {
@@ -215,19 +224,23 @@ class NativeSailStore implements SailStore {
 		}
 
 		List<Integer> contextIDList = new ArrayList<Integer>(contexts.length);
+		List<Resource> contextList = new ArrayList<Resource>(contexts.length);
 		if (contexts.length == 0) {
 			contextIDList.add(NativeValue.UNKNOWN_ID);
+			contextList.add(null);
 		}
 		else {
 			for (Resource context : contexts) {
 				if (context == null) {
 					contextIDList.add(0);
+					contextList.add(null);
 				}
 				else {
 					int contextID = valueStore.getID(context);
 
 					if (contextID != NativeValue.UNKNOWN_ID) {
 						contextIDList.add(contextID);
+						contextList.add(context);
 					}
 				}
 			}
@@ -236,10 +249,16 @@ class NativeSailStore implements SailStore {
 		ArrayList<NativeStatementIterator> perContextIterList = new ArrayList<NativeStatementIterator>(
 				contextIDList.size());
 
-		for (int contextID : contextIDList) {
+		// Statement predicates are IRIs, any other URI is fetched from the store
+		IRI predIRI = pred instanceof IRI ? (IRI)pred : null;
+
+		for (int i = 0; i < contextIDList.size(); i++) {
+			int contextID = contextIDList.get(i);
 			RecordIterator btreeIter = tripleStore.getTriples(subjID, predID, objID, contextID, explicit, false);
 
-			perContextIterList.add(new NativeStatementIterator(btreeIter, valueStore));
+			// Pass the bound values so that these don't have to be fetched again
+			perContextIterList.add(
+					new NativeStatementIterator(btreeIter, valueStore, subj, predIRI, obj, contextList.get(i)));
 		}
 
 		if (perContextIterList.size() == 1) {
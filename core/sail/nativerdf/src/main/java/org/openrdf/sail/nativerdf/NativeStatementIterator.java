@@ -17,6 +17,7 @@
 package org.openrdf.sail.nativerdf;
 
 import java.io.IOException;
+import java.util.List;
 
 import info.aduna.io.ByteArrayUtil;
 import info.aduna.iteration.LookAheadIteration;
@@ -42,6 +43,14 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 
 	private final ValueStore valueStore;
 
+	private final Resource subj;
+
+	private final IRI pred;
+
+	private final Value obj;
+
+	private final Resource context;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -51,9 +60,37 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 	 */
 	public NativeStatementIterator(RecordIterator btreeIter, ValueStore valueStore)
 		throws IOException
+	{
+		this(btreeIter, valueStore, null, null, null, null);
+	}
+
+	/**
+	 * Creates a new NativeStatementIterator for a statement pattern. The
+	 * supplied values are returned as-is in the statements instead of being
+	 * fetched from the value store again, all other values are fetched lazily
+	 * through {@link ValueStore#getLazyValue(int)}.
+	 * 
+	 * @param subj
+	 *        The subject of the pattern, or <tt>null</tt> if it is a wildcard.
+	 * @param pred
+	 *        The predicate of the pattern, or <tt>null</tt> if it is a
+	 *        wildcard.
+	 * @param obj
+	 *        The object of the pattern, or <tt>null</tt> if it is a wildcard.
+	 * @param context
+	 *        The context of the pattern, or <tt>null</tt> if it is a wildcard or
+	 *        the default context.
+	 */
+	public NativeStatementIterator(RecordIterator btreeIter, ValueStore valueStore, Resource subj,
+			IRI pred, Value obj, Resource context)
+		throws IOException
 	{
 		this.btreeIter = btreeIter;
 		this.valueStore = valueStore;
+		this.subj = subj;
+		this.pred = pred;
+		this.obj = obj;
+		this.context = context;
 	}
 
 	/*---------*
@@ -70,28 +107,68 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 				return null;
 			}
 
-			int subjID = ByteArrayUtil.getInt(nextValue, TripleStore.SUBJ_IDX);
-			Resource subj = (Resource)valueStore.getValue(subjID);
+			return createStatement(nextValue);
+		}
+		catch (IOException e) {
+			throw causeIOException(e);
+		}
+	}
 
-			int predID = ByteArrayUtil.getInt(nextValue, TripleStore.PRED_IDX);
-		IRI pred = (IRI)valueStore.getValue(predID);
+	@Override
+	protected boolean getNextElements(List<Statement> batch, int max)
+		throws SailException
+	{
+		try {
+			for (int i = 0; i < max; i++) {
+				byte[] nextValue = btreeIter.next();
 
-			int objID = ByteArrayUtil.getInt(nextValue, TripleStore.OBJ_IDX);
-			Value obj = valueStore.getValue(objID);
+				if (nextValue == null) {
+					return false;
+				}
 
-			Resource context = null;
-			int contextID = ByteArrayUtil.getInt(nextValue, TripleStore.CONTEXT_IDX);
-			if (contextID != 0) {
-				context = (Resource)valueStore.getValue(contextID);
+				batch.add(createStatement(nextValue));
 			}
 
-			return valueStore.createStatement(subj, pred, obj, context);
+			return true;
 		}
 		catch (IOException e) {
 			throw causeIOException(e);
 		}
 	}
 
+	private Statement createStatement(byte[] record)
+		throws IOException
+	{
+		Resource subj = this.subj;
+		if (subj == null) {
+			int subjID = ByteArrayUtil.getInt(record, TripleStore.SUBJ_IDX);
+			subj = (Resource)valueStore.getLazyValue(subjID);
+		}
+
+		IRI pred = this.pred;
+		if (pred == null) {
+			int predID = ByteArrayUtil.getInt(record, TripleStore.PRED_IDX);
+			pred = (IRI)valueStore.getLazyValue(predID);
+		}
+
+		Value obj = this.obj;
+		if (obj == null) {
+			int objID = ByteArrayUtil.getInt(record, TripleStore.OBJ_IDX);
+			obj = valueStore.getLazyValue(objID);
+		}
+
+		Resource context = null;
+		int contextID = ByteArrayUtil.getInt(record, TripleStore.CONTEXT_IDX);
+		if (contextID != 0) {
+			context = this.context;
+			if (context == null) {
+				context = (Resource)valueStore.getLazyValue(contextID);
+			}
+		}
+
+		return valueStore.createStatement(subj, pred, obj, context);
+	}
+
 	@Override
 	protected void handleClose()
 		throws SailException
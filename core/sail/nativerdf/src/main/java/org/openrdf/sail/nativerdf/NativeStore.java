@@ -18,6 +18,7 @@ package org.openrdf.sail.nativerdf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
@@ -35,6 +36,7 @@ import org.openrdf.model.ValueFactory;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverImpl;
+import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
 import org.openrdf.sail.NotifyingSailConnection;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.base.SailSource;
@@ -71,14 +73,34 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 	 */
 	private volatile boolean forceSync = false;
 
-	private volatile int valueCacheSize = ValueStore.VALUE_CACHE_SIZE;
+	/**
+	 * Flag indicating whether the data files should be read through
+	 * memory-mapped regions. By default, this feature is disabled.
+	 */
+	private volatile boolean memoryMapped = false;
+
+	/**
+	 * The maximum number of cached values, or a negative number if the value
+	 * cache is only bounded by {@link #valueCacheMemory}.
+	 */
+	private volatile int valueCacheSize = -1;
+
+	/**
+	 * The maximum number of cached value IDs, or a negative number if the value
+	 * id cache is only bounded by {@link #valueIDCacheMemory}.
+	 */
+	private volatile int valueIDCacheSize = -1;
+
+	private volatile long valueCacheMemory = ValueStore.VALUE_CACHE_MEMORY;
 
-	private volatile int valueIDCacheSize = ValueStore.VALUE_ID_CACHE_SIZE;
+	private volatile long valueIDCacheMemory = ValueStore.VALUE_ID_CACHE_MEMORY;
 
 	private volatile int namespaceCacheSize = ValueStore.NAMESPACE_CACHE_SIZE;
 
 	private volatile int namespaceIDCacheSize = ValueStore.NAMESPACE_ID_CACHE_SIZE;
 
+	private volatile long nodeCacheMemory = TripleStore.NODE_CACHE_MEMORY;
+
 	private SailStore store;
 
 	/**
@@ -86,6 +108,18 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 	 */
 	private volatile Lock dirLock;
 
+	/**
+	 * The number of threads used for parallel query evaluation.
+	 * 
+	 * @see #setEvaluationParallelism
+	 */
+	private volatile int evaluationParallelism = 0;
+
+	/**
+	 * The pool used for parallel query evaluation, null if disabled.
+	 */
+	private volatile ForkJoinPool evaluationPool;
+
 	/** independent life cycle */
 	private FederatedServiceResolver serviceResolver;
 
@@ -154,6 +188,30 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		return tripleIndexes;
 	}
 
+	/**
+	 * Creates a loader that fills the (empty) data directory of this store in
+	 * bulk, which is much faster than adding statements through a connection.
+	 * This method must be called before initialization; the store can be
+	 * initialized once the loader has been closed.
+	 * 
+	 * @throws SailException
+	 *         If the data directory is in use or already contains statements.
+	 */
+	public NativeBulkLoader createBulkLoader()
+		throws SailException
+	{
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		File dataDir = getDataDir();
+		if (dataDir == null) {
+			throw new SailException("Data dir has not been set");
+		}
+
+		return new NativeBulkLoader(dataDir, tripleIndexes);
+	}
+
 	/**
 	 * Specifiec whether updates should be synced to disk forcefully, must be
 	 * called before initialization. Enabling this feature may prevent corruption
@@ -168,6 +226,22 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		return forceSync;
 	}
 
+	/**
+	 * Specifies whether the B-Tree, value and hash files should be read through
+	 * memory-mapped regions instead of positional file reads, must be called
+	 * before initialization. This avoids a system call per read and lets the
+	 * operating system's page cache serve as the cache for index nodes and
+	 * values, which benefits read-heavy workloads on large stores. By default,
+	 * this feature is disabled.
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public boolean getMemoryMapped() {
+		return memoryMapped;
+	}
+
 	public void setValueCacheSize(int valueCacheSize) {
 		this.valueCacheSize = valueCacheSize;
 	}
@@ -176,6 +250,24 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		this.valueIDCacheSize = valueIDCacheSize;
 	}
 
+	/**
+	 * Sets the estimated memory budget of the value cache in bytes, must be
+	 * called before initialization. The hit, miss and eviction counters of the
+	 * cache are available through {@link ValueStore#getValueCache()}.
+	 */
+	public void setValueCacheMemory(long valueCacheMemory) {
+		this.valueCacheMemory = valueCacheMemory;
+	}
+
+	/**
+	 * Sets the estimated memory budget of the value id cache in bytes, must be
+	 * called before initialization. The hit, miss and eviction counters of the
+	 * cache are available through {@link ValueStore#getValueIDCache()}.
+	 */
+	public void setValueIDCacheMemory(long valueIDCacheMemory) {
+		this.valueIDCacheMemory = valueIDCacheMemory;
+	}
+
 	public void setNamespaceCacheSize(int namespaceCacheSize) {
 		this.namespaceCacheSize = namespaceCacheSize;
 	}
@@ -184,6 +276,47 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	/**
+	 * Sets the memory budget in bytes of the B-Tree node cache that is shared
+	 * by all triple indexes, must be called before initialization.
+	 */
+	public void setNodeCacheMemory(long nodeCacheMemory) {
+		this.nodeCacheMemory = nodeCacheMemory;
+	}
+
+	public long getNodeCacheMemory() {
+		return nodeCacheMemory;
+	}
+
+	/**
+	 * Sets the number of threads that queries on this store may use to evaluate
+	 * independent operators, such as the arguments of a union, concurrently.
+	 * Must be called before initialization. The threads are shared by all
+	 * queries on the store. By default, this value is <tt>0</tt>, which
+	 * evaluates each query in the calling thread only.
+	 * 
+	 * @see SimpleEvaluationStrategy#setForkJoinPool(ForkJoinPool)
+	 */
+	public void setEvaluationParallelism(int evaluationParallelism) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.evaluationParallelism = evaluationParallelism;
+	}
+
+	public int getEvaluationParallelism() {
+		return evaluationParallelism;
+	}
+
+	/**
+	 * Gets the pool in which queries evaluate operators concurrently, or
+	 * <tt>null</tt> if parallel evaluation is disabled.
+	 */
+	ForkJoinPool getEvaluationPool() {
+		return evaluationPool;
+	}
+
 	/**
 	 * @return Returns the SERVICE resolver.
 	 */
@@ -251,8 +384,9 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 			if (!VERSION.equals(version) && upgradeStore(dataDir, version)) {
 				FileUtils.writeStringToFile(versionFile, VERSION);
 			}
-			final NativeSailStore master = new NativeSailStore(dataDir, tripleIndexes, forceSync,
-					valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize);
+			final NativeSailStore master = new NativeSailStore(dataDir, tripleIndexes, forceSync, memoryMapped,
+					valueCacheSize, valueIDCacheSize, valueCacheMemory, valueIDCacheMemory, namespaceCacheSize,
+					namespaceIDCacheSize, nodeCacheMemory);
 			this.store = new SnapshotSailStore(master, new ModelFactory() {
 
 				@Override
@@ -301,6 +435,10 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 			throw new SailException(e);
 		}
 
+		if (evaluationParallelism > 0) {
+			evaluationPool = new ForkJoinPool(evaluationParallelism);
+		}
+
 		logger.debug("NativeStore initialized");
 	}
 
@@ -320,6 +458,10 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 			if (dependentServiceResolver != null) {
 				dependentServiceResolver.shutDown();
 			}
+			if (evaluationPool != null) {
+				evaluationPool.shutdownNow();
+				evaluationPool = null;
+			}
 			logger.debug("NativeStore shut down");
 		}
 	}
@@ -17,15 +17,24 @@
 package org.openrdf.sail.nativerdf;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import info.aduna.concurrent.locks.Lock;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.ConvertingIteration;
 
 import org.openrdf.model.Resource;
 import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.SimpleNamespace;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
 import org.openrdf.sail.SailException;
@@ -159,10 +168,104 @@ public class NativeStoreConnection extends SailSourceConnection {
 		return ret;
 	}
 
+	/**
+	 * Materializes the lazily decoded values of the result, so that the values
+	 * remain usable after the store has been shut down.
+	 */
+	@Override
+	protected CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateInternal(
+			TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred)
+		throws SailException
+	{
+		return new ConvertingIteration<BindingSet, BindingSet, QueryEvaluationException>(
+				super.evaluateInternal(tupleExpr, dataset, bindings, includeInferred))
+		{
+
+			@Override
+			protected BindingSet convert(BindingSet bindingSet)
+				throws QueryEvaluationException
+			{
+				try {
+					return materialize(bindingSet);
+				}
+				catch (UncheckedIOException e) {
+					throw new QueryEvaluationException(e.getCause());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Materializes the lazily decoded values of the statements, so that the
+	 * values remain usable after the store has been shut down.
+	 */
+	@Override
+	protected CloseableIteration<? extends Statement, SailException> getStatementsInternal(Resource subj,
+			IRI pred, Value obj, boolean includeInferred, Resource... contexts)
+		throws SailException
+	{
+		return new ConvertingIteration<Statement, Statement, SailException>(super.getStatementsInternal(
+				subj, pred, obj, includeInferred, contexts))
+		{
+
+			@Override
+			protected Statement convert(Statement st)
+				throws SailException
+			{
+				try {
+					return materialize(st);
+				}
+				catch (UncheckedIOException e) {
+					throw new SailException(e.getCause());
+				}
+			}
+		};
+	}
+
+	private Statement materialize(Statement st) {
+		Resource context = st.getContext();
+		if (!ValueStore.isLazy(st.getSubject()) && !ValueStore.isLazy(st.getPredicate())
+				&& !ValueStore.isLazy(st.getObject()) && !ValueStore.isLazy(context))
+		{
+			return st;
+		}
+
+		Resource subj = (Resource)ValueStore.materialize(st.getSubject());
+		IRI pred = (IRI)ValueStore.materialize(st.getPredicate());
+		Value obj = ValueStore.materialize(st.getObject());
+		if (context == null) {
+			return nativeStore.getValueFactory().createStatement(subj, pred, obj);
+		}
+		return nativeStore.getValueFactory().createStatement(subj, pred, obj,
+				(Resource)ValueStore.materialize(context));
+	}
+
+	private BindingSet materialize(BindingSet bindingSet) {
+		boolean lazy = false;
+		for (Binding binding : bindingSet) {
+			if (ValueStore.isLazy(binding.getValue())) {
+				lazy = true;
+				break;
+			}
+		}
+		if (!lazy) {
+			return bindingSet;
+		}
+
+		QueryBindingSet result = new QueryBindingSet(bindingSet.size());
+		for (Binding binding : bindingSet) {
+			result.addBinding(binding.getName(), ValueStore.materialize(binding.getValue()));
+		}
+		return result;
+	}
+
 	@Override
 	protected EvaluationStrategy getEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
-		return new SimpleEvaluationStrategy(tripleSource, dataset, getFederatedServiceResolver(),
-				nativeStore.getIterationCacheSyncThreshold());
+		SimpleEvaluationStrategy strategy = new SimpleEvaluationStrategy(tripleSource, dataset,
+				getFederatedServiceResolver(), nativeStore.getIterationCacheSyncThreshold());
+		// the indexes and value store can be read by multiple threads at once
+		strategy.setForkJoinPool(nativeStore.getEvaluationPool());
+		return strategy;
 	}
 
 	@Override
@@ -0,0 +1,425 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A lock-striped, scan-resistant {@link ValueCache} that is bounded by an
+ * estimated memory footprint and, optionally, by a number of entries.
+ * <p>
+ * Keys are spread over a fixed number of independently locked segments, so
+ * that concurrent readers of different keys rarely contend for the same
+ * monitor. Each segment implements a segmented LRU policy: new entries are
+ * admitted into a small <em>probationary</em> area and are only promoted to
+ * the <em>protected</em> area when they are requested again. Entries that are
+ * touched only once, such as those produced by a large scan, are evicted from
+ * the probationary area without disturbing the frequently used entries in the
+ * protected area.
+ */
+public class SegmentedLRUCache<K, V> implements ValueCache<K, V> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of segments: 16.
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	/**
+	 * The percentage of a segment's capacity that is reserved for the protected
+	 * area: 80%.
+	 */
+	private static final int PROTECTED_PERCENTAGE = 80;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Segment<K, V>[] segments;
+
+	private final int segmentMask;
+
+	private final ToIntBiFunction<? super K, ? super V> weigher;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new cache that is bounded by a number of entries only.
+	 * 
+	 * @param maxEntries
+	 *        The maximum number of entries to cache.
+	 */
+	public SegmentedLRUCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE, (k, v) -> 1, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a new cache that is bounded by the estimated size of its entries.
+	 * 
+	 * @param maxWeight
+	 *        The maximum total weight of the cached entries, typically an
+	 *        estimate in bytes.
+	 * @param weigher
+	 *        Function that estimates the weight of a single entry.
+	 */
+	public SegmentedLRUCache(long maxWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+		this(Integer.MAX_VALUE, maxWeight, weigher, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param maxEntries
+	 *        The maximum number of entries to cache.
+	 * @param maxWeight
+	 *        The maximum total weight of the cached entries, typically an
+	 *        estimate in bytes.
+	 * @param weigher
+	 *        Function that estimates the weight of a single entry.
+	 * @param concurrencyLevel
+	 *        The expected number of concurrently accessing threads, which is
+	 *        rounded up to a power of two to determine the number of segments.
+	 */
+	@SuppressWarnings("unchecked")
+	public SegmentedLRUCache(int maxEntries, long maxWeight, ToIntBiFunction<? super K, ? super V> weigher,
+			int concurrencyLevel)
+	{
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("maxEntries must not be negative");
+		}
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("maxWeight must not be negative");
+		}
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("concurrencyLevel must be positive");
+		}
+
+		// Don't create more segments than there are entries to cache
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < maxEntries) {
+			segmentCount <<= 1;
+		}
+
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		this.weigher = weigher;
+
+		int segmentMaxEntries = (int)Math.min(Integer.MAX_VALUE,
+				((long)maxEntries + segmentCount - 1) / segmentCount);
+		long segmentMaxWeight = maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : maxWeight / segmentCount;
+
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<K, V>(segmentMaxEntries, segmentMaxWeight);
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public V get(Object key) {
+		V value = segmentFor(key).get(key);
+
+		if (value == null) {
+			missCount.increment();
+		}
+		else {
+			hitCount.increment();
+		}
+
+		return value;
+	}
+
+	@Override
+	public void put(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("key and value must not be null");
+		}
+
+		int weight = weigher.applyAsInt(key, value);
+		if (weight < 0) {
+			throw new IllegalStateException("Negative weight for entry: " + key);
+		}
+
+		int evicted = segmentFor(key).put(key, value, weight);
+
+		if (evicted > 0) {
+			evictionCount.add(evicted);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the estimated total weight of all cached entries.
+	 */
+	public long getWeight() {
+		long weight = 0L;
+		for (Segment<K, V> segment : segments) {
+			weight += segment.weight();
+		}
+		return weight;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", weight=" + getWeight() + ", hits="
+				+ getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & segmentMask];
+	}
+
+	/*---------------------*
+	 * Inner class Segment *
+	 *---------------------*/
+
+	private static final class Segment<K, V> {
+
+		private final int maxEntries;
+
+		private final long maxWeight;
+
+		private final int maxProtectedEntries;
+
+		private final long maxProtectedWeight;
+
+		/**
+		 * Entries that have been requested only once since they were admitted,
+		 * in least-recently-used order.
+		 */
+		private final LinkedHashMap<K, Entry<K, V>> probation = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f,
+				true);
+
+		/**
+		 * Entries that have been requested more than once, in
+		 * least-recently-used order.
+		 */
+		private final LinkedHashMap<K, Entry<K, V>> protectedArea = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f,
+				true);
+
+		private long probationWeight;
+
+		private long protectedWeight;
+
+		public Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+			this.maxProtectedEntries = (int)((long)maxEntries * PROTECTED_PERCENTAGE / 100);
+			this.maxProtectedWeight = maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE
+					: maxWeight / 100 * PROTECTED_PERCENTAGE;
+		}
+
+		public synchronized V get(Object key) {
+			Entry<K, V> entry = protectedArea.get(key);
+
+			if (entry == null) {
+				entry = probation.remove(key);
+
+				if (entry != null) {
+					// Second request, promote the entry to the protected area
+					probationWeight -= entry.weight;
+					protectedArea.put(entry.key, entry);
+					protectedWeight += entry.weight;
+
+					demoteProtectedOverflow();
+				}
+			}
+
+			return entry == null ? null : entry.value;
+		}
+
+		/**
+		 * @return The number of entries that were evicted.
+		 */
+		public synchronized int put(K key, V value, int weight) {
+			if (weight > maxWeight || maxEntries == 0) {
+				// Entry is too large to ever be cached
+				removeEntry(key);
+				return 0;
+			}
+
+			Entry<K, V> entry = protectedArea.get(key);
+			if (entry != null) {
+				protectedWeight += weight - entry.weight;
+				entry.value = value;
+				entry.weight = weight;
+				demoteProtectedOverflow();
+			}
+			else {
+				entry = probation.get(key);
+				if (entry != null) {
+					probationWeight += weight - entry.weight;
+					entry.value = value;
+					entry.weight = weight;
+				}
+				else {
+					probation.put(key, new Entry<K, V>(key, value, weight));
+					probationWeight += weight;
+				}
+			}
+
+			return evictOverflow();
+		}
+
+		public synchronized void clear() {
+			probation.clear();
+			protectedArea.clear();
+			probationWeight = 0L;
+			protectedWeight = 0L;
+		}
+
+		public synchronized int size() {
+			return probation.size() + protectedArea.size();
+		}
+
+		public synchronized long weight() {
+			return probationWeight + protectedWeight;
+		}
+
+		private void removeEntry(Object key) {
+			Entry<K, V> entry = probation.remove(key);
+			if (entry != null) {
+				probationWeight -= entry.weight;
+			}
+
+			entry = protectedArea.remove(key);
+			if (entry != null) {
+				protectedWeight -= entry.weight;
+			}
+		}
+
+		/**
+		 * Moves the least-recently used entries of the protected area back to
+		 * the probationary area until the protected area fits its share of the
+		 * segment again.
+		 */
+		private void demoteProtectedOverflow() {
+			Iterator<Map.Entry<K, Entry<K, V>>> iter = protectedArea.entrySet().iterator();
+
+			while (protectedArea.size() > 1
+					&& (protectedArea.size() > maxProtectedEntries || protectedWeight > maxProtectedWeight))
+			{
+				Map.Entry<K, Entry<K, V>> eldest = iter.next();
+				iter.remove();
+
+				Entry<K, V> entry = eldest.getValue();
+				protectedWeight -= entry.weight;
+				probation.put(eldest.getKey(), entry);
+				probationWeight += entry.weight;
+			}
+		}
+
+		/**
+		 * Evicts entries, the least-recently used probationary entries first,
+		 * until the segment fits its bounds again.
+		 * 
+		 * @return The number of evicted entries.
+		 */
+		private int evictOverflow() {
+			int evicted = 0;
+
+			Iterator<Map.Entry<K, Entry<K, V>>> iter = probation.entrySet().iterator();
+			while (isOverflowing() && iter.hasNext()) {
+				probationWeight -= iter.next().getValue().weight;
+				iter.remove();
+				evicted++;
+			}
+
+			iter = protectedArea.entrySet().iterator();
+			while (isOverflowing() && iter.hasNext()) {
+				protectedWeight -= iter.next().getValue().weight;
+				iter.remove();
+				evicted++;
+			}
+
+			return evicted;
+		}
+
+		private boolean isOverflowing() {
+			return probation.size() + protectedArea.size() > maxEntries
+					|| probationWeight + protectedWeight > maxWeight;
+		}
+	}
+
+	/*-------------------*
+	 * Inner class Entry *
+	 *-------------------*/
+
+	private static final class Entry<K, V> {
+
+		private final K key;
+
+		private V value;
+
+		private int weight;
+
+		public Entry(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
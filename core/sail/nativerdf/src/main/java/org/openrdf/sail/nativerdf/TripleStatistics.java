@@ -0,0 +1,516 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.NioFile;
+
+/**
+ * Statistics about the triples in a {@link TripleStore} that can be used to
+ * estimate the cardinality of statement patterns without accessing the triple
+ * indexes. For each predicate, and for all predicates together, the number of
+ * triples is kept, together with sketches of the number of distinct subjects
+ * and objects and a random sample of object IDs from which value histograms
+ * can be built.
+ * <p>
+ * The statistics are updated with the triples that are added and removed by a
+ * transaction when it is committed. Only the entries that have changed are
+ * written back to disk. Removed triples are reflected in the triple counts and
+ * the object samples, but the distinct value sketches only grow until the last
+ * triple of a predicate is removed. Distinct value estimates are therefore
+ * capped by the triple count.
+ * <p>
+ * Updates that bypass the transaction mechanism of the triple store are
+ * bracketed by {@link #beginUpdate()} and {@link #sync()}. The file records
+ * that such an update is in progress, so that statistics that were left
+ * inconsistent by a crash are rebuilt, see {@link #isStale()}.
+ */
+class TripleStatistics {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * Predicate ID of the entry that covers the triples of all predicates.
+	 */
+	public static final int ALL_PREDICATES = -1;
+
+	/**
+	 * The maximum number of object IDs that is sampled per predicate.
+	 */
+	public static final int SAMPLE_SIZE = 64;
+
+	/**
+	 * Magic number "Native STatistics" to detect whether the file is actually a
+	 * statistics file. The first three bytes of the file should be equal to this
+	 * magic number.
+	 */
+	private static final byte[] MAGIC_NUMBER = new byte[] { 'n', 's', 't' };
+
+	/**
+	 * File format version, stored as the fourth byte in statistics files.
+	 */
+	private static final byte FILE_FORMAT_VERSION = 2;
+
+	/**
+	 * The position of the status byte that follows the file format version.
+	 */
+	private static final long STATUS_OFFSET = MAGIC_NUMBER.length + 1;
+
+	private static final byte STATUS_CONSISTENT = 0;
+
+	private static final byte STATUS_UPDATING = 1;
+
+	private static final long HEADER_LENGTH = STATUS_OFFSET + 1;
+
+	/**
+	 * The number of bits of a hash code that select a sketch register.
+	 */
+	private static final int SKETCH_BITS = 6;
+
+	/**
+	 * The number of registers per sketch, giving a standard error of some 13%.
+	 */
+	private static final int SKETCH_SIZE = 1 << SKETCH_BITS;
+
+	/**
+	 * Entries consist of the predicate ID (4 bytes), the triple count (8), the
+	 * number of sampled additions (8), the subject and object sketches, the
+	 * sample length (4) and the sampled object IDs.
+	 */
+	private static final int ENTRY_LENGTH = 4 + 8 + 8 + 2 * SKETCH_SIZE + 4 + 4 * SAMPLE_SIZE;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final NioFile nioFile;
+
+	private final boolean forceSync;
+
+	private final boolean stale;
+
+	/**
+	 * Flag indicating whether the file currently records that an update is in
+	 * progress.
+	 */
+	private boolean updating;
+
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+	private final Random random = new Random();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public TripleStatistics(File file, boolean forceSync)
+		throws IOException
+	{
+		this.nioFile = new NioFile(file);
+		this.forceSync = forceSync;
+
+		try {
+			if (nioFile.size() == 0) {
+				// Empty file, write header that marks the statistics as stale
+				// until they have been built
+				writeHeader();
+				stale = true;
+			}
+			else if (nioFile.size() < HEADER_LENGTH - 1) {
+				throw new IOException("File too small to be a compatible statistics file");
+			}
+			else {
+				// Verify file header
+				if (!Arrays.equals(MAGIC_NUMBER, nioFile.readBytes(0, MAGIC_NUMBER.length))) {
+					throw new IOException("File doesn't contain compatible statistics");
+				}
+
+				byte version = nioFile.readByte(MAGIC_NUMBER.length);
+				if (version > FILE_FORMAT_VERSION) {
+					throw new IOException("Unable to read statistics file; invalid file format version: "
+							+ version);
+				}
+
+				if (version < FILE_FORMAT_VERSION || nioFile.readByte(STATUS_OFFSET) != STATUS_CONSISTENT) {
+					// Older format or interrupted update, start afresh
+					nioFile.truncate(0);
+					writeHeader();
+					stale = true;
+				}
+				else {
+					stale = false;
+					readEntries();
+				}
+			}
+		}
+		catch (IOException e) {
+			nioFile.close();
+			throw e;
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	private void writeHeader()
+		throws IOException
+	{
+		nioFile.writeBytes(MAGIC_NUMBER, 0);
+		nioFile.writeByte(FILE_FORMAT_VERSION, MAGIC_NUMBER.length);
+		nioFile.writeByte(STATUS_UPDATING, STATUS_OFFSET);
+		updating = true;
+	}
+
+	private void readEntries()
+		throws IOException
+	{
+		long entryCount = (nioFile.size() - HEADER_LENGTH) / ENTRY_LENGTH;
+
+		ByteBuffer buf = ByteBuffer.allocate(ENTRY_LENGTH);
+		for (int slot = 0; slot < entryCount; slot++) {
+			buf.clear();
+			nioFile.read(buf, HEADER_LENGTH + (long)slot * ENTRY_LENGTH);
+			buf.flip();
+
+			Entry entry = new Entry(buf.getInt(), slot);
+			entry.count = buf.getLong();
+			entry.sampled = buf.getLong();
+			buf.get(entry.subjects);
+			buf.get(entry.objects);
+			entry.sampleLength = buf.getInt();
+			for (int i = 0; i < SAMPLE_SIZE; i++) {
+				entry.sample[i] = buf.getInt();
+			}
+
+			entries.put(entry.pred, entry);
+		}
+	}
+
+	/**
+	 * Checks whether the statistics file did not exist yet, or did not contain
+	 * consistent statistics, in which case the statistics need to be built
+	 * from the existing triples.
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Records in the file that the statistics are about to be updated, until
+	 * the next call to {@link #sync()}. If the update is interrupted, the
+	 * statistics are considered stale the next time the file is opened.
+	 */
+	public synchronized void beginUpdate()
+		throws IOException
+	{
+		if (!updating) {
+			nioFile.writeByte(STATUS_UPDATING, STATUS_OFFSET);
+			nioFile.force(false);
+			updating = true;
+		}
+	}
+
+	/**
+	 * Updates the statistics with a triple that has been added to the store.
+	 * 
+	 * @param data
+	 *        The triple's record in the format used by the triple indexes.
+	 */
+	public synchronized void addTriple(byte[] data) {
+		int subj = ByteArrayUtil.getInt(data, TripleStore.SUBJ_IDX);
+		int pred = ByteArrayUtil.getInt(data, TripleStore.PRED_IDX);
+		int obj = ByteArrayUtil.getInt(data, TripleStore.OBJ_IDX);
+
+		getEntry(pred).add(subj, obj);
+		getEntry(ALL_PREDICATES).add(subj, obj);
+	}
+
+	/**
+	 * Updates the statistics with a triple that has been removed from the
+	 * store.
+	 * 
+	 * @param data
+	 *        The triple's record in the format used by the triple indexes.
+	 */
+	public synchronized void removeTriple(byte[] data) {
+		int pred = ByteArrayUtil.getInt(data, TripleStore.PRED_IDX);
+		int obj = ByteArrayUtil.getInt(data, TripleStore.OBJ_IDX);
+
+		getEntry(pred).remove(obj);
+		getEntry(ALL_PREDICATES).remove(obj);
+	}
+
+	private Entry getEntry(int pred) {
+		Entry entry = entries.get(pred);
+
+		if (entry == null) {
+			entry = new Entry(pred, entries.size());
+			entries.put(pred, entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Gets the number of triples with the specified predicate.
+	 * 
+	 * @param pred
+	 *        A predicate ID, or {@link #ALL_PREDICATES}.
+	 */
+	public synchronized long getTripleCount(int pred) {
+		Entry entry = entries.get(pred);
+		return entry == null ? 0L : entry.count;
+	}
+
+	/**
+	 * Gets the estimated number of distinct subjects of the triples with the
+	 * specified predicate.
+	 * 
+	 * @param pred
+	 *        A predicate ID, or {@link #ALL_PREDICATES}.
+	 */
+	public synchronized double getDistinctSubjects(int pred) {
+		Entry entry = entries.get(pred);
+		return entry == null ? 0.0 : Math.min(entry.count, estimate(entry.subjects));
+	}
+
+	/**
+	 * Gets the estimated number of distinct objects of the triples with the
+	 * specified predicate.
+	 * 
+	 * @param pred
+	 *        A predicate ID, or {@link #ALL_PREDICATES}.
+	 */
+	public synchronized double getDistinctObjects(int pred) {
+		Entry entry = entries.get(pred);
+		return entry == null ? 0.0 : Math.min(entry.count, estimate(entry.objects));
+	}
+
+	/**
+	 * Gets the number of distinct predicates in the store.
+	 */
+	public synchronized int getPredicateCount() {
+		int result = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.pred != ALL_PREDICATES && entry.count > 0L) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets a uniform random sample of the object IDs of the triples with the
+	 * specified predicate.
+	 * 
+	 * @param pred
+	 *        A predicate ID, or {@link #ALL_PREDICATES}.
+	 * @return An array of at most {@link #SAMPLE_SIZE} object IDs.
+	 */
+	public synchronized int[] getObjectSample(int pred) {
+		Entry entry = entries.get(pred);
+		return entry == null ? new int[0] : Arrays.copyOf(entry.sample, entry.sampleLength);
+	}
+
+	/**
+	 * Discards all statistics.
+	 */
+	public synchronized void clear()
+		throws IOException
+	{
+		entries.clear();
+		nioFile.truncate(HEADER_LENGTH);
+	}
+
+	/**
+	 * Writes all entries that have changed since the last call to this method
+	 * to disk.
+	 */
+	public synchronized void sync()
+		throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(ENTRY_LENGTH);
+
+		for (Entry entry : entries.values()) {
+			if (entry.dirty) {
+				buf.clear();
+				buf.putInt(entry.pred);
+				buf.putLong(entry.count);
+				buf.putLong(entry.sampled);
+				buf.put(entry.subjects);
+				buf.put(entry.objects);
+				buf.putInt(entry.sampleLength);
+				for (int i = 0; i < SAMPLE_SIZE; i++) {
+					buf.putInt(entry.sample[i]);
+				}
+				buf.flip();
+
+				nioFile.write(buf, HEADER_LENGTH + (long)entry.slot * ENTRY_LENGTH);
+				entry.dirty = false;
+			}
+		}
+
+		if (updating) {
+			// The entries must be on disk before the update is marked complete
+			nioFile.force(false);
+			nioFile.writeByte(STATUS_CONSISTENT, STATUS_OFFSET);
+			nioFile.force(false);
+			updating = false;
+		}
+		else if (forceSync) {
+			nioFile.force(false);
+		}
+	}
+
+	public void close()
+		throws IOException
+	{
+		nioFile.close();
+	}
+
+	/**
+	 * Adds a value ID to a HyperLogLog sketch.
+	 */
+	private static void addToSketch(byte[] sketch, int id) {
+		// MurmurHash3 finalizer, spreads IDs that are allocated sequentially
+		int hash = id;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		int register = hash >>> (32 - SKETCH_BITS);
+		int rank = Math.min(Integer.numberOfLeadingZeros(hash << SKETCH_BITS), 32 - SKETCH_BITS) + 1;
+
+		if (rank > sketch[register]) {
+			sketch[register] = (byte)rank;
+		}
+	}
+
+	/**
+	 * Estimates the number of distinct IDs that have been added to a
+	 * HyperLogLog sketch.
+	 */
+	private static double estimate(byte[] sketch) {
+		double sum = 0.0;
+		int zeroRegisters = 0;
+
+		for (byte rank : sketch) {
+			sum += 1.0 / (1L << rank);
+			if (rank == 0) {
+				zeroRegisters++;
+			}
+		}
+
+		double estimate = 0.709 * SKETCH_SIZE * SKETCH_SIZE / sum;
+
+		if (estimate <= 2.5 * SKETCH_SIZE && zeroRegisters > 0) {
+			// Small range correction
+			estimate = SKETCH_SIZE * Math.log((double)SKETCH_SIZE / zeroRegisters);
+		}
+
+		return estimate;
+	}
+
+	/*-------------------*
+	 * Inner class Entry *
+	 *-------------------*/
+
+	private class Entry {
+
+		private final int pred;
+
+		private final int slot;
+
+		private long count;
+
+		/**
+		 * The number of additions that have been considered for the sample.
+		 */
+		private long sampled;
+
+		private final byte[] subjects = new byte[SKETCH_SIZE];
+
+		private final byte[] objects = new byte[SKETCH_SIZE];
+
+		private final int[] sample = new int[SAMPLE_SIZE];
+
+		private int sampleLength;
+
+		private boolean dirty;
+
+		public Entry(int pred, int slot) {
+			this.pred = pred;
+			this.slot = slot;
+		}
+
+		public void add(int subj, int obj) {
+			count++;
+			addToSketch(subjects, subj);
+			addToSketch(objects, obj);
+
+			// Reservoir sampling of the objects
+			sampled++;
+			if (sampleLength < SAMPLE_SIZE) {
+				sample[sampleLength++] = obj;
+			}
+			else {
+				long idx = (long)(random.nextDouble() * sampled);
+				if (idx < SAMPLE_SIZE) {
+					sample[(int)idx] = obj;
+				}
+			}
+
+			dirty = true;
+		}
+
+		public void remove(int obj) {
+			count = Math.max(0L, count - 1L);
+
+			if (count == 0L) {
+				// No triples left, start afresh
+				Arrays.fill(subjects, (byte)0);
+				Arrays.fill(objects, (byte)0);
+				sampled = 0L;
+				sampleLength = 0;
+			}
+			else {
+				for (int i = 0; i < sampleLength; i++) {
+					if (sample[i] == obj) {
+						sample[i] = sample[--sampleLength];
+						sampled = Math.max(sampleLength, sampled - 1L);
+						break;
+					}
+				}
+			}
+
+			dirty = true;
+		}
+	}
+}
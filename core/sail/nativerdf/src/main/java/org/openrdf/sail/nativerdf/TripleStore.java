@@ -40,6 +40,7 @@ import info.aduna.io.ByteArrayUtil;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.nativerdf.TxnStatusFile.TxnStatus;
 import org.openrdf.sail.nativerdf.btree.BTree;
+import org.openrdf.sail.nativerdf.btree.NodeCache;
 import org.openrdf.sail.nativerdf.btree.RecordComparator;
 import org.openrdf.sail.nativerdf.btree.RecordIterator;
 
@@ -68,6 +69,11 @@ class TripleStore {
 	 */
 	private static final String PROPERTIES_FILE = "triples.prop";
 
+	/**
+	 * The file name for the triple statistics file.
+	 */
+	private static final String STATISTICS_FILE = "triples.stats";
+
 	/**
 	 * The key used to store the triple store version in the properties file.
 	 */
@@ -124,6 +130,12 @@ class TripleStore {
 	 */
 	static final byte ADDED_FLAG = (byte)0x2; // 0000 0010
 
+	/**
+	 * The default memory budget (in bytes) of the node cache that is shared by
+	 * all triple indexes.
+	 */
+	public static final long NODE_CACHE_MEMORY = 16L * 1024L * 1024L;
+
 	/**
 	 * Bit field indicating that a statement has been removed in a (currently
 	 * active) transaction.
@@ -159,8 +171,24 @@ class TripleStore {
 
 	private final boolean forceSync;
 
+	/**
+	 * Flag indicating whether the index files should be read through
+	 * memory-mapped regions.
+	 */
+	private final boolean memoryMapped;
+
+	/**
+	 * The cache for the nodes of all triple indexes.
+	 */
+	private final NodeCache nodeCache;
+
 	private final TxnStatusFile txnStatusFile;
 
+	/**
+	 * Statistics about the committed triples, updated upon commit.
+	 */
+	private final TripleStatistics statistics;
+
 	private volatile RecordCache updatedTriplesCache;
 
 	/*--------------*
@@ -175,12 +203,29 @@ class TripleStore {
 
 	public TripleStore(File dir, String indexSpecStr, boolean forceSync)
 		throws IOException, SailException
+	{
+		this(dir, indexSpecStr, forceSync, false);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, boolean memoryMapped)
+		throws IOException, SailException
+	{
+		this(dir, indexSpecStr, forceSync, memoryMapped, NODE_CACHE_MEMORY);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, boolean memoryMapped,
+			long nodeCacheMemory)
+		throws IOException, SailException
 	{
 		this.dir = dir;
 		this.forceSync = forceSync;
+		this.memoryMapped = memoryMapped;
+		this.nodeCache = new NodeCache(nodeCacheMemory);
 		this.txnStatusFile = new TxnStatusFile(dir);
+		this.statistics = new TripleStatistics(new File(dir, STATISTICS_FILE), forceSync);
 
 		File propFile = new File(dir, PROPERTIES_FILE);
+		boolean statisticsStale = false;
 
 		if (!propFile.exists()) {
 			// newly created native store
@@ -212,6 +257,9 @@ class TripleStore {
 			}
 			else {
 				processUncompletedTransaction(txnStatus);
+				// The statistics may have been partially synced by the
+				// interrupted transaction
+				statisticsStale = true;
 			}
 
 			// Compare the existing indexes with the requested indexes
@@ -235,6 +283,10 @@ class TripleStore {
 			properties.setProperty(INDEXES_KEY, indexSpecStr);
 			storeProperties(propFile);
 		}
+
+		if (statisticsStale || statistics.isStale()) {
+			rebuildStatistics();
+		}
 	}
 
 	/*---------*
@@ -442,6 +494,40 @@ class TripleStore {
 		}
 	}
 
+	/**
+	 * Builds the triple statistics from scratch from the committed triples,
+	 * which is needed for stores that were created before statistics were
+	 * maintained and after a crash.
+	 */
+	private void rebuildStatistics()
+		throws IOException
+	{
+		statistics.beginUpdate();
+		statistics.clear();
+
+		RecordIterator iter = indexes.get(0).getBTree().iterateAll();
+		try {
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				if ((data[FLAG_IDX] & ADDED_FLAG) == 0) {
+					statistics.addTriple(data);
+				}
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		statistics.sync();
+	}
+
+	/**
+	 * Gets the statistics about the committed triples in this store.
+	 */
+	TripleStatistics getStatistics() {
+		return statistics;
+	}
+
 	private String getCurrentIndexSpecStr() {
 		return properties.getProperty(INDEXES_KEY);
 	}
@@ -454,6 +540,7 @@ class TripleStore {
 		}
 		
 		txnStatusFile.close();
+		statistics.close();
 		
 		// Should have been removed upon commit() or rollback(), but just to be sure
 		if (updatedTriplesCache != null) {
@@ -697,9 +784,86 @@ class TripleStore {
 	public void clear()
 		throws IOException
 	{
+		statistics.beginUpdate();
 		for (TripleIndex index : indexes) {
 			index.getBTree().clear();
 		}
+		statistics.clear();
+		statistics.sync();
+	}
+
+	/**
+	 * Gets the comparators that define the order of the triples in each of the
+	 * triple indexes, in the order in which the indexes have been specified.
+	 */
+	public List<RecordComparator> getIndexComparators() {
+		List<RecordComparator> comparators = new ArrayList<RecordComparator>(indexes.size());
+		for (TripleIndex index : indexes) {
+			comparators.add(index.getComparator());
+		}
+		return comparators;
+	}
+
+	/**
+	 * Fills an empty triple index in bulk, bypassing the transaction mechanism.
+	 * This is only safe when no other threads access the triple store. The
+	 * index is synced to disk afterwards.
+	 * 
+	 * @param indexIdx
+	 *        The index to fill, see {@link #getIndexComparators()}.
+	 * @param sortedTriples
+	 *        All triples in the store, as returned by
+	 *        {@link #getData(int, int, int, int, int)}, sorted by the index's
+	 *        comparator.
+	 * @see BTree#bulkLoad(RecordIterator)
+	 */
+	public void bulkLoad(int indexIdx, RecordIterator sortedTriples)
+		throws IOException
+	{
+		if (indexIdx == 0) {
+			// Bulk loading bypasses the transaction status, the statistics are
+			// rebuilt if the load does not complete
+			statistics.beginUpdate();
+
+			// Gather the statistics while filling the first index, skipping the
+			// duplicates that the BTree ignores
+			final RecordIterator triples = sortedTriples;
+			sortedTriples = new RecordIterator() {
+
+				private byte[] previous;
+
+				public byte[] next()
+					throws IOException
+				{
+					byte[] data = triples.next();
+					if (data != null && !Arrays.equals(data, previous)) {
+						statistics.addTriple(data);
+						previous = data;
+					}
+					return data;
+				}
+
+				public void set(byte[] value)
+					throws IOException
+				{
+					triples.set(value);
+				}
+
+				public void close()
+					throws IOException
+				{
+					triples.close();
+				}
+			};
+		}
+
+		BTree btree = indexes.get(indexIdx).getBTree();
+		btree.bulkLoad(sortedTriples);
+		btree.sync();
+
+		if (indexIdx == 0) {
+			statistics.sync();
+		}
 	}
 
 	public boolean storeTriple(int subj, int pred, int obj, int context)
@@ -893,6 +1057,9 @@ class TripleStore {
 		for (TripleIndex index : indexes) {
 			BTree btree = index.getBTree();
 
+			// Update the statistics once, while processing the first index
+			boolean updateStatistics = index == indexes.get(0);
+
 			RecordIterator iter;
 			if (validCache) {
 				// Use the cached set of updated triples
@@ -911,6 +1078,15 @@ class TripleStore {
 					boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
 					boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
 
+					if (updateStatistics) {
+						if (wasRemoved && !wasAdded) {
+							statistics.removeTriple(data);
+						}
+						else if (wasAdded && !wasRemoved) {
+							statistics.addTriple(data);
+						}
+					}
+
 					if (wasRemoved) {
 						btree.remove(data);
 					}
@@ -943,6 +1119,7 @@ class TripleStore {
 		}
 
 		sync();
+		statistics.sync();
 
 		txnStatusFile.setTxnStatus(TxnStatus.NONE);
 		// checkAllCommitted();
@@ -1044,7 +1221,7 @@ class TripleStore {
 		}
 	}
 
-	private byte[] getData(int subj, int pred, int obj, int context, int flags) {
+	static byte[] getData(int subj, int pred, int obj, int context, int flags) {
 		byte[] data = new byte[RECORD_LENGTH];
 
 		ByteArrayUtil.putInt(subj, data, SUBJ_IDX);
@@ -1144,7 +1321,8 @@ class TripleStore {
 			throws IOException
 		{
 			tripleComparator = new TripleComparator(fieldSeq);
-			btree = new BTree(dir, getFilenamePrefix(fieldSeq), 2048, RECORD_LENGTH, tripleComparator, forceSync);
+			btree = new BTree(dir, getFilenamePrefix(fieldSeq), 2048, RECORD_LENGTH, tripleComparator, forceSync,
+					memoryMapped, nodeCache);
 		}
 
 		private String getFilenamePrefix(String fieldSeq) {
@@ -1159,6 +1337,10 @@ class TripleStore {
 			return btree;
 		}
 
+		public RecordComparator getComparator() {
+			return tripleComparator;
+		}
+
 		/**
 		 * Determines the 'score' of this index on the supplied pattern of
 		 * subject, predicate, object and context IDs. The higher the score, the
@@ -0,0 +1,69 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+/**
+ * A bounded cache as used by the {@link ValueStore} to map value IDs to values
+ * and vice-versa. Implementations must be safe for concurrent use by multiple
+ * threads and are free to evict entries at any time.
+ *
+ * @see SegmentedLRUCache
+ */
+public interface ValueCache<K, V> {
+
+	/**
+	 * Gets the value that is cached for the specified key.
+	 *
+	 * @return The cached value, or <tt>null</tt> if the key is not (or no
+	 *         longer) present in the cache.
+	 */
+	public V get(Object key);
+
+	/**
+	 * Stores a value in the cache, possibly evicting other entries.
+	 */
+	public void put(K key, V value);
+
+	/**
+	 * Removes all entries from the cache. The hit, miss and eviction counters
+	 * are not reset.
+	 */
+	public void clear();
+
+	/**
+	 * Gets the number of entries that are currently cached.
+	 */
+	public int size();
+
+	/**
+	 * Gets the number of {@link #get(Object)} calls that returned a cached
+	 * value.
+	 */
+	public long getHitCount();
+
+	/**
+	 * Gets the number of {@link #get(Object)} calls that did not find a cached
+	 * value.
+	 */
+	public long getMissCount();
+
+	/**
+	 * Gets the number of entries that have been evicted to stay within the
+	 * cache's bounds.
+	 */
+	public long getEvictionCount();
+}
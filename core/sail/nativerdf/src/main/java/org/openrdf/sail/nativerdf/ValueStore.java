@@ -18,6 +18,7 @@ package org.openrdf.sail.nativerdf;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Optional;
 
@@ -57,14 +58,33 @@ public class ValueStore extends AbstractValueFactory {
 
 	/**
 	 * The default value cache size: 512.
+	 * 
+	 * @deprecated The value cache is bounded by its memory footprint, see
+	 *             {@link #VALUE_CACHE_MEMORY}.
 	 */
+	@Deprecated
 	public static final int VALUE_CACHE_SIZE = 512;
 
 	/**
 	 * The default value id cache size: 128.
+	 * 
+	 * @deprecated The value id cache is bounded by its memory footprint, see
+	 *             {@link #VALUE_ID_CACHE_MEMORY}.
 	 */
+	@Deprecated
 	public static final int VALUE_ID_CACHE_SIZE = 128;
 
+	/**
+	 * The default (estimated) memory budget of the value cache in bytes: 4MB.
+	 */
+	public static final long VALUE_CACHE_MEMORY = 4L * 1024L * 1024L;
+
+	/**
+	 * The default (estimated) memory budget of the value id cache in bytes:
+	 * 1MB.
+	 */
+	public static final long VALUE_ID_CACHE_MEMORY = 1024L * 1024L;
+
 	/**
 	 * The default namespace cache size: 64.
 	 */
@@ -83,6 +103,12 @@ public class ValueStore extends AbstractValueFactory {
 
 	private static final byte LITERAL_VALUE = 0x3; // 0000 0011
 
+	/**
+	 * Estimated number of bytes used by a cache entry and its value object,
+	 * excluding the characters of the value's lexical form.
+	 */
+	private static final int CACHE_ENTRY_OVERHEAD = 112;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -108,28 +134,26 @@ public class ValueStore extends AbstractValueFactory {
 	private volatile ValueStoreRevision revision;
 
 	/**
-	 * A simple cache containing the [VALUE_CACHE_SIZE] most-recently used values
-	 * stored by their ID.
+	 * A cache containing recently used values stored by their ID.
 	 */
-	private final LRUCache<Integer, NativeValue> valueCache;
+	private final ValueCache<Integer, NativeValue> valueCache;
 
 	/**
-	 * A simple cache containing the [ID_CACHE_SIZE] most-recently used value-IDs
-	 * stored by their value.
+	 * A cache containing recently used value-IDs stored by their value.
 	 */
-	private final LRUCache<NativeValue, Integer> valueIDCache;
+	private final ValueCache<NativeValue, Integer> valueIDCache;
 
 	/**
-	 * A simple cache containing the [NAMESPACE_CACHE_SIZE] most-recently used
+	 * A cache containing the [NAMESPACE_CACHE_SIZE] most-recently used
 	 * namespaces stored by their ID.
 	 */
-	private final LRUCache<Integer, String> namespaceCache;
+	private final ValueCache<Integer, String> namespaceCache;
 
 	/**
-	 * A simple cache containing the [NAMESPACE_ID_CACHE_SIZE] most-recently used
+	 * A cache containing the [NAMESPACE_ID_CACHE_SIZE] most-recently used
 	 * namespace-IDs stored by their namespace.
 	 */
-	private final LRUCache<String, Integer> namespaceIDCache;
+	private final ValueCache<String, Integer> namespaceIDCache;
 
 	/*--------------*
 	 * Constructors *
@@ -144,25 +168,106 @@ public class ValueStore extends AbstractValueFactory {
 	public ValueStore(File dataDir, boolean forceSync)
 		throws IOException
 	{
-		this(dataDir, forceSync, VALUE_CACHE_SIZE, VALUE_ID_CACHE_SIZE, NAMESPACE_CACHE_SIZE,
-				NAMESPACE_ID_CACHE_SIZE);
+		this(dataDir, forceSync, false, -1, -1, VALUE_CACHE_MEMORY, VALUE_ID_CACHE_MEMORY,
+				NAMESPACE_CACHE_SIZE, NAMESPACE_ID_CACHE_SIZE);
 	}
 
 	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize,
 			int namespaceCacheSize, int namespaceIDCacheSize)
 				throws IOException
+	{
+		this(dataDir, forceSync, false, valueCacheSize, valueIDCacheSize, VALUE_CACHE_MEMORY,
+				VALUE_ID_CACHE_MEMORY, namespaceCacheSize, namespaceIDCacheSize);
+	}
+
+	/**
+	 * Creates a new ValueStore with caches of the specified sizes.
+	 * 
+	 * @param memoryMapped
+	 *        Flag indicating whether the value files should be read through
+	 *        memory-mapped regions instead of using channel reads.
+	 * @param valueCacheSize
+	 *        The maximum number of cached values, or a negative number to only
+	 *        bound the value cache by <tt>valueCacheMemory</tt>.
+	 * @param valueIDCacheSize
+	 *        The maximum number of cached value IDs, or a negative number to
+	 *        only bound the value id cache by <tt>valueIDCacheMemory</tt>.
+	 * @param valueCacheMemory
+	 *        The estimated memory budget of the value cache in bytes.
+	 * @param valueIDCacheMemory
+	 *        The estimated memory budget of the value id cache in bytes.
+	 */
+	public ValueStore(File dataDir, boolean forceSync, boolean memoryMapped, int valueCacheSize,
+			int valueIDCacheSize, long valueCacheMemory, long valueIDCacheMemory, int namespaceCacheSize,
+			int namespaceIDCacheSize)
+				throws IOException
+	{
+		this(dataDir, forceSync, memoryMapped, createValueCache(valueCacheSize, valueCacheMemory),
+				createValueIDCache(valueIDCacheSize, valueIDCacheMemory),
+				new SegmentedLRUCache<Integer, String>(namespaceCacheSize),
+				new SegmentedLRUCache<String, Integer>(namespaceIDCacheSize));
+	}
+
+	/**
+	 * Creates a new ValueStore that uses the supplied caches.
+	 */
+	public ValueStore(File dataDir, boolean forceSync, boolean memoryMapped,
+			ValueCache<Integer, NativeValue> valueCache,
+			ValueCache<NativeValue, Integer> valueIDCache, ValueCache<Integer, String> namespaceCache,
+			ValueCache<String, Integer> namespaceIDCache)
+				throws IOException
 	{
 		super();
-		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync);
+		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync, memoryMapped);
 
-		valueCache = new LRUCache<Integer, NativeValue>(valueCacheSize);
-		valueIDCache = new LRUCache<NativeValue, Integer>(valueIDCacheSize);
-		namespaceCache = new LRUCache<Integer, String>(namespaceCacheSize);
-		namespaceIDCache = new LRUCache<String, Integer>(namespaceIDCacheSize);
+		this.valueCache = valueCache;
+		this.valueIDCache = valueIDCache;
+		this.namespaceCache = namespaceCache;
+		this.namespaceIDCache = namespaceIDCache;
 
 		setNewRevision();
 	}
 
+	/**
+	 * Creates the default value cache, which is bounded by the estimated memory
+	 * footprint of the cached values.
+	 * 
+	 * @param maxEntries
+	 *        The maximum number of cached values, or a negative number for no
+	 *        such limit.
+	 * @param memoryBudget
+	 *        The estimated memory budget in bytes.
+	 */
+	public static ValueCache<Integer, NativeValue> createValueCache(int maxEntries, long memoryBudget) {
+		return new SegmentedLRUCache<Integer, NativeValue>(maxEntries < 0 ? Integer.MAX_VALUE : maxEntries,
+				memoryBudget, (id, value) -> estimateCacheEntrySize(value),
+				SegmentedLRUCache.DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates the default value id cache, which is bounded by the estimated
+	 * memory footprint of the cached values.
+	 * 
+	 * @param maxEntries
+	 *        The maximum number of cached value IDs, or a negative number for no
+	 *        such limit.
+	 * @param memoryBudget
+	 *        The estimated memory budget in bytes.
+	 */
+	public static ValueCache<NativeValue, Integer> createValueIDCache(int maxEntries, long memoryBudget) {
+		return new SegmentedLRUCache<NativeValue, Integer>(maxEntries < 0 ? Integer.MAX_VALUE : maxEntries,
+				memoryBudget, (value, id) -> estimateCacheEntrySize(value),
+				SegmentedLRUCache.DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Estimates the number of bytes that a cached value occupies on the heap.
+	 * Namespaces and datatypes are assumed to be shared with other values.
+	 */
+	private static int estimateCacheEntrySize(NativeValue value) {
+		return CACHE_ENTRY_OVERHEAD + 2 * value.stringValue().length();
+	}
+
 	/*---------*
 	 * Methods *
 	 *---------*/
@@ -179,6 +284,22 @@ public class ValueStore extends AbstractValueFactory {
 		return revision;
 	}
 
+	/**
+	 * Gets the cache that maps value IDs to values, e.g. to inspect its hit,
+	 * miss and eviction counters.
+	 */
+	public ValueCache<Integer, NativeValue> getValueCache() {
+		return valueCache;
+	}
+
+	/**
+	 * Gets the cache that maps values to value IDs, e.g. to inspect its hit,
+	 * miss and eviction counters.
+	 */
+	public ValueCache<NativeValue, Integer> getValueIDCache() {
+		return valueIDCache;
+	}
+
 	/**
 	 * Gets a read lock on this value store that can be used to prevent values
 	 * from being removed while the lock is active.
@@ -221,6 +342,106 @@ public class ValueStore extends AbstractValueFactory {
 		return resultValue;
 	}
 
+	/**
+	 * Gets the value for the specified ID, postponing the decoding of its data
+	 * until it is actually needed. Values that are present in the value cache
+	 * are returned as-is, other values only read the type of the value from
+	 * file and defer the rest. The returned value's ID can be used to look up
+	 * statements and to compare it with other values of the current revision
+	 * without ever decoding it.
+	 * 
+	 * @param id
+	 *        A value ID.
+	 * @return The value for the ID, or <tt>null</tt> if no such value could be
+	 *         found.
+	 * @exception IOException
+	 *            If an I/O error occurred.
+	 */
+	public NativeValue getLazyValue(int id)
+		throws IOException
+	{
+		NativeValue resultValue = valueCache.get(new Integer(id));
+
+		if (resultValue == null) {
+			switch (dataStore.getFirstByte(id)) {
+				case URI_VALUE:
+					return new LazyNativeIRI(revision, id);
+				case BNODE_VALUE:
+					return new LazyNativeBNode(revision, id);
+				case LITERAL_VALUE:
+					return new LazyNativeLiteral(revision, id);
+				default:
+					return getValue(id);
+			}
+		}
+
+		return resultValue;
+	}
+
+	/**
+	 * Gets a value that holds its own data, decoding values that were created
+	 * by {@link #getLazyValue(int)}. Values must be materialized before they
+	 * leave the store, as lazy values can no longer be decoded once the store
+	 * has been closed or cleared.
+	 * 
+	 * @param value
+	 *        A value, or <tt>null</tt>.
+	 * @return The value itself if it is not a lazy value, a materialized copy
+	 *         otherwise.
+	 * @exception UncheckedIOException
+	 *            If an I/O error occurred.
+	 */
+	static Value materialize(Value value) {
+		if (value instanceof LazyNativeIRI) {
+			return ((LazyNativeIRI)value).materialize();
+		}
+		else if (value instanceof LazyNativeLiteral) {
+			return ((LazyNativeLiteral)value).materialize();
+		}
+		else if (value instanceof LazyNativeBNode) {
+			return ((LazyNativeBNode)value).materialize();
+		}
+		return value;
+	}
+
+	/**
+	 * Checks whether a value was created by {@link #getLazyValue(int)} and
+	 * needs to be materialized before it leaves the store.
+	 */
+	static boolean isLazy(Value value) {
+		return value instanceof LazyNativeIRI || value instanceof LazyNativeLiteral
+				|| value instanceof LazyNativeBNode;
+	}
+
+	/**
+	 * Reads the data of a value that was created by {@link #getLazyValue(int)}.
+	 * 
+	 * @exception IllegalStateException
+	 *            If the value's ID is no longer valid.
+	 * @exception UncheckedIOException
+	 *            If an I/O error occurred.
+	 */
+	static NativeValue loadValue(NativeValue lazyValue) {
+		ValueStoreRevision revision = lazyValue.getValueStoreRevision();
+		ValueStore valueStore = revision.getValueStore();
+
+		if (valueStore == null || !revision.equals(valueStore.revision)) {
+			throw new IllegalStateException("Value store has changed, value ID "
+					+ lazyValue.getInternalID() + " is no longer valid");
+		}
+
+		try {
+			NativeValue value = valueStore.getValue(lazyValue.getInternalID());
+			if (value == null) {
+				throw new IllegalStateException("No value found for ID " + lazyValue.getInternalID());
+			}
+			return value;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Gets the ID for the specified value.
 	 * 
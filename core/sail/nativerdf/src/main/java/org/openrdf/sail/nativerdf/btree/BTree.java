@@ -23,12 +23,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -80,18 +77,6 @@ public class BTree {
 	 */
 	private static final int HEADER_LENGTH = 16;
 
-	/**
-	 * The size of the node cache. Note that this is not a hard limit. All nodes
-	 * that are actively used are always cached. Also, a minimum of
-	 * {@link NODE_CACHE_SIZE} nodes of unused nodes is kept in the cache.
-	 */
-	private static final int NODE_CACHE_SIZE = 10;
-
-	/**
-	 * The minimum number of most recently released nodes to keep in the cache.
-	 */
-	private static final int MIN_MRU_CACHE_SIZE = 4;
-
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -117,7 +102,11 @@ public class BTree {
 
 	/**
 	 * A read/write lock that is used to prevent changes to the BTree while
-	 * readers are active in order to prevent concurrency issues.
+	 * readers are active in order to prevent concurrency issues. Readers only
+	 * take the shared side of this lock, so concurrent lookups and range scans
+	 * do not exclude each other. Structural changes take the exclusive side;
+	 * the {@link NodeListener} callbacks that keep open range iterators
+	 * consistent with node splits and merges rely on this.
 	 */
 	private final ReentrantReadWriteLock btreeLock = new ReentrantReadWriteLock();
 
@@ -126,18 +115,15 @@ public class BTree {
 	 */
 
 	/**
-	 * Map containing cached nodes, indexed by their ID.
+	 * The cache containing this B-Tree's nodes, possibly shared with other
+	 * B-Trees.
 	 */
-	private final Map<Integer, Node> nodeCache = new HashMap<Integer, Node>(NODE_CACHE_SIZE);
+	private final NodeCache nodeCache;
 
 	/**
-	 * Map of cached nodes that are no longer "in use", sorted from least
-	 * recently used to most recently used. This collection is used to remove
-	 * nodes from the cache when it is full. Note: needs to be synchronized
-	 * through nodeCache (data strucures should prob be merged in a NodeCache
-	 * class)
+	 * The ID that identifies this B-Tree's nodes in the node cache.
 	 */
-	private final Map<Integer, Node> mruNodes = new LinkedHashMap<Integer, Node>(NODE_CACHE_SIZE);
+	private final int treeID;
 
 	/* 
 	 * Info about allocated and unused nodes in the file 
@@ -318,6 +304,78 @@ public class BTree {
 	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
 			RecordComparator comparator, boolean forceSync)
 		throws IOException
+	{
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, false);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to
+	 * compare the values that are or will be stored in the B-Tree.
+	 * 
+	 * @param dataDir
+	 *        The directory for the BTree data.
+	 * @param filenamePrefix
+	 *        The prefix for all files used by this BTree.
+	 * @param blockSize
+	 *        The size (in bytes) of a file block for a single node. Ideally, the
+	 *        size specified is the size of a block in the used file system.
+	 * @param valueSize
+	 *        The size (in bytes) of the fixed-length values that are or will be
+	 *        stored in the B-Tree.
+	 * @param comparator
+	 *        The <tt>RecordComparator</tt> to use for determining whether one
+	 *        value is smaller, larger or equal to another.
+	 * @param forceSync
+	 *        Flag indicating whether updates should be synced to disk forcefully
+	 *        by calling {@link FileChannel#force(boolean)}. This may have a
+	 *        severe impact on write performance.
+	 * @param memoryMapped
+	 *        Flag indicating whether nodes should be read from memory-mapped
+	 *        regions of the B-Tree file instead of using channel reads.
+	 * @throws IOException
+	 *         In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
+			RecordComparator comparator, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, memoryMapped,
+				new NodeCache());
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to
+	 * compare the values that are or will be stored in the B-Tree.
+	 * 
+	 * @param dataDir
+	 *        The directory for the BTree data.
+	 * @param filenamePrefix
+	 *        The prefix for all files used by this BTree.
+	 * @param blockSize
+	 *        The size (in bytes) of a file block for a single node. Ideally, the
+	 *        size specified is the size of a block in the used file system.
+	 * @param valueSize
+	 *        The size (in bytes) of the fixed-length values that are or will be
+	 *        stored in the B-Tree.
+	 * @param comparator
+	 *        The <tt>RecordComparator</tt> to use for determining whether one
+	 *        value is smaller, larger or equal to another.
+	 * @param forceSync
+	 *        Flag indicating whether updates should be synced to disk forcefully
+	 *        by calling {@link FileChannel#force(boolean)}. This may have a
+	 *        severe impact on write performance.
+	 * @param memoryMapped
+	 *        Flag indicating whether nodes should be read from memory-mapped
+	 *        regions of the B-Tree file instead of using channel reads.
+	 * @param nodeCache
+	 *        The cache to store this B-Tree's nodes in. A single cache can be
+	 *        shared by multiple B-Trees.
+	 * @throws IOException
+	 *         In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
+			RecordComparator comparator, boolean forceSync, boolean memoryMapped, NodeCache nodeCache)
+		throws IOException
 	{
 		if (dataDir == null) {
 			throw new IllegalArgumentException("dataDir must not be null");
@@ -338,11 +396,16 @@ public class BTree {
 		if (comparator == null) {
 			throw new IllegalArgumentException("comparator muts not be null");
 		}
+		if (nodeCache == null) {
+			throw new IllegalArgumentException("nodeCache must not be null");
+		}
 
 		File file = new File(dataDir, filenamePrefix + ".dat");
-		this.nioFile = new NioFile(file);
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.comparator = comparator;
 		this.forceSync = forceSync;
+		this.nodeCache = nodeCache;
+		this.treeID = nodeCache.register();
 
 		File allocFile = new File(dataDir, filenamePrefix + ".alloc");
 		allocatedNodesList = new AllocatedNodesList(allocFile, this);
@@ -477,10 +540,7 @@ public class BTree {
 
 			closed = true;
 
-			synchronized (nodeCache) {
-				nodeCache.clear();
-				mruNodes.clear();
-			}
+			nodeCache.clear(treeID);
 
 			try {
 				nioFile.close();
@@ -505,13 +565,7 @@ public class BTree {
 		btreeLock.readLock().lock();
 		try {
 			// Write any changed nodes that still reside in the cache to disk
-			synchronized (nodeCache) {
-				for (Node node : nodeCache.values()) {
-					if (node.dataChanged()) {
-						node.write();
-					}
-				}
-			}
+			nodeCache.sync(treeID);
 
 			if (forceSync) {
 				nioFile.force(false);
@@ -877,6 +931,150 @@ public class BTree {
 		}
 	}
 
+	/**
+	 * Fills an empty B-Tree with the values from the supplied iterator, which
+	 * must return the values in ascending order. Rather than inserting the
+	 * values one by one, the B-Tree is built bottom-up from completely filled
+	 * nodes, which is much faster than repeated calls to {@link #insert(byte[])}
+	 * and results in a compact file. Values that are equal to their predecessor
+	 * are skipped. The caller is responsible for closing the iterator and for
+	 * calling {@link #sync()} afterwards.
+	 * 
+	 * @param sortedValues
+	 *        An iterator over the values to load, in ascending order according to
+	 *        this B-Tree's <tt>RecordComparator</tt>.
+	 * @throws IllegalStateException
+	 *         If the B-Tree is not empty.
+	 * @throws IllegalArgumentException
+	 *         If the values are not sorted.
+	 * @throws IOException
+	 *         If an I/O error occurred.
+	 */
+	public void bulkLoad(RecordIterator sortedValues)
+		throws IOException
+	{
+		btreeLock.writeLock().lock();
+		try {
+			if (rootNodeID != 0) {
+				throw new IllegalStateException("Bulk loading requires an empty B-Tree: " + getFile());
+			}
+
+			// The right-most node of every level, leaves first. All nodes to the
+			// left of these nodes are completely filled.
+			List<Node> openNodes = new ArrayList<Node>();
+
+			try {
+				byte[] previousValue = null;
+				byte[] value;
+
+				while ((value = sortedValues.next()) != null) {
+					if (previousValue != null) {
+						int diff = comparator.compareBTreeValues(previousValue, value, 0, valueSize);
+
+						if (diff == 0) {
+							continue;
+						}
+						else if (diff > 0) {
+							throw new IllegalArgumentException("Values are not sorted in ascending order in "
+									+ getFile());
+						}
+					}
+
+					if (openNodes.isEmpty()) {
+						openNodes.add(createNewNode());
+					}
+
+					appendValue(openNodes, 0, value);
+					previousValue = value;
+				}
+
+				if (!openNodes.isEmpty()) {
+					// Link the right-most node of every level to its parent
+					for (int level = 0; level < openNodes.size() - 1; level++) {
+						Node parentNode = openNodes.get(level + 1);
+						parentNode.setChildNodeID(parentNode.getValueCount(), openNodes.get(level).getID());
+					}
+
+					Node rootNode = openNodes.get(openNodes.size() - 1);
+					balanceRightEdge(rootNode);
+
+					rootNodeID = rootNode.getID();
+					writeFileHeader();
+					height = openNodes.size();
+				}
+			}
+			finally {
+				for (Node node : openNodes) {
+					node.release();
+				}
+			}
+		}
+		finally {
+			btreeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a value to the right-most node of the specified level. If that
+	 * node is full, it is completed and the value is moved to the parent level,
+	 * where it separates the completed node from a new right-most node.
+	 */
+	private void appendValue(List<Node> openNodes, int level, byte[] value)
+		throws IOException
+	{
+		Node node = openNodes.get(level);
+
+		if (!node.isFull()) {
+			node.insertValueNodeIDPair(node.getValueCount(), value, 0);
+		}
+		else {
+			openNodes.set(level, createNewNode());
+
+			if (level + 1 == openNodes.size()) {
+				// Completed node was the root node, the tree grows one level
+				openNodes.add(createNewNode());
+			}
+
+			Node parentNode = openNodes.get(level + 1);
+			parentNode.setChildNodeID(parentNode.getValueCount(), node.getID());
+			node.release();
+
+			appendValue(openNodes, level + 1, value);
+		}
+	}
+
+	/**
+	 * Makes sure that the right-most nodes of a bulk loaded tree contain at
+	 * least the minimum number of values by moving values from their (full)
+	 * left siblings.
+	 */
+	private void balanceRightEdge(Node rootNode)
+		throws IOException
+	{
+		Node node = rootNode;
+		node.use();
+
+		while (!node.isLeaf()) {
+			int childIdx = node.getValueCount();
+			Node childNode = node.getChildNode(childIdx);
+
+			if (childNode.getValueCount() < minValueCount) {
+				Node leftSibling = node.getChildNode(childIdx - 1);
+
+				while (childNode.getValueCount() < minValueCount) {
+					node.rotateRight(childIdx, leftSibling, childNode);
+				}
+
+				leftSibling.release();
+			}
+
+			node.release();
+			node = childNode;
+		}
+
+		node.release();
+	}
+
 	private InsertResult insertInTree(byte[] value, int nodeID, Node node)
 		throws IOException
 	{
@@ -1164,10 +1362,7 @@ public class BTree {
 	{
 		btreeLock.writeLock().lock();
 		try {
-			synchronized (nodeCache) {
-				nodeCache.clear();
-				mruNodes.clear();
-			}
+			nodeCache.clear(treeID);
 			nioFile.truncate(HEADER_LENGTH);
 
 			if (rootNodeID != 0) {
@@ -1188,17 +1383,10 @@ public class BTree {
 		int newNodeID = allocatedNodesList.allocateNode();
 
 		Node node = new Node(newNodeID);
+		node.loaded = true;
 
-		synchronized (nodeCache) {
-			if (nodeCache.size() >= NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
-				// Make some room for the new node
-				expelNodeFromCache();
-			}
-
-			node.use();
-
-			nodeCache.put(node.getID(), node);
-		}
+		Node cachedNode = nodeCache.putIfAbsent(node);
+		assert cachedNode == null : "Newly allocated " + node + " is already cached";
 
 		return node;
 	}
@@ -1220,87 +1408,58 @@ public class BTree {
 		}
 
 		// Check node cache
-		synchronized (nodeCache) {
-			Node node = nodeCache.get(id);
-
-			if (node != null) {
-				// Found node in cache
-				int usageCount = node.use();
-				if (usageCount == 1) {
-					mruNodes.remove(id);
-				}
-			}
-			else {
-				if (nodeCache.size() >= NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
-					// Make some room for the new node
-					expelNodeFromCache();
-				}
+		Node node = nodeCache.use(treeID, id);
 
-				// Read node from disk and add to cache
-				node = new Node(id);
+		if (node == null) {
+			Node newNode = new Node(id);
 
-				// FIXME: this blocks the (synchronized) access to the cache for
-				// quite some time
-				node.read();
-
-				nodeCache.put(id, node);
-
-				node.use();
-			}
+			// Other threads that request this node while it is being read from
+			// disk wait on the node's monitor, not on the entire cache
+			synchronized (newNode) {
+				node = nodeCache.putIfAbsent(newNode);
 
-			return node;
-		}
-	}
+				if (node == null) {
+					try {
+						newNode.read();
+					}
+					catch (IOException e) {
+						nodeCache.remove(newNode);
+						throw e;
+					}
+					catch (RuntimeException e) {
+						nodeCache.remove(newNode);
+						throw e;
+					}
 
-	private void releaseNode(Node node)
-		throws IOException
-	{
-		// Note: this method is called by Node.release(), which already
-		// synchronizes on nodeCache. This method should not be called directly to
-		// prevent concurrency issues!!!
-
-		// synchronized (nodeCache) {
-		if (node.isEmpty() && node.isLeaf()) {
-			// Discard node
-			node.write();
-			nodeCache.remove(node.getID());
-
-			// allow the node ID to be reused
-			synchronized (allocatedNodesList) {
-				allocatedNodesList.freeNode(node.getID());
-
-				int maxNodeID = allocatedNodesList.getMaxNodeID();
-				if (node.getID() > maxNodeID) {
-					// Shrink file
-					nioFile.truncate(nodeID2offset(maxNodeID) + nodeSize);
+					return newNode;
 				}
 			}
 		}
-		else {
-			mruNodes.put(node.getID(), node);
 
-			if (nodeCache.size() > NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
-				expelNodeFromCache();
-			}
-		}
-		// }
+		node.awaitLoaded();
+		return node;
 	}
 
 	/**
-	 * Tries to expel the least recently used node from the cache.
+	 * Discards an empty leaf node that is no longer in use. Note: this method
+	 * is called by the node cache, which has already removed the node from the
+	 * cache. This method should not be called directly to prevent concurrency
+	 * issues!!!
 	 */
-	private void expelNodeFromCache()
+	private void discardNode(Node node)
 		throws IOException
 	{
-		if (!mruNodes.isEmpty()) {
-			Iterator<Node> iter = mruNodes.values().iterator();
-			Node lruNode = iter.next();
+		node.write();
+
+		// allow the node ID to be reused
+		synchronized (allocatedNodesList) {
+			allocatedNodesList.freeNode(node.getID());
 
-			if (lruNode.dataChanged()) {
-				lruNode.write();
+			int maxNodeID = allocatedNodesList.getMaxNodeID();
+			if (node.getID() > maxNodeID) {
+				// Shrink file
+				nioFile.truncate(nodeID2offset(maxNodeID) + nodeSize);
 			}
-			iter.remove();
-			nodeCache.remove(lruNode.getID());
 		}
 	}
 
@@ -1342,9 +1501,18 @@ public class BTree {
 		/** The number of values containined in this node. */
 		private int valueCount;
 
-		/** The number of objects currently 'using' this node. */
+		/**
+		 * The number of objects currently 'using' this node. Guarded by the
+		 * node cache.
+		 */
 		private int usageCount;
 
+		/**
+		 * Flag indicating whether the node's data has been read from disk. Set
+		 * by the thread that reads the node, while holding the node's monitor.
+		 */
+		private volatile boolean loaded;
+
 		/** Flag indicating whether the contents of data has changed. */
 		private boolean dataChanged;
 
@@ -1385,34 +1553,63 @@ public class BTree {
 			return getChildNodeID(0) == 0;
 		}
 
-		public int use() {
-			// synchronize on nodeCache because release() can call
-			// releaseNode(Node) and readNode(int) calls this method
-			synchronized (nodeCache) {
-				return ++usageCount;
-			}
+		public void use() {
+			nodeCache.use(this);
 		}
 
 		public void release()
 			throws IOException
 		{
-			// synchronize on nodeCache because this method can call
-			// releaseNode(Node) and readNode(int) can call use()
-			synchronized (nodeCache) {
-				assert usageCount > 0 : "Releasing node while usage count is " + usageCount;
-
-				usageCount--;
-
-				if (usageCount == 0) {
-					releaseNode(this);
-				}
-			}
+			nodeCache.release(this);
 		}
 
 		public int getUsageCount() {
 			return usageCount;
 		}
 
+		int incrementUsageCount() {
+			return ++usageCount;
+		}
+
+		int decrementUsageCount() {
+			return --usageCount;
+		}
+
+		long getCacheKey() {
+			return NodeCache.getKey(treeID, id);
+		}
+
+		/**
+		 * Gets the amount of memory (in bytes) that this node's data occupies.
+		 */
+		int getSize() {
+			return data.length;
+		}
+
+		void discard()
+			throws IOException
+		{
+			discardNode(this);
+		}
+
+		/**
+		 * Waits for the thread that reads this node from disk to finish.
+		 * 
+		 * @throws IOException
+		 *         If reading the node failed.
+		 */
+		void awaitLoaded()
+			throws IOException
+		{
+			if (!loaded) {
+				synchronized (this) {
+					if (!loaded) {
+						throw new IOException("Failed to read " + this + " from " + getFile());
+					}
+				}
+			}
+		}
+
 		public boolean dataChanged() {
 			return dataChanged;
 		}
@@ -1836,6 +2033,7 @@ public class BTree {
 					+ nodeSize + " bytes)";
 
 			valueCount = ByteArrayUtil.getInt(data, 0);
+			loaded = true;
 		}
 
 		public void write()
@@ -1853,6 +2051,36 @@ public class BTree {
 			dataChanged = false;
 		}
 
+		/**
+		 * Writes this node to disk if it has been changed, unless another thread
+		 * is currently changing the B-Tree. This is used by the (possibly shared)
+		 * node cache to write back a node before evicting it; the node cache
+		 * does not hold this B-Tree's lock itself.
+		 * 
+		 * @return <tt>false</tt> if the node has been changed but could not be
+		 *         written, in which case it must not be evicted.
+		 */
+		boolean tryWrite()
+			throws IOException
+		{
+			if (!dataChanged) {
+				return true;
+			}
+
+			if (!btreeLock.readLock().tryLock()) {
+				return false;
+			}
+			try {
+				if (dataChanged) {
+					write();
+				}
+				return true;
+			}
+			finally {
+				btreeLock.readLock().unlock();
+			}
+		}
+
 		/**
 		 * Shifts the data between <tt>startOffset</tt> (inclusive) and
 		 * <tt>endOffset</tt> (exclusive) <tt>shift</tt> positions to the right.
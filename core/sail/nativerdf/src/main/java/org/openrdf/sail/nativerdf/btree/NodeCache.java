@@ -0,0 +1,380 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf.btree;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.sail.nativerdf.btree.BTree.Node;
+
+/**
+ * A cache for B-Tree nodes that can be shared by multiple {@link BTree}s, for
+ * example by all indexes of a triple store. The size of the cache is expressed
+ * in bytes rather than in a number of nodes, so that B-Trees with different
+ * block sizes can share a single memory budget.
+ * <p>
+ * The cache is divided in a number of shards, each with its own lock and its
+ * own share of the memory budget, so that threads that access different nodes
+ * rarely contend for the same lock. Note that the size of the cache is not a
+ * hard limit: nodes that are actively used are always cached, only nodes that
+ * are no longer in use are evicted, least recently used first. Changed nodes
+ * of a B-Tree that is being modified by another thread are not evicted until
+ * that B-Tree's lock becomes available.
+ */
+public class NodeCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default size of a node cache, in bytes.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 1024L * 1024L;
+
+	/**
+	 * The number of shards that a node cache is divided in. Must be a power of
+	 * two.
+	 */
+	private static final int SHARD_COUNT = 16;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Shard[] shards;
+
+	private final long maxSize;
+
+	/**
+	 * Source for the IDs that are handed out to the B-Trees that use this
+	 * cache. These IDs are combined with node IDs to form cache keys.
+	 */
+	private final AtomicInteger treeIDs = new AtomicInteger();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new node cache that uses the {@link #DEFAULT_CACHE_SIZE
+	 * default size}.
+	 */
+	public NodeCache() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new node cache.
+	 * 
+	 * @param maxSize
+	 *        The maximum amount of memory (in bytes) to use for caching nodes
+	 *        that are not in use.
+	 */
+	public NodeCache(long maxSize) {
+		if (maxSize < 0L) {
+			throw new IllegalArgumentException("maxSize must not be negative");
+		}
+
+		this.maxSize = maxSize;
+
+		shards = new Shard[SHARD_COUNT];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(maxSize / SHARD_COUNT);
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the maximum amount of memory (in bytes) that this cache uses for
+	 * nodes that are not in use.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the amount of memory (in bytes) that is currently occupied by cached
+	 * nodes, including nodes that are in use.
+	 */
+	public long getSize() {
+		long size = 0L;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				size += shard.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the number of nodes that are currently cached, including nodes that
+	 * are in use.
+	 */
+	public int getNodeCount() {
+		int count = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				count += shard.nodes.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Registers a B-Tree with this cache.
+	 * 
+	 * @return An ID that identifies the B-Tree's nodes in this cache.
+	 */
+	int register() {
+		return treeIDs.incrementAndGet();
+	}
+
+	/**
+	 * Gets the specified node from the cache, incrementing its usage count.
+	 * 
+	 * @return The cached node, or <tt>null</tt> if the node is not cached.
+	 */
+	Node use(int treeID, int nodeID)
+		throws IOException
+	{
+		long key = getKey(treeID, nodeID);
+		Shard shard = getShard(key);
+
+		synchronized (shard) {
+			Node node = shard.nodes.get(key);
+
+			if (node != null) {
+				use(shard, key, node);
+			}
+
+			return node;
+		}
+	}
+
+	/**
+	 * Increments the usage count of a node that is already in use.
+	 */
+	void use(Node node) {
+		long key = node.getCacheKey();
+		Shard shard = getShard(key);
+
+		synchronized (shard) {
+			use(shard, key, node);
+		}
+	}
+
+	private void use(Shard shard, long key, Node node) {
+		if (node.incrementUsageCount() == 1) {
+			shard.unusedNodes.remove(key);
+		}
+	}
+
+	/**
+	 * Adds a node to the cache, unless a node with the same ID is already
+	 * cached. The usage count of the cached node is incremented.
+	 * 
+	 * @return The node that was already cached, or <tt>null</tt> if the
+	 *         supplied node was added to the cache.
+	 */
+	Node putIfAbsent(Node node)
+		throws IOException
+	{
+		long key = node.getCacheKey();
+		Shard shard = getShard(key);
+
+		synchronized (shard) {
+			Node cachedNode = shard.nodes.get(key);
+
+			if (cachedNode != null) {
+				use(shard, key, cachedNode);
+				return cachedNode;
+			}
+
+			node.incrementUsageCount();
+			shard.nodes.put(key, node);
+			shard.size += node.getSize();
+			shard.evictUnusedNodes();
+			return null;
+		}
+	}
+
+	/**
+	 * Decrements the usage count of a node. Empty leaf nodes are discarded once
+	 * they are no longer in use, other nodes stay cached until they are
+	 * evicted.
+	 */
+	void release(Node node)
+		throws IOException
+	{
+		long key = node.getCacheKey();
+		Shard shard = getShard(key);
+
+		synchronized (shard) {
+			int usageCount = node.decrementUsageCount();
+			assert usageCount >= 0 : "Releasing node while usage count is " + (usageCount + 1);
+
+			if (usageCount == 0) {
+				if (node.isEmpty() && node.isLeaf()) {
+					shard.remove(key);
+					node.discard();
+				}
+				else {
+					shard.unusedNodes.put(key, node);
+					shard.evictUnusedNodes();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a node from the cache without writing any changes to disk.
+	 */
+	void remove(Node node) {
+		long key = node.getCacheKey();
+		Shard shard = getShard(key);
+
+		synchronized (shard) {
+			if (shard.nodes.get(key) == node) {
+				shard.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Writes all cached nodes of the specified B-Tree that have been changed to
+	 * disk. The caller must hold that B-Tree's lock. Nodes that could not be
+	 * evicted before because they had not been written yet are evicted now if
+	 * needed.
+	 */
+	void sync(int treeID)
+		throws IOException
+	{
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (Node node : shard.nodes.values()) {
+					if (getTreeID(node.getCacheKey()) == treeID && node.dataChanged()) {
+						node.write();
+					}
+				}
+				shard.evictUnusedNodes();
+			}
+		}
+	}
+
+	/**
+	 * Removes all nodes of the specified B-Tree from the cache without writing
+	 * any changes to disk.
+	 */
+	void clear(int treeID) {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				Iterator<Map.Entry<Long, Node>> iter = shard.nodes.entrySet().iterator();
+				while (iter.hasNext()) {
+					Map.Entry<Long, Node> entry = iter.next();
+					if (getTreeID(entry.getKey()) == treeID) {
+						shard.size -= entry.getValue().getSize();
+						shard.unusedNodes.remove(entry.getKey());
+						iter.remove();
+					}
+				}
+			}
+		}
+	}
+
+	static long getKey(int treeID, int nodeID) {
+		return ((long)treeID << 32) | (nodeID & 0xFFFFFFFFL);
+	}
+
+	private static int getTreeID(long key) {
+		return (int)(key >>> 32);
+	}
+
+	private Shard getShard(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return shards[(int)(hash >>> 32) & (SHARD_COUNT - 1)];
+	}
+
+	/*-------------------*
+	 * Inner class Shard *
+	 *-------------------*/
+
+	private static class Shard {
+
+		private final long maxSize;
+
+		/**
+		 * Map containing all cached nodes of this shard, including the nodes
+		 * that are in use.
+		 */
+		private final Map<Long, Node> nodes = new HashMap<Long, Node>();
+
+		/**
+		 * Map of cached nodes that are no longer "in use", sorted from least
+		 * recently used to most recently used.
+		 */
+		private final Map<Long, Node> unusedNodes = new LinkedHashMap<Long, Node>();
+
+		/**
+		 * The total size (in bytes) of the nodes in this shard.
+		 */
+		private long size;
+
+		public Shard(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		private void remove(Long key) {
+			Node node = nodes.remove(key);
+			if (node != null) {
+				size -= node.getSize();
+				unusedNodes.remove(key);
+			}
+		}
+
+		/**
+		 * Expels least recently used nodes until the shard fits in its share of
+		 * the memory budget again, writing any changed nodes to disk. Changed
+		 * nodes are only written while holding their own B-Tree's lock; nodes of
+		 * a B-Tree that another thread is currently changing stay cached.
+		 */
+		private void evictUnusedNodes()
+			throws IOException
+		{
+			Iterator<Node> iter = unusedNodes.values().iterator();
+
+			while (size > maxSize && iter.hasNext()) {
+				Node lruNode = iter.next();
+
+				if (!lruNode.tryWrite()) {
+					continue;
+				}
+
+				iter.remove();
+				nodes.remove(lruNode.getCacheKey());
+				size -= lruNode.getSize();
+			}
+		}
+	}
+}
@@ -16,11 +16,16 @@
  */
 package org.openrdf.sail.nativerdf.config;
 
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.EVALUATION_PARALLELISM;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.FORCE_SYNC;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.MEMORY_MAPPED;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_CACHE_SIZE;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_ID_CACHE_SIZE;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NODE_CACHE_MEMORY;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.TRIPLE_INDEXES;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_CACHE_MEMORY;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_CACHE_SIZE;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_ID_CACHE_MEMORY;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_ID_CACHE_SIZE;
 
 import org.openrdf.model.Model;
@@ -45,14 +50,24 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 
 	private boolean forceSync = false;
 
+	private boolean memoryMapped = false;
+
 	private int valueCacheSize = -1;
 
 	private int valueIDCacheSize = -1;
 
+	private long valueCacheMemory = -1;
+
+	private long valueIDCacheMemory = -1;
+
+	private long nodeCacheMemory = -1;
+
 	private int namespaceCacheSize = -1;
 
 	private int namespaceIDCacheSize = -1;
 
+	private int evaluationParallelism = 0;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -91,6 +106,14 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 		this.forceSync = forceSync;
 	}
 
+	public boolean getMemoryMapped() {
+		return memoryMapped;
+	}
+
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
 	public int getValueCacheSize() {
 		return valueCacheSize;
 	}
@@ -107,6 +130,42 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 		this.valueIDCacheSize = valueIDCacheSize;
 	}
 
+	/**
+	 * Gets the estimated memory budget of the value cache in bytes, or a
+	 * negative number if the default budget should be used.
+	 */
+	public long getValueCacheMemory() {
+		return valueCacheMemory;
+	}
+
+	public void setValueCacheMemory(long valueCacheMemory) {
+		this.valueCacheMemory = valueCacheMemory;
+	}
+
+	/**
+	 * Gets the estimated memory budget of the value id cache in bytes, or a
+	 * negative number if the default budget should be used.
+	 */
+	public long getValueIDCacheMemory() {
+		return valueIDCacheMemory;
+	}
+
+	public void setValueIDCacheMemory(long valueIDCacheMemory) {
+		this.valueIDCacheMemory = valueIDCacheMemory;
+	}
+
+	/**
+	 * Gets the memory budget of the B-Tree node cache in bytes, or a negative
+	 * number if the default budget should be used.
+	 */
+	public long getNodeCacheMemory() {
+		return nodeCacheMemory;
+	}
+
+	public void setNodeCacheMemory(long nodeCacheMemory) {
+		this.nodeCacheMemory = nodeCacheMemory;
+	}
+
 	public int getNamespaceCacheSize() {
 		return namespaceCacheSize;
 	}
@@ -123,6 +182,14 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	public int getEvaluationParallelism() {
+		return evaluationParallelism;
+	}
+
+	public void setEvaluationParallelism(int evaluationParallelism) {
+		this.evaluationParallelism = evaluationParallelism;
+	}
+
 	@Override
 	public Resource export(Model m) {
 		Resource implNode = super.export(m);
@@ -134,18 +201,33 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 		if (forceSync) {
 			m.add(implNode, FORCE_SYNC, vf.createLiteral(forceSync));
 		}
+		if (memoryMapped) {
+			m.add(implNode, MEMORY_MAPPED, vf.createLiteral(memoryMapped));
+		}
 		if (valueCacheSize >= 0) {
 			m.add(implNode, VALUE_CACHE_SIZE, vf.createLiteral(valueCacheSize));
 		}
 		if (valueIDCacheSize >= 0) {
 			m.add(implNode, VALUE_ID_CACHE_SIZE, vf.createLiteral(valueIDCacheSize));
 		}
+		if (valueCacheMemory >= 0) {
+			m.add(implNode, VALUE_CACHE_MEMORY, vf.createLiteral(valueCacheMemory));
+		}
+		if (valueIDCacheMemory >= 0) {
+			m.add(implNode, VALUE_ID_CACHE_MEMORY, vf.createLiteral(valueIDCacheMemory));
+		}
+		if (nodeCacheMemory >= 0) {
+			m.add(implNode, NODE_CACHE_MEMORY, vf.createLiteral(nodeCacheMemory));
+		}
 		if (namespaceCacheSize >= 0) {
 			m.add(implNode, NAMESPACE_CACHE_SIZE, vf.createLiteral(namespaceCacheSize));
 		}
 		if (namespaceIDCacheSize >= 0) {
 			m.add(implNode, NAMESPACE_ID_CACHE_SIZE, vf.createLiteral(namespaceIDCacheSize));
 		}
+		if (evaluationParallelism > 0) {
+			m.add(implNode, EVALUATION_PARALLELISM, vf.createLiteral(evaluationParallelism));
+		}
 
 		return implNode;
 	}
@@ -169,6 +251,16 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 				}
 			});
 
+			Models.objectLiteral(m.filter(implNode, MEMORY_MAPPED, null)).ifPresent(lit -> {
+				try {
+					setMemoryMapped(lit.booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + MEMORY_MAPPED
+							+ " property, found " + lit);
+				}
+			});
+
 			Models.objectLiteral(m.filter(implNode, VALUE_CACHE_SIZE, null)).ifPresent(lit -> {
 				try {
 					setValueCacheSize(lit.intValue());
@@ -189,6 +281,35 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 				}
 			});
 			
+			Models.objectLiteral(m.filter(implNode, VALUE_CACHE_MEMORY, null)).ifPresent(lit -> {
+				try {
+					setValueCacheMemory(lit.longValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Long value required for " + VALUE_CACHE_MEMORY
+							+ " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, VALUE_ID_CACHE_MEMORY, null)).ifPresent(lit -> {
+				try {
+					setValueIDCacheMemory(lit.longValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Long value required for " + VALUE_ID_CACHE_MEMORY
+							+ " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, NODE_CACHE_MEMORY, null)).ifPresent(lit -> {
+				try {
+					setNodeCacheMemory(lit.longValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Long value required for " + NODE_CACHE_MEMORY
+							+ " property, found " + lit);
+				}
+			});
 
 			Models.objectLiteral(m.filter(implNode, NAMESPACE_CACHE_SIZE, null)).ifPresent(lit -> {
 				try {
@@ -209,6 +330,16 @@ public class NativeStoreConfig extends AbstractSailImplConfig {
 							+ " property, found " + lit);
 				}
 			});
+
+			Models.objectLiteral(m.filter(implNode, EVALUATION_PARALLELISM, null)).ifPresent(lit -> {
+				try {
+					setEvaluationParallelism(lit.intValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Integer value required for " + EVALUATION_PARALLELISM
+							+ " property, found " + lit);
+				}
+			});
 		}
 		catch (ModelException e) {
 			throw new SailConfigException(e.getMessage(), e);
@@ -62,6 +62,8 @@ public class NativeStoreFactory implements SailFactory {
 
 			nativeStore.setTripleIndexes(nativeConfig.getTripleIndexes());
 			nativeStore.setForceSync(nativeConfig.getForceSync());
+			nativeStore.setMemoryMapped(nativeConfig.getMemoryMapped());
+			nativeStore.setEvaluationParallelism(nativeConfig.getEvaluationParallelism());
 
 			if (nativeConfig.getValueCacheSize() >= 0) {
 				nativeStore.setValueCacheSize(nativeConfig.getValueCacheSize());
@@ -69,6 +71,15 @@ public class NativeStoreFactory implements SailFactory {
 			if (nativeConfig.getValueIDCacheSize() >= 0) {
 				nativeStore.setValueIDCacheSize(nativeConfig.getValueIDCacheSize());
 			}
+			if (nativeConfig.getValueCacheMemory() >= 0) {
+				nativeStore.setValueCacheMemory(nativeConfig.getValueCacheMemory());
+			}
+			if (nativeConfig.getValueIDCacheMemory() >= 0) {
+				nativeStore.setValueIDCacheMemory(nativeConfig.getValueIDCacheMemory());
+			}
+			if (nativeConfig.getNodeCacheMemory() >= 0) {
+				nativeStore.setNodeCacheMemory(nativeConfig.getNodeCacheMemory());
+			}
 			if (nativeConfig.getNamespaceCacheSize() >= 0) {
 				nativeStore.setNamespaceCacheSize(nativeConfig.getNamespaceCacheSize());
 			}
@@ -38,25 +38,45 @@ public class NativeStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/native#forceSync</tt> */
 	public final static IRI FORCE_SYNC;
 
+	/** <tt>http://www.openrdf.org/config/sail/native#memoryMapped</tt> */
+	public final static IRI MEMORY_MAPPED;
+
 	/** <tt>http://www.openrdf.org/config/sail/native#valueCacheSize</tt> */
 	public final static IRI VALUE_CACHE_SIZE;
 
 	/** <tt>http://www.openrdf.org/config/sail/native#valueIDCacheSize</tt> */
 	public final static IRI VALUE_ID_CACHE_SIZE;
 
+	/** <tt>http://www.openrdf.org/config/sail/native#valueCacheMemory</tt> */
+	public final static IRI VALUE_CACHE_MEMORY;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#valueIDCacheMemory</tt> */
+	public final static IRI VALUE_ID_CACHE_MEMORY;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#nodeCacheMemory</tt> */
+	public final static IRI NODE_CACHE_MEMORY;
+
 	/** <tt>http://www.openrdf.org/config/sail/native#namespaceCacheSize</tt> */
 	public final static IRI NAMESPACE_CACHE_SIZE;
 
 	/** <tt>http://www.openrdf.org/config/sail/native#namespaceIDCacheSize</tt> */
 	public final static IRI NAMESPACE_ID_CACHE_SIZE;
 
+	/** <tt>http://www.openrdf.org/config/sail/native#evaluationParallelism</tt> */
+	public final static IRI EVALUATION_PARALLELISM;
+
 	static {
 		ValueFactory factory = SimpleValueFactory.getInstance();
 		TRIPLE_INDEXES = factory.createIRI(NAMESPACE, "tripleIndexes");
 		FORCE_SYNC = factory.createIRI(NAMESPACE, "forceSync");
+		MEMORY_MAPPED = factory.createIRI(NAMESPACE, "memoryMapped");
 		VALUE_CACHE_SIZE = factory.createIRI(NAMESPACE, "valueCacheSize");
 		VALUE_ID_CACHE_SIZE = factory.createIRI(NAMESPACE, "valueIDCacheSize");
+		VALUE_CACHE_MEMORY = factory.createIRI(NAMESPACE, "valueCacheMemory");
+		VALUE_ID_CACHE_MEMORY = factory.createIRI(NAMESPACE, "valueIDCacheMemory");
+		NODE_CACHE_MEMORY = factory.createIRI(NAMESPACE, "nodeCacheMemory");
 		NAMESPACE_CACHE_SIZE = factory.createIRI(NAMESPACE, "namespaceCacheSize");
 		NAMESPACE_ID_CACHE_SIZE = factory.createIRI(NAMESPACE, "namespaceIDCacheSize");
+		EVALUATION_PARALLELISM = factory.createIRI(NAMESPACE, "evaluationParallelism");
 	}
 }
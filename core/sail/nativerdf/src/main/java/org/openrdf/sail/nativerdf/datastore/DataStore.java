@@ -58,9 +58,15 @@ public class DataStore {
 	public DataStore(File dataDir, String filePrefix, boolean forceSync)
 		throws IOException
 	{
-		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync);
-		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync);
-		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync);
+		this(dataDir, filePrefix, forceSync, false);
+	}
+
+	public DataStore(File dataDir, String filePrefix, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync, memoryMapped);
+		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync, memoryMapped);
+		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync, memoryMapped);
 	}
 
 	/*---------*
@@ -92,6 +98,31 @@ public class DataStore {
 		return null;
 	}
 
+	/**
+	 * Gets the first byte of the value with the specified ID without reading
+	 * the rest of its data.
+	 * 
+	 * @param id
+	 *        A value ID, should be larger than 0.
+	 * @return The first byte of the value's data, or <tt>0</tt> if no such value
+	 *         could be found.
+	 * @exception IOException
+	 *            If an I/O error occurred.
+	 */
+	public byte getFirstByte(int id)
+		throws IOException
+	{
+		assert id > 0 : "id must be larger than 0, is: " + id;
+
+		long offset = idFile.getOffset(id);
+
+		if (offset != 0L) {
+			return dataFile.getFirstByte(offset);
+		}
+
+		return 0;
+	}
+
 	/**
 	 * Gets the ID for the specified value.
 	 * 
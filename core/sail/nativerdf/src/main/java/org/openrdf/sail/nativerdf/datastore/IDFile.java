@@ -78,7 +78,18 @@ public class IDFile {
 	public IDFile(File file, boolean forceSync)
 		throws IOException
 	{
-		this.nioFile = new NioFile(file);
+		this(file, forceSync, false);
+	}
+
+	/**
+	 * @param memoryMapped
+	 *        Flag indicating whether the file should be read through
+	 *        memory-mapped regions instead of using channel reads.
+	 */
+	public IDFile(File file, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.forceSync = forceSync;
 
 		try {
@@ -0,0 +1,178 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.nativerdf.model.NativeValue;
+
+public class LazyValueTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private File dataDir;
+
+	private ValueStore valueStore;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("valuestore");
+		valueStore = new ValueStore(dataDir);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		valueStore.close();
+		FileUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testLazyValuesEqualStoredValues()
+		throws Exception
+	{
+		IRI iri = vf.createIRI("http://example.org/resource");
+		BNode bnode = vf.createBNode("node1");
+		Literal typed = vf.createLiteral("42", XMLSchema.INT);
+		Literal plain = vf.createLiteral("label");
+		Literal tagged = vf.createLiteral("label", "en");
+
+		for (Value value : new Value[] { iri, bnode, typed, plain, tagged }) {
+			int id = valueStore.storeValue(value);
+			valueStore.getValueCache().clear();
+
+			NativeValue lazyValue = valueStore.getLazyValue(id);
+
+			assertEquals(id, lazyValue.getInternalID());
+			assertEquals(value, lazyValue);
+			assertEquals(lazyValue, value);
+			assertEquals(value.hashCode(), lazyValue.hashCode());
+			assertEquals(value.toString(), lazyValue.toString());
+		}
+	}
+
+	@Test
+	public void testCompareByID()
+		throws Exception
+	{
+		int id1 = valueStore.storeValue(vf.createLiteral("one"));
+		int id2 = valueStore.storeValue(vf.createLiteral("two"));
+		valueStore.getValueCache().clear();
+
+		NativeValue lazy1 = valueStore.getLazyValue(id1);
+		NativeValue lazy2 = valueStore.getLazyValue(id2);
+		long misses = valueStore.getValueCache().getMissCount();
+
+		assertTrue(lazy1.equals(valueStore.getLazyValue(id1)));
+		assertFalse(lazy1.equals(lazy2));
+		assertEquals(id1, valueStore.getID(lazy1));
+
+		// only the lookup of the third lazy value touched the cache
+		assertEquals(misses + 1, valueStore.getValueCache().getMissCount());
+	}
+
+	@Test
+	public void testUnknownID()
+		throws Exception
+	{
+		assertEquals(null, valueStore.getLazyValue(1000));
+	}
+
+	@Test
+	public void testValuesAfterShutDown()
+		throws Exception
+	{
+		File storeDir = new File(dataDir, "store");
+		IRI subj = vf.createIRI("http://example.org/resource");
+		Literal label = vf.createLiteral("label", "en");
+
+		NativeStore store = new NativeStore(storeDir);
+		store.initialize();
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			con.addStatement(subj, RDFS.LABEL, label);
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+		store.shutDown();
+
+		// a fresh store has no cached values, so values are read lazily
+		store = new NativeStore(storeDir);
+		store.initialize();
+		List<Statement> statements;
+		List<BindingSet> bindingSets;
+		con = store.getConnection();
+		try {
+			statements = Iterations.asList(con.getStatements(null, null, null, false));
+
+			StatementPattern pattern = new StatementPattern(new Var("s"), new Var("p"), new Var("o"));
+			bindingSets = Iterations.asList(con.evaluate(pattern, null, EmptyBindingSet.getInstance(),
+					false));
+		}
+		finally {
+			con.close();
+		}
+		store.shutDown();
+
+		// the values no longer depend on the store
+		Model model = new LinkedHashModel(statements);
+		assertEquals(1, model.size());
+		Statement st = statements.get(0);
+		assertEquals(subj.stringValue(), st.getSubject().stringValue());
+		assertEquals(RDFS.LABEL, st.getPredicate());
+		assertEquals(label, st.getObject());
+		assertEquals(label.hashCode(), st.getObject().hashCode());
+
+		assertEquals(1, bindingSets.size());
+		assertEquals(subj, bindingSets.get(0).getValue("s"));
+		assertEquals("label", bindingSets.get(0).getValue("o").stringValue());
+	}
+}
@@ -0,0 +1,204 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.sail.NotifyingSailConnection;
+import org.openrdf.sail.SailException;
+
+public class NativeBulkLoaderTest {
+
+	private static final String NS = "http://example.org/";
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private File dataDir;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testLoadWithSortedRuns()
+		throws Exception
+	{
+		NativeBulkLoader loader = new NativeBulkLoader(dataDir, "spoc,posc,cosp", 17);
+		addTestData(loader);
+		loader.close();
+
+		assertTestData();
+	}
+
+	@Test
+	public void testLoadInMemory()
+		throws Exception
+	{
+		NativeStore store = new NativeStore(dataDir, "spoc,posc,cosp");
+		NativeBulkLoader loader = store.createBulkLoader();
+		addTestData(loader);
+		loader.close();
+
+		assertTestData();
+	}
+
+	@Test
+	public void testEmptyLoad()
+		throws Exception
+	{
+		new NativeBulkLoader(dataDir, "spoc,posc").close();
+
+		NativeStore store = new NativeStore(dataDir, "spoc,posc");
+		store.initialize();
+		try {
+			assertEquals(0, count(store, null, null, null));
+		}
+		finally {
+			store.shutDown();
+		}
+	}
+
+	@Test
+	public void testNonEmptyStore()
+		throws Exception
+	{
+		NativeStore store = new NativeStore(dataDir, "spoc,posc");
+		store.initialize();
+		try {
+			NotifyingSailConnection con = store.getConnection();
+			try {
+				con.begin();
+				con.addStatement(vf.createIRI(NS, "s"), vf.createIRI(NS, "p"), vf.createLiteral("o"));
+				con.commit();
+			}
+			finally {
+				con.close();
+			}
+		}
+		finally {
+			store.shutDown();
+		}
+
+		try {
+			store.createBulkLoader();
+			fail("Bulk loading into a non-empty store should fail");
+		}
+		catch (SailException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Adds 1000 statements, of which 500 are distinct, in a shuffled order.
+	 */
+	private void addTestData(NativeBulkLoader loader)
+		throws SailException
+	{
+		for (int n = 0; n < 2; n++) {
+			for (int i = 0; i < 500; i++) {
+				int j = (i * 7919) % 500;
+				IRI subj = vf.createIRI(NS, "s" + (j % 50));
+				IRI pred = vf.createIRI(NS, "p" + (j % 3));
+				Value obj = vf.createLiteral(j);
+				Resource context = (j % 5 == 0) ? null : vf.createIRI(NS, "g" + (j % 5));
+				loader.add(vf.createStatement(subj, pred, obj, context));
+			}
+		}
+		assertEquals(1000, loader.getStatementCount());
+	}
+
+	private void assertTestData()
+		throws SailException
+	{
+		NativeStore store = new NativeStore(dataDir, "spoc,posc,cosp");
+		store.initialize();
+		try {
+			assertEquals(500, count(store, null, null, null));
+			assertEquals(10, count(store, vf.createIRI(NS, "s7"), null, null));
+			assertEquals(167, count(store, null, vf.createIRI(NS, "p0"), null));
+			assertEquals(1, count(store, null, vf.createIRI(NS, "p1"), vf.createLiteral(4)));
+
+			// The loaded indexes must support regular updates
+			NotifyingSailConnection con = store.getConnection();
+			try {
+				con.begin();
+				con.removeStatements(null, vf.createIRI(NS, "p0"), null);
+				con.addStatement(vf.createIRI(NS, "s"), vf.createIRI(NS, "p"), vf.createLiteral("o"));
+				con.commit();
+			}
+			finally {
+				con.close();
+			}
+
+			assertEquals(334, count(store, null, null, null));
+		}
+		finally {
+			store.shutDown();
+		}
+	}
+
+	private int count(NativeStore store, Resource subj, IRI pred, Value obj)
+		throws SailException
+	{
+		NotifyingSailConnection con = store.getConnection();
+		try {
+			int count = 0;
+			CloseableIteration<? extends Statement, SailException> iter = con.getStatements(subj, pred, obj,
+					false);
+			try {
+				while (iter.hasNext()) {
+					iter.next();
+					count++;
+				}
+			}
+			finally {
+				iter.close();
+			}
+			return count;
+		}
+		finally {
+			con.close();
+		}
+	}
+}
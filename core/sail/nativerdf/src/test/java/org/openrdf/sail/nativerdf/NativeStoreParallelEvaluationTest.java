@@ -0,0 +1,186 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Model;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.impl.SimpleEvaluationStrategy;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.nativerdf.config.NativeStoreConfig;
+import org.openrdf.sail.nativerdf.config.NativeStoreFactory;
+
+/**
+ * Tests queries on a {@link NativeStore} that evaluates independent operators
+ * in parallel.
+ */
+public class NativeStoreParallelEvaluationTest {
+
+	private static final int SUBJECT_COUNT = 2000;
+
+	private File dataDir;
+
+	private NativeStore store;
+
+	private IRI name;
+
+	private IRI age;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+		store = new NativeStore(dataDir);
+		store.setEvaluationParallelism(4);
+		store.initialize();
+
+		ValueFactory vf = store.getValueFactory();
+		name = vf.createIRI("urn:test:name");
+		age = vf.createIRI("urn:test:age");
+
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < SUBJECT_COUNT; i++) {
+				IRI subject = vf.createIRI("urn:test:s" + i);
+				con.addStatement(subject, name, vf.createLiteral("name" + i));
+				con.addStatement(subject, age, vf.createLiteral(i));
+			}
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+		FileUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testConnectionUsesPool()
+		throws Exception
+	{
+		ForkJoinPool pool = store.getEvaluationPool();
+		assertNotNull(pool);
+
+		NativeStoreConnection con = (NativeStoreConnection)store.getConnection();
+		try {
+			SimpleEvaluationStrategy strategy = (SimpleEvaluationStrategy)con.getEvaluationStrategy(null, null);
+			assertSame(pool, strategy.getForkJoinPool());
+		}
+		finally {
+			con.close();
+		}
+
+		store.shutDown();
+		assertTrue(pool.isShutdown());
+	}
+
+	@Test
+	public void testUnion()
+		throws Exception
+	{
+		TupleExpr union = new Union(pattern("s", name, "o"), pattern("s", age, "o"));
+
+		assertEquals(2 * SUBJECT_COUNT, evaluate(union).size());
+	}
+
+	@Test
+	public void testHashJoin()
+		throws Exception
+	{
+		ProjectionElemList elems = new ProjectionElemList(new ProjectionElem("s"), new ProjectionElem("age"));
+		TupleExpr join = new Join(pattern("s", name, "name"), new Projection(pattern("s", age, "age"), elems));
+
+		List<BindingSet> results = evaluate(join);
+		assertEquals(SUBJECT_COUNT, results.size());
+		for (BindingSet bindings : results) {
+			String subject = bindings.getValue("s").stringValue();
+			String index = subject.substring("urn:test:s".length());
+			assertEquals("name" + index, bindings.getValue("name").stringValue());
+			assertEquals(index, bindings.getValue("age").stringValue());
+		}
+	}
+
+	@Test
+	public void testConfig()
+		throws Exception
+	{
+		NativeStoreConfig config = new NativeStoreConfig();
+		config.setEvaluationParallelism(3);
+
+		Model model = new LinkedHashModel();
+		NativeStoreConfig parsed = new NativeStoreConfig();
+		parsed.parse(model, config.export(model));
+		assertEquals(3, parsed.getEvaluationParallelism());
+
+		NativeStore configured = (NativeStore)new NativeStoreFactory().getSail(parsed);
+		assertEquals(3, configured.getEvaluationParallelism());
+	}
+
+	private StatementPattern pattern(String subject, IRI predicate, String object) {
+		Var predicateVar = new Var("_const_" + predicate.getLocalName(), predicate);
+		predicateVar.setAnonymous(true);
+		predicateVar.setConstant(true);
+		return new StatementPattern(new Var(subject), predicateVar, new Var(object));
+	}
+
+	private List<BindingSet> evaluate(TupleExpr expr)
+		throws Exception
+	{
+		SailConnection con = store.getConnection();
+		try {
+			return Iterations.asList(con.evaluate(expr, null, EmptyBindingSet.getInstance(), false));
+		}
+		finally {
+			con.close();
+		}
+	}
+}
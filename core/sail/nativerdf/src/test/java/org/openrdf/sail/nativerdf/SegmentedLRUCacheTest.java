@@ -0,0 +1,116 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SegmentedLRUCacheTest {
+
+	@Test
+	public void testPutGet() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100);
+
+		cache.put(1, "one");
+		cache.put(2, "two");
+
+		assertEquals("one", cache.get(1));
+		assertEquals("two", cache.get(2));
+		assertNull(cache.get(3));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testEntryBound() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(4, Long.MAX_VALUE,
+				(k, v) -> 1, 1);
+
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, Integer.toString(i));
+		}
+
+		assertEquals(4, cache.size());
+		assertEquals(6, cache.getEvictionCount());
+		assertNotNull(cache.get(9));
+		assertNull(cache.get(0));
+	}
+
+	@Test
+	public void testWeightBound() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(Integer.MAX_VALUE,
+				100, (k, v) -> v.length(), 1);
+
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, "0123456789");
+		}
+
+		assertTrue(cache.getWeight() <= 100);
+		assertTrue(cache.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testOversizedEntryIsNotCached() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(Integer.MAX_VALUE, 10,
+				(k, v) -> v.length(), 1);
+
+		cache.put(1, "short");
+		cache.put(2, "much too long");
+
+		assertNotNull(cache.get(1));
+		assertNull(cache.get(2));
+	}
+
+	@Test
+	public void testScanResistance() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100, Long.MAX_VALUE,
+				(k, v) -> 1, 1);
+
+		// hot entries, requested repeatedly
+		for (int i = 0; i < 50; i++) {
+			cache.put(i, Integer.toString(i));
+			cache.get(i);
+		}
+
+		// a large scan over entries that are requested only once
+		for (int i = 1000; i < 10000; i++) {
+			cache.put(i, Integer.toString(i));
+		}
+
+		for (int i = 0; i < 50; i++) {
+			assertNotNull("hot entry " + i + " was evicted by scan", cache.get(i));
+		}
+	}
+
+	@Test
+	public void testClear() {
+		SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100);
+
+		cache.put(1, "one");
+		cache.get(1);
+		cache.clear();
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertNull(cache.get(1));
+	}
+}
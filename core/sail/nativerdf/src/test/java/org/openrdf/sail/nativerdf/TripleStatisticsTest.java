@@ -0,0 +1,242 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.sail.nativerdf.TxnStatusFile.TxnStatus;
+
+public class TripleStatisticsTest {
+
+	private File dataDir;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testCommittedTriples()
+		throws Exception
+	{
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			tripleStore.startTransaction();
+			for (int subj = 100; subj < 1100; subj++) {
+				tripleStore.storeTriple(subj, 1, subj % 10 + 10, 0);
+				tripleStore.storeTriple(subj, 2, subj + 2000, 0);
+			}
+			TripleStatistics statistics = tripleStore.getStatistics();
+
+			// uncommitted triples are not counted
+			assertEquals(0L, statistics.getTripleCount(TripleStatistics.ALL_PREDICATES));
+
+			tripleStore.commit();
+
+			assertEquals(2000L, statistics.getTripleCount(TripleStatistics.ALL_PREDICATES));
+			assertEquals(1000L, statistics.getTripleCount(1));
+			assertEquals(2, statistics.getPredicateCount());
+			assertEquals(1000.0, statistics.getDistinctSubjects(1), 300.0);
+			assertEquals(10.0, statistics.getDistinctObjects(1), 2.0);
+			assertEquals(1000.0, statistics.getDistinctObjects(2), 300.0);
+			assertEquals(TripleStatistics.SAMPLE_SIZE, statistics.getObjectSample(2).length);
+
+			tripleStore.startTransaction();
+			tripleStore.removeTriples(-1, 2, -1, -1);
+			tripleStore.rollback();
+			assertEquals(1000L, statistics.getTripleCount(2));
+
+			tripleStore.startTransaction();
+			tripleStore.removeTriples(-1, 2, -1, -1);
+			tripleStore.commit();
+			assertEquals(0L, statistics.getTripleCount(2));
+			assertEquals(0, statistics.getObjectSample(2).length);
+			assertEquals(1, statistics.getPredicateCount());
+		}
+		finally {
+			tripleStore.close();
+		}
+
+		// statistics are persisted
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			assertEquals(1000L, tripleStore.getStatistics().getTripleCount(1));
+			assertEquals(10.0, tripleStore.getStatistics().getDistinctObjects(1), 2.0);
+		}
+		finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testRebuild()
+		throws Exception
+	{
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc");
+		try {
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(1, 2, 3, 0);
+			tripleStore.storeTriple(1, 2, 4, 5);
+			tripleStore.commit();
+		}
+		finally {
+			tripleStore.close();
+		}
+
+		// stores without statistics file get their statistics built on startup
+		assertTrue(new File(dataDir, "triples.stats").delete());
+
+		tripleStore = new TripleStore(dataDir, "spoc");
+		try {
+			assertEquals(2L, tripleStore.getStatistics().getTripleCount(2));
+			assertEquals(1.0, tripleStore.getStatistics().getDistinctSubjects(2), 0.1);
+		}
+		finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testRebuildAfterUncompletedCommit()
+		throws Exception
+	{
+		createTwoTriples();
+
+		// a commit that synced its statistics but not the transaction status
+		TripleStatistics statistics = new TripleStatistics(new File(dataDir, "triples.stats"), false);
+		try {
+			statistics.addTriple(TripleStore.getData(1, 2, 6, 0, 0));
+			statistics.sync();
+		}
+		finally {
+			statistics.close();
+		}
+		TxnStatusFile txnStatusFile = new TxnStatusFile(dataDir);
+		try {
+			txnStatusFile.setTxnStatus(TxnStatus.COMMITTING);
+		}
+		finally {
+			txnStatusFile.close();
+		}
+
+		assertTripleCount(2L);
+	}
+
+	@Test
+	public void testRebuildAfterInterruptedUpdate()
+		throws Exception
+	{
+		createTwoTriples();
+
+		// an update, such as a bulk load, that did not complete
+		TripleStatistics statistics = new TripleStatistics(new File(dataDir, "triples.stats"), false);
+		try {
+			assertFalse(statistics.isStale());
+			statistics.beginUpdate();
+			statistics.addTriple(TripleStore.getData(1, 2, 6, 0, 0));
+		}
+		finally {
+			statistics.close();
+		}
+
+		statistics = new TripleStatistics(new File(dataDir, "triples.stats"), false);
+		try {
+			assertTrue(statistics.isStale());
+		}
+		finally {
+			statistics.close();
+		}
+
+		assertTripleCount(2L);
+	}
+
+	private void createTwoTriples()
+		throws Exception
+	{
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc");
+		try {
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(1, 2, 3, 0);
+			tripleStore.storeTriple(1, 2, 4, 5);
+			tripleStore.commit();
+		}
+		finally {
+			tripleStore.close();
+		}
+	}
+
+	private void assertTripleCount(long expected)
+		throws Exception
+	{
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc");
+		try {
+			assertEquals(expected, tripleStore.getStatistics().getTripleCount(2));
+			assertEquals(expected, tripleStore.getStatistics().getTripleCount(TripleStatistics.ALL_PREDICATES));
+		}
+		finally {
+			tripleStore.close();
+		}
+
+		// the rebuilt statistics are consistent
+		TripleStatistics statistics = new TripleStatistics(new File(dataDir, "triples.stats"), false);
+		try {
+			assertFalse(statistics.isStale());
+			assertEquals(expected, statistics.getTripleCount(2));
+		}
+		finally {
+			statistics.close();
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		double[] values = new double[100];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 99 - i;
+		}
+
+		// half of the sampled items are not numeric
+		EquiDepthHistogram histogram = new EquiDepthHistogram(values, 200);
+
+		assertEquals(0.25, histogram.getSelectivity(CompareOp.LT, 50), 0.02);
+		assertEquals(0.25, histogram.getSelectivity(CompareOp.GE, 50), 0.02);
+		assertEquals(0.5, histogram.getSelectivity(CompareOp.LT, 1000), 0.0);
+		assertEquals(1.0 / 201, histogram.getSelectivity(CompareOp.GT, 1000), 0.0);
+		assertEquals(1.0, histogram.getSelectivity(CompareOp.EQ, 50), 0.0);
+	}
+}
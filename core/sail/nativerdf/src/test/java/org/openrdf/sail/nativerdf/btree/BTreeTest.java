@@ -16,9 +16,13 @@
  */
 package org.openrdf.sail.nativerdf.btree;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.After;
@@ -164,6 +168,62 @@ public class BTreeTest {
 		iter1.close();
 	}
 
+	@Test
+	public void testBulkLoad()
+		throws Exception
+	{
+		for (int valueCount : new int[] { 0, 1, 15, 16, 17, 100, 240, 241, 256 }) {
+			btree.clear();
+			btree.bulkLoad(new ListRecordIterator(TEST_VALUES.subList(0, valueCount)));
+
+			RecordIterator iter = btree.iterateAll();
+			for (int i = 0; i < valueCount; i++) {
+				assertArrayEquals(TEST_VALUES.get(i), iter.next());
+			}
+			assertNull(iter.next());
+			iter.close();
+
+			// The bulk loaded tree must support regular updates
+			for (byte[] value : RANDOMIZED_TEST_VALUES) {
+				btree.remove(value);
+			}
+			assertNull(btree.iterateAll().next());
+		}
+	}
+
+	@Test
+	public void testBulkLoadSkipsDuplicates()
+		throws Exception
+	{
+		List<byte[]> values = new ArrayList<byte[]>();
+		for (byte[] value : TEST_VALUES) {
+			values.add(value);
+			values.add(value);
+		}
+
+		btree.bulkLoad(new ListRecordIterator(values));
+
+		for (byte[] value : TEST_VALUES) {
+			assertArrayEquals(value, btree.remove(value));
+		}
+		assertNull(btree.iterateAll().next());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBulkLoadUnsorted()
+		throws Exception
+	{
+		btree.bulkLoad(new ListRecordIterator(RANDOMIZED_TEST_VALUES));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBulkLoadNonEmpty()
+		throws Exception
+	{
+		btree.insert(TEST_VALUES.get(0));
+		btree.bulkLoad(new ListRecordIterator(TEST_VALUES));
+	}
+
 	@Test
 	public void testNewAndClear()
 		throws Exception
@@ -171,6 +231,26 @@ public class BTreeTest {
 		btree.clear();
 	}
 
+	private static class ListRecordIterator implements RecordIterator {
+
+		private final Iterator<byte[]> iter;
+
+		public ListRecordIterator(List<byte[]> values) {
+			this.iter = values.iterator();
+		}
+
+		public byte[] next() {
+			return iter.hasNext() ? iter.next() : null;
+		}
+
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+		}
+	}
+
 	/* Test for SES-527
 		public void testRootNodeSplit()
 			throws Exception
@@ -0,0 +1,261 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.FileUtil;
+
+public class NodeCacheTest {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private File dir;
+
+	private NodeCache nodeCache;
+
+	private BTree btree1;
+
+	private BTree btree2;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dir = FileUtil.createTempDir("nodecache");
+
+		// A cache that is too small to retain any unused nodes
+		nodeCache = new NodeCache(0L);
+		btree1 = new BTree(dir, "test1", 85, 1, new DefaultRecordComparator(), false, false, nodeCache);
+		btree2 = new BTree(dir, "test2", 85, 1, new DefaultRecordComparator(), false, false, nodeCache);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		btree1.delete();
+		btree2.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testSharedCache()
+		throws Exception
+	{
+		for (int i = 0; i < 256; i++) {
+			btree1.insert(new byte[] { (byte)i });
+			btree2.insert(new byte[] { (byte)(255 - i) });
+		}
+
+		// No node is in use, so none should remain cached
+		assertEquals(0, nodeCache.getNodeCount());
+		assertEquals(0L, nodeCache.getSize());
+
+		assertValues(btree1, 0, 256);
+		assertValues(btree2, 0, 256);
+
+		for (int i = 0; i < 128; i++) {
+			btree1.remove(new byte[] { (byte)i });
+		}
+
+		assertValues(btree1, 128, 256);
+		assertValues(btree2, 0, 256);
+		assertEquals(0, nodeCache.getNodeCount());
+	}
+
+	@Test
+	public void testEvictionWritesChanges()
+		throws Exception
+	{
+		for (int i = 0; i < 256; i++) {
+			btree1.insert(new byte[] { (byte)i });
+		}
+		btree1.close();
+
+		btree1 = new BTree(dir, "test1", 85, 1, new DefaultRecordComparator(), false, false, nodeCache);
+		assertValues(btree1, 0, 256);
+	}
+
+	@Test
+	public void testClearOnlyAffectsOneTree()
+		throws Exception
+	{
+		NodeCache largeCache = new NodeCache();
+		BTree tree1 = new BTree(dir, "large1", 85, 1, new DefaultRecordComparator(), false, false, largeCache);
+		BTree tree2 = new BTree(dir, "large2", 85, 1, new DefaultRecordComparator(), false, false, largeCache);
+		try {
+			for (int i = 0; i < 256; i++) {
+				tree1.insert(new byte[] { (byte)i });
+				tree2.insert(new byte[] { (byte)i });
+			}
+
+			int nodeCount = largeCache.getNodeCount();
+			assertTrue(nodeCount > 0);
+
+			tree1.clear();
+			assertTrue(largeCache.getNodeCount() < nodeCount);
+
+			assertNull(tree1.iterateAll().next());
+			assertValues(tree2, 0, 256);
+		}
+		finally {
+			tree1.delete();
+			tree2.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentReaders()
+		throws Exception
+	{
+		for (int i = 0; i < 256; i++) {
+			btree1.insert(new byte[] { (byte)i });
+		}
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(new Runnable() {
+
+				public void run() {
+					try {
+						for (int n = 0; n < 50; n++) {
+							assertValues(btree1, 0, 256);
+						}
+					}
+					catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(0, nodeCache.getNodeCount());
+	}
+
+	@Test
+	public void testConcurrentWritersOfSharedCache()
+		throws Exception
+	{
+		final int valueCount = 5000;
+		final BTree[] trees = new BTree[4];
+		for (int t = 0; t < trees.length; t++) {
+			trees[t] = new BTree(dir, "concurrent" + t, 256, 4, new DefaultRecordComparator(), false, false,
+					nodeCache);
+		}
+		try {
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			List<Thread> threads = new ArrayList<Thread>();
+
+			for (int t = 0; t < trees.length; t++) {
+				final BTree tree = trees[t];
+				Thread thread = new Thread(new Runnable() {
+
+					public void run() {
+						try {
+							// inserts evict changed nodes of the other trees
+							for (int i = 0; i < valueCount; i++) {
+								tree.insert(toBytes(i * 7919 % valueCount));
+							}
+						}
+						catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertNull(failure.get());
+
+			for (int t = 0; t < trees.length; t++) {
+				trees[t].close();
+				trees[t] = new BTree(dir, "concurrent" + t, 256, 4, new DefaultRecordComparator(), false,
+						false, nodeCache);
+
+				RecordIterator iter = trees[t].iterateAll();
+				try {
+					for (int i = 0; i < valueCount; i++) {
+						assertArrayEquals(toBytes(i), iter.next());
+					}
+					assertNull(iter.next());
+				}
+				finally {
+					iter.close();
+				}
+			}
+		}
+		finally {
+			for (BTree tree : trees) {
+				tree.delete();
+			}
+		}
+	}
+
+	private static void assertValues(BTree btree, int from, int to)
+		throws Exception
+	{
+		RecordIterator iter = btree.iterateAll();
+		try {
+			for (int i = from; i < to; i++) {
+				assertArrayEquals(new byte[] { (byte)i }, iter.next());
+			}
+			assertNull(iter.next());
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private static byte[] toBytes(int value) {
+		byte[] bytes = new byte[4];
+		ByteArrayUtil.putInt(value, bytes, 0);
+		return bytes;
+	}
+}
@@ -19,11 +19,17 @@ package info.aduna.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * File wrapper that protects against concurrent file closing events due to e.g.
@@ -32,15 +38,87 @@ import java.nio.channels.WritableByteChannel;
  * the channel. The thread that causes the {@link ClosedByInterruptException} is
  * not protected, assuming the interrupt is intended to end the thread's
  * operation.
+ * <p>
+ * Optionally, reads can be served from memory-mapped regions of the file
+ * instead of through positional channel reads. This avoids a system call per
+ * read and lets the operating system's page cache act as the cache for the
+ * file's contents. Writes always go through the file channel. Regions are
+ * mapped lazily. Reads from the part of a region that was appended after it
+ * was mapped go through the file channel, until the region has grown enough
+ * to be worth remapping. Mappings are (re)created, and dropped on truncation
+ * or close, while no mapped reads are active, so that superseded mappings can
+ * be released immediately where the JDK allows it.
  * 
  * @author Arjohn Kampman
  */
 public final class NioFile {
 
+	/**
+	 * The size of the regions in which a file is mapped when memory-mapped
+	 * reads are enabled: 64MB.
+	 */
+	private static final int MAPPED_REGION_SIZE = 1 << 26;
+
+	/**
+	 * The number of bytes that a partially mapped region must have grown by
+	 * before it is remapped: 8MB.
+	 */
+	private static final int MIN_REMAP_GROWTH = MAPPED_REGION_SIZE / 8;
+
+	private static final MappedByteBuffer[] NO_REGIONS = new MappedByteBuffer[0];
+
+	/**
+	 * <tt>sun.misc.Unsafe</tt> and its <tt>invokeCleaner</tt> method on Java 9
+	 * and newer, used to release mapped regions without waiting for garbage
+	 * collection. Both are <tt>null</tt> on older JDKs.
+	 */
+	private static final Object UNSAFE;
+
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+		}
+		catch (Exception e) {
+			// Java 8 or a JDK without sun.misc.Unsafe
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
 	private final File file;
 
 	private final String mode;
 
+	private final boolean memoryMapped;
+
+	/**
+	 * The mapped regions of the file when memory-mapped reads are enabled.
+	 * Entries are <tt>null</tt> for regions that have not been mapped yet.
+	 */
+	private volatile MappedByteBuffer[] regions = NO_REGIONS;
+
+	/**
+	 * The size of the file as far as known from mapping, writing and truncating
+	 * it, used to decide when a partially mapped region should be remapped.
+	 */
+	private final AtomicLong knownSize = new AtomicLong();
+
+	/**
+	 * Lock that is held in shared mode while reading from a mapped region and
+	 * in exclusive mode while mapping regions or truncating or closing the
+	 * file.
+	 */
+	private final ReentrantReadWriteLock mappingLock = new ReentrantReadWriteLock();
+
 	private volatile RandomAccessFile raf;
 
 	private volatile FileChannel fc;
@@ -55,9 +133,27 @@ public final class NioFile {
 
 	public NioFile(File file, String mode)
 		throws IOException
+	{
+		this(file, mode, false);
+	}
+
+	/**
+	 * Creates a new NioFile.
+	 * 
+	 * @param file
+	 *        The file to open, will be created if it doesn't exist yet.
+	 * @param mode
+	 *        The access mode, see {@link RandomAccessFile}.
+	 * @param memoryMapped
+	 *        Flag indicating whether reads should be served from memory-mapped
+	 *        regions of the file.
+	 */
+	public NioFile(File file, String mode, boolean memoryMapped)
+		throws IOException
 	{
 		this.file = file;
 		this.mode = mode;
+		this.memoryMapped = memoryMapped;
 
 		if (!file.exists()) {
 			boolean created = file.createNewFile();
@@ -68,6 +164,10 @@ public final class NioFile {
 
 		explictlyClosed = false;
 		open();
+
+		if (memoryMapped) {
+			knownSize.set(fc.size());
+		}
 	}
 
 	private void open()
@@ -90,17 +190,49 @@ public final class NioFile {
 		open();
 	}
 
-	public synchronized void close()
+	public void close()
+		throws IOException
+	{
+		if (memoryMapped) {
+			// Wait for mapped reads to finish before releasing the regions
+			mappingLock.writeLock().lock();
+			try {
+				closeChannel();
+			}
+			finally {
+				mappingLock.writeLock().unlock();
+			}
+		}
+		else {
+			closeChannel();
+		}
+	}
+
+	private synchronized void closeChannel()
 		throws IOException
 	{
 		explictlyClosed = true;
-		raf.close();
+		MappedByteBuffer[] droppedRegions = regions;
+		regions = NO_REGIONS;
+		try {
+			raf.close();
+		}
+		finally {
+			unmap(droppedRegions);
+		}
 	}
 
 	public boolean isClosed() {
 		return explictlyClosed;
 	}
 
+	/**
+	 * Checks whether reads are served from memory-mapped regions of the file.
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
 	public File getFile() {
 		return file;
 	}
@@ -145,6 +277,38 @@ public final class NioFile {
 	 */
 	public void truncate(long size)
 		throws IOException
+	{
+		if (memoryMapped) {
+			// Wait for mapped reads to finish before shrinking the file, reading
+			// a region that is no longer backed by the file crashes the reader
+			mappingLock.writeLock().lock();
+			try {
+				// Drop mappings of regions that may no longer be backed by the
+				// file
+				MappedByteBuffer[] droppedRegions;
+				synchronized (this) {
+					droppedRegions = regions;
+					regions = NO_REGIONS;
+				}
+				unmap(droppedRegions);
+				channelTruncate(size);
+
+				long currentSize;
+				while ((currentSize = knownSize.get()) > size && !knownSize.compareAndSet(currentSize, size)) {
+					// retry
+				}
+			}
+			finally {
+				mappingLock.writeLock().unlock();
+			}
+		}
+		else {
+			channelTruncate(size);
+		}
+	}
+
+	private void channelTruncate(long size)
+		throws IOException
 	{
 		while (true) {
 			try {
@@ -207,7 +371,11 @@ public final class NioFile {
 	{
 		while (true) {
 			try {
-				return fc.write(buf, offset);
+				int written = fc.write(buf, offset);
+				if (memoryMapped) {
+					updateKnownSize(offset + written);
+				}
+				return written;
 			}
 			catch (ClosedByInterruptException e) {
 				throw e;
@@ -224,6 +392,24 @@ public final class NioFile {
 	public int read(ByteBuffer buf, long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			int length = buf.remaining();
+			ByteBuffer region = lockMappedRegion(offset, length);
+
+			if (region != null) {
+				try {
+					int regionOffset = (int)(offset & (MAPPED_REGION_SIZE - 1));
+					ByteBuffer src = region.duplicate();
+					src.limit(regionOffset + length).position(regionOffset);
+					buf.put(src);
+					return length;
+				}
+				finally {
+					mappingLock.readLock().unlock();
+				}
+			}
+		}
+
 		while (true) {
 			try {
 				return fc.read(buf, offset);
@@ -246,6 +432,23 @@ public final class NioFile {
 	public byte[] readBytes(long offset, int length)
 		throws IOException
 	{
+		if (memoryMapped) {
+			ByteBuffer region = lockMappedRegion(offset, length);
+
+			if (region != null) {
+				try {
+					byte[] result = new byte[length];
+					ByteBuffer src = region.duplicate();
+					src.position((int)(offset & (MAPPED_REGION_SIZE - 1)));
+					src.get(result);
+					return result;
+				}
+				finally {
+					mappingLock.readLock().unlock();
+				}
+			}
+		}
+
 		ByteBuffer buf = ByteBuffer.allocate(length);
 		read(buf, offset);
 		return buf.array();
@@ -274,6 +477,19 @@ public final class NioFile {
 	public long readLong(long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			ByteBuffer region = lockMappedRegion(offset, 8);
+
+			if (region != null) {
+				try {
+					return region.getLong((int)(offset & (MAPPED_REGION_SIZE - 1)));
+				}
+				finally {
+					mappingLock.readLock().unlock();
+				}
+			}
+		}
+
 		ByteBuffer buf = ByteBuffer.allocate(8);
 		read(buf, offset);
 		return buf.getLong(0);
@@ -290,8 +506,197 @@ public final class NioFile {
 	public int readInt(long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			ByteBuffer region = lockMappedRegion(offset, 4);
+
+			if (region != null) {
+				try {
+					return region.getInt((int)(offset & (MAPPED_REGION_SIZE - 1)));
+				}
+				finally {
+					mappingLock.readLock().unlock();
+				}
+			}
+		}
+
 		ByteBuffer buf = ByteBuffer.allocate(4);
 		read(buf, offset);
 		return buf.getInt(0);
 	}
+
+	/**
+	 * Gets the mapped region that contains the <tt>length</tt> bytes starting
+	 * at <tt>offset</tt>, mapping or remapping the region if needed. If a
+	 * region is returned, the mapping lock is held in shared mode and must be
+	 * released by the caller once it has read from the region.
+	 * 
+	 * @return The region, or <tt>null</tt> if the requested bytes cross a region
+	 *         boundary, extend beyond the end of the file or lie in a part of
+	 *         the region that has not grown enough yet to be remapped, in which
+	 *         case the caller should fall back to a channel read.
+	 */
+	private ByteBuffer lockMappedRegion(long offset, int length)
+		throws IOException
+	{
+		int regionIdx = (int)(offset / MAPPED_REGION_SIZE);
+		int regionEnd = (int)(offset & (MAPPED_REGION_SIZE - 1)) + length;
+
+		if (offset < 0L || regionEnd > MAPPED_REGION_SIZE) {
+			return null;
+		}
+
+		mappingLock.readLock().lock();
+		MappedByteBuffer region = getRegion(regionIdx);
+		if (region != null && region.capacity() >= regionEnd) {
+			return region;
+		}
+		mappingLock.readLock().unlock();
+
+		if (region != null) {
+			// Remap the region only once it has grown substantially or has become
+			// full, a remap per append would cost more than it saves
+			long regionStart = (long)regionIdx * MAPPED_REGION_SIZE;
+			long mappableLength = Math.min(Math.max(knownSize.get() - regionStart, regionEnd),
+					MAPPED_REGION_SIZE);
+			if (mappableLength < MAPPED_REGION_SIZE
+					&& mappableLength - region.capacity() < MIN_REMAP_GROWTH)
+			{
+				return null;
+			}
+		}
+
+		mappingLock.writeLock().lock();
+		try {
+			region = mapRegion(regionIdx, regionEnd);
+			if (region != null) {
+				// downgrade to the shared lock for reading
+				mappingLock.readLock().lock();
+			}
+			return region;
+		}
+		finally {
+			mappingLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of bytes that are currently mapped of the region that
+	 * contains the supplied offset, or <tt>0</tt> if that region is not mapped.
+	 */
+	int getMappedLength(long offset) {
+		MappedByteBuffer region = getRegion((int)(offset / MAPPED_REGION_SIZE));
+		return region != null ? region.capacity() : 0;
+	}
+
+	private MappedByteBuffer getRegion(int regionIdx) {
+		MappedByteBuffer[] regions = this.regions;
+		return regionIdx < regions.length ? regions[regionIdx] : null;
+	}
+
+	/**
+	 * Maps the region with the supplied index, replacing and releasing the
+	 * current mapping of the region, if any. Must be called while holding the
+	 * mapping lock in exclusive mode.
+	 * 
+	 * @return The new mapping, or <tt>null</tt> if the file is closed or the
+	 *         region is shorter than <tt>minLength</tt>.
+	 */
+	private synchronized MappedByteBuffer mapRegion(int regionIdx, int minLength)
+		throws IOException
+	{
+		if (explictlyClosed) {
+			return null;
+		}
+
+		MappedByteBuffer[] regions = this.regions;
+		MappedByteBuffer oldRegion = getRegion(regionIdx);
+		if (oldRegion != null && oldRegion.capacity() >= minLength) {
+			// region has already been remapped by another thread
+			return oldRegion;
+		}
+
+		long fileSize = size();
+		updateKnownSize(fileSize);
+
+		long regionStart = (long)regionIdx * MAPPED_REGION_SIZE;
+		long available = fileSize - regionStart;
+
+		if (available < minLength) {
+			return null;
+		}
+
+		MappedByteBuffer region;
+		while (true) {
+			try {
+				region = fc.map(MapMode.READ_ONLY, regionStart, Math.min(available, MAPPED_REGION_SIZE));
+				break;
+			}
+			catch (ClosedByInterruptException e) {
+				throw e;
+			}
+			catch (ClosedChannelException e) {
+				reopen(e);
+			}
+		}
+
+		if (regionIdx >= regions.length) {
+			MappedByteBuffer[] newRegions = new MappedByteBuffer[regionIdx + 1];
+			System.arraycopy(regions, 0, newRegions, 0, regions.length);
+			regions = newRegions;
+		}
+		else {
+			regions = regions.clone();
+		}
+
+		regions[regionIdx] = region;
+		this.regions = regions;
+
+		if (oldRegion != null) {
+			// no reader can be using the old mapping while the lock is held
+			// exclusively
+			unmap(oldRegion);
+		}
+
+		return region;
+	}
+
+	private void updateKnownSize(long size) {
+		long currentSize;
+		while ((currentSize = knownSize.get()) < size && !knownSize.compareAndSet(currentSize, size)) {
+			// retry
+		}
+	}
+
+	private static void unmap(MappedByteBuffer[] regions) {
+		for (MappedByteBuffer region : regions) {
+			if (region != null) {
+				unmap(region);
+			}
+		}
+	}
+
+	/**
+	 * Releases a mapped region immediately, rather than when it is garbage
+	 * collected, if the JDK allows it. The region must not be accessed
+	 * afterwards.
+	 */
+	private static void unmap(MappedByteBuffer region) {
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, region);
+			}
+			else {
+				// Java 8: DirectByteBuffer.cleaner().clean()
+				Method cleanerMethod = region.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(region);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}
+		catch (Exception e) {
+			// leave the region to the garbage collector
+		}
+	}
 }
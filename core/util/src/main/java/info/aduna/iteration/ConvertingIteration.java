@@ -17,6 +17,9 @@
 
 package info.aduna.iteration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A CloseableIteration that converts an iteration over objects of type
  * <tt>S</tt> (the source type) to an iteration over objects of type
@@ -88,6 +91,24 @@ public abstract class ConvertingIteration<S, T, X extends Exception> extends Abs
 		return convert(iter.next());
 	}
 
+	/**
+	 * Returns up to <tt>max</tt> next elements, converting a batch of elements
+	 * from the source type iteration.
+	 */
+	@Override
+	public List<T> nextBatch(int max)
+		throws X
+	{
+		List<? extends S> sourceObjects = iter.nextBatch(max);
+		List<T> batch = new ArrayList<T>(sourceObjects.size());
+
+		for (S sourceObject : sourceObjects) {
+			batch.add(convert(sourceObject));
+		}
+
+		return batch;
+	}
+
 	/**
 	 * Calls <tt>remove()</tt> on the underlying Iteration.
 	 * 
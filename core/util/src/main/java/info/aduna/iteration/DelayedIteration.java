@@ -17,6 +17,8 @@
 
 package info.aduna.iteration;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -99,6 +101,30 @@ public abstract class DelayedIteration<E, X extends Exception> extends AbstractC
 		return iter.next();
 	}
 
+	/**
+	 * Calls the <tt>nextBatch</tt> method of the underlying iteration.
+	 */
+	@Override
+	public List<E> nextBatch(int max)
+		throws X
+	{
+		Iterations.checkBatchSize(max);
+
+		if (iter == null) {
+			// Underlying iterator has not yet been initialized
+			synchronized (this) {
+				if (isClosed()) {
+					return Collections.emptyList();
+				}
+				else {
+					iter = createIteration();
+				}
+			}
+		}
+
+		return Collections.unmodifiableList(iter.nextBatch(max));
+	}
+
 	/**
 	 * Calls the <tt>remove</tt> method of the underlying iteration.
 	 */
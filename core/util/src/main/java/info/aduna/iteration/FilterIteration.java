@@ -17,6 +17,8 @@
 
 package info.aduna.iteration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -73,6 +75,40 @@ public abstract class FilterIteration<E, X extends Exception> extends IterationW
 		}
 	}
 
+	/**
+	 * Returns up to <tt>max</tt> next elements, pulling candidates from the
+	 * wrapped Iteration in batches.
+	 */
+	@Override
+	public List<E> nextBatch(int max)
+		throws X
+	{
+		Iterations.checkBatchSize(max);
+
+		List<E> batch = new ArrayList<E>(Math.min(max, 64));
+
+		if (nextElement != null) {
+			batch.add(nextElement);
+			nextElement = null;
+		}
+
+		while (batch.size() < max) {
+			List<? extends E> candidates = wrappedIter.nextBatch(max - batch.size());
+
+			if (candidates.isEmpty()) {
+				break;
+			}
+
+			for (E candidate : candidates) {
+				if (accept(candidate)) {
+					batch.add(candidate);
+				}
+			}
+		}
+
+		return batch;
+	}
+
 	private void findNextElement()
 		throws X
 	{
@@ -17,6 +17,9 @@
 
 package info.aduna.iteration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An Iteration is a typed Iterator-like object that can throw (typed)
  * Exceptions while iterating. This is used in cases where the iteration is lazy
@@ -70,4 +73,35 @@ public interface Iteration<E, X extends Exception> {
 	 */
 	public void remove()
 		throws X;
+
+	/**
+	 * Returns up to <tt>max</tt> next elements of the iteration in a single
+	 * call. Consumers that process many elements can use this method to
+	 * amortize the per-element cost of {@link #hasNext()} and {@link #next()};
+	 * implementations that can produce elements in bulk should override it. The
+	 * default implementation simply calls {@link #hasNext()} and {@link #next()}
+	 * repeatedly.
+	 * <p>
+	 * The returned list contains at least one element, unless the iteration has
+	 * no more elements, in which case an empty list is returned.
+	 * 
+	 * @param max
+	 *        The maximum number of elements to return, must be positive.
+	 * @return A list of at most <tt>max</tt> elements, which may be
+	 *         unmodifiable.
+	 * @throws IllegalArgumentException
+	 *         If <tt>max</tt> is not positive.
+	 * @throws X
+	 */
+	public default List<E> nextBatch(int max)
+		throws X
+	{
+		Iterations.checkBatchSize(max);
+
+		List<E> batch = new ArrayList<E>();
+		while (batch.size() < max && hasNext()) {
+			batch.add(next());
+		}
+		return batch;
+	}
 }
@@ -32,6 +32,12 @@ import java.util.stream.StreamSupport;
  */
 public class Iterations {
 
+	/**
+	 * The number of elements that {@link #addAll(Iteration, Collection)}
+	 * requests from an Iteration at a time.
+	 */
+	private static final int ADD_ALL_BATCH_SIZE = 256;
+
 	/**
 	 * Get a List containing all elements obtained from the specified Iteration.
 	 * 
@@ -82,8 +88,9 @@ public class Iterations {
 		throws X
 	{
 		try {
-			while (iter.hasNext()) {
-				collection.add(iter.next());
+			List<? extends E> batch;
+			while (!(batch = iter.nextBatch(ADD_ALL_BATCH_SIZE)).isEmpty()) {
+				collection.addAll(batch);
 			}
 		}
 		finally {
@@ -181,4 +188,17 @@ public class Iterations {
 		}
 
 	}
+
+	/**
+	 * Verifies that the supplied maximum batch size, as passed to
+	 * {@link Iteration#nextBatch(int)}, is positive.
+	 * 
+	 * @throws IllegalArgumentException
+	 *         If <tt>max</tt> is not positive.
+	 */
+	static void checkBatchSize(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException("batch size must be positive: " + max);
+		}
+	}
 }
@@ -17,6 +17,8 @@
 
 package info.aduna.iteration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -78,6 +80,61 @@ public abstract class LookAheadIteration<E, X extends Exception> extends Abstrac
 		}
 	}
 
+	/**
+	 * Returns up to <tt>max</tt> next elements, fetching them through
+	 * {@link #getNextElements(List, int)} rather than one at a time.
+	 */
+	@Override
+	public final List<E> nextBatch(int max)
+		throws X
+	{
+		Iterations.checkBatchSize(max);
+
+		List<E> batch = new ArrayList<E>(Math.min(max, 64));
+
+		if (!isClosed()) {
+			if (nextElement != null) {
+				batch.add(nextElement);
+				nextElement = null;
+			}
+
+			if (batch.size() < max && !getNextElements(batch, max - batch.size())) {
+				close();
+			}
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Gets up to <tt>max</tt> next elements and adds them to the supplied list.
+	 * The default implementation calls {@link #getNextElement()} repeatedly.
+	 * Subclasses that can produce elements more efficiently in bulk may
+	 * override this method.
+	 * 
+	 * @param batch
+	 *        The list to add the elements to.
+	 * @param max
+	 *        The maximum number of elements to add, always positive.
+	 * @return <tt>false</tt> if no more elements are available after the ones
+	 *         that were added, <tt>true</tt> otherwise.
+	 */
+	protected boolean getNextElements(List<E> batch, int max)
+		throws X
+	{
+		for (int i = 0; i < max; i++) {
+			E element = getNextElement();
+
+			if (element == null) {
+				return false;
+			}
+
+			batch.add(element);
+		}
+
+		return true;
+	}
+
 	/**
 	 * Fetches the next element if it hasn't been fetched yet and stores it in
 	 * {@link #nextElement}.
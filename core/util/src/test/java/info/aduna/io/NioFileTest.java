@@ -0,0 +1,183 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package info.aduna.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioFileTest {
+
+	private File dir;
+
+	private NioFile nioFile;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dir = FileUtil.createTempDir("niofile");
+		nioFile = new NioFile(new File(dir, "test.dat"), "rw", true);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		nioFile.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testMappedReads()
+		throws Exception
+	{
+		nioFile.writeInt(42, 0L);
+		nioFile.writeLong(4711L, 4L);
+		nioFile.writeBytes(new byte[] { 1, 2, 3 }, 12L);
+
+		assertEquals(42, nioFile.readInt(0L));
+		assertEquals(4711L, nioFile.readLong(4L));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, nioFile.readBytes(12L, 3));
+
+		ByteBuffer buf = ByteBuffer.allocate(3);
+		assertEquals(3, nioFile.read(buf, 12L));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, buf.array());
+	}
+
+	@Test
+	public void testReadsAfterGrowth()
+		throws Exception
+	{
+		nioFile.writeInt(1, 0L);
+		assertEquals(1, nioFile.readInt(0L));
+
+		// extend the file beyond the currently mapped region
+		nioFile.writeInt(2, 1024L);
+		assertEquals(2, nioFile.readInt(1024L));
+
+		// overwrite previously mapped data through the channel
+		nioFile.writeInt(3, 0L);
+		assertEquals(3, nioFile.readInt(0L));
+	}
+
+	@Test
+	public void testSmallGrowthIsReadThroughChannel()
+		throws Exception
+	{
+		nioFile.writeInt(1, 0L);
+		assertEquals(1, nioFile.readInt(0L));
+		assertEquals(4, nioFile.getMappedLength(0L));
+
+		nioFile.writeInt(2, 1024L);
+		assertEquals(2, nioFile.readInt(1024L));
+		assertEquals(1, nioFile.readInt(0L));
+		assertEquals(4, nioFile.getMappedLength(0L));
+	}
+
+	@Test
+	public void testSubstantialGrowthRemaps()
+		throws Exception
+	{
+		nioFile.writeInt(1, 0L);
+		assertEquals(1, nioFile.readInt(0L));
+		assertEquals(4, nioFile.getMappedLength(0L));
+
+		long offset = 8L << 20;
+		nioFile.writeInt(2, offset);
+		assertEquals(2, nioFile.readInt(offset));
+		assertEquals(offset + 4, nioFile.getMappedLength(0L));
+		assertEquals(1, nioFile.readInt(0L));
+	}
+
+	@Test
+	public void testReadsAfterTruncate()
+		throws Exception
+	{
+		nioFile.writeInt(1, 0L);
+		nioFile.writeInt(2, 1024L);
+		assertEquals(2, nioFile.readInt(1024L));
+
+		nioFile.truncate(4L);
+		assertEquals(4L, nioFile.size());
+		assertEquals(1, nioFile.readInt(0L));
+
+		nioFile.writeInt(5, 512L);
+		assertEquals(5, nioFile.readInt(512L));
+	}
+
+	@Test
+	public void testConcurrentTruncate()
+		throws Exception
+	{
+		final int fileSize = 1 << 16;
+		nioFile.writeInt(1, fileSize - 4);
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			readers.add(new Thread(new Runnable() {
+
+				public void run() {
+					Random random = new Random();
+					try {
+						while (!done.get()) {
+							// may hit the truncated part of the file, only the
+							// absence of errors matters here
+							nioFile.readBytes(random.nextInt(fileSize - 64), 64);
+						}
+					}
+					catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		try {
+			for (int i = 0; i < 500; i++) {
+				nioFile.truncate(4L);
+				nioFile.writeInt(i, fileSize - 4);
+			}
+		}
+		finally {
+			done.set(true);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(499, nioFile.readInt(fileSize - 4));
+	}
+}
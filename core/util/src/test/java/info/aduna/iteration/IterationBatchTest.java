@@ -0,0 +1,121 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package info.aduna.iteration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IterationBatchTest {
+
+	private static final List<Integer> NUMBERS = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
+
+	@Test
+	public void defaultBatchesCoverAllElements()
+		throws Exception
+	{
+		Iteration<Integer, Exception> iter = new LimitIteration<Integer, Exception>(
+				new CloseableIteratorIteration<Integer, Exception>(NUMBERS.iterator()), 5);
+
+		assertEquals(Arrays.asList(1, 2, 3), iter.nextBatch(3));
+		assertEquals(Arrays.asList(4, 5), iter.nextBatch(3));
+		assertTrue(iter.nextBatch(3).isEmpty());
+	}
+
+	@Test
+	public void lookAheadBatchIncludesBufferedElement()
+		throws Exception
+	{
+		CloseableIteration<Integer, Exception> iter = lookAhead(NUMBERS.iterator());
+
+		assertTrue(iter.hasNext());
+		assertEquals(Arrays.asList(1, 2), iter.nextBatch(2));
+		assertEquals(Integer.valueOf(3), iter.next());
+		assertEquals(Arrays.asList(4, 5, 6, 7), iter.nextBatch(10));
+		assertFalse(iter.hasNext());
+		assertTrue(iter.nextBatch(1).isEmpty());
+	}
+
+	@Test
+	public void lookAheadClosesWhenExhaustedByBatch()
+		throws Exception
+	{
+		CloseableIteration<Integer, Exception> iter = lookAhead(NUMBERS.iterator());
+
+		assertEquals(NUMBERS, iter.nextBatch(100));
+		assertTrue(((AbstractCloseableIteration<Integer, Exception>)iter).isClosed());
+	}
+
+	@Test
+	public void filterBatchIsNeverEmptyBeforeExhaustion()
+		throws Exception
+	{
+		Iteration<Integer, Exception> iter = new FilterIteration<Integer, Exception>(lookAhead(NUMBERS.iterator())) {
+
+			@Override
+			protected boolean accept(Integer object) {
+				return object % 3 == 0;
+			}
+		};
+
+		assertEquals(Collections.singletonList(3), iter.nextBatch(1));
+		assertEquals(Collections.singletonList(6), iter.nextBatch(2));
+		assertTrue(iter.nextBatch(2).isEmpty());
+	}
+
+	@Test
+	public void convertingBatchConvertsEachElement()
+		throws Exception
+	{
+		Iteration<String, Exception> iter = new ConvertingIteration<Integer, String, Exception>(
+				lookAhead(NUMBERS.iterator()))
+		{
+
+			@Override
+			protected String convert(Integer sourceObject) {
+				return "#" + sourceObject;
+			}
+		};
+
+		assertEquals(Arrays.asList("#1", "#2", "#3", "#4"), iter.nextBatch(4));
+		assertEquals(Arrays.asList("#5", "#6", "#7"), Iterations.asList(iter));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonPositiveBatchSizeIsRejected()
+		throws Exception
+	{
+		lookAhead(NUMBERS.iterator()).nextBatch(0);
+	}
+
+	private static CloseableIteration<Integer, Exception> lookAhead(final Iterator<Integer> iter) {
+		return new LookAheadIteration<Integer, Exception>() {
+
+			@Override
+			protected Integer getNextElement() {
+				return iter.hasNext() ? iter.next() : null;
+			}
+		};
+	}
+}
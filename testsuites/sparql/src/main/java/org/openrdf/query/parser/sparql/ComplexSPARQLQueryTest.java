@@ -26,6 +26,7 @@ import static org.junit.Assert.fail;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -2101,6 +2102,30 @@ public abstract class ComplexSPARQLQueryTest {
 		}
 	}
 
+	@Test
+	public void testGroupByInMinus()
+		throws Exception
+	{
+		String query = "PREFIX : <urn:> SELECT DISTINCT ?s WHERE { ?s ?p ?o "
+				+ "MINUS { SELECT ?s WHERE { ?s :p ?v } GROUP BY ?s HAVING (COUNT(?v) > 1) } }";
+
+		conn.add(new StringReader("@prefix : <urn:> . :a :p 1, 2 . :b :p 3 . :c :q 1 ."), "",
+				RDFFormat.TURTLE);
+
+		TupleQuery tq = conn.prepareTupleQuery(QueryLanguage.SPARQL, query);
+		List<BindingSet> result = QueryResults.asList(tq.evaluate());
+
+		Set<Value> subjects = new HashSet<Value>();
+		for (BindingSet bs : result) {
+			subjects.add(bs.getValue("s"));
+		}
+
+		ValueFactory vf = conn.getValueFactory();
+		assertEquals(2, result.size());
+		assertTrue(subjects.contains(vf.createIRI("urn:b")));
+		assertTrue(subjects.contains(vf.createIRI("urn:c")));
+	}
+
 	/* private / protected methods */
 
 	private int countCharOccurrences(String string, char ch) {
@@ -512,6 +512,38 @@ public abstract class SPARQLUpdateTest {
 		assertFalse(con.hasStatement(bob, age, inCorrectAgeValue, true));
 	}
 
+	@Test
+	public void testDeleteInsertWhereManySolutions()
+		throws Exception
+	{
+		logger.debug("executing test testDeleteInsertWhereManySolutions");
+		IRI value = f.createIRI(EX_NS, "value");
+		con.begin();
+		for (int i = 0; i < 25000; i++) {
+			con.add(f.createIRI(EX_NS, "item" + i), value, f.createLiteral(i), graph1);
+		}
+		con.commit();
+
+		StringBuilder update = new StringBuilder();
+		update.append(getNamespaceDeclarations());
+		update.append(" DELETE { GRAPH ex:graph1 { ?x ex:value ?y } } ");
+		update.append(" INSERT { GRAPH ex:graph2 { ?x ex:value ?z } } ");
+		update.append(" WHERE { ");
+		update.append("   GRAPH ex:graph1 { ?x ex:value ?y } ");
+		update.append("   BIND((?y + 1) as ?z) ");
+		update.append(" } ");
+
+		Update operation = con.prepareUpdate(QueryLanguage.SPARQL, update.toString());
+		operation.execute();
+
+		assertFalse(con.hasStatement(null, value, null, true, graph1));
+		assertEquals(25000, con.getStatements(null, value, null, true, graph2).asList().size());
+		Literal first = f.createLiteral("1", XMLSchema.INTEGER);
+		Literal last = f.createLiteral("25000", XMLSchema.INTEGER);
+		assertTrue(con.hasStatement(f.createIRI(EX_NS, "item0"), value, first, true, graph2));
+		assertTrue(con.hasStatement(f.createIRI(EX_NS, "item24999"), value, last, true, graph2));
+	}
+
 	@Test
 	public void testAutoCommitHandling()
 		throws Exception
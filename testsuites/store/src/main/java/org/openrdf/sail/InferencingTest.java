@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -24,13 +26,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
 import info.aduna.iteration.Iterations;
 
+import org.openrdf.model.IRI;
 import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.model.util.Models;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.sail.SailRepository;
@@ -38,6 +45,8 @@ import org.openrdf.repository.util.RepositoryUtil;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
+import org.openrdf.sail.inferencer.fc.AbstractForwardChainingInferencer;
+import org.openrdf.sail.inferencer.fc.ForwardChainingRDFSInferencer;
 import org.openrdf.sail.memory.MemoryStore;
 
 public abstract class InferencingTest {
@@ -48,6 +57,14 @@ public abstract class InferencingTest {
 
 	public static final String TEST_DIR_PREFIX = "/testcases/rdf-mt-inferencing";
 
+	private static final String EX_NS = "http://example.org/";
+
+	/**
+	 * The number of removed statements above which the inferencer recomputes
+	 * the inferred statements from scratch, for the removal tests.
+	 */
+	private static final int MAX_REMOVED = 100;
+
 	/*---------*
 	 * Methods *
 	 *---------*/
@@ -295,6 +312,214 @@ public abstract class InferencingTest {
 		runTest(createSail(), "type", "error002", false);
 	}
 
+	@Test
+	public void testRemoveSubClassOf()
+		throws Exception
+	{
+		Repository repository = new SailRepository(createSail());
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			IRI a = vf.createIRI(EX_NS, "a");
+			IRI classA = vf.createIRI(EX_NS, "A");
+			IRI classB = vf.createIRI(EX_NS, "B");
+			IRI classC = vf.createIRI(EX_NS, "C");
+
+			con.add(a, RDF.TYPE, classA);
+			con.add(classA, RDFS.SUBCLASSOF, classB);
+			con.add(classB, RDFS.SUBCLASSOF, classC);
+			assertTrue(con.hasStatement(a, RDF.TYPE, classC, true));
+
+			con.remove(classA, RDFS.SUBCLASSOF, classB);
+
+			assertTrue(con.hasStatement(a, RDF.TYPE, classA, true));
+			assertFalse(con.hasStatement(a, RDF.TYPE, classB, true));
+			assertFalse(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertFalse(con.hasStatement(classA, RDFS.SUBCLASSOF, classC, true));
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	@Test
+	public void testRemoveOneOfTwoSupports()
+		throws Exception
+	{
+		Repository repository = new SailRepository(createSail());
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			IRI a = vf.createIRI(EX_NS, "a");
+			IRI classA = vf.createIRI(EX_NS, "A");
+			IRI classB = vf.createIRI(EX_NS, "B");
+			IRI classC = vf.createIRI(EX_NS, "C");
+
+			// a is a C both as an A and as a B
+			con.add(a, RDF.TYPE, classA);
+			con.add(a, RDF.TYPE, classB);
+			con.add(classA, RDFS.SUBCLASSOF, classC);
+			con.add(classB, RDFS.SUBCLASSOF, classC);
+
+			con.remove(classA, RDFS.SUBCLASSOF, classC);
+			assertTrue(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertClosure(con);
+
+			con.remove(a, RDF.TYPE, classB);
+			assertFalse(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	@Test
+	public void testRemoveManyStatements()
+		throws Exception
+	{
+		removeStatements(MAX_REMOVED / 2);
+	}
+
+	@Test
+	public void testRemoveTooManyStatements()
+		throws Exception
+	{
+		// the inferred statements are recomputed from scratch
+		removeStatements(MAX_REMOVED * 2);
+	}
+
+	@Test
+	public void testRemoveAcrossFlushes()
+		throws Exception
+	{
+		Repository repository = new SailRepository(createSail());
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			IRI a = vf.createIRI(EX_NS, "a");
+			IRI b = vf.createIRI(EX_NS, "b");
+			IRI classA = vf.createIRI(EX_NS, "A");
+			IRI classB = vf.createIRI(EX_NS, "B");
+			IRI classC = vf.createIRI(EX_NS, "C");
+
+			con.add(a, RDF.TYPE, classA);
+			con.add(b, RDF.TYPE, classB);
+			con.add(classA, RDFS.SUBCLASSOF, classC);
+			con.add(classB, RDFS.SUBCLASSOF, classC);
+
+			con.begin();
+			con.remove(classA, RDFS.SUBCLASSOF, classC);
+			// reading flushes the pending updates of the transaction
+			assertFalse(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertTrue(con.hasStatement(b, RDF.TYPE, classC, true));
+
+			con.add(classA, RDFS.SUBCLASSOF, classB);
+			assertTrue(con.hasStatement(a, RDF.TYPE, classC, true));
+
+			con.remove(classB, RDFS.SUBCLASSOF, classC);
+			assertFalse(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertFalse(con.hasStatement(b, RDF.TYPE, classC, true));
+			assertTrue(con.hasStatement(a, RDF.TYPE, classB, true));
+			con.commit();
+
+			assertFalse(con.hasStatement(a, RDF.TYPE, classC, true));
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	private void removeStatements(int count)
+		throws Exception
+	{
+		Sail sail = createSail();
+		if (sail instanceof AbstractForwardChainingInferencer) {
+			((AbstractForwardChainingInferencer)sail).setMaxRemovedStatements(MAX_REMOVED);
+		}
+		Repository repository = new SailRepository(sail);
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			IRI a = vf.createIRI(EX_NS, "a");
+			IRI classA = vf.createIRI(EX_NS, "A");
+			IRI classB = vf.createIRI(EX_NS, "B");
+			IRI p = vf.createIRI(EX_NS, "p");
+
+			con.begin();
+			con.add(a, RDF.TYPE, classA);
+			con.add(classA, RDFS.SUBCLASSOF, classB);
+			con.add(p, RDFS.DOMAIN, classA);
+			for (int i = 0; i < count; i++) {
+				con.add(vf.createIRI(EX_NS, "s" + i), p, vf.createLiteral(i));
+			}
+			con.commit();
+			assertTrue(con.hasStatement(vf.createIRI(EX_NS, "s0"), RDF.TYPE, classB, true));
+
+			con.begin();
+			con.remove((IRI)null, p, null);
+			con.remove(classA, RDFS.SUBCLASSOF, classB);
+			con.commit();
+
+			assertFalse(con.hasStatement(vf.createIRI(EX_NS, "s0"), RDF.TYPE, classA, true));
+			assertFalse(con.hasStatement(a, RDF.TYPE, classB, true));
+			assertTrue(con.hasStatement(a, RDF.TYPE, classA, true));
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	/**
+	 * Verifies that the statements of the supplied connection, including the
+	 * inferred ones, are exactly the closure that is computed from scratch for
+	 * its explicit statements.
+	 */
+	private void assertClosure(RepositoryConnection con)
+		throws Exception
+	{
+		Set<Statement> explicit = Iterations.addAll(con.getStatements(null, null, null, false),
+				new HashSet<Statement>());
+		Set<Statement> actual = Iterations.addAll(con.getStatements(null, null, null, true),
+				new HashSet<Statement>());
+
+		Repository reference = new SailRepository(new ForwardChainingRDFSInferencer(new MemoryStore()));
+		reference.initialize();
+		try {
+			RepositoryConnection refCon = reference.getConnection();
+			try {
+				refCon.add(explicit);
+				Set<Statement> expected = Iterations.addAll(refCon.getStatements(null, null, null, true),
+						new HashSet<Statement>());
+
+				Set<Statement> missing = new HashSet<Statement>(expected);
+				missing.removeAll(actual);
+				assertTrue("missing inferences: " + missing, missing.isEmpty());
+
+				Set<Statement> stale = new HashSet<Statement>(actual);
+				stale.removeAll(expected);
+				assertTrue("stale inferences: " + stale, stale.isEmpty());
+			}
+			finally {
+				refCon.close();
+			}
+		}
+		finally {
+			reference.shutDown();
+		}
+	}
+
 	/**
 	 * Gets an instance of the Sail that should be tested. The returned
 	 * repository must not be initialized.